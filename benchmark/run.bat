@@ -0,0 +1,16 @@
+@echo off
+
+REM Runs all the benchmarks with the GC profiler for the allocation rate and
+REM writes the results to benchmark-results.json for tracking between versions.
+REM Extra JMH options can be given, for example: run.bat TraceBenchmark -f 1
+
+IF NOT EXIST target\benchmarks.jar GOTO no_benchmark_jar
+java -jar target\benchmarks.jar -prof gc -rf json -rff benchmark-results.json %*
+GOTO End1
+
+:no_benchmark_jar
+	echo Please build the benchmarks first
+	echo mvn -B package
+GOTO End1
+
+:End1
@@ -0,0 +1,94 @@
+package mazebench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Boards builds the seeded boards the benchmarks run on, so every run and
+ * every version measures the same mazes.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+final class Boards {
+
+	private static final long SEED = 20180501L;
+
+	private Boards() {
+	}
+
+	/**
+	 * Builds a board with 2-way mirrors placed at random. The rooms of column 0
+	 * are left empty, so a laser from there can not be trapped.
+	 * 
+	 * @param size
+	 *            - number of columns and rows
+	 * @param density
+	 *            - share of the rooms with a mirror
+	 * @return the grid
+	 */
+	static Object randomBoard(int size, double density) {
+		Object grid = MazeApi.newByteGrid(size, size);
+		SplittableRandom random = new SplittableRandom(SEED);
+		for (int col = 1; col < size; col++) {
+			for (int row = 0; row < size; row++) {
+				if (random.nextDouble() < density) {
+					MazeApi.setKind(grid, col, row, random.nextBoolean() ? MazeApi.KIND_RIGHT_TWO_WAY
+							: MazeApi.KIND_LEFT_TWO_WAY);
+				}
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * Builds a board with four mirrors at the corners of the board, a laser on
+	 * the top row heading right goes round the edge of the board for ever.
+	 * 
+	 * @param size
+	 *            - number of columns and rows
+	 * @param packed
+	 *            - <code>true</code> for the packed grid, 4 bits per room
+	 * @return the grid
+	 */
+	static Object trapBoard(int size, boolean packed) {
+		Object grid = packed ? MazeApi.newPackedGrid(size, size) : MazeApi.newByteGrid(size, size);
+		MazeApi.setKind(grid, size - 1, 0, MazeApi.KIND_RIGHT_TWO_WAY);
+		MazeApi.setKind(grid, size - 1, size - 1, MazeApi.KIND_LEFT_TWO_WAY);
+		MazeApi.setKind(grid, 0, size - 1, MazeApi.KIND_RIGHT_TWO_WAY);
+		MazeApi.setKind(grid, 0, 0, MazeApi.KIND_LEFT_TWO_WAY);
+		return grid;
+	}
+
+	/**
+	 * Writes a definition file with mirrors placed at random.
+	 * 
+	 * @param file
+	 *            - the file to write
+	 * @param size
+	 *            - number of columns and rows
+	 * @param density
+	 *            - share of the rooms with a mirror
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	static void writeDefinition(Path file, int size, double density) throws IOException {
+		SplittableRandom random = new SplittableRandom(SEED);
+		String[] kinds = { "R", "L", "RR", "RL", "LR", "LL" };
+		try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+			out.write(size + "," + size + "\n-1\n");
+			for (int col = 0; col < size; col++) {
+				for (int row = 0; row < size; row++) {
+					if (random.nextDouble() < density) {
+						out.write(col + "," + row + kinds[random.nextInt(kinds.length)] + "\n");
+					}
+				}
+			}
+			out.write("-1\n0,0H\n-1\n");
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package mazebench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+
+/**
+ * MazeApi gives the benchmarks access to the maze classes. The maze classes are
+ * in the default package, which can not be imported from a named package, and
+ * JMH does not accept benchmarks in the default package, so the classes are
+ * reached through method handles. The handles are constants, the JIT inlines
+ * them and the benchmarks measure the maze code only. The constants the
+ * benchmarks need are read from the maze classes too, so they can not drift
+ * from them.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+final class MazeApi {
+
+	/**
+	 * Mirror kinds of <code>ReflectiveMirror</code>.
+	 */
+	static final int KIND_RIGHT_TWO_WAY;
+	static final int KIND_LEFT_TWO_WAY;
+
+	/**
+	 * Heading of <code>BlockPosition</code>, to the right.
+	 */
+	static final int HEADING_HORIZONTAL_FORWARD;
+
+	private static final MethodHandle NEW_BYTE_GRID;
+	private static final MethodHandle NEW_PACKED_GRID;
+	private static final MethodHandle SET_KIND;
+	private static final MethodHandle NEW_TRACER;
+	private static final MethodHandle SET_MIRROR_INDEX;
+	private static final MethodHandle SET_RECORD_PATH;
+	private static final MethodHandle NEW_MIRROR_INDEX;
+	private static final MethodHandle TRACE;
+	private static final MethodHandle STEP;
+	private static final MethodHandle NEW_BUILDER;
+	private static final MethodHandle PARSE;
+	private static final MethodHandle PACK;
+
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			Class<?> mirrorGrid = Class.forName("MirrorGrid");
+			Class<?> tracer = Class.forName("BeamTracer");
+			Class<?> index = Class.forName("MirrorIndex");
+			Class<?> detector = Class.forName("TrapDetector");
+			Class<?> handler = Class.forName("MazeDefinitionHandler");
+
+			Class<?> mirror = Class.forName("ReflectiveMirror");
+			KIND_RIGHT_TWO_WAY = mirror.getField("KIND_RIGHT_TWO_WAY").getInt(null);
+			KIND_LEFT_TWO_WAY = mirror.getField("KIND_LEFT_TWO_WAY").getInt(null);
+			HEADING_HORIZONTAL_FORWARD = Class.forName("BlockPosition").getField("HEADING_HORIZONTAL_FORWARD")
+					.getInt(null);
+
+			NEW_BYTE_GRID = constructor(lookup, "ByteMirrorGrid", int.class, int.class);
+			NEW_PACKED_GRID = constructor(lookup, "PackedMirrorGrid", int.class, int.class);
+			SET_KIND = erase(lookup.findVirtual(Class.forName("MutableMirrorGrid"), "setKind",
+					MethodType.methodType(void.class, int.class, int.class, int.class)));
+			NEW_TRACER = constructor(lookup, "BeamTracer", mirrorGrid);
+			SET_MIRROR_INDEX = erase(
+					lookup.findVirtual(tracer, "setMirrorIndex", MethodType.methodType(void.class, index)));
+			SET_RECORD_PATH = erase(
+					lookup.findVirtual(tracer, "setRecordPath", MethodType.methodType(void.class, boolean.class)));
+			NEW_MIRROR_INDEX = constructor(lookup, "MirrorIndex", mirrorGrid);
+			TRACE = erase(lookup.findVirtual(tracer, "trace",
+					MethodType.methodType(long.class, int.class, int.class, int.class, detector)));
+			STEP = erase(lookup.findVirtual(tracer, "step", MethodType.methodType(long.class, long.class)));
+			NEW_BUILDER = constructor(lookup, "MazeDefinitionBuilder");
+			PARSE = erase(lookup.findStatic(Class.forName("MazeDefinitionParser"), "parse",
+					MethodType.methodType(void.class, Path.class, handler)));
+			PACK = lookup.findStatic(Class.forName("BeamState"), "pack",
+					MethodType.methodType(long.class, int.class, int.class, int.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private MazeApi() {
+	}
+
+	static Object newByteGrid(int columns, int rows) {
+		try {
+			return (Object) NEW_BYTE_GRID.invokeExact(columns, rows);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object newPackedGrid(int columns, int rows) {
+		try {
+			return (Object) NEW_PACKED_GRID.invokeExact(columns, rows);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static void setKind(Object grid, int column, int row, int kind) {
+		try {
+			SET_KIND.invokeExact(grid, column, row, kind);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object newTracer(Object grid, boolean jump) {
+		try {
+			Object tracer = (Object) NEW_TRACER.invokeExact(grid);
+			if (jump) {
+				Object index = (Object) NEW_MIRROR_INDEX.invokeExact(grid);
+				SET_MIRROR_INDEX.invokeExact(tracer, index);
+			}
+			SET_RECORD_PATH.invokeExact(tracer, false);
+			return tracer;
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static long trace(Object tracer, int column, int row, int heading, Object detector) {
+		try {
+			return (long) TRACE.invokeExact(tracer, column, row, heading, detector);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static long step(Object tracer, long state) {
+		try {
+			return (long) STEP.invokeExact(tracer, state);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	/**
+	 * Packs the block position of the laser as <code>BeamState</code> does.
+	 */
+	static long pack(int column, int row, int heading) {
+		try {
+			return (long) PACK.invokeExact(column, row, heading);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object newDetector(String className) {
+		try {
+			return Class.forName(className).getConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Unknown trap detector " + className, e);
+		}
+	}
+
+	static Object parse(Path file) {
+		try {
+			Object builder = (Object) NEW_BUILDER.invokeExact();
+			PARSE.invokeExact(file, builder);
+			return builder;
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	private static MethodHandle constructor(MethodHandles.Lookup lookup, String className, Class<?>... parameters)
+			throws ReflectiveOperationException {
+		return erase(lookup.findConstructor(Class.forName(className), MethodType.methodType(void.class, parameters)));
+	}
+
+	/**
+	 * Replaces the maze classes in the type of the handle by <code>Object</code>.
+	 */
+	private static MethodHandle erase(MethodHandle handle) {
+		MethodType type = handle.type();
+		for (int i = 0; i < type.parameterCount(); i++) {
+			if (!type.parameterType(i).isPrimitive() && type.parameterType(i).getPackageName().isEmpty()) {
+				type = type.changeParameterType(i, Object.class);
+			}
+		}
+		if (!type.returnType().isPrimitive() && type.returnType().getPackageName().isEmpty()) {
+			type = type.changeReturnType(Object.class);
+		}
+		return handle.asType(type);
+	}
+
+	private static RuntimeException rethrow(Throwable t) {
+		if (t instanceof RuntimeException) {
+			return (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		return new IllegalStateException(t);
+	}
+}
@@ -0,0 +1,60 @@
+package mazebench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse throughput of the definition file, from the file on disk to the mirror
+ * grid.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Param({ "100", "1000", "3000" })
+	public int size;
+
+	@Param({ "0.01", "0.3" })
+	public double density;
+
+	private Path mFile;
+
+	@Setup(Level.Trial)
+	public void writeFile() throws IOException {
+		mFile = Files.createTempFile("maze-benchmark", ".txt");
+		Boards.writeDefinition(mFile, size, density);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFile() throws IOException {
+		Files.deleteIfExists(mFile);
+	}
+
+	@Benchmark
+	public Object parse() {
+		return MazeApi.parse(mFile);
+	}
+}
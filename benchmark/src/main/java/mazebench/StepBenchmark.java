@@ -0,0 +1,55 @@
+package mazebench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one step of the laser, one room, on a trapped board so the laser
+ * never runs out of rooms. The board is kept one byte per room or packed 4 bits
+ * per room.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StepBenchmark {
+
+	@Param({ "64", "4096" })
+	public int size;
+
+	@Param({ "false", "true" })
+	public boolean packed;
+
+	private Object mTracer;
+
+	private long mState;
+
+	@Setup
+	public void buildBoard() {
+		mTracer = MazeApi.newTracer(Boards.trapBoard(size, packed), false);
+		// on the top row heading right
+		mState = MazeApi.pack(1, 0, MazeApi.HEADING_HORIZONTAL_FORWARD);
+	}
+
+	@Benchmark
+	public long step() {
+		mState = MazeApi.step(mTracer, mState);
+		return mState;
+	}
+}
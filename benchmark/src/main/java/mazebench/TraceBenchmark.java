@@ -0,0 +1,66 @@
+package mazebench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full traces on sparse and dense boards, room by room and jumping from
+ * mirror to mirror. The laser comes in from every row of column 0 in turn.
+ * 
+ * The bitset detector is left out, it clears a bit for every state of the
+ * board before each trace, 50 MB on the biggest board, and the benchmark would
+ * measure the clearing instead of the trace. Its cost on a trapped laser is in
+ * the {@link TrapBenchmark}.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TraceBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int size;
+
+	@Param({ "0.001", "0.3" })
+	public double density;
+
+	@Param({ "false", "true" })
+	public boolean jump;
+
+	@Param({ "HashSetTrapDetector", "CycleFinderTrapDetector" })
+	public String detector;
+
+	private Object mTracer;
+
+	private Object mDetector;
+
+	private int mRow;
+
+	@Setup
+	public void buildBoard() {
+		mTracer = MazeApi.newTracer(Boards.randomBoard(size, density), jump);
+		mDetector = MazeApi.newDetector(detector);
+	}
+
+	@Benchmark
+	public long trace() {
+		mRow = mRow + 1 == size ? 0 : mRow + 1;
+		return MazeApi.trace(mTracer, 0, mRow, MazeApi.HEADING_HORIZONTAL_FORWARD, mDetector);
+	}
+}
@@ -0,0 +1,60 @@
+package mazebench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Trapped laser, the time to find the loop and its entry with each trap
+ * detector. The loop goes round the edge of the board.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrapBenchmark {
+
+	@Param({ "100", "10000" })
+	public int size;
+
+	@Param({ "BitSetTrapDetector", "HashSetTrapDetector", "CycleFinderTrapDetector" })
+	public String detector;
+
+	@Param({ "false", "true" })
+	public boolean jump;
+
+	private Object mTracer;
+
+	private Object mDetector;
+
+	@Setup
+	public void buildBoard() {
+		mTracer = MazeApi.newTracer(Boards.trapBoard(size, false), jump);
+		mDetector = MazeApi.newDetector(detector);
+	}
+
+	@Benchmark
+	public Object trappedTrace() {
+		try {
+			return MazeApi.trace(mTracer, 1, 0, MazeApi.HEADING_HORIZONTAL_FORWARD, mDetector);
+		} catch (RuntimeException e) {
+			// LaserTrappedException, the expected result
+			return e;
+		}
+	}
+}
@@ -1,7 +1,13 @@
 @echo off
 
+REM Compiles the sources to bin first, so the run is always of the current code.
+REM Options can be given after the file name, for example: run maze_definition.txt --exit-only
+
 IF %1.==. GOTO no_definiation_file_name
-java -classpath bin;. LaserExitPointInMirrorMaze %1
+IF NOT EXIST bin mkdir bin
+javac -d bin src\*.java
+IF ERRORLEVEL 1 GOTO End1
+java -classpath bin;. LaserExitPointInMirrorMaze %*
 GOTO End1
 
 :no_definiation_file_name
@@ -0,0 +1,347 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * BatchSolver solves many maze definition files in one JVM. The files are read
+ * and solved in parallel on a pool of threads, the results are printed in the
+ * order of the files.
+ * 
+ * Only a bounded number of files are in progress or waiting to be printed at
+ * any time. The first file in the order prints straight to the output stream,
+ * the files after it keep their output in memory until it is their turn, and a
+ * file stops when the kept output of all files reaches a bound, so the memory
+ * used does not grow with the number of files or the length of their output.
+ * A file which can not be read or solved, whatever the error, is reported to
+ * the error stream and the rest of the files are still solved; a file which
+ * fails after it has started to print leaves its output so far. The mirrors
+ * given more than once in a file are reported to the error stream as for a
+ * single file, in the order of the files.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class BatchSolver {
+
+	private final boolean mAllDoors;
+
+	private final int mPathMode;
+
+	private final int mThreads;
+
+	/**
+	 * Number of files in progress or waiting to be printed at most.
+	 */
+	private final int mWindow;
+
+	/**
+	 * Bytes of output kept in memory for the files waiting to be printed at most.
+	 */
+	private long mBufferLimit = 64L << 20;
+
+	/**
+	 * Constructs a new BatchSolver using one thread per processor.
+	 * 
+	 * @param allDoors
+	 *            - <code>true</code> to find the exit points for every door
+	 */
+	public BatchSolver(boolean allDoors) {
+		this(allDoors, BeamTracer.PATH_ROOMS);
+	}
+
+	/**
+	 * Constructs a new BatchSolver using one thread per processor.
+	 * 
+	 * @param allDoors
+	 *            - <code>true</code> to find the exit points for every door
+	 * @param pathMode
+	 *            - which block positions of the path are printed, one of the
+	 *            <code>BeamTracer.PATH_</code> constants
+	 */
+	public BatchSolver(boolean allDoors, int pathMode) {
+		this(allDoors, pathMode, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs a new BatchSolver.
+	 * 
+	 * @param allDoors
+	 *            - <code>true</code> to find the exit points for every door
+	 * @param pathMode
+	 *            - which block positions of the path are printed, one of the
+	 *            <code>BeamTracer.PATH_</code> constants
+	 * @param threads
+	 *            - number of threads solving the files
+	 */
+	public BatchSolver(boolean allDoors, int pathMode, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads must be positive: " + threads);
+		}
+		mAllDoors = allDoors;
+		mPathMode = pathMode;
+		mThreads = threads;
+		mWindow = threads * 2;
+	}
+
+	/**
+	 * Sets the bound of the output kept in memory for the files waiting to be
+	 * printed, 64 MB by default.
+	 * 
+	 * @param bytes
+	 *            - bytes of output kept at most
+	 */
+	public void setBufferLimit(long bytes) {
+		if (bytes <= 0) {
+			throw new IllegalArgumentException("The buffer limit must be positive: " + bytes);
+		}
+		mBufferLimit = bytes;
+	}
+
+	/**
+	 * Returns the maze definition files to solve. For a directory it is every
+	 * file in the directory sorted by name, otherwise the file is a list of maze
+	 * definition file names, one per line.
+	 * 
+	 * @param path
+	 *            - directory or file list
+	 * @return names of the maze definition files
+	 * @throws FileNotFoundException
+	 *             if the directory or the file list is not found
+	 */
+	public static List<String> listDefinitionFiles(String path) throws FileNotFoundException {
+		List<String> fileNames = new ArrayList<String>();
+		File file = new File(path);
+		if (file.isDirectory()) {
+			File[] files = file.listFiles();
+			if (files == null) {
+				throw new FileNotFoundException(path + " (The directory can not be read)");
+			}
+			Arrays.sort(files);
+			for (File f : files) {
+				if (f.isFile()) {
+					fileNames.add(f.getPath());
+				}
+			}
+			return fileNames;
+		}
+
+		try (Scanner in = new Scanner(new FileReader(path))) {
+			while (in.hasNextLine()) {
+				String line = in.nextLine().trim();
+				if (!line.isEmpty()) {
+					fileNames.add(line);
+				}
+			}
+		}
+		return fileNames;
+	}
+
+	/**
+	 * Solves the maze definition files, the result of every file is printed after
+	 * a line with the name of the file.
+	 * 
+	 * @param fileNames
+	 *            - names of the maze definition files
+	 * @param out
+	 *            - stream the results are printed to
+	 * @param err
+	 *            - stream the errors are printed to
+	 * @return number of files which could not be solved, or were not solved
+	 *         because the batch was interrupted
+	 */
+	public int solve(List<String> fileNames, PrintStream out, PrintStream err) {
+		// the files start in the order they are given, so the file printing is
+		// always running or done while a later one waits for its turn
+		ExecutorService pool = Executors.newFixedThreadPool(mThreads);
+		ArrayDeque<Future<Result>> inFlight = new ArrayDeque<Future<Result>>();
+		ArrayDeque<FileOutput> outputs = new ArrayDeque<FileOutput>();
+		OrderedOutput order = new OrderedOutput(out, mBufferLimit);
+		int next = 0;
+		int solved = 0;
+		try {
+			while (next < fileNames.size() || !inFlight.isEmpty()) {
+				while (next < fileNames.size() && inFlight.size() < mWindow) {
+					final String fileName = fileNames.get(next);
+					final FileOutput output = new FileOutput(order, next++);
+					outputs.add(output);
+					inFlight.add(pool.submit(() -> solveFile(fileName, output)));
+				}
+
+				Result result = inFlight.poll().get();
+				outputs.poll();
+				if (!result.mDuplicates.isEmpty()) {
+					out.flush();
+					for (MazeFormatException duplicate : result.mDuplicates) {
+						err.println(duplicate.getLocalizedMessage());
+					}
+				}
+				if (result.mError != null) {
+					out.flush();
+					err.println(result.mError);
+				} else {
+					solved++;
+				}
+				order.next(outputs.peek());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			err.println("The batch is interrupted.");
+		} catch (ExecutionException e) {
+			// solveFile reports its own errors, this is a bug
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		out.flush();
+
+		// the files not finished when the batch is interrupted are not solved
+		err.println("Solved " + solved + " of " + fileNames.size() + " maze definition files.");
+		return fileNames.size() - solved;
+	}
+
+	/**
+	 * Solves one file, an error of any kind, even one of the JVM such as running
+	 * out of memory on a huge file, is given back so the batch goes on.
+	 * 
+	 * @return the result of the file
+	 */
+	private Result solveFile(String fileName, FileOutput output) {
+		MazeDefinition maze = null;
+		try {
+			maze = LaserExitPointInMirrorMaze.readMazeDefinitionFile(fileName);
+			PrintStream out = new PrintStream(new BufferedOutputStream(output));
+			out.println("Maze definition file: " + fileName);
+			LaserExitPointInMirrorMaze.solveMazeDefinition(maze, mAllDoors, mPathMode, out);
+			out.flush();
+			if (out.checkError()) {
+				throw new InterruptedIOException("The output was not written.");
+			}
+			return new Result(maze.mDuplicates, null);
+		} catch (Throwable e) {
+			String error = e.getLocalizedMessage() != null ? e.getLocalizedMessage() : e.toString();
+			return new Result(maze != null ? maze.mDuplicates : Collections.<MazeFormatException>emptyList(),
+					"Maze definition file: " + fileName + " could not be solved: " + error);
+		}
+	}
+
+	/**
+	 * Result of one file, its duplicate mirrors and the error line, the maze is
+	 * not kept while the file waits for its turn.
+	 */
+	private static final class Result {
+
+		final List<MazeFormatException> mDuplicates;
+
+		/**
+		 * Error line of the file, <code>null</code> if it was solved.
+		 */
+		final String mError;
+
+		Result(List<MazeFormatException> duplicates, String error) {
+			mDuplicates = duplicates;
+			mError = error;
+		}
+	}
+
+	/**
+	 * Output stream shared by the files of a batch, the file whose turn it is
+	 * writes to it and the others wait when the kept output reaches the bound.
+	 */
+	private static final class OrderedOutput {
+
+		private final PrintStream mOut;
+
+		private final long mLimit;
+
+		/**
+		 * Index of the file whose turn it is to print.
+		 */
+		private int mTurn;
+
+		/**
+		 * Bytes kept for the files waiting for their turn.
+		 */
+		private long mBuffered;
+
+		OrderedOutput(PrintStream out, long limit) {
+			mOut = out;
+			mLimit = limit;
+		}
+
+		synchronized void write(FileOutput output, byte[] b, int off, int len) throws InterruptedIOException {
+			while (output.mIndex != mTurn && mBuffered > 0 && mBuffered + len > mLimit) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("The batch is interrupted.");
+				}
+			}
+			if (output.mIndex == mTurn) {
+				mOut.write(b, off, len);
+			} else {
+				output.mBuffer.write(b, off, len);
+				mBuffered += len;
+			}
+		}
+
+		/**
+		 * Gives the turn to the next file, its kept output is printed first.
+		 */
+		synchronized void next(FileOutput output) {
+			mTurn++;
+			if (output != null) {
+				mBuffered -= output.mBuffer.size();
+				mOut.write(output.mBuffer.toByteArray(), 0, output.mBuffer.size());
+				output.mBuffer = new ByteArrayOutputStream(0);
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Output of one file of the batch.
+	 */
+	private static final class FileOutput extends OutputStream {
+
+		final OrderedOutput mOrder;
+
+		final int mIndex;
+
+		/**
+		 * Output kept until the turn of the file, only used under the lock of the
+		 * order.
+		 */
+		ByteArrayOutputStream mBuffer = new ByteArrayOutputStream();
+
+		FileOutput(OrderedOutput order, int index) {
+			mOrder = order;
+			mIndex = index;
+		}
+
+		@Override
+		public void write(int b) throws InterruptedIOException {
+			mOrder.write(this, new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws InterruptedIOException {
+			mOrder.write(this, b, off, len);
+		}
+	}
+}
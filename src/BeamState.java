@@ -0,0 +1,140 @@
+/**
+ * BeamState packs the block position of the laser, column (X), row (Y) and
+ * heading, into a single <code>long</code> so that the tracer can follow the
+ * laser without allocating a {@link BlockPosition} for every step.
+ * 
+ * The column is kept in the high 32 bits, the row in the next 30 bits and the
+ * heading in the low 2 bits. Both the column and the row are signed so that
+ * the position just outside of the maze, where the laser leaves it, can be
+ * packed as well.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public final class BeamState {
+
+	/**
+	 * Largest number of rows which fits in the packed state.
+	 */
+	public static final int MAX_ROWS = (1 << 29) - 1;
+
+	/**
+	 * Column step for each heading.
+	 */
+	private static final int[] COLUMN_STEP = { 1, 0, -1, 0 };
+
+	/**
+	 * Row step for each heading.
+	 */
+	private static final int[] ROW_STEP = { 0, 1, 0, -1 };
+
+	private BeamState() {
+	}
+
+	/**
+	 * Packs the block position of the laser.
+	 * 
+	 * @param column
+	 *            - the column position of the block
+	 * @param row
+	 *            - the row position of the block
+	 * @param heading
+	 *            - heading of the laser
+	 * @return packed state
+	 */
+	public static long pack(int column, int row, int heading) {
+		return ((long) column << 32) | ((row & 0x3FFFFFFFL) << 2) | heading;
+	}
+
+	/**
+	 * @param state
+	 *            - packed state
+	 * @return the column position of the block
+	 */
+	public static int column(long state) {
+		return (int) (state >> 32);
+	}
+
+	/**
+	 * @param state
+	 *            - packed state
+	 * @return the row position of the block
+	 */
+	public static int row(long state) {
+		return ((int) (state >>> 2)) << 2 >> 2;
+	}
+
+	/**
+	 * @param state
+	 *            - packed state
+	 * @return heading of the laser
+	 */
+	public static int heading(long state) {
+		return (int) state & 3;
+	}
+
+	/**
+	 * @param heading
+	 *            - heading of the laser
+	 * @return change of the column for one step in the heading
+	 */
+	public static int columnStep(int heading) {
+		return COLUMN_STEP[heading];
+	}
+
+	/**
+	 * @param heading
+	 *            - heading of the laser
+	 * @return change of the row for one step in the heading
+	 */
+	public static int rowStep(int heading) {
+		return ROW_STEP[heading];
+	}
+
+	/**
+	 * Returns the heading for the orientation and the direction of the laser.
+	 * 
+	 * @param orientation
+	 *            - orientation of the laser (H or V)
+	 * @param direction
+	 *            - direction of the laser (+ or -)
+	 * @return heading of the laser
+	 */
+	public static int heading(String orientation, String direction) {
+		int heading = orientation.equals(BlockPosition.ORIENTATION_VERTICAL) ? 1 : 0;
+		if (direction.equals(BlockPosition.MOVE_BACKWARD)) {
+			heading |= 2;
+		}
+		return heading;
+	}
+
+	/**
+	 * @param heading
+	 *            - heading of the laser
+	 * @return orientation of the laser (H or V)
+	 */
+	public static String orientation(int heading) {
+		return (heading & 1) == 0 ? BlockPosition.ORIENTATION_HORIZONTAL : BlockPosition.ORIENTATION_VERTICAL;
+	}
+
+	/**
+	 * @param heading
+	 *            - heading of the laser
+	 * @return direction of the laser (+ or -)
+	 */
+	public static String direction(int heading) {
+		return (heading & 2) == 0 ? BlockPosition.MOVE_FORWARD : BlockPosition.MOVE_BACKWARD;
+	}
+
+	/**
+	 * Converts the packed state to a block position.
+	 * 
+	 * @param state
+	 *            - packed state
+	 * @return <code>BlockPosition</code> of the state
+	 */
+	public static BlockPosition toBlockPosition(long state) {
+		int heading = heading(state);
+		return new BlockPosition(column(state), row(state), orientation(heading), direction(heading));
+	}
+}
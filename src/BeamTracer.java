@@ -0,0 +1,474 @@
+import java.util.Arrays;
+
+/**
+ * BeamTracer follows the laser through the maze using the packed beam state
+ * (see {@link BeamState}) and the reflection table of the mirror kinds (see
+ * {@link ReflectiveMirror#reflect(int, int)}). The inner loop of the trace does
+ * not allocate objects, compare strings or throw exceptions.
+ * 
+ * The path can be recorded room by room, as the turning points only or not at
+ * all. It is kept in the path buffer of the tracer or given to a
+ * {@link PathListener} as the trace runs.
+ * 
+ * A beam splitter is followed along its reflected beam only, the beams of a
+ * maze with beam splitters are traced by the {@link SplitBeamTracer}.
+ * 
+ * A tracer is not thread safe, it keeps the path of the last trace and reuses
+ * the path buffer for the next one.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class BeamTracer {
+
+	/**
+	 * No path is recorded, only the exit point is found.
+	 */
+	public static final int PATH_NONE = 0;
+
+	/**
+	 * The start, every room where a mirror turns the laser and the last room are
+	 * recorded.
+	 */
+	public static final int PATH_TURNS = 1;
+
+	/**
+	 * Every room of the path is recorded.
+	 */
+	public static final int PATH_ROOMS = 2;
+
+	private final MirrorGrid mGrid;
+
+	private final int mColumns;
+
+	private final int mRows;
+
+	private MirrorIndex mIndex;
+
+	private int mPathMode = PATH_ROOMS;
+
+	private PathListener mPathListener;
+
+	private PhaseMetrics mMetrics;
+
+	/**
+	 * Reflections by mirror kind of the running trace, kept when there are
+	 * metrics.
+	 */
+	private final long[] mMirrorHits = new long[ReflectiveMirror.KIND_COUNT];
+
+	private long mPassThroughs;
+
+	private long[] mPath = new long[64];
+
+	private int mPathLength;
+
+	private long mSteps;
+
+	/**
+	 * Constructs a new BeamTracer for the maze.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 */
+	public BeamTracer(MirrorGrid grid) {
+		if (grid.rows() > BeamState.MAX_ROWS) {
+			throw new IllegalArgumentException("The maze can not have more than " + BeamState.MAX_ROWS + " rows.");
+		}
+		mGrid = grid;
+		mColumns = grid.columns();
+		mRows = grid.rows();
+	}
+
+	/**
+	 * @return mirrors of the maze
+	 */
+	public MirrorGrid getGrid() {
+		return mGrid;
+	}
+
+	/**
+	 * Sets the index of the mirrors, with the index the tracer jumps from mirror to
+	 * mirror and the cost of a trace depends on the number of mirrors the laser
+	 * meets instead of the number of rooms it crosses. The skipped rooms are still
+	 * put in the path if the path is recorded.
+	 * 
+	 * @param index
+	 *            - index of the mirrors of the maze, <code>null</code> to go one
+	 *            room at a time
+	 */
+	public void setMirrorIndex(MirrorIndex index) {
+		mIndex = index;
+	}
+
+	/**
+	 * Sets if the path of the laser is recorded, the path is recorded by default.
+	 * 
+	 * @param recordPath
+	 *            - <code>true</code> to keep every block position of the path
+	 */
+	public void setRecordPath(boolean recordPath) {
+		mPathMode = recordPath ? PATH_ROOMS : PATH_NONE;
+	}
+
+	/**
+	 * Sets which block positions of the path are recorded, every room by default.
+	 * 
+	 * @param pathMode
+	 *            - one of the <code>PATH_</code> constants
+	 */
+	public void setPathMode(int pathMode) {
+		if (pathMode < PATH_NONE || pathMode > PATH_ROOMS) {
+			throw new IllegalArgumentException("The path mode " + pathMode + " is not supported.");
+		}
+		mPathMode = pathMode;
+	}
+
+	/**
+	 * Sets the listener the recorded block positions are given to as the trace
+	 * runs, instead of keeping them in the path buffer of the tracer.
+	 * 
+	 * @param listener
+	 *            - listener of the path, <code>null</code> to keep the path in the
+	 *            tracer
+	 */
+	public void setPathListener(PathListener listener) {
+		mPathListener = listener;
+	}
+
+	/**
+	 * Sets the metrics the counts of every trace are added to: rooms stepped,
+	 * mirrors hit by kind, 1-way pass-throughs and trap checks.
+	 * 
+	 * @param metrics
+	 *            - metrics of the traces, <code>null</code> to count nothing
+	 */
+	public void setMetrics(PhaseMetrics metrics) {
+		mMetrics = metrics;
+	}
+
+	/**
+	 * Follows the laser from the start position until it leaves the maze. The
+	 * mirror of the start room is not applied, the laser starts in the room with
+	 * the given heading.
+	 * 
+	 * @param startColumn
+	 *            - start column position of laser
+	 * @param startRow
+	 *            - start row position of laser
+	 * @param startHeading
+	 *            - start heading of laser
+	 * @param trapDetector
+	 *            - detector for the loops of the laser
+	 * @return packed state of the last block position in the maze, the exit point
+	 *         of the laser
+	 * @throws LaserTrappedException
+	 *             if the laser never leaves the maze
+	 */
+	public long trace(int startColumn, int startRow, int startHeading, TrapDetector trapDetector) {
+		if (mIndex != null) {
+			return traceJumping(startColumn, startRow, startHeading, trapDetector);
+		}
+
+		final int columns = mColumns;
+		final int rows = mRows;
+		final MirrorGrid grid = mGrid;
+		final int pathMode = mPathMode;
+		final boolean counting = startMetrics();
+
+		int col = startColumn;
+		int row = startRow;
+		int heading = startHeading;
+		long steps = 0;
+		mPathLength = 0;
+
+		trapDetector.reset(columns, rows);
+		trapDetector.visit(col, row, heading);
+		boolean recorded = pathMode != PATH_NONE;
+		if (recorded) {
+			record(col, row, heading);
+		}
+
+		while (true) {
+			int nextCol = col + BeamState.columnStep(heading);
+			int nextRow = row + BeamState.rowStep(heading);
+			if (nextCol < 0 || nextCol >= columns || nextRow < 0 || nextRow >= rows) {
+				break;
+			}
+			col = nextCol;
+			row = nextRow;
+			int kind = grid.kind(col, row);
+			int nextHeading = ReflectiveMirror.reflect(kind, heading);
+			if (counting && kind != ReflectiveMirror.KIND_NONE) {
+				count(kind, nextHeading != heading);
+			}
+			recorded = pathMode == PATH_ROOMS || (pathMode == PATH_TURNS && nextHeading != heading);
+			heading = nextHeading;
+			steps++;
+			if (trapDetector.visit(col, row, heading)) {
+				mSteps = steps;
+				if (counting) {
+					addMetrics(steps, steps + 1);
+				}
+				throw trapped(BeamState.pack(startColumn, startRow, startHeading), BeamState.pack(col, row, heading));
+			}
+			if (recorded) {
+				record(col, row, heading);
+			}
+		}
+		if (pathMode == PATH_TURNS && !recorded) {
+			record(col, row, heading);
+		}
+		mSteps = steps;
+		if (counting) {
+			addMetrics(steps, steps + 1);
+		}
+		return BeamState.pack(col, row, heading);
+	}
+
+	/**
+	 * Follows the laser from mirror to mirror using the mirror index. Only the
+	 * states after the mirrors are given to the trap detector, a loop of the laser
+	 * always has a mirror in it.
+	 */
+	private long traceJumping(int startColumn, int startRow, int startHeading, TrapDetector trapDetector) {
+		final int columns = mColumns;
+		final int rows = mRows;
+		final MirrorGrid grid = mGrid;
+		final MirrorIndex index = mIndex;
+		final int pathMode = mPathMode;
+		final boolean counting = startMetrics();
+
+		int col = startColumn;
+		int row = startRow;
+		int heading = startHeading;
+		long steps = 0;
+		mPathLength = 0;
+
+		trapDetector.reset(columns, rows);
+		trapDetector.visit(col, row, heading);
+		boolean recorded = pathMode != PATH_NONE;
+		if (recorded) {
+			record(col, row, heading);
+		}
+		long mirrors = 0;
+
+		while (true) {
+			int target = index.next(col, row, heading);
+			int endCol = col;
+			int endRow = row;
+			if (target >= 0) {
+				if ((heading & 1) == 0) {
+					endCol = target;
+				} else {
+					endRow = target;
+				}
+			} else if ((heading & 1) == 0) {
+				// no more mirrors, the laser goes straight out of the maze
+				endCol = edge(heading, columns);
+			} else {
+				endRow = edge(heading, rows);
+			}
+
+			int distance = Math.abs(endCol - col) + Math.abs(endRow - row);
+			if (pathMode == PATH_ROOMS) {
+				// the empty rooms between, and the last room if the laser leaves
+				int expanded = target >= 0 ? distance - 1 : distance;
+				int colStep = BeamState.columnStep(heading);
+				int rowStep = BeamState.rowStep(heading);
+				for (int i = 1; i <= expanded; i++) {
+					record(col + colStep * i, row + rowStep * i, heading);
+				}
+			}
+			if (distance > 0) {
+				recorded = pathMode == PATH_ROOMS;
+			}
+			steps += distance;
+			col = endCol;
+			row = endRow;
+			if (target < 0) {
+				break;
+			}
+
+			int kind = grid.kind(col, row);
+			int nextHeading = ReflectiveMirror.reflect(kind, heading);
+			if (counting) {
+				count(kind, nextHeading != heading);
+			}
+			mirrors++;
+			recorded = pathMode == PATH_ROOMS || (pathMode == PATH_TURNS && nextHeading != heading);
+			heading = nextHeading;
+			if (trapDetector.visit(col, row, heading)) {
+				mSteps = steps;
+				if (counting) {
+					addMetrics(steps, mirrors + 1);
+				}
+				throw trapped(BeamState.pack(startColumn, startRow, startHeading), BeamState.pack(col, row, heading));
+			}
+			if (recorded) {
+				record(col, row, heading);
+			}
+		}
+		if (pathMode == PATH_TURNS && !recorded) {
+			record(col, row, heading);
+		}
+		mSteps = steps;
+		if (counting) {
+			addMetrics(steps, mirrors + 1);
+		}
+		return BeamState.pack(col, row, heading);
+	}
+
+	/**
+	 * Clears the counts for the trace which starts.
+	 * 
+	 * @return <code>true</code> if the trace is counted
+	 */
+	private boolean startMetrics() {
+		if (mMetrics == null) {
+			return false;
+		}
+		Arrays.fill(mMirrorHits, 0);
+		mPassThroughs = 0;
+		return true;
+	}
+
+	private void count(int kind, boolean reflected) {
+		if (reflected) {
+			mMirrorHits[kind]++;
+		} else {
+			mPassThroughs++;
+		}
+	}
+
+	private void addMetrics(long steps, long trapChecks) {
+		mMetrics.addTrace(steps, mMirrorHits, mPassThroughs, trapChecks);
+	}
+
+	/**
+	 * Returns the state of the laser after the next mirror it meets, using the
+	 * mirror index. The state is out of the maze, one step past the edge, if the
+	 * laser leaves the maze before it meets a mirror. The state may also be just
+	 * outside of the maze with the heading into the maze, for a laser coming in
+	 * through a door. The mirror index must be set before.
+	 * 
+	 * @param state
+	 *            - packed state of the laser
+	 * @return packed state after the next mirror, or out of the maze
+	 */
+	public long jump(long state) {
+		int col = BeamState.column(state);
+		int row = BeamState.row(state);
+		int heading = BeamState.heading(state);
+		int target = mIndex.next(col, row, heading);
+		if (target < 0) {
+			if ((heading & 1) == 0) {
+				col = edge(heading, mColumns) + BeamState.columnStep(heading);
+			} else {
+				row = edge(heading, mRows) + BeamState.rowStep(heading);
+			}
+			return BeamState.pack(col, row, heading);
+		}
+		if ((heading & 1) == 0) {
+			col = target;
+		} else {
+			row = target;
+		}
+		return BeamState.pack(col, row, ReflectiveMirror.reflect(mGrid.kind(col, row), heading));
+	}
+
+	/**
+	 * @return the last column or row in the heading of the laser
+	 */
+	private static int edge(int heading, int size) {
+		return (heading & 2) == 0 ? size - 1 : 0;
+	}
+
+	/**
+	 * @return number of steps of the last trace
+	 */
+	public long getSteps() {
+		return mSteps;
+	}
+
+	/**
+	 * @return number of block positions in the recorded path of the last trace
+	 */
+	public int getPathLength() {
+		return mPathLength;
+	}
+
+	/**
+	 * @param index
+	 *            - index of the block position in the path
+	 * @return packed state of the block position
+	 */
+	public long getPathState(int index) {
+		return mPath[index];
+	}
+
+	/**
+	 * Returns the next state of the laser, the state is out of the maze if the
+	 * laser leaves the maze.
+	 * 
+	 * @param state
+	 *            - packed state of the laser
+	 * @return packed next state of the laser
+	 */
+	public long step(long state) {
+		int heading = BeamState.heading(state);
+		int col = BeamState.column(state) + BeamState.columnStep(heading);
+		int row = BeamState.row(state) + BeamState.rowStep(heading);
+		if (col >= 0 && col < mColumns && row >= 0 && row < mRows) {
+			heading = ReflectiveMirror.reflect(mGrid.kind(col, row), heading);
+		}
+		return BeamState.pack(col, row, heading);
+	}
+
+	/**
+	 * Finds the loop of the trapped laser by replaying the path, so no path needs
+	 * to be kept. The length of the loop is found by going round the loop from a
+	 * state which repeats, then the loop entry is the first state which repeats
+	 * after the length of the loop.
+	 * 
+	 * @param start
+	 *            - start state of the laser
+	 * @param repeated
+	 *            - state of the laser which is part of the loop
+	 * @return <code>LaserTrappedException</code> with the loop details
+	 */
+	public LaserTrappedException trapped(long start, long repeated) {
+		long length = 1;
+		for (long s = step(repeated); s != repeated; s = step(s)) {
+			length++;
+		}
+
+		long entry = start;
+		long ahead = start;
+		for (long i = 0; i < length; i++) {
+			ahead = step(ahead);
+		}
+		long cycleStart = 0;
+		while (entry != ahead) {
+			entry = step(entry);
+			ahead = step(ahead);
+			cycleStart++;
+		}
+		return new LaserTrappedException(BeamState.toBlockPosition(entry), cycleStart, length);
+	}
+
+	private void record(int col, int row, int heading) {
+		if (mPathListener != null) {
+			mPathListener.visit(col, row, heading);
+		} else {
+			append(BeamState.pack(col, row, heading));
+		}
+	}
+
+	private void append(long state) {
+		if (mPathLength == mPath.length) {
+			mPath = Arrays.copyOf(mPath, mPath.length * 2);
+		}
+		mPath[mPathLength++] = state;
+	}
+}
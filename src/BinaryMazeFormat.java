@@ -0,0 +1,261 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * BinaryMazeFormat is the compact binary form of the maze definition file, it
+ * is loaded by mapping the file in memory and the mirrors are read in place
+ * without copying them.
+ * 
+ * The layout of version 1, all numbers big endian:
+ * <ul>
+ * <li>0: magic "LMZB"
+ * <li>4: version, <code>int</code>
+ * <li>8: number of columns, <code>int</code>
+ * <li>12: number of rows, <code>int</code>
+ * <li>16: number of mirrors, <code>long</code>
+ * <li>24: number of laser entry rooms, <code>int</code>
+ * <li>28: flags, {@link #FLAG_SPLITTERS} if the maze has beam splitters,
+ * written as 0 before there were beam splitters
+ * <li>32: laser entry rooms, 16 bytes each: column, row, heading and a
+ * reserved <code>int</code>
+ * <li>then the mirrors, one <code>long</code> each, (column x rows + row) &lt;&lt;
+ * 4 | kind, sorted with no room given twice
+ * </ul>
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public final class BinaryMazeFormat {
+
+	/**
+	 * "LMZB" at the start of every binary maze file.
+	 */
+	public static final int MAGIC = 0x4C4D5A42;
+
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = 32;
+
+	public static final int LASER_SIZE = 16;
+
+	/**
+	 * Flag of the header for a maze with beam splitters.
+	 */
+	public static final int FLAG_SPLITTERS = 1;
+
+	private BinaryMazeFormat() {
+	}
+
+	/**
+	 * Finds out if the file is in the binary format from its first bytes.
+	 * 
+	 * @param file
+	 *            - the maze definition file
+	 * @return <code>true</code> if the file starts with the magic of the binary
+	 *         format
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public static boolean isBinary(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			while (magic.hasRemaining() && channel.read(magic) >= 0) {
+			}
+			return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+		}
+	}
+
+	/**
+	 * Loads the binary maze file, the mirrors stay in the mapped file. If the file
+	 * has more than one laser entry room the last one is the laser of the
+	 * definition and all of them are kept, as for the text format.
+	 * 
+	 * @param file
+	 *            - the binary maze file
+	 * @return <code>MazeDefinition</code> of the file
+	 * @throws IOException
+	 *             if the file can not be read
+	 * @throws MazeFormatException
+	 *             if the file is not a valid binary maze file
+	 */
+	public static MazeDefinition load(Path file) throws IOException, MazeFormatException {
+		return load(file, false);
+	}
+
+	/**
+	 * Loads the binary maze file, and builds the mirror index of the definition
+	 * from the sorted mirrors of the file if asked for (see
+	 * {@link MazeDefinition#mIndex}).
+	 * 
+	 * @param file
+	 *            - the binary maze file
+	 * @param indexed
+	 *            - <code>true</code> to build the mirror index
+	 * @return <code>MazeDefinition</code> of the file
+	 * @throws IOException
+	 *             if the file can not be read
+	 * @throws MazeFormatException
+	 *             if the file is not a valid binary maze file
+	 */
+	public static MazeDefinition load(Path file, boolean indexed) throws IOException, MazeFormatException {
+		MappedMirrorGrid grid = MappedMirrorGrid.open(file);
+		MirrorIndex index = indexed ? grid.buildIndex() : null;
+		int last = grid.getLaserCount() - 1;
+		boolean splitters = (grid.getFlags() & FLAG_SPLITTERS) != 0;
+		if (last < 0) {
+			MazeDefinition definition = new MazeDefinition(grid, -1, -1, null, splitters);
+			definition.mIndex = index;
+			return definition;
+		}
+		MazeDefinition definition = new MazeDefinition(grid, grid.getLaserColumn(last), grid.getLaserRow(last),
+				BeamState.orientation(grid.getLaserHeading(last)), splitters);
+		definition.mLasers = new int[(last + 1) * 3];
+		for (int i = 0; i <= last; i++) {
+			definition.mLasers[i * 3] = grid.getLaserColumn(i);
+			definition.mLasers[i * 3 + 1] = grid.getLaserRow(i);
+			definition.mLasers[i * 3 + 2] = grid.getLaserHeading(i);
+		}
+		definition.mIndex = index;
+		return definition;
+	}
+
+	/**
+	 * Writes a binary maze file.
+	 * 
+	 * @param file
+	 *            - the binary maze file to write
+	 * @param columns
+	 *            - number of columns in the maze
+	 * @param rows
+	 *            - number of rows in the maze
+	 * @param mirrors
+	 *            - mirrors in the binary format, sorted with no room given twice
+	 * @param mirrorCount
+	 *            - number of mirrors in the array
+	 * @param lasers
+	 *            - column, row and heading of every laser entry room
+	 * @param laserCount
+	 *            - number of laser entry rooms in the array
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public static void write(Path file, int columns, int rows, long[] mirrors, int mirrorCount, int[] lasers,
+			int laserCount) throws IOException {
+		write(file, columns, rows, mirrors, mirrorCount, lasers, laserCount, 0);
+	}
+
+	/**
+	 * Writes a binary maze file with the given flags.
+	 * 
+	 * @param file
+	 *            - the binary maze file to write
+	 * @param columns
+	 *            - number of columns in the maze
+	 * @param rows
+	 *            - number of rows in the maze
+	 * @param mirrors
+	 *            - mirrors in the binary format, sorted with no room given twice
+	 * @param mirrorCount
+	 *            - number of mirrors in the array
+	 * @param lasers
+	 *            - column, row and heading of every laser entry room
+	 * @param laserCount
+	 *            - number of laser entry rooms in the array
+	 * @param flags
+	 *            - the <code>FLAG_</code> constants of the maze
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public static void write(Path file, int columns, int rows, long[] mirrors, int mirrorCount, int[] lasers,
+			int laserCount, int flags) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(columns).putInt(rows).putLong(mirrorCount).putInt(laserCount)
+					.putInt(flags);
+			for (int i = 0; i < laserCount; i++) {
+				if (buffer.remaining() < LASER_SIZE) {
+					flush(channel, buffer);
+				}
+				buffer.putInt(lasers[i * 3]).putInt(lasers[i * 3 + 1]).putInt(lasers[i * 3 + 2]).putInt(0);
+			}
+			for (int i = 0; i < mirrorCount; i++) {
+				if (buffer.remaining() < Long.BYTES) {
+					flush(channel, buffer);
+				}
+				buffer.putLong(mirrors[i]);
+			}
+			flush(channel, buffer);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Checks the header and the mirrors of the mapped file, so the mirrors can
+	 * be read later without checking them again: every mirror is in the board,
+	 * of a known kind and after the mirror before it.
+	 * 
+	 * @param map
+	 *            - the mapped file
+	 * @return offset of the mirrors in the file
+	 * @throws MazeFormatException
+	 *             if the file is not a valid binary maze file
+	 */
+	static long checkHeader(MappedByteBuffer map, long fileSize) throws MazeFormatException {
+		if (fileSize < HEADER_SIZE || map.getInt(0) != MAGIC) {
+			throw new MazeFormatException("The file is not a binary maze file.", 0);
+		}
+		if (map.getInt(4) != VERSION) {
+			throw new MazeFormatException("The binary maze file version " + map.getInt(4) + " is not supported.", 0);
+		}
+		int columns = map.getInt(8);
+		int rows = map.getInt(12);
+		long mirrorCount = map.getLong(16);
+		int laserCount = map.getInt(24);
+		if (columns <= 0 || rows <= 0 || rows > BeamState.MAX_ROWS || mirrorCount < 0 || laserCount < 0) {
+			throw new MazeFormatException("The binary maze file header is not valid.", 0);
+		}
+		long mirrorOffset = HEADER_SIZE + (long) laserCount * LASER_SIZE;
+		if (mirrorOffset + mirrorCount * Long.BYTES != fileSize) {
+			throw new MazeFormatException("The binary maze file is truncated or too long.", 0);
+		}
+
+		final long rooms = (long) columns * rows;
+		long previous = -1;
+		for (long i = 0; i < mirrorCount; i++) {
+			long mirror = map.getLong((int) (mirrorOffset + i * Long.BYTES));
+			long room = mirror >>> 4;
+			int kind = (int) mirror & 0xF;
+			if (room >= rooms) {
+				throw new MazeFormatException("The mirror " + i + " is out of the board.", 0);
+			}
+			if (kind == ReflectiveMirror.KIND_NONE || kind >= ReflectiveMirror.KIND_COUNT) {
+				throw new MazeFormatException("The mirror " + i + " has the unknown kind " + kind + ".", 0);
+			}
+			if (room <= previous) {
+				throw new MazeFormatException("The mirror " + i + " is not sorted or its room is given twice.", 0);
+			}
+			previous = room;
+		}
+		return mirrorOffset;
+	}
+
+	/**
+	 * @return view of the mirrors of the mapped file
+	 */
+	static LongBuffer mirrors(MappedByteBuffer map, long mirrorOffset, long mirrorCount) {
+		return map.slice((int) mirrorOffset, (int) (mirrorCount * Long.BYTES)).asLongBuffer();
+	}
+}
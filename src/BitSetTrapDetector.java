@@ -0,0 +1,70 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * BitSetTrapDetector keeps one bit for every (column, row, heading) state of
+ * the maze. Checking and marking a state is a constant time operation, the
+ * memory used is 4 bits per room of the maze.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class BitSetTrapDetector implements ResumableTrapDetector {
+
+	private long[] mVisited = new long[0];
+
+	private int mRows;
+
+	private int mWords;
+
+	public void reset(int columns, int rows) {
+		long words = (((long) columns * rows * 4) + 63) >>> 6;
+		if (words > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("The maze " + columns + " x " + rows + " is too big for a bitset.");
+		}
+		if (mVisited.length < words) {
+			mVisited = new long[(int) words];
+		} else {
+			Arrays.fill(mVisited, 0, (int) words, 0L);
+		}
+		mRows = rows;
+		mWords = (int) words;
+	}
+
+	public boolean visit(int column, int row, int heading) {
+		long bit = (((long) column * mRows + row) << 2) | heading;
+		int word = (int) (bit >>> 6);
+		long mask = 1L << bit;
+		if ((mVisited[word] & mask) != 0) {
+			return true;
+		}
+		mVisited[word] |= mask;
+		return false;
+	}
+
+	public void save(DataOutput out) throws IOException {
+		out.writeInt(mWords);
+		for (int i = 0; i < mWords; i++) {
+			out.writeLong(mVisited[i]);
+		}
+	}
+
+	public ResumableTrapDetector snapshot() {
+		BitSetTrapDetector copy = new BitSetTrapDetector();
+		copy.mVisited = Arrays.copyOf(mVisited, mWords);
+		copy.mRows = mRows;
+		copy.mWords = mWords;
+		return copy;
+	}
+
+	public void restore(DataInput in) throws IOException {
+		if (in.readInt() != mWords) {
+			throw new IOException("The saved states are not of the same board.");
+		}
+		for (int i = 0; i < mWords; i++) {
+			mVisited[i] = in.readLong();
+		}
+	}
+}
@@ -13,6 +13,16 @@ public class BlockPosition {
 	public static final String ORIENTATION_HORIZONTAL = "H";
 	public static final String ORIENTATION_VERTICAL = "V";
 
+	/**
+	 * Headings of the laser, combination of orientation and direction packed in 2
+	 * bits: bit 0 is the orientation (0 for H, 1 for V) and bit 1 is the direction
+	 * (0 for "+", 1 for "-").
+	 */
+	public static final int HEADING_HORIZONTAL_FORWARD = 0;
+	public static final int HEADING_VERTICAL_FORWARD = 1;
+	public static final int HEADING_HORIZONTAL_BACKWARD = 2;
+	public static final int HEADING_VERTICAL_BACKWARD = 3;
+
 	/**
 	 * Number of column in the maze room
 	 */
@@ -85,6 +95,16 @@ public class BlockPosition {
 		mDirection = direction;
 	}
 
+	/**
+	 * Returns the heading of the laser in this block position, orientation and
+	 * direction packed in 2 bits.
+	 * 
+	 * @return one of the <code>HEADING_</code> constants
+	 */
+	public int getHeading() {
+		return BeamState.heading(mOrientation, mDirection);
+	}
+
 	/**
 	 * Returns a short description of this block Position. The result is the
 	 * concatenation of column (X), row (Y), orientation of the mirror (H or V),
@@ -93,8 +113,26 @@ public class BlockPosition {
 	 * @return <code>String</code> based on default encoding of the JVM
 	 */
 	public String toString() {
-		return "Maze Block position X,Y : " + mColumn + ", " + mRow + " ( orientation: " + mOrientation + ", direction: "
-				+ mDirection + " ) ";
+		return toString(mColumn, mRow, mOrientation, mDirection);
+	}
+
+	/**
+	 * Returns the short description of a block position in the same format as
+	 * {@link #toString()} without constructing the block position.
+	 * 
+	 * @param col
+	 *            - the column position of the cell
+	 * @param row
+	 *            - the row position of the cell
+	 * @param orientation
+	 *            - orientation of the mirror (H or V)
+	 * @param direction
+	 *            - direction of the light (+ or -)
+	 * @return <code>String</code> based on default encoding of the JVM
+	 */
+	public static String toString(int col, int row, String orientation, String direction) {
+		return "Maze Block position X,Y : " + col + ", " + row + " ( orientation: " + orientation + ", direction: "
+				+ direction + " ) ";
 	}
 
 	/**
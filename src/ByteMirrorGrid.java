@@ -0,0 +1,72 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * ByteMirrorGrid keeps the kind of the mirror of every room in one byte, the
+ * rooms are stored column by column in a single array.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class ByteMirrorGrid implements ConcurrentMirrorGrid {
+
+	private static final VarHandle KINDS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+	private final int mColumns;
+
+	private final int mRows;
+
+	private final byte[] mKinds;
+
+	/**
+	 * Constructs a new empty ByteMirrorGrid of the given size.
+	 * 
+	 * @param columns
+	 *            - number of columns in the maze
+	 * @param rows
+	 *            - number of rows in the maze
+	 */
+	public ByteMirrorGrid(int columns, int rows) {
+		if ((long) columns * rows > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("The maze " + columns + " x " + rows + " is too big.");
+		}
+		mColumns = columns;
+		mRows = rows;
+		mKinds = new byte[columns * rows];
+	}
+
+	/**
+	 * Constructs a new ByteMirrorGrid with the mirrors of the maze.
+	 * 
+	 * @param mirrors
+	 *            - mirrors of the maze indexed by column and row
+	 */
+	public ByteMirrorGrid(ReflectiveMirror[][] mirrors) {
+		this(mirrors.length, mirrors.length > 0 ? mirrors[0].length : 0);
+		for (int col = 0; col < mColumns; col++) {
+			for (int row = 0; row < mRows; row++) {
+				mKinds[col * mRows + row] = (byte) ReflectiveMirror.kindOf(mirrors[col][row]);
+			}
+		}
+	}
+
+	public int columns() {
+		return mColumns;
+	}
+
+	public int rows() {
+		return mRows;
+	}
+
+	public int kind(int column, int row) {
+		return mKinds[column * mRows + row];
+	}
+
+	public void setKind(int column, int row, int kind) {
+		mKinds[column * mRows + row] = (byte) kind;
+	}
+
+	public boolean setKindIfEmpty(int column, int row, int kind) {
+		return KINDS.compareAndSet(mKinds, column * mRows + row, (byte) ReflectiveMirror.KIND_NONE, (byte) kind);
+	}
+}
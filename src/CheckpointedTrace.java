@@ -0,0 +1,475 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * CheckpointedTrace follows the laser like {@link BeamTracer} and saves its
+ * state to a checkpoint file every given number of steps or time, so a trace
+ * of hours on a big board goes on from the last checkpoint after a crash or a
+ * restart and gives the same result.
+ * 
+ * A checkpoint holds the beam state, the number of steps, the state of the
+ * trap detector (see {@link ResumableTrapDetector}) and the length of the path
+ * written so far. The trace loop only copies the state of the trap detector,
+ * the checkpoint is encoded, written to a temporary file and moved over the
+ * checkpoint file by a background thread, and a checkpoint which is not
+ * written yet is replaced by a newer one, so the trace never waits for the
+ * disk. A checkpoint holds the SHA-256 hash of the maze definition file, a
+ * checkpoint of another maze is not resumed. The path file is forced to the
+ * disk before a checkpoint of its length is written, and cut back to that
+ * length when the trace is resumed. The checkpoint file is deleted by the
+ * background thread when the trace ends, after any checkpoint it is writing.
+ * 
+ * The trap detector is the bitset detector for boards where it is small, else
+ * the cycle finder, whose state is a few numbers whatever the size of the
+ * board.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class CheckpointedTrace {
+
+	/**
+	 * "LMZC" at the start of every checkpoint file.
+	 */
+	public static final int MAGIC = 0x4C4D5A43;
+
+	public static final int VERSION = 2;
+
+	private static final int DETECTOR_CYCLE_FINDER = 0;
+	private static final int DETECTOR_BITSET = 1;
+
+	/**
+	 * Steps between the looks at the clock.
+	 */
+	private static final long CLOCK_STEPS = 1 << 20;
+
+	/**
+	 * Size of the buffer the checkpoint is written through.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final MirrorGrid mGrid;
+
+	private final Path mCheckpointFile;
+
+	private final byte[] mMazeHash;
+
+	private long mStepInterval = 1L << 30;
+
+	private long mTimeInterval = TimeUnit.SECONDS.toNanos(60);
+
+	private int mPathMode = BeamTracer.PATH_NONE;
+
+	private Path mPathFile;
+
+	private long mSteps;
+
+	private boolean mResumed;
+
+	private int mCheckpoints;
+
+	private final AtomicReference<Checkpoint> mPending = new AtomicReference<>();
+
+	private volatile IOException mWriteError;
+
+	private ExecutorService mWriter;
+
+	/**
+	 * Channel of the path file of the running trace, forced by the writer
+	 * thread.
+	 */
+	private volatile FileChannel mPathChannel;
+
+	/**
+	 * Constructs a new CheckpointedTrace.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param checkpointFile
+	 *            - the checkpoint file, the trace is resumed from it if it exists
+	 * @param mazeHash
+	 *            - SHA-256 hash of the maze definition file (see
+	 *            {@link ExitStore#hash(Path)}), a checkpoint of another maze is not
+	 *            resumed
+	 */
+	public CheckpointedTrace(MirrorGrid grid, Path checkpointFile, byte[] mazeHash) {
+		if (grid.rows() > BeamState.MAX_ROWS) {
+			throw new IllegalArgumentException("The maze can not have more than " + BeamState.MAX_ROWS + " rows.");
+		}
+		mGrid = grid;
+		mCheckpointFile = checkpointFile;
+		mMazeHash = mazeHash.clone();
+	}
+
+	/**
+	 * Sets the number of steps between the checkpoints, 2^30 by default.
+	 * 
+	 * @param steps
+	 *            - steps between the checkpoints
+	 */
+	public void setStepInterval(long steps) {
+		if (steps <= 0) {
+			throw new IllegalArgumentException("The step interval must be positive: " + steps);
+		}
+		mStepInterval = steps;
+	}
+
+	/**
+	 * Sets the time between the checkpoints, one minute by default. A checkpoint
+	 * is made when either interval has passed.
+	 * 
+	 * @param millis
+	 *            - milliseconds between the checkpoints
+	 */
+	public void setTimeInterval(long millis) {
+		if (millis <= 0) {
+			throw new IllegalArgumentException("The time interval must be positive: " + millis);
+		}
+		mTimeInterval = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/**
+	 * Sets the file the path is written to, in the format of {@link PathWriter}.
+	 * No path is written by default.
+	 * 
+	 * @param pathFile
+	 *            - the path file
+	 * @param pathMode
+	 *            - one of the <code>BeamTracer.PATH_</code> constants
+	 */
+	public void setPathFile(Path pathFile, int pathMode) {
+		if (pathMode < BeamTracer.PATH_NONE || pathMode > BeamTracer.PATH_ROOMS) {
+			throw new IllegalArgumentException("The path mode " + pathMode + " is not supported.");
+		}
+		mPathFile = pathMode == BeamTracer.PATH_NONE ? null : pathFile;
+		mPathMode = mPathFile == null ? BeamTracer.PATH_NONE : pathMode;
+	}
+
+	/**
+	 * Follows the laser from the start position until it leaves the maze or is
+	 * trapped, from the checkpoint if there is one for the same trace. The mirror
+	 * of the start room is not applied.
+	 * 
+	 * @param startColumn
+	 *            - start column position of laser
+	 * @param startRow
+	 *            - start row position of laser
+	 * @param startHeading
+	 *            - start heading of laser
+	 * @return <code>TraceResult</code> of the laser
+	 * @throws IOException
+	 *             if the checkpoint or the path can not be read or written
+	 */
+	public TraceResult trace(int startColumn, int startRow, int startHeading) throws IOException {
+		final long start = BeamState.pack(startColumn, startRow, startHeading);
+		final int columns = mGrid.columns();
+		final int rows = mGrid.rows();
+		final MirrorGrid grid = mGrid;
+		final int pathMode = mPathMode;
+
+		ResumableTrapDetector detector;
+		if ((long) columns * rows * 4 <= TrapDetector.MAX_BITSET_STATES) {
+			detector = new BitSetTrapDetector();
+		} else {
+			detector = new CycleFinderTrapDetector();
+		}
+		detector.reset(columns, rows);
+
+		int col = startColumn;
+		int row = startRow;
+		int heading = startHeading;
+		long steps = 0;
+		long pathLength = 0;
+		boolean recorded = pathMode != BeamTracer.PATH_NONE;
+		mResumed = false;
+		mCheckpoints = 0;
+		mWriteError = null;
+
+		if (Files.exists(mCheckpointFile)) {
+			try (DataInputStream in = new DataInputStream(Files.newInputStream(mCheckpointFile))) {
+				readHeader(in, start, detector);
+				long state = in.readLong();
+				col = BeamState.column(state);
+				row = BeamState.row(state);
+				heading = BeamState.heading(state);
+				steps = in.readLong();
+				pathLength = in.readLong();
+				recorded = in.readBoolean();
+				detector.restore(in);
+			}
+			mResumed = true;
+		} else {
+			detector.visit(col, row, heading);
+		}
+
+		CountingStream pathStream = null;
+		PathWriter path = null;
+		if (pathMode != BeamTracer.PATH_NONE) {
+			FileChannel channel = FileChannel.open(mPathFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			if (channel.size() < pathLength) {
+				channel.close();
+				throw new IOException("The path file " + mPathFile + " is shorter than the checkpoint.");
+			}
+			channel.truncate(pathLength);
+			channel.position(pathLength);
+			mPathChannel = channel;
+			pathStream = new CountingStream(Channels.newOutputStream(channel), pathLength);
+			path = new PathWriter(pathStream);
+			if (!mResumed) {
+				path.visit(col, row, heading);
+			}
+		}
+
+		mWriter = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "checkpoint-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long nextCheckpoint = steps + mStepInterval;
+		long nextTime = System.nanoTime() + mTimeInterval;
+		long nextClock = Math.min(steps + CLOCK_STEPS, nextCheckpoint);
+		boolean trapped = false;
+		boolean ended = false;
+		TraceResult result;
+		try {
+			while (true) {
+				int nextCol = col + BeamState.columnStep(heading);
+				int nextRow = row + BeamState.rowStep(heading);
+				if (nextCol < 0 || nextCol >= columns || nextRow < 0 || nextRow >= rows) {
+					break;
+				}
+				col = nextCol;
+				row = nextRow;
+				int nextHeading = ReflectiveMirror.reflect(grid.kind(col, row), heading);
+				recorded = pathMode == BeamTracer.PATH_ROOMS
+						|| (pathMode == BeamTracer.PATH_TURNS && nextHeading != heading);
+				heading = nextHeading;
+				steps++;
+				if (detector.visit(col, row, heading)) {
+					trapped = true;
+					break;
+				}
+				if (recorded) {
+					path.visit(col, row, heading);
+				}
+
+				if (steps >= nextClock) {
+					long now = System.nanoTime();
+					if (steps >= nextCheckpoint || now >= nextTime) {
+						if (path != null) {
+							path.flush();
+						}
+						checkpoint(start, BeamState.pack(col, row, heading), steps,
+								pathStream == null ? 0 : pathStream.mCount, recorded, detector);
+						nextCheckpoint = steps + mStepInterval;
+						nextTime = now + mTimeInterval;
+					}
+					nextClock = Math.min(steps + CLOCK_STEPS, nextCheckpoint);
+				}
+			}
+
+			long last = BeamState.pack(col, row, heading);
+			if (trapped) {
+				BeamTracer tracer = new BeamTracer(grid);
+				result = TraceResult.trapped(start, tracer.trapped(start, last));
+			} else {
+				if (pathMode == BeamTracer.PATH_TURNS && !recorded) {
+					path.visit(col, row, heading);
+				}
+				result = TraceResult.exited(start, last, steps);
+			}
+			if (path != null) {
+				path.flush();
+			}
+			ended = true;
+		} finally {
+			if (ended) {
+				// a checkpoint not written yet is not needed, the one being written
+				// is moved before the file is deleted, even if the wait below ends
+				mPending.set(null);
+				mWriter.execute(this::deleteCheckpoint);
+			}
+			mWriter.shutdown();
+			try {
+				mWriter.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			mPathChannel = null;
+			if (pathStream != null) {
+				pathStream.close();
+			}
+		}
+		mSteps = steps;
+		if (mWriteError != null) {
+			throw mWriteError;
+		}
+		return result;
+	}
+
+	/**
+	 * @return number of steps of the last trace, with the steps before the
+	 *         checkpoint it was resumed from
+	 */
+	public long getSteps() {
+		return mSteps;
+	}
+
+	/**
+	 * @return <code>true</code> if the last trace was resumed from a checkpoint
+	 */
+	public boolean isResumed() {
+		return mResumed;
+	}
+
+	/**
+	 * @return number of checkpoints made by the last trace
+	 */
+	public int getCheckpointCount() {
+		return mCheckpoints;
+	}
+
+	private void readHeader(DataInputStream in, long start, ResumableTrapDetector detector) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("The file " + mCheckpointFile + " is not a checkpoint file.");
+		}
+		if (in.readInt() != VERSION) {
+			throw new IOException("The checkpoint file version of " + mCheckpointFile + " is not supported.");
+		}
+		byte[] hash = new byte[mMazeHash.length];
+		if (in.readInt() != mGrid.columns() || in.readInt() != mGrid.rows() || in.readInt() != hash.length) {
+			throw new IOException("The checkpoint file " + mCheckpointFile + " is of another trace.");
+		}
+		in.readFully(hash);
+		if (!Arrays.equals(hash, mMazeHash) || in.readLong() != start || in.readInt() != mPathMode
+				|| in.readInt() != detectorType(detector)) {
+			throw new IOException("The checkpoint file " + mCheckpointFile + " is of another trace.");
+		}
+	}
+
+	private static int detectorType(ResumableTrapDetector detector) {
+		return detector instanceof BitSetTrapDetector ? DETECTOR_BITSET : DETECTOR_CYCLE_FINDER;
+	}
+
+	/**
+	 * Puts the checkpoint together with a copy of the trap detector and gives it
+	 * to the writer thread, which encodes the detector.
+	 */
+	private void checkpoint(long start, long state, long steps, long pathLength, boolean recorded,
+			ResumableTrapDetector detector) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(mGrid.columns());
+		out.writeInt(mGrid.rows());
+		out.writeInt(mMazeHash.length);
+		out.write(mMazeHash);
+		out.writeLong(start);
+		out.writeInt(mPathMode);
+		out.writeInt(detectorType(detector));
+		out.writeLong(state);
+		out.writeLong(steps);
+		out.writeLong(pathLength);
+		out.writeBoolean(recorded);
+		out.flush();
+		mCheckpoints++;
+
+		// only the latest checkpoint is written, an older one waiting is dropped
+		if (mPending.getAndSet(new Checkpoint(bytes.toByteArray(), detector.snapshot())) == null) {
+			mWriter.execute(this::writePending);
+		}
+	}
+
+	private void writePending() {
+		Checkpoint checkpoint = mPending.getAndSet(null);
+		if (checkpoint == null) {
+			return;
+		}
+		Path temporary = mCheckpointFile.resolveSibling(mCheckpointFile.getFileName() + ".tmp");
+		try {
+			// the path the checkpoint counts must be on the disk before it
+			FileChannel pathChannel = mPathChannel;
+			if (pathChannel != null) {
+				pathChannel.force(true);
+			}
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+				out.write(checkpoint.mHeader);
+				checkpoint.mDetector.save(out);
+				out.flush();
+				channel.force(true);
+			}
+			Files.move(temporary, mCheckpointFile, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			mWriteError = e;
+		}
+	}
+
+	private void deleteCheckpoint() {
+		try {
+			Files.deleteIfExists(mCheckpointFile);
+		} catch (IOException e) {
+			mWriteError = e;
+		}
+	}
+
+	/**
+	 * Checkpoint waiting for the writer thread, the detector is encoded there.
+	 */
+	private static final class Checkpoint {
+
+		final byte[] mHeader;
+
+		final ResumableTrapDetector mDetector;
+
+		Checkpoint(byte[] header, ResumableTrapDetector detector) {
+			mHeader = header;
+			mDetector = detector;
+		}
+	}
+
+	/**
+	 * Counts the bytes written to the path file.
+	 */
+	private static final class CountingStream extends FilterOutputStream {
+
+		private long mCount;
+
+		CountingStream(OutputStream out, long count) {
+			super(out);
+			mCount = count;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			mCount++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			mCount += len;
+		}
+	}
+}
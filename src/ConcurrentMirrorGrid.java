@@ -0,0 +1,26 @@
+/**
+ * ConcurrentMirrorGrid is a {@link MutableMirrorGrid} whose empty rooms can be
+ * filled by many threads at the same time, for loading the mirrors in
+ * parallel.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public interface ConcurrentMirrorGrid extends MutableMirrorGrid {
+
+	/**
+	 * Places the mirror in the room if the room has no mirror yet, as one atomic
+	 * step. Rooms which share storage with the room are not disturbed by other
+	 * threads placing their mirrors at the same time.
+	 * 
+	 * @param column
+	 *            - the column position of the room
+	 * @param row
+	 *            - the row position of the room
+	 * @param kind
+	 *            - one of the <code>ReflectiveMirror.KIND_</code> constants
+	 * @return <code>true</code> if the mirror is placed, <code>false</code> if
+	 *         the room already has a mirror
+	 */
+	boolean setKindIfEmpty(int column, int row, int kind);
+}
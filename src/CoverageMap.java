@@ -0,0 +1,265 @@
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * CoverageMap finds the rooms lit by a laser coming in through any door on the
+ * edge of the maze, to find the dark rooms of a layout. The lasers of all the
+ * doors are followed one after another and every state of the laser, room and
+ * heading leaving the room, is marked. A laser stops at a state already marked
+ * as the rest of its path is marked already, so the whole sweep takes at most
+ * one step for each of the 4 x X x Y states however many doors there are. The
+ * beams of a beam splitter are both followed.
+ * 
+ * The states are kept in 4 bits per room, row by row, and the map is written
+ * as a PGM image with the number of headings which cross each room in shades
+ * of grey, or as a PBM bitmap with the dark rooms in black.
+ * 
+ * <pre>
+ * java CoverageMap maze_definition.txt coverage.pgm
+ * java CoverageMap maze_definition.txt coverage.pbm
+ * </pre>
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class CoverageMap {
+
+	/**
+	 * Grey of a room crossed by 0 to 4 headings.
+	 */
+	private static final byte[] GREY = { 0, (byte) 64, (byte) 128, (byte) 192, (byte) 255 };
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final int mColumns;
+
+	private final int mRows;
+
+	/**
+	 * Marked states, bit (row x X + column) x 4 + heading.
+	 */
+	private final long[] mStates;
+
+	private long mLitRooms;
+
+	private long mStateCount;
+
+	private long[] mStack = new long[16];
+
+	private int mStackSize;
+
+	/**
+	 * Constructs the coverage map of the maze, the lasers of all the doors are
+	 * followed.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 */
+	public CoverageMap(MirrorGrid grid) {
+		mColumns = grid.columns();
+		mRows = grid.rows();
+		long words = ((long) mColumns * mRows * 4 + 63) >>> 6;
+		if (words > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("The maze " + mColumns + " x " + mRows + " is too big to map.");
+		}
+		mStates = new long[(int) words];
+
+		for (int col = 0; col < mColumns; col++) {
+			sweep(grid, col, -1, BlockPosition.HEADING_VERTICAL_FORWARD);
+			sweep(grid, col, mRows, BlockPosition.HEADING_VERTICAL_BACKWARD);
+		}
+		for (int row = 0; row < mRows; row++) {
+			sweep(grid, -1, row, BlockPosition.HEADING_HORIZONTAL_FORWARD);
+			sweep(grid, mColumns, row, BlockPosition.HEADING_HORIZONTAL_BACKWARD);
+		}
+		mStack = null;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2 || !(args[1].endsWith(".pgm") || args[1].endsWith(".pbm"))) {
+			System.out.println("please give maze definition input file name and a .pgm or .pbm output file name.");
+			return;
+		}
+		MazeDefinition maze;
+		try {
+			maze = LaserExitPointInMirrorMaze.readMazeDefinitionFile(args[0]);
+		} catch (FileNotFoundException | MazeFormatException e) {
+			System.out.println(e.getLocalizedMessage());
+			return;
+		}
+
+		long start = System.nanoTime();
+		CoverageMap map = new CoverageMap(maze.mGrid);
+		long swept = System.nanoTime();
+		try (OutputStream out = Files.newOutputStream(Paths.get(args[1]))) {
+			if (args[1].endsWith(".pgm")) {
+				map.writePgm(out);
+			} else {
+				map.writePbm(out);
+			}
+		}
+		long rooms = (long) map.mColumns * map.mRows;
+		System.out.println("The size of board (X into Y): " + map.mColumns + " x " + map.mRows);
+		System.out.println("Lit rooms: " + map.getLitRoomCount() + ", dark rooms: " + (rooms - map.getLitRoomCount())
+				+ ", states: " + map.getStateCount() + " in " + (swept - start) / 1000000 + " ms");
+	}
+
+	/**
+	 * Follows the laser coming in through a door, the start is the room outside
+	 * of the maze in front of the door.
+	 */
+	private void sweep(MirrorGrid grid, int startColumn, int startRow, int startHeading) {
+		int col = startColumn;
+		int row = startRow;
+		int heading = startHeading;
+		while (true) {
+			col += BeamState.columnStep(heading);
+			row += BeamState.rowStep(heading);
+			if (col < 0 || col >= mColumns || row < 0 || row >= mRows) {
+				if (mStackSize == 0) {
+					return;
+				}
+				// the other beam of a beam splitter
+				long state = mStack[--mStackSize];
+				col = BeamState.column(state);
+				row = BeamState.row(state);
+				heading = BeamState.heading(state);
+				continue;
+			}
+			int kind = grid.kind(col, row);
+			if (ReflectiveMirror.isSplitter(kind) && mark(col, row, heading)) {
+				push(BeamState.pack(col, row, heading));
+			}
+			heading = ReflectiveMirror.reflect(kind, heading);
+			if (!mark(col, row, heading)) {
+				// the rest of the path is marked already, go on with a beam left
+				if (mStackSize == 0) {
+					return;
+				}
+				long state = mStack[--mStackSize];
+				col = BeamState.column(state);
+				row = BeamState.row(state);
+				heading = BeamState.heading(state);
+			}
+		}
+	}
+
+	/**
+	 * Marks the state.
+	 * 
+	 * @return <code>true</code> if the state was not marked before
+	 */
+	private boolean mark(int column, int row, int heading) {
+		long bit = ((long) row * mColumns + column) * 4 + heading;
+		int word = (int) (bit >>> 6);
+		long states = mStates[word];
+		if ((states & (1L << bit)) != 0) {
+			return false;
+		}
+		// the 4 states of a room are in the same word
+		if ((states & (0xFL << (bit & 60))) == 0) {
+			mLitRooms++;
+		}
+		mStates[word] = states | (1L << bit);
+		mStateCount++;
+		return true;
+	}
+
+	private void push(long state) {
+		if (mStackSize == mStack.length) {
+			mStack = Arrays.copyOf(mStack, mStackSize * 2);
+		}
+		mStack[mStackSize++] = state;
+	}
+
+	/**
+	 * @param column
+	 *            - the column position of the room
+	 * @param row
+	 *            - the row position of the room
+	 * @return the headings the lasers leave the room with, bit 1 &lt;&lt; heading
+	 *         for each heading
+	 */
+	public int getHeadings(int column, int row) {
+		long bit = ((long) row * mColumns + column) * 4;
+		return (int) (mStates[(int) (bit >>> 6)] >>> (bit & 63)) & 0xF;
+	}
+
+	/**
+	 * @param column
+	 *            - the column position of the room
+	 * @param row
+	 *            - the row position of the room
+	 * @return <code>true</code> if a laser from a door crosses the room
+	 */
+	public boolean isLit(int column, int row) {
+		return getHeadings(column, row) != 0;
+	}
+
+	/**
+	 * @return number of rooms crossed by a laser
+	 */
+	public long getLitRoomCount() {
+		return mLitRooms;
+	}
+
+	/**
+	 * @return number of states marked, the steps of the sweep
+	 */
+	public long getStateCount() {
+		return mStateCount;
+	}
+
+	/**
+	 * Writes the map as a binary PGM image, one pixel for each room, darker for
+	 * rooms crossed by fewer headings and black for the dark rooms.
+	 * 
+	 * @param out
+	 *            - stream the image is written to
+	 * @throws IOException
+	 *             if the stream can not be written
+	 */
+	public void writePgm(OutputStream out) throws IOException {
+		OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+		buffered.write(("P5\n" + mColumns + " " + mRows + "\n255\n").getBytes(StandardCharsets.US_ASCII));
+		byte[] line = new byte[mColumns];
+		for (int row = 0; row < mRows; row++) {
+			for (int col = 0; col < mColumns; col++) {
+				line[col] = GREY[Integer.bitCount(getHeadings(col, row))];
+			}
+			buffered.write(line);
+		}
+		buffered.flush();
+	}
+
+	/**
+	 * Writes the map as a binary PBM bitmap, one bit for each room, the dark rooms
+	 * are black.
+	 * 
+	 * @param out
+	 *            - stream the bitmap is written to
+	 * @throws IOException
+	 *             if the stream can not be written
+	 */
+	public void writePbm(OutputStream out) throws IOException {
+		OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+		buffered.write(("P4\n" + mColumns + " " + mRows + "\n").getBytes(StandardCharsets.US_ASCII));
+		byte[] line = new byte[(mColumns + 7) >>> 3];
+		for (int row = 0; row < mRows; row++) {
+			Arrays.fill(line, (byte) 0);
+			for (int col = 0; col < mColumns; col++) {
+				if (getHeadings(col, row) == 0) {
+					line[col >>> 3] |= (byte) (0x80 >>> (col & 7));
+				}
+			}
+			buffered.write(line);
+		}
+		buffered.flush();
+	}
+}
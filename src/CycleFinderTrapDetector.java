@@ -0,0 +1,87 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * CycleFinderTrapDetector uses Brent's cycle finding algorithm, it remembers
+ * only one earlier state of the laser at any time so the memory used does not
+ * depend on the size of the maze or the length of the path.
+ * 
+ * The laser is reported trapped when it comes back to the remembered state, it
+ * can take up to twice the length of the path before the loop is found.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class CycleFinderTrapDetector implements ResumableTrapDetector {
+
+	private boolean mStarted;
+
+	private int mColumn;
+
+	private int mRow;
+
+	private int mHeading;
+
+	private long mPower;
+
+	private long mLength;
+
+	public void reset(int columns, int rows) {
+		mStarted = false;
+	}
+
+	public boolean visit(int column, int row, int heading) {
+		if (!mStarted) {
+			mStarted = true;
+			remember(column, row, heading);
+			mPower = 1;
+			mLength = 0;
+			return false;
+		}
+		if (column == mColumn && row == mRow && heading == mHeading) {
+			return true;
+		}
+		mLength++;
+		if (mLength == mPower) {
+			// move the remembered state forward, the loop is longer than the power
+			remember(column, row, heading);
+			mPower <<= 1;
+			mLength = 0;
+		}
+		return false;
+	}
+
+	public void save(DataOutput out) throws IOException {
+		out.writeBoolean(mStarted);
+		out.writeInt(mColumn);
+		out.writeInt(mRow);
+		out.writeInt(mHeading);
+		out.writeLong(mPower);
+		out.writeLong(mLength);
+	}
+
+	public void restore(DataInput in) throws IOException {
+		mStarted = in.readBoolean();
+		mColumn = in.readInt();
+		mRow = in.readInt();
+		mHeading = in.readInt();
+		mPower = in.readLong();
+		mLength = in.readLong();
+	}
+
+	public ResumableTrapDetector snapshot() {
+		CycleFinderTrapDetector copy = new CycleFinderTrapDetector();
+		copy.mStarted = mStarted;
+		copy.remember(mColumn, mRow, mHeading);
+		copy.mPower = mPower;
+		copy.mLength = mLength;
+		return copy;
+	}
+
+	private void remember(int column, int row, int heading) {
+		mColumn = column;
+		mRow = row;
+		mHeading = heading;
+	}
+}
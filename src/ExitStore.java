@@ -0,0 +1,491 @@
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ExitStore is a file of solved lasers kept from run to run, so the same
+ * definition file with the same laser is not parsed and traced again. A result
+ * is found by the SHA-256 hash of the content of the definition file and the
+ * start state of the laser, or {@link #DEFINITION_LASER} for the laser given in
+ * the definition file itself.
+ *
+ * The file is a header and fixed size records, new results are appended and the
+ * file is memory mapped. A record holds the size of the board, the start and
+ * the exit of the laser, the length of its path and the loop of a trapped
+ * laser, and the time it was last used. When the file would grow over its
+ * size bound it is compacted: the records replaced by newer ones are dropped
+ * and the records used longest ago are evicted until the file is half the
+ * bound.
+ *
+ * Several processes can share the store, the records are appended under a lock
+ * of the file. A compaction writes a new file with the next generation in its
+ * header and marks the generation of the file it replaces as
+ * {@link #GENERATION_REPLACED}, so the other processes, which still have the
+ * replaced file open, find the change and open the new file before they look
+ * up or append a record.
+ *
+ * @author Bankim Aghera
+ *
+ */
+public class ExitStore implements Closeable {
+
+	/**
+	 * "LMZS" at the start of every store file.
+	 */
+	public static final int MAGIC = 0x4C4D5A53;
+
+	public static final int VERSION = 1;
+
+	/**
+	 * Entry of the laser given in the definition file, packed states are never
+	 * negative.
+	 */
+	public static final long DEFINITION_LASER = -1L;
+
+	/**
+	 * Default size bound of the store file, in megabytes.
+	 */
+	public static final int DEFAULT_MEGABYTES = 64;
+
+	static final int HASH_SIZE = 32;
+
+	private static final int HEADER_SIZE = 32;
+
+	private static final int COUNT_OFFSET = 8;
+
+	private static final int GENERATION_OFFSET = 12;
+
+	/**
+	 * Generation of a store file which a compaction has replaced by a new file.
+	 */
+	static final int GENERATION_REPLACED = -1;
+
+	private static final int RECORD_SIZE = 104;
+
+	private static final int ENTRY = HASH_SIZE;
+	private static final int START = ENTRY + 8;
+	private static final int COLUMNS = START + 8;
+	private static final int ROWS = COLUMNS + 4;
+	private static final int EXIT = ROWS + 4;
+	private static final int LENGTH = EXIT + 8;
+	private static final int CYCLE_START = LENGTH + 8;
+	private static final int CYCLE_LENGTH = CYCLE_START + 8;
+	private static final int FLAGS = CYCLE_LENGTH + 8;
+	private static final int USED = FLAGS + 8;
+
+	private static final int FLAG_TRAPPED = 1;
+
+	private static final int INITIAL_RECORDS = 1024;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Path mFile;
+
+	private final long mMaxBytes;
+
+	private FileChannel mChannel;
+
+	private MappedByteBuffer mBuffer;
+
+	/**
+	 * Record of each key, the keys are mixed from the hash and the entry and the
+	 * record is checked on a hit.
+	 */
+	private final LongIntHashMap mIndex = new LongIntHashMap();
+
+	private int mIndexed;
+
+	/**
+	 * Generation of the open store file when it was opened.
+	 */
+	private int mGeneration;
+
+	private int mCompactions;
+
+	/**
+	 * Opens the store file, an empty store is created if the file does not exist.
+	 *
+	 * @param file
+	 *            - the store file
+	 * @param maxBytes
+	 *            - size bound of the store file
+	 * @throws IOException
+	 *             if the file can not be opened or is not a store file
+	 */
+	public ExitStore(Path file, long maxBytes) throws IOException {
+		if (maxBytes < HEADER_SIZE + 2L * RECORD_SIZE || maxBytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The size bound of the store is out of range: " + maxBytes);
+		}
+		mFile = file;
+		mMaxBytes = maxBytes;
+		open();
+	}
+
+	/**
+	 * Returns the stored result of a laser.
+	 *
+	 * @param hash
+	 *            - hash of the definition file, see {@link #hash(Path)}
+	 * @param entry
+	 *            - packed start state of the laser, or
+	 *            {@link #DEFINITION_LASER}
+	 * @return the result, or <code>null</code> if it is not in the store
+	 */
+	public synchronized Entry get(byte[] hash, long entry) {
+		if (mBuffer.getInt(GENERATION_OFFSET) != mGeneration) {
+			try {
+				reopen();
+			} catch (IOException e) {
+				return null;
+			}
+		}
+		sync();
+		int record = mIndex.get(key(hash, entry), -1);
+		if (record < 0 || !matches(record, hash, entry)) {
+			return null;
+		}
+		int offset = offset(record);
+		mBuffer.putLong(offset + USED, System.currentTimeMillis());
+		long start = mBuffer.getLong(offset + START);
+		long exit = mBuffer.getLong(offset + EXIT);
+		TraceResult result;
+		if ((mBuffer.getInt(offset + FLAGS) & FLAG_TRAPPED) != 0) {
+			result = TraceResult.trapped(start, new LaserTrappedException(BeamState.toBlockPosition(exit),
+					mBuffer.getLong(offset + CYCLE_START), mBuffer.getLong(offset + CYCLE_LENGTH)));
+		} else {
+			result = TraceResult.exited(start, exit, mBuffer.getLong(offset + LENGTH) - 1);
+		}
+		return new Entry(mBuffer.getInt(offset + COLUMNS), mBuffer.getInt(offset + ROWS), result);
+	}
+
+	/**
+	 * Appends the result of a laser to the store, the file is compacted first if
+	 * it would grow over its size bound.
+	 *
+	 * @param hash
+	 *            - hash of the definition file, see {@link #hash(Path)}
+	 * @param entry
+	 *            - packed start state of the laser, or
+	 *            {@link #DEFINITION_LASER}
+	 * @param columns
+	 *            - number of columns of the board
+	 * @param rows
+	 *            - number of rows of the board
+	 * @param result
+	 *            - the result of the laser
+	 * @throws IOException
+	 *             if the store can not be written
+	 */
+	public synchronized void put(byte[] hash, long entry, int columns, int rows, TraceResult result)
+			throws IOException {
+		if (hash.length != HASH_SIZE) {
+			throw new IllegalArgumentException("The hash must have " + HASH_SIZE + " bytes.");
+		}
+		FileLock lock = lock();
+		try {
+			sync();
+			if (HEADER_SIZE + (long) (mIndexed + 1) * RECORD_SIZE > mMaxBytes) {
+				// the lock of the old file is released with its channel
+				compact();
+				lock = lock();
+				sync();
+			}
+			int count = mIndexed;
+			ensureCapacity(count + 1);
+			int offset = offset(count);
+			ByteBuffer record = mBuffer.duplicate();
+			record.position(offset);
+			record.put(hash);
+			record.putLong(entry);
+			record.putLong(result.getStart());
+			record.putInt(columns);
+			record.putInt(rows);
+			record.putLong(result.getExit());
+			record.putLong(result.getLength());
+			record.putLong(result.getCycleStart());
+			record.putLong(result.getCycleLength());
+			record.putInt(result.isTrapped() ? FLAG_TRAPPED : 0);
+			record.putInt(0);
+			record.putLong(System.currentTimeMillis());
+			// the record is counted only after it is written
+			mBuffer.putInt(COUNT_OFFSET, count + 1);
+			mIndex.put(key(hash, entry), count);
+			mIndexed = count + 1;
+		} finally {
+			if (lock.isValid()) {
+				lock.release();
+			}
+		}
+	}
+
+	/**
+	 * @return number of records in the store file, with the ones replaced by
+	 *         newer records
+	 */
+	public synchronized int getRecordCount() {
+		sync();
+		return mIndexed;
+	}
+
+	/**
+	 * @return number of compactions since the store was opened
+	 */
+	public synchronized int getCompactionCount() {
+		return mCompactions;
+	}
+
+	/**
+	 * Writes the changes to the disk and closes the file.
+	 */
+	public synchronized void close() throws IOException {
+		if (mChannel != null) {
+			mBuffer.force();
+			mChannel.close();
+			mChannel = null;
+			mBuffer = null;
+		}
+	}
+
+	/**
+	 * Returns the SHA-256 hash of the content of a file.
+	 *
+	 * @param file
+	 *            - the file
+	 * @return the hash
+	 * @throws FileNotFoundException
+	 *             if the file is not found
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public static byte[] hash(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		} catch (NoSuchFileException e) {
+			throw new FileNotFoundException(file + " (No such file or directory)");
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Locks the store file, it is opened again first if a compaction of another
+	 * process has replaced it.
+	 */
+	private FileLock lock() throws IOException {
+		while (true) {
+			FileLock lock = mChannel.lock();
+			if (mBuffer.getInt(GENERATION_OFFSET) == mGeneration) {
+				return lock;
+			}
+			lock.release();
+			reopen();
+		}
+	}
+
+	private void reopen() throws IOException {
+		mChannel.close();
+		open();
+	}
+
+	private void open() throws IOException {
+		// the file found by the name can be replaced before it is locked
+		while (!tryOpen()) {
+		}
+	}
+
+	/**
+	 * @return <code>false</code> if the file opened was replaced by a compaction
+	 *         before it was locked
+	 */
+	private boolean tryOpen() throws IOException {
+		mChannel = FileChannel.open(mFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		FileLock lock = mChannel.lock();
+		try {
+			long size = mChannel.size();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			if (size == 0) {
+				header.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(0).clear();
+				while (header.hasRemaining()) {
+					mChannel.write(header, header.position());
+				}
+				size = HEADER_SIZE;
+			} else {
+				// checked before the file is mapped, the mapping would make it longer
+				int read = 0;
+				while (header.hasRemaining() && read >= 0) {
+					read = mChannel.read(header, header.position());
+				}
+				if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+					throw new IOException("The file " + mFile + " is not an exit store.");
+				}
+				if (header.getInt(4) != VERSION) {
+					throw new IOException("The exit store version of " + mFile + " is not supported.");
+				}
+				if (header.getInt(GENERATION_OFFSET) == GENERATION_REPLACED) {
+					mChannel.close();
+					return false;
+				}
+			}
+			mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+					Math.max(size, Math.min(mMaxBytes, HEADER_SIZE + (long) INITIAL_RECORDS * RECORD_SIZE)));
+			mGeneration = mBuffer.getInt(GENERATION_OFFSET);
+			mIndex.clear();
+			mIndexed = 0;
+			sync();
+			lock.release();
+			return true;
+		} catch (IOException | RuntimeException e) {
+			mChannel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Indexes the records appended since the last look, also by other processes.
+	 */
+	private void sync() {
+		int count = mBuffer.getInt(COUNT_OFFSET);
+		if (count > mIndexed) {
+			if (offset(count) > mBuffer.capacity()) {
+				try {
+					ensureCapacity(count);
+				} catch (IOException e) {
+					// the new records stay unknown until the next look
+					return;
+				}
+			}
+			byte[] hash = new byte[HASH_SIZE];
+			for (int record = mIndexed; record < count; record++) {
+				int offset = offset(record);
+				mBuffer.get(offset, hash);
+				mIndex.put(key(hash, mBuffer.getLong(offset + ENTRY)), record);
+			}
+			mIndexed = count;
+		}
+	}
+
+	private void ensureCapacity(int records) throws IOException {
+		long needed = offset(records);
+		if (needed > mBuffer.capacity()) {
+			long size = Math.max(needed, Math.min(mMaxBytes, 2L * mBuffer.capacity()));
+			mBuffer.force();
+			mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+	}
+
+	/**
+	 * Writes the latest record of every key to a new file, the records used
+	 * longest ago are left out until the file is half the size bound, and moves
+	 * it over the store file. Called with the store file locked, the replaced
+	 * file is marked before the lock is released.
+	 */
+	private void compact() throws IOException {
+		List<Integer> live = new ArrayList<>();
+		byte[] hash = new byte[HASH_SIZE];
+		for (int record = 0; record < mIndexed; record++) {
+			int offset = offset(record);
+			mBuffer.get(offset, hash);
+			if (mIndex.get(key(hash, mBuffer.getLong(offset + ENTRY)), -1) == record) {
+				live.add(record);
+			}
+		}
+		int keep = (int) Math.min(live.size(), (mMaxBytes / 2 - HEADER_SIZE) / RECORD_SIZE);
+		// the most recently used first
+		live.sort((a, b) -> Long.compare(mBuffer.getLong(offset(b) + USED), mBuffer.getLong(offset(a) + USED)));
+		Integer[] kept = live.subList(0, keep).toArray(new Integer[0]);
+		// in the order they were appended
+		Arrays.sort(kept);
+
+		Path temporary = mFile.resolveSibling(mFile.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + kept.length * RECORD_SIZE);
+			out.putInt(MAGIC).putInt(VERSION).putInt(kept.length).putInt((mGeneration + 1) & Integer.MAX_VALUE)
+					.position(HEADER_SIZE);
+			for (int record : kept) {
+				ByteBuffer slice = mBuffer.duplicate();
+				slice.position(offset(record)).limit(offset(record) + RECORD_SIZE);
+				out.put(slice);
+			}
+			out.flip();
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+			channel.force(true);
+		}
+		Files.move(temporary, mFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		mBuffer.putInt(GENERATION_OFFSET, GENERATION_REPLACED);
+		mBuffer.force();
+		mChannel.close();
+		mCompactions++;
+		open();
+	}
+
+	private boolean matches(int record, byte[] hash, long entry) {
+		int offset = offset(record);
+		if (mBuffer.getLong(offset + ENTRY) != entry) {
+			return false;
+		}
+		for (int i = 0; i < HASH_SIZE; i++) {
+			if (mBuffer.get(offset + i) != hash[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int offset(int record) {
+		return HEADER_SIZE + record * RECORD_SIZE;
+	}
+
+	private static long key(byte[] hash, long entry) {
+		long key = entry * 0x9E3779B97F4A7C15L;
+		for (int i = 0; i < 8; i++) {
+			key = (key << 8) ^ (key >>> 56) ^ (hash[i] & 0xFF);
+		}
+		return key == Long.MIN_VALUE ? 0 : key;
+	}
+
+	/**
+	 * Entry is a stored result with the size of its board.
+	 */
+	public static class Entry {
+
+		public final int mColumns;
+
+		public final int mRows;
+
+		public final TraceResult mResult;
+
+		Entry(int columns, int rows, TraceResult result) {
+			mColumns = columns;
+			mRows = rows;
+			mResult = result;
+		}
+	}
+}
@@ -0,0 +1,239 @@
+import java.util.Arrays;
+
+/**
+ * ExitTable holds the exit point of the laser for every door on the edge of the
+ * maze, 2 x (X + Y) doors in all, computed in one pass over the maze.
+ * 
+ * The laser comes in through a door from outside of the maze, so the mirror of
+ * the first room is applied, and leaves through another door or is trapped.
+ * The doors are numbered as follows:
+ * <ul>
+ * <li>0 to X - 1: top of the rooms of row 0, laser heading V +
+ * <li>X to 2X - 1: bottom of the rooms of row Y - 1, laser heading V -
+ * <li>2X to 2X + Y - 1: left of the rooms of column 0, laser heading H +
+ * <li>2X + Y to 2X + 2Y - 1: right of the rooms of column X - 1, laser heading H
+ * -
+ * </ul>
+ * 
+ * Work is shared between the lasers in two ways. If the path of a laser does
+ * not pass through a 1-way mirror from its non reflective side, the path run
+ * backwards is the path of the laser from its exit door, so the exit of that
+ * door is known as well. And the exit of every mirror the laser meets is
+ * remembered, so a later laser joining the same path stops there.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class ExitTable {
+
+	/**
+	 * Exit door of a laser trapped in the maze.
+	 */
+	public static final int TRAPPED = -1;
+
+	private static final int UNKNOWN = -2;
+
+	private final int mColumns;
+
+	private final int mRows;
+
+	private final int[] mExits;
+
+	/**
+	 * Constructs a new ExitTable of the maze.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @throws IllegalArgumentException
+	 *             if the maze has beam splitters
+	 */
+	public ExitTable(MirrorGrid grid) {
+		this(grid, new MirrorIndex(grid));
+	}
+
+	/**
+	 * Constructs a new ExitTable of the maze using an existing mirror index.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param index
+	 *            - index of the mirrors of the maze
+	 * @throws IllegalArgumentException
+	 *             if the maze has beam splitters
+	 */
+	public ExitTable(MirrorGrid grid, MirrorIndex index) {
+		if (index.hasSplitters(grid)) {
+			throw new IllegalArgumentException("The maze has beam splitters, they are not supported.");
+		}
+		mColumns = grid.columns();
+		mRows = grid.rows();
+		mExits = new int[2 * (mColumns + mRows)];
+		Arrays.fill(mExits, UNKNOWN);
+
+		BeamTracer tracer = new BeamTracer(grid);
+		tracer.setMirrorIndex(index);
+		LongIntHashMap memo = new LongIntHashMap();
+		long[] visited = new long[64];
+
+		for (int door = 0; door < mExits.length; door++) {
+			if (mExits[door] != UNKNOWN) {
+				continue;
+			}
+
+			// the pending mark tells a loop of this laser from the result of an earlier
+			final int pending = -3 - door;
+			int visitedCount = 0;
+			boolean reversible = true;
+			int exit;
+			long state = BeamState.pack(getDoorColumn(door) - BeamState.columnStep(getDoorHeading(door)),
+					getDoorRow(door) - BeamState.rowStep(getDoorHeading(door)), getDoorHeading(door));
+			while (true) {
+				int heading = BeamState.heading(state);
+				state = tracer.jump(state);
+				int col = BeamState.column(state);
+				int row = BeamState.row(state);
+				if (col < 0 || col >= mColumns || row < 0 || row >= mRows) {
+					exit = exitDoor(col - BeamState.columnStep(heading), row - BeamState.rowStep(heading), heading);
+					break;
+				}
+
+				int known = memo.get(state, UNKNOWN);
+				if (known == pending) {
+					exit = TRAPPED;
+					break;
+				}
+				if (known != UNKNOWN) {
+					exit = known;
+					reversible = false;
+					break;
+				}
+				memo.put(state, pending);
+				if (visitedCount == visited.length) {
+					visited = Arrays.copyOf(visited, visitedCount * 2);
+				}
+				visited[visitedCount++] = state;
+
+				if (heading == BeamState.heading(state) && ReflectiveMirror.isOneWay(grid.kind(col, row))) {
+					// passed through the non reflective side, can not be run backwards
+					reversible = false;
+				}
+			}
+
+			for (int i = 0; i < visitedCount; i++) {
+				memo.put(visited[i], exit);
+			}
+			mExits[door] = exit;
+			if (reversible && exit != TRAPPED && mExits[exit] == UNKNOWN) {
+				mExits[exit] = door;
+			}
+		}
+	}
+
+	/**
+	 * @return number of doors of the maze
+	 */
+	public int getDoorCount() {
+		return mExits.length;
+	}
+
+	/**
+	 * @param door
+	 *            - number of the door
+	 * @return the column of the room behind the door
+	 */
+	public int getDoorColumn(int door) {
+		if (door < mColumns) {
+			return door;
+		}
+		if (door < 2 * mColumns) {
+			return door - mColumns;
+		}
+		return door < 2 * mColumns + mRows ? 0 : mColumns - 1;
+	}
+
+	/**
+	 * @param door
+	 *            - number of the door
+	 * @return the row of the room behind the door
+	 */
+	public int getDoorRow(int door) {
+		if (door < mColumns) {
+			return 0;
+		}
+		if (door < 2 * mColumns) {
+			return mRows - 1;
+		}
+		return door < 2 * mColumns + mRows ? door - 2 * mColumns : door - 2 * mColumns - mRows;
+	}
+
+	/**
+	 * @param door
+	 *            - number of the door
+	 * @return heading of the laser coming in through the door
+	 */
+	public int getDoorHeading(int door) {
+		if (door < mColumns) {
+			return BlockPosition.HEADING_VERTICAL_FORWARD;
+		}
+		if (door < 2 * mColumns) {
+			return BlockPosition.HEADING_VERTICAL_BACKWARD;
+		}
+		return door < 2 * mColumns + mRows ? BlockPosition.HEADING_HORIZONTAL_FORWARD
+				: BlockPosition.HEADING_HORIZONTAL_BACKWARD;
+	}
+
+	/**
+	 * Returns the door through which the laser comes in to the room with the given
+	 * heading.
+	 * 
+	 * @param column
+	 *            - the column of the room
+	 * @param row
+	 *            - the row of the room
+	 * @param heading
+	 *            - heading of the laser coming in
+	 * @return number of the door, -1 if there is no such door
+	 */
+	public int getDoor(int column, int row, int heading) {
+		switch (heading) {
+		case BlockPosition.HEADING_VERTICAL_FORWARD:
+			return row == 0 ? column : -1;
+		case BlockPosition.HEADING_VERTICAL_BACKWARD:
+			return row == mRows - 1 ? mColumns + column : -1;
+		case BlockPosition.HEADING_HORIZONTAL_FORWARD:
+			return column == 0 ? 2 * mColumns + row : -1;
+		default:
+			return column == mColumns - 1 ? 2 * mColumns + mRows + row : -1;
+		}
+	}
+
+	/**
+	 * Returns the door the laser leaves the maze through. The exit room is the
+	 * room behind that door, and the laser leaves with the opposite heading of
+	 * the door.
+	 * 
+	 * @param door
+	 *            - number of the door the laser comes in through
+	 * @return number of the exit door, or <code>TRAPPED</code>
+	 */
+	public int getExitDoor(int door) {
+		return mExits[door];
+	}
+
+	/**
+	 * @param door
+	 *            - number of the door the laser comes in through
+	 * @return heading of the laser leaving the maze, -1 if it is trapped
+	 */
+	public int getExitHeading(int door) {
+		int exit = mExits[door];
+		return exit == TRAPPED ? -1 : getDoorHeading(exit) ^ 2;
+	}
+
+	/**
+	 * @return the door of the room the laser leaves with the given heading
+	 */
+	private int exitDoor(int column, int row, int heading) {
+		return getDoor(column, row, heading ^ 2);
+	}
+}
@@ -0,0 +1,74 @@
+import java.util.Arrays;
+
+/**
+ * HashSetTrapDetector keeps only the states the laser has actually visited in
+ * a primitive open addressing hash set, which is the better choice when the
+ * maze is big and the path of the laser is short compared to the maze.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class HashSetTrapDetector implements TrapDetector {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Slots of the hash set, the stored value is the state plus one so that zero
+	 * marks an empty slot.
+	 */
+	private long[] mSlots = new long[INITIAL_CAPACITY];
+
+	private int mSize;
+
+	private int mRows;
+
+	public void reset(int columns, int rows) {
+		if (mSlots.length > INITIAL_CAPACITY) {
+			mSlots = new long[INITIAL_CAPACITY];
+		} else {
+			Arrays.fill(mSlots, 0L);
+		}
+		mSize = 0;
+		mRows = rows;
+	}
+
+	public boolean visit(int column, int row, int heading) {
+		long key = ((((long) column * mRows + row) << 2) | heading) + 1;
+		if (!add(mSlots, key)) {
+			return true;
+		}
+		mSize++;
+		if (mSize * 2 > mSlots.length) {
+			grow();
+		}
+		return false;
+	}
+
+	private static boolean add(long[] slots, long key) {
+		int mask = slots.length - 1;
+		int i = mix(key) & mask;
+		while (slots[i] != 0) {
+			if (slots[i] == key) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		slots[i] = key;
+		return true;
+	}
+
+	private void grow() {
+		long[] slots = new long[mSlots.length * 2];
+		for (long key : mSlots) {
+			if (key != 0) {
+				add(slots, key);
+			}
+		}
+		mSlots = slots;
+	}
+
+	private static int mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
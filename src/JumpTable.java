@@ -0,0 +1,340 @@
+/**
+ * JumpTable answers where the laser is after any number of steps, and where it
+ * leaves the maze, in time logarithmic in the number of steps, with binary
+ * lifting over the states of the laser after the mirrors.
+ * 
+ * A node of the table is a mirror together with the heading the laser leaves
+ * it with, 4 nodes per mirror. Level i of the table holds for every node the
+ * node the laser reaches after 2^i jumps from mirror to mirror and the number
+ * of steps those jumps take. A query first jumps from the start to the first
+ * mirror with the {@link MirrorIndex}, takes the biggest jumps of the table
+ * which fit in the steps left, and walks the rest of the straight run. There
+ * are enough levels for more jumps than there are nodes, so a laser which has
+ * not left the maze by then is in its loop, and the steps left are cut to less
+ * than one round of the loop, which is known for every node of a loop.
+ * 
+ * The table takes 12 bytes per node for each level, about 4 x M x log2(4 x M)
+ * x 12 bytes for M mirrors. It does not change after it is built, so it can be
+ * shared by many threads and reused for any number of queries on the maze.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class JumpTable {
+
+	/**
+	 * State returned for a laser which has left the maze before the given number
+	 * of steps.
+	 */
+	public static final long LEFT_MAZE = -1;
+
+	/**
+	 * Node after the last mirror of a laser which leaves the maze.
+	 */
+	private static final int EXIT = -1;
+
+	private final MirrorGrid mGrid;
+
+	private final MirrorIndex mIndex;
+
+	private final int mColumns;
+
+	private final int mRows;
+
+	/**
+	 * Node after 2^i jumps, by level and node.
+	 */
+	private final int[][] mUp;
+
+	/**
+	 * Steps of 2^i jumps, by level and node. For a node whose next jump leaves
+	 * the maze, level 0 holds the steps to the edge of the maze.
+	 */
+	private final long[][] mSteps;
+
+	/**
+	 * Steps of one round of the loop for the nodes in a loop, 0 for the others.
+	 */
+	private final long[] mLoopSteps;
+
+	/**
+	 * Column of every mirror, by mirror number.
+	 */
+	private final int[] mMirrorColumns;
+
+	/**
+	 * Constructs a new JumpTable of the maze.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @throws IllegalArgumentException
+	 *             if the maze has beam splitters
+	 */
+	public JumpTable(MirrorGrid grid) {
+		this(grid, new MirrorIndex(grid));
+	}
+
+	/**
+	 * Constructs a new JumpTable of the maze using an existing mirror index.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param index
+	 *            - index of the mirrors of the maze
+	 * @throws IllegalArgumentException
+	 *             if the maze has beam splitters
+	 */
+	public JumpTable(MirrorGrid grid, MirrorIndex index) {
+		if (index.hasSplitters(grid)) {
+			throw new IllegalArgumentException("The maze has beam splitters, they are not supported.");
+		}
+		if (index.getMirrorCount() > Integer.MAX_VALUE / 4) {
+			throw new IllegalArgumentException("The maze has too many mirrors: " + index.getMirrorCount());
+		}
+		mGrid = grid;
+		mIndex = index;
+		mColumns = grid.columns();
+		mRows = grid.rows();
+
+		final int mirrors = index.getMirrorCount();
+		final int nodes = mirrors * 4;
+		mMirrorColumns = new int[mirrors];
+		for (int mirror = 0; mirror < mirrors; mirror++) {
+			mMirrorColumns[mirror] = index.getMirrorColumn(mirror);
+		}
+
+		// enough levels for more jumps than there are nodes
+		final int levels = Math.max(1, 32 - Integer.numberOfLeadingZeros(nodes));
+		mUp = new int[levels][];
+		mSteps = new long[levels][];
+		int[] up = new int[nodes];
+		long[] steps = new long[nodes];
+		for (int node = 0; node < nodes; node++) {
+			int col = mMirrorColumns[node >>> 2];
+			int row = index.getMirrorRow(node >>> 2);
+			int heading = node & 3;
+			int target = index.next(col, row, heading);
+			if (target < 0) {
+				up[node] = EXIT;
+				steps[node] = toEdge(col, row, heading);
+			} else if ((heading & 1) == 0) {
+				up[node] = node(target, row, heading);
+				steps[node] = Math.abs(target - col);
+			} else {
+				up[node] = node(col, target, heading);
+				steps[node] = Math.abs(target - row);
+			}
+		}
+		mUp[0] = up;
+		mSteps[0] = steps;
+		for (int level = 1; level < levels; level++) {
+			int[] half = mUp[level - 1];
+			long[] halfSteps = mSteps[level - 1];
+			up = new int[nodes];
+			steps = new long[nodes];
+			for (int node = 0; node < nodes; node++) {
+				int mid = half[node];
+				if (mid == EXIT || half[mid] == EXIT) {
+					up[node] = EXIT;
+				} else {
+					up[node] = half[mid];
+					steps[node] = halfSteps[node] + halfSteps[mid];
+				}
+			}
+			mUp[level] = up;
+			mSteps[level] = steps;
+		}
+
+		mLoopSteps = loopSteps(mUp[0], mSteps[0]);
+	}
+
+	/**
+	 * Returns the state of the laser after the given number of steps from the
+	 * start. The mirror of the start room is not applied, as for
+	 * {@link BeamTracer#trace(int, int, int, TrapDetector)}.
+	 * 
+	 * @param start
+	 *            - packed start state of the laser
+	 * @param steps
+	 *            - number of steps
+	 * @return packed state after the steps, or <code>LEFT_MAZE</code> if the
+	 *         laser has left the maze before
+	 */
+	public long stateAfter(long start, long steps) {
+		if (steps < 0) {
+			throw new IllegalArgumentException("The number of steps can not be negative: " + steps);
+		}
+		int col = BeamState.column(start);
+		int row = BeamState.row(start);
+		int heading = BeamState.heading(start);
+		int target = mIndex.next(col, row, heading);
+		if (target < 0) {
+			return steps <= toEdge(col, row, heading) ? straight(start, steps) : LEFT_MAZE;
+		}
+		long first = (heading & 1) == 0 ? Math.abs(target - col) : Math.abs(target - row);
+		if (steps < first) {
+			return straight(start, steps);
+		}
+
+		int node = (heading & 1) == 0 ? node(target, row, heading) : node(col, target, heading);
+		long left = steps - first;
+		while (true) {
+			// the biggest jumps which fit in the steps left
+			for (int level = mUp.length - 1; level >= 0; level--) {
+				int next = mUp[level][node];
+				if (next != EXIT && mSteps[level][node] <= left) {
+					left -= mSteps[level][node];
+					node = next;
+				}
+			}
+			if (mUp[0][node] == EXIT || mSteps[0][node] > left) {
+				break;
+			}
+			// every level is used up, so the laser is in its loop
+			left %= mLoopSteps[node];
+		}
+
+		long state = nodeState(node);
+		if (mUp[0][node] == EXIT && left > mSteps[0][node]) {
+			return LEFT_MAZE;
+		}
+		return straight(state, left);
+	}
+
+	/**
+	 * Finds the exit point of the laser, or the loop it is trapped in. The mirror
+	 * of the start room is not applied, as for
+	 * {@link BeamTracer#trace(int, int, int, TrapDetector)}.
+	 * 
+	 * @param start
+	 *            - packed start state of the laser
+	 * @return <code>TraceResult</code> of the laser
+	 */
+	public TraceResult exit(long start) {
+		int col = BeamState.column(start);
+		int row = BeamState.row(start);
+		int heading = BeamState.heading(start);
+		int target = mIndex.next(col, row, heading);
+		if (target < 0) {
+			long steps = toEdge(col, row, heading);
+			return TraceResult.exited(start, straight(start, steps), steps);
+		}
+
+		int node = (heading & 1) == 0 ? node(target, row, heading) : node(col, target, heading);
+		long steps = (heading & 1) == 0 ? Math.abs(target - col) : Math.abs(target - row);
+		for (int level = mUp.length - 1; level >= 0; level--) {
+			int next = mUp[level][node];
+			if (next != EXIT) {
+				steps += mSteps[level][node];
+				node = next;
+			}
+		}
+		if (mUp[0][node] == EXIT) {
+			long edge = mSteps[0][node];
+			return TraceResult.exited(start, straight(nodeState(node), edge), steps + edge);
+		}
+
+		// the laser is in its loop after the steps, the loop entry is the first
+		// state which is the same one round of the loop later
+		long loop = mLoopSteps[node];
+		long low = 0;
+		long high = steps;
+		while (low < high) {
+			long mid = (low + high) >>> 1;
+			if (stateAfter(start, mid) == stateAfter(start, mid + loop)) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return TraceResult.trapped(start,
+				new LaserTrappedException(BeamState.toBlockPosition(stateAfter(start, low)), low, loop));
+	}
+
+	/**
+	 * @return number of levels of the table
+	 */
+	public int getLevelCount() {
+		return mUp.length;
+	}
+
+	/**
+	 * @return number of nodes of the table, 4 per mirror
+	 */
+	public int getNodeCount() {
+		return mUp[0].length;
+	}
+
+	/**
+	 * @return node of the laser leaving the mirror of the room
+	 */
+	private int node(int col, int row, int heading) {
+		int mirror = mIndex.getMirrorNumber(col, row);
+		return mirror * 4 + ReflectiveMirror.reflect(mGrid.kind(col, row), heading);
+	}
+
+	private long nodeState(int node) {
+		return BeamState.pack(mMirrorColumns[node >>> 2], mIndex.getMirrorRow(node >>> 2), node & 3);
+	}
+
+	/**
+	 * @return number of steps from the room to the last room in the heading
+	 */
+	private long toEdge(int col, int row, int heading) {
+		switch (heading) {
+		case BlockPosition.HEADING_HORIZONTAL_FORWARD:
+			return mColumns - 1 - col;
+		case BlockPosition.HEADING_VERTICAL_FORWARD:
+			return mRows - 1 - row;
+		case BlockPosition.HEADING_HORIZONTAL_BACKWARD:
+			return col;
+		default:
+			return row;
+		}
+	}
+
+	private static long straight(long state, long steps) {
+		int heading = BeamState.heading(state);
+		return BeamState.pack(BeamState.column(state) + (int) (BeamState.columnStep(heading) * steps),
+				BeamState.row(state) + (int) (BeamState.rowStep(heading) * steps), heading);
+	}
+
+	/**
+	 * Finds the loops of the jumps, every node has one next node so each chain of
+	 * nodes either leaves the maze or runs into a loop.
+	 * 
+	 * @return steps of one round of the loop for the nodes in a loop
+	 */
+	private static long[] loopSteps(int[] up, long[] steps) {
+		final int nodes = up.length;
+		long[] loopSteps = new long[nodes];
+		// 0 not seen, 1 on the chain being followed, 2 done
+		byte[] seen = new byte[nodes];
+		int[] chain = new int[nodes];
+		int[] chainIndex = new int[nodes];
+		for (int first = 0; first < nodes; first++) {
+			int length = 0;
+			int node = first;
+			while (node != EXIT && seen[node] == 0) {
+				seen[node] = 1;
+				chainIndex[node] = length;
+				chain[length++] = node;
+				node = up[node];
+			}
+			if (node != EXIT && seen[node] == 1) {
+				// the chain ran into itself, the loop starts at that node
+				long round = 0;
+				for (int i = chainIndex[node]; i < length; i++) {
+					round += steps[chain[i]];
+				}
+				for (int i = chainIndex[node]; i < length; i++) {
+					loopSteps[chain[i]] = round;
+				}
+			}
+			for (int i = 0; i < length; i++) {
+				seen[chain[i]] = 2;
+			}
+		}
+		return loopSteps;
+	}
+}
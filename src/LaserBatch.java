@@ -0,0 +1,274 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LaserBatch traces many lasers of one maze in a single pass over the shared,
+ * read-only mirror grid, on one thread or spread over several, and gives the
+ * results in the order of the lasers.
+ *
+ * The lasers jump from mirror to mirror with the mirror index. The exit and the
+ * remaining length of every state after a mirror on the path of a laser which
+ * leaves the maze are put in a memo shared by the threads, so a later laser
+ * which comes to one of those states stops there. The memo is kept for the
+ * next batch of the same maze and stops growing at about 4 million states. A
+ * trapped laser is found by its own trap detector, its path is not put in the
+ * memo.
+ *
+ * @author Bankim Aghera
+ *
+ */
+public class LaserBatch {
+
+	private static final int MEMO_SHARDS = 64;
+
+	/**
+	 * Most states of one path put in the memo, a longer path is put in up to
+	 * there.
+	 */
+	private static final int MAX_RECORDED = 1 << 20;
+
+	/**
+	 * Most states in one shard of the memo, about 128 MB for the whole memo.
+	 */
+	private static final int MAX_SHARD_STATES = (1 << 22) / MEMO_SHARDS;
+
+	private final MirrorGrid mGrid;
+
+	private final MirrorIndex mIndex;
+
+	private final int mThreads;
+
+	private final Shard[] mMemo = new Shard[MEMO_SHARDS];
+
+	private final LongAdder mMemoHits = new LongAdder();
+
+	/**
+	 * Constructs a new LaserBatch for the maze.
+	 *
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param index
+	 *            - index of the mirrors of the maze
+	 * @param threads
+	 *            - number of threads tracing the lasers
+	 * @throws IllegalArgumentException
+	 *             if the maze has beam splitters
+	 */
+	public LaserBatch(MirrorGrid grid, MirrorIndex index, int threads) {
+		if (grid.rows() > BeamState.MAX_ROWS) {
+			throw new IllegalArgumentException("The maze can not have more than " + BeamState.MAX_ROWS + " rows.");
+		}
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads must be positive: " + threads);
+		}
+		if (index.hasSplitters(grid)) {
+			throw new IllegalArgumentException("The maze has beam splitters, they are not supported.");
+		}
+		mGrid = grid;
+		mIndex = index;
+		mThreads = threads;
+		for (int i = 0; i < MEMO_SHARDS; i++) {
+			mMemo[i] = new Shard();
+		}
+	}
+
+	/**
+	 * Traces the lasers, each starts in its room with its heading and the mirror
+	 * of the start room is not applied.
+	 *
+	 * @param lasers
+	 *            - column, row and heading of every laser, three numbers per laser
+	 * @param laserCount
+	 *            - number of lasers in the array
+	 * @return <code>TraceResult</code> of every laser in the order of the array,
+	 *         <code>null</code> for a laser which does not start in the maze
+	 */
+	public TraceResult[] trace(int[] lasers, int laserCount) {
+		final TraceResult[] results = new TraceResult[laserCount];
+		final AtomicInteger next = new AtomicInteger();
+		int threads = Math.min(mThreads, laserCount);
+		if (threads <= 1) {
+			new Worker().run(lasers, laserCount, next, results);
+			return results;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[threads];
+			for (int i = 0; i < threads; i++) {
+				tasks[i] = pool.submit(() -> new Worker().run(lasers, laserCount, next, results));
+			}
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return results;
+	}
+
+	/**
+	 * @return number of lasers which stopped at a state of the memo
+	 */
+	public long getMemoHits() {
+		return mMemoHits.sum();
+	}
+
+	private Shard shard(long state) {
+		return mMemo[(int) ((state * 0x9E3779B97F4A7C15L) >>> 58)];
+	}
+
+	/**
+	 * Part of the memo with its own lock: the exit and the remaining steps of
+	 * every state put in it.
+	 */
+	private static final class Shard {
+
+		private final LongIntHashMap mStates = new LongIntHashMap();
+
+		private long[] mExits = new long[64];
+
+		private long[] mDistances = new long[64];
+
+		private int mSize;
+
+		synchronized int find(long state, long[] result) {
+			int entry = mStates.get(state, -1);
+			if (entry >= 0) {
+				result[0] = mExits[entry];
+				result[1] = mDistances[entry];
+			}
+			return entry;
+		}
+
+		synchronized void put(long state, long exit, long distance) {
+			if (mSize == MAX_SHARD_STATES || mStates.get(state, -1) >= 0) {
+				return;
+			}
+			if (mSize == mExits.length) {
+				mExits = Arrays.copyOf(mExits, mSize * 2);
+				mDistances = Arrays.copyOf(mDistances, mSize * 2);
+			}
+			mExits[mSize] = exit;
+			mDistances[mSize] = distance;
+			mStates.put(state, mSize++);
+		}
+	}
+
+	/**
+	 * Traces the lasers taken from the shared counter with its own trap detector
+	 * and path buffer.
+	 */
+	private final class Worker {
+
+		private final BeamTracer mTracer = new BeamTracer(mGrid);
+
+		/**
+		 * Brent's cycle finder, a bitset of the board would be cleared for every
+		 * laser.
+		 */
+		private final TrapDetector mTrapDetector = new CycleFinderTrapDetector();
+
+		private long[] mStates = new long[64];
+
+		private long[] mSteps = new long[64];
+
+		private int mRecorded;
+
+		private final long[] mFound = new long[2];
+
+		void run(int[] lasers, int laserCount, AtomicInteger next, TraceResult[] results) {
+			final int columns = mGrid.columns();
+			final int rows = mGrid.rows();
+			for (int i = next.getAndIncrement(); i < laserCount; i = next.getAndIncrement()) {
+				int column = lasers[i * 3];
+				int row = lasers[i * 3 + 1];
+				int heading = lasers[i * 3 + 2];
+				if (column >= 0 && row >= 0 && column < columns && row < rows && heading >= 0 && heading <= 3) {
+					results[i] = trace(column, row, heading);
+				}
+			}
+		}
+
+		private TraceResult trace(int startColumn, int startRow, int startHeading) {
+			final int columns = mGrid.columns();
+			final int rows = mGrid.rows();
+			final MirrorGrid grid = mGrid;
+			final MirrorIndex index = mIndex;
+			final TrapDetector trapDetector = mTrapDetector;
+			final long start = BeamState.pack(startColumn, startRow, startHeading);
+
+			int col = startColumn;
+			int row = startRow;
+			int heading = startHeading;
+			long steps = 0;
+			mRecorded = 0;
+			trapDetector.reset(columns, rows);
+			trapDetector.visit(col, row, heading);
+
+			while (true) {
+				int target = index.next(col, row, heading);
+				int endCol = col;
+				int endRow = row;
+				if (target >= 0) {
+					if ((heading & 1) == 0) {
+						endCol = target;
+					} else {
+						endRow = target;
+					}
+				} else if ((heading & 1) == 0) {
+					// no more mirrors, the laser goes straight out of the maze
+					endCol = (heading & 2) == 0 ? columns - 1 : 0;
+				} else {
+					endRow = (heading & 2) == 0 ? rows - 1 : 0;
+				}
+				steps += Math.abs(endCol - col) + Math.abs(endRow - row);
+				col = endCol;
+				row = endRow;
+				if (target < 0) {
+					long exit = BeamState.pack(col, row, heading);
+					remember(exit, steps);
+					return TraceResult.exited(start, exit, steps);
+				}
+
+				heading = ReflectiveMirror.reflect(grid.kind(col, row), heading);
+				long state = BeamState.pack(col, row, heading);
+				if (shard(state).find(state, mFound) >= 0) {
+					mMemoHits.increment();
+					long exit = mFound[0];
+					long total = steps + mFound[1];
+					remember(exit, total);
+					return TraceResult.exited(start, exit, total);
+				}
+				if (trapDetector.visit(col, row, heading)) {
+					return TraceResult.trapped(start, mTracer.trapped(start, state));
+				}
+				record(state, steps);
+			}
+		}
+
+		private void record(long state, long steps) {
+			if (mRecorded == MAX_RECORDED) {
+				return;
+			}
+			if (mRecorded == mStates.length) {
+				mStates = Arrays.copyOf(mStates, mRecorded * 2);
+				mSteps = Arrays.copyOf(mSteps, mRecorded * 2);
+			}
+			mStates[mRecorded] = state;
+			mSteps[mRecorded++] = steps;
+		}
+
+		/**
+		 * Puts the recorded states of the path which leaves the maze in the memo.
+		 */
+		private void remember(long exit, long steps) {
+			for (int i = 0; i < mRecorded; i++) {
+				shard(mStates[i]).put(mStates[i], exit, steps - mSteps[i]);
+			}
+		}
+	}
+}
@@ -1,8 +1,13 @@
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.List;
 
 /*
  *
@@ -68,94 +73,791 @@ import java.util.Scanner;
  */
 public class LaserExitPointInMirrorMaze {
 
+	private static final int METRICS_NONE = 0;
+	private static final int METRICS_SUMMARY = 1;
+	private static final int METRICS_JSON = 2;
+
 	public static void main(String[] args) throws IOException {
 
-		if (args.length == 0) {
+		boolean allDoors = false;
+		boolean batch = false;
+		boolean jump = false;
+		int pathMode = BeamTracer.PATH_ROOMS;
+		int metrics = METRICS_NONE;
+		String fileName = null;
+		RunOptions options = new RunOptions();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("--checkpoint") && i + 1 < args.length) {
+				options.mCheckpointFile = args[++i];
+			} else if (arg.equals("--checkpoint-steps") && i + 1 < args.length) {
+				options.mCheckpointSteps = Long.parseLong(args[++i]);
+			} else if (arg.equals("--checkpoint-seconds") && i + 1 < args.length) {
+				options.mCheckpointSeconds = Long.parseLong(args[++i]);
+			} else if (arg.equals("--path-file") && i + 1 < args.length) {
+				options.mPathFile = args[++i];
+			} else if (arg.equals("--store") && i + 1 < args.length) {
+				options.mStoreFile = args[++i];
+			} else if (arg.equals("--store-megabytes") && i + 1 < args.length) {
+				options.mStoreMegabytes = Integer.parseInt(args[++i]);
+			} else if (arg.equals("--graph") && i + 1 < args.length) {
+				options.mGraphFile = args[++i];
+			} else if (arg.equals("--all-doors")) {
+				allDoors = true;
+			} else if (arg.equals("--exit-only")) {
+				pathMode = BeamTracer.PATH_NONE;
+			} else if (arg.equals("--turn-points")) {
+				pathMode = BeamTracer.PATH_TURNS;
+			} else if (arg.equals("--metrics")) {
+				metrics = METRICS_SUMMARY;
+			} else if (arg.equals("--metrics-json")) {
+				metrics = METRICS_JSON;
+			} else if (arg.equals("--batch")) {
+				batch = true;
+			} else if (arg.equals("--jump")) {
+				jump = true;
+			} else {
+				fileName = arg;
+			}
+		}
+
+		if (fileName == null) {
 			System.out.println("please give maze definition input file name and path.");
 			return;
 		}
+		if (options.mStoreFile != null
+				&& (metrics != METRICS_NONE || options.mCheckpointFile != null || options.mGraphFile != null)) {
+			// the store route reads no definition file on a hit, so it has nothing to measure or compile
+			System.out.println("--store can not be used with --metrics, --checkpoint or --graph.");
+			return;
+		}
+
+		if (batch) {
+			List<String> fileNames;
+			try {
+				fileNames = BatchSolver.listDefinitionFiles(fileName);
+			} catch (FileNotFoundException e) {
+				System.out.println(e.getLocalizedMessage());
+				return;
+			}
+			new BatchSolver(allDoors, pathMode).solve(fileNames, System.out, System.err);
+		} else {
+			parseMazeDefinitionFile(fileName, allDoors, pathMode, metrics, jump, options);
+		}
+	}
 
-		parseMazeDefinitionFile(args[0]);
+	/**
+	 * Options of a trace with checkpoints (see {@link CheckpointedTrace}), of the
+	 * store of solved lasers (see {@link ExitStore}) and of the compiled graph of
+	 * the maze (see {@link MirrorGraph}).
+	 */
+	private static final class RunOptions {
+		String mCheckpointFile;
+		String mPathFile;
+		long mCheckpointSteps;
+		long mCheckpointSeconds;
+		String mStoreFile;
+		int mStoreMegabytes = ExitStore.DEFAULT_MEGABYTES;
+		String mGraphFile;
 	}
 
-	private static void parseMazeDefinitionFile(String fileName) throws FileNotFoundException, IOException {
-		int mazeRow = 0;
-		int mazeCol = 0;
-		ArrayList<String> mirrors = new ArrayList<String>();
-		int laserStartRow = -1;
-		int laserStartCol = -1;
-		String laserOrientation = null;
-		int inputCounter = 0;
-		
-		FileReader fin = null;
-		
+	private static void parseMazeDefinitionFile(String fileName, boolean allDoors, int pathMode, int metrics,
+			boolean jump, RunOptions options) throws FileNotFoundException, IOException {
+		// the store holds the exit point only, not the path
+		if (options.mStoreFile != null && !allDoors && pathMode == BeamTracer.PATH_NONE) {
+			solveWithStore(fileName, options, System.out);
+			return;
+		}
+		PhaseMetrics phases = new PhaseMetrics(metrics != METRICS_NONE);
+		phases.start(PhaseMetrics.PHASE_PARSE);
+		// the checkpoint and the graph file are kept for the content of the
+		// definition file, which is hashed before it is parsed
+		byte[] mazeHash = null;
+		MazeDefinition maze;
 		try {
-			fin = new FileReader(fileName);	
-		} catch (FileNotFoundException e) {
+			if ((options.mCheckpointFile != null || (options.mGraphFile != null && pathMode == BeamTracer.PATH_NONE))
+					&& !allDoors) {
+				mazeHash = ExitStore.hash(Paths.get(fileName));
+			}
+			// the index of the mirrors is built from the rooms found while loading
+			maze = readMazeDefinitionFile(fileName, jump);
+		} catch (FileNotFoundException | MazeFormatException e) {
 			System.out.println(e.getLocalizedMessage());
 			return;
 		}
-		
-		Scanner in = new Scanner(fin);
+		reportDuplicates(maze, System.err);
+		// a checkpoint is of one laser, many lasers are traced in one batch below
+		if (options.mCheckpointFile != null && !allDoors && !maze.mSplitters && maze.getLaserCount() <= 1) {
+			traceWithCheckpoints(maze, mazeHash, pathMode, options, System.out);
+			return;
+		}
+		// the graph gives the exit point of one laser, not the path
+		if (options.mGraphFile != null && mazeHash != null && !maze.mSplitters && maze.getLaserCount() <= 1) {
+			solveWithGraph(maze, mazeHash, options, System.out);
+			return;
+		}
+		solveMazeDefinition(maze, allDoors, pathMode, System.out, phases);
+		phases.stop();
+
+		// the report goes to the error stream so the output stays the same
+		if (metrics == METRICS_SUMMARY) {
+			System.err.println(phases.toSummary());
+		} else if (metrics == METRICS_JSON) {
+			System.err.println(phases.toJson());
+		}
+	}
+
+	/**
+	 * This method will follow the laser of the maze definition with checkpoints,
+	 * so a trace which is stopped goes on from the last checkpoint when it is run
+	 * again. The path is written to the path file of the options, if there is
+	 * one, instead of the stream.
+	 * 
+	 * @param maze
+	 *            - the maze definition
+	 * @param mazeHash
+	 *            - SHA-256 hash of the maze definition file, it tells a checkpoint
+	 *            of this maze from others
+	 * @param pathMode
+	 *            - which block positions of the path are written, one of the
+	 *            <code>BeamTracer.PATH_</code> constants
+	 * @param options
+	 *            - the checkpoint options
+	 * @param out
+	 *            - stream the result is printed to
+	 * @throws IOException
+	 *             if the checkpoint or the path can not be read or written
+	 */
+	private static void traceWithCheckpoints(MazeDefinition maze, byte[] mazeHash, int pathMode, RunOptions options,
+			PrintStream out) throws IOException {
+		MirrorGrid grid = maze.mGrid;
+		int column = maze.mLaserStartColumn;
+		int row = maze.mLaserStartRow;
+		String orientation = maze.mLaserOrientation;
+		if (!isLaserInMaze(grid, column, row, orientation)) {
+			out.println("incorrect input");
+			return;
+		}
+
+		CheckpointedTrace trace = new CheckpointedTrace(grid, Paths.get(options.mCheckpointFile), mazeHash);
+		if (options.mCheckpointSteps > 0) {
+			trace.setStepInterval(options.mCheckpointSteps);
+		}
+		if (options.mCheckpointSeconds > 0) {
+			trace.setTimeInterval(options.mCheckpointSeconds * 1000);
+		}
+		if (options.mPathFile != null) {
+			trace.setPathFile(Paths.get(options.mPathFile), pathMode);
+		}
+
+		out.println("The size of board (X into Y): " + grid.columns() + " x " + grid.rows());
+		out.println("The start point of the laser: "
+				+ BlockPosition.toString(column, row, orientation, BlockPosition.MOVE_FORWARD));
+		TraceResult result = trace.trace(column, row, BeamState.heading(orientation, BlockPosition.MOVE_FORWARD));
+		if (trace.isResumed()) {
+			out.println("Resumed from the checkpoint " + options.mCheckpointFile);
+		}
+		if (result.isTrapped()) {
+			out.println(result);
+		} else {
+			out.println("The exit point of the laser: " + BlockPosition.toString(result.getExitColumn(),
+					result.getExitRow(), result.getExitOrientation(), BeamState.direction(result.getExitHeading())));
+		}
+		if (options.mPathFile != null && pathMode != BeamTracer.PATH_NONE) {
+			out.println("The path of the laser is written to " + options.mPathFile);
+		}
+	}
+
+	/**
+	 * This method will print the exit point of the laser of the maze definition
+	 * traced over the compiled graph of the maze. The graph is read from the graph
+	 * file of the options if it was written for the same content of the
+	 * definition file, else it is compiled and written over the graph file for
+	 * the next run.
+	 * 
+	 * @param maze
+	 *            - the maze definition
+	 * @param mazeHash
+	 *            - SHA-256 hash of the maze definition file
+	 * @param options
+	 *            - the graph options
+	 * @param out
+	 *            - stream the result is printed to
+	 * @throws IOException
+	 *             if the graph file can not be written
+	 */
+	private static void solveWithGraph(MazeDefinition maze, byte[] mazeHash, RunOptions options, PrintStream out)
+			throws IOException {
+		MirrorGrid grid = maze.mGrid;
+		int column = maze.mLaserStartColumn;
+		int row = maze.mLaserStartRow;
+		String orientation = maze.mLaserOrientation;
+		if (!isLaserInMaze(grid, column, row, orientation)) {
+			out.println("incorrect input");
+			return;
+		}
+
+		Path graphFile = Paths.get(options.mGraphFile);
+		MirrorGraph graph = null;
+		try {
+			graph = MirrorGraph.read(graphFile, mazeHash);
+		} catch (IOException e) {
+			// no graph file yet, or the graph of another maze, it is compiled below
+		}
+		if (graph == null || graph.columns() != grid.columns() || graph.rows() != grid.rows()) {
+			graph = new MirrorGraph(grid);
+			graph.write(graphFile, mazeHash);
+		}
+		printResult(grid.columns(), grid.rows(),
+				graph.trace(column, row, BeamState.heading(orientation, BlockPosition.MOVE_FORWARD)), out);
+	}
 
-		// read the configuration for the mirror board and the laser
-		while (in.hasNextLine()) {
-			String nextLine = in.nextLine().trim();
-			if (nextLine.startsWith("-1")) {
-				inputCounter++;
-				if (in.hasNext())
-					nextLine = in.nextLine().trim();
+	/**
+	 * This method will print the exit point of the laser of the definition file
+	 * from the store of solved lasers, so the file is not parsed again. A laser
+	 * not in the store is traced and added to it.
+	 * 
+	 * @param fileName
+	 *            - name and path of the maze definition file
+	 * @param options
+	 *            - the store options
+	 * @param out
+	 *            - stream the result is printed to
+	 * @throws IOException
+	 *             if the definition file or the store can not be read or written
+	 */
+	private static void solveWithStore(String fileName, RunOptions options, PrintStream out) throws IOException {
+		byte[] hash;
+		try {
+			hash = ExitStore.hash(Paths.get(fileName));
+		} catch (FileNotFoundException e) {
+			out.println(e.getLocalizedMessage());
+			return;
+		}
+		try (ExitStore store = new ExitStore(Paths.get(options.mStoreFile), options.mStoreMegabytes * 1024L * 1024L)) {
+			ExitStore.Entry stored = store.get(hash, ExitStore.DEFINITION_LASER);
+			if (stored != null) {
+				printResult(stored.mColumns, stored.mRows, stored.mResult, out);
+				return;
 			}
-			
-			// read maze size
-			if (inputCounter == 0) {
-				String mazeSize = nextLine;
-				mazeCol = Integer.valueOf(mazeSize.trim().split(",")[0]);
-				mazeRow = Integer.valueOf(mazeSize.trim().split(",")[1]);
+
+			MazeDefinition maze;
+			try {
+				maze = readMazeDefinitionFile(fileName);
+			} catch (FileNotFoundException | MazeFormatException e) {
+				out.println(e.getLocalizedMessage());
+				return;
 			}
-			
-			// read mirror
-			if (inputCounter == 1) {
-				mirrors.add(nextLine);
+			reportDuplicates(maze, System.err);
+			MirrorGrid grid = maze.mGrid;
+			int column = maze.mLaserStartColumn;
+			int row = maze.mLaserStartRow;
+			String orientation = maze.mLaserOrientation;
+			if (maze.mSplitters || maze.getLaserCount() > 1 || !isLaserInMaze(grid, column, row, orientation)) {
+				// the beams of a splitter maze, many lasers and the incorrect input are
+				// not stored
+				solveMazeDefinition(maze, false, BeamTracer.PATH_NONE, out);
+				return;
 			}
 
-			// read laser
-			if (inputCounter == 2) {
-				String laser = nextLine;
-				laserStartCol = Integer.valueOf(laser.substring(0, 1));
-				laserStartRow = Integer.valueOf(laser.substring(2, 3));
-				laserOrientation = new String(laser.substring(3));
+			BeamTracer tracer = new BeamTracer(grid);
+			int heading = BeamState.heading(orientation, BlockPosition.MOVE_FORWARD);
+			long start = BeamState.pack(column, row, heading);
+			TraceResult result;
+			try {
+				long exit = tracer.trace(column, row, heading, TrapDetector.forBoard(grid.columns(), grid.rows()));
+				result = TraceResult.exited(start, exit, tracer.getSteps());
+			} catch (LaserTrappedException e) {
+				result = TraceResult.trapped(start, e);
 			}
+			store.put(hash, ExitStore.DEFINITION_LASER, grid.columns(), grid.rows(), result);
+			printResult(grid.columns(), grid.rows(), result, out);
 		}
+	}
 
+	/**
+	 * Prints the size of the board, the start point and the exit point of the
+	 * laser, or the loop of a trapped laser.
+	 */
+	private static void printResult(int columns, int rows, TraceResult result, PrintStream out) {
+		long start = result.getStart();
+		int startHeading = BeamState.heading(start);
+		out.println("The size of board (X into Y): " + columns + " x " + rows);
+		out.println("The start point of the laser: " + BlockPosition.toString(BeamState.column(start),
+				BeamState.row(start), BeamState.orientation(startHeading), BeamState.direction(startHeading)));
+		if (result.isTrapped()) {
+			out.println(result);
+		} else {
+			out.println("The exit point of the laser: " + BlockPosition.toString(result.getExitColumn(),
+					result.getExitRow(), result.getExitOrientation(), BeamState.direction(result.getExitHeading())));
+		}
+	}
+
+	/**
+	 * This method will find the path of the laser of the maze definition, or the
+	 * exit points for every door of the maze.
+	 * 
+	 * @param maze
+	 *            - the maze definition
+	 * @param allDoors
+	 *            - <code>true</code> to find the exit points for every door
+	 * @param pathMode
+	 *            - which block positions of the path are printed, one of the
+	 *            <code>BeamTracer.PATH_</code> constants
+	 * @param out
+	 *            - stream the result is printed to
+	 */
+	static void solveMazeDefinition(MazeDefinition maze, boolean allDoors, int pathMode, PrintStream out) {
+		solveMazeDefinition(maze, allDoors, pathMode, out, new PhaseMetrics());
+	}
+
+	/**
+	 * This method will find the path of the laser of the maze definition, or the
+	 * exit points for every door of the maze, and measure the phases. If the
+	 * definition has a mirror index (see {@link MazeDefinition#mIndex}) the laser
+	 * jumps from mirror to mirror with it, the index is built here for the exit
+	 * points of every door or of many lasers otherwise.
+	 * 
+	 * @param maze
+	 *            - the maze definition
+	 * @param allDoors
+	 *            - <code>true</code> to find the exit points for every door
+	 * @param pathMode
+	 *            - which block positions of the path are printed, one of the
+	 *            <code>BeamTracer.PATH_</code> constants
+	 * @param out
+	 *            - stream the result is printed to
+	 * @param metrics
+	 *            - metrics of the phases
+	 */
+	static void solveMazeDefinition(MazeDefinition maze, boolean allDoors, int pathMode, PrintStream out,
+			PhaseMetrics metrics) {
+		if (!allDoors && maze.getLaserCount() > 1) {
+			// the exit points of every laser, no path
+			int[] lasers = maze.mLasers;
+			if (maze.mSplitters) {
+				findLaserBeamExitsInMaze(maze.mGrid, lasers, out, metrics);
+			} else {
+				findLaserExitsInMaze(maze.mGrid, maze.mIndex, lasers, Runtime.getRuntime().availableProcessors(), out,
+						metrics);
+			}
+			return;
+		}
+		if (maze.mSplitters) {
+			// the beams of a splitter maze have no single path to print
+			if (allDoors) {
+				findAllDoorBeamExitsInMaze(maze.mGrid, out, metrics);
+			} else {
+				findLaserBeamExitsInMaze(maze.mGrid, maze.mLaserStartColumn, maze.mLaserStartRow,
+						maze.mLaserOrientation, out, metrics);
+			}
+			return;
+		}
 		try {
-			in.close();			
-		} catch (Exception e) {
+			if (allDoors) {
+				findAllDoorExitsInMaze(maze.mGrid, maze.mIndex, out, metrics);
+			} else {
+				metrics.start(PhaseMetrics.PHASE_BUILD);
+				TrapDetector trapDetector = TrapDetector.forBoard(maze.mGrid.columns(), maze.mGrid.rows());
+				findLaserPathInMaze(maze.mGrid, maze.mLaserStartColumn, maze.mLaserStartRow, maze.mLaserOrientation,
+						trapDetector, maze.mIndex, pathMode, out, metrics);
+			}
+		} catch (LaserTrappedException e) {
+			out.println(e);
+		}
+	}
+
+	/**
+	 * Prints a line for every mirror given more than once in the definition file,
+	 * in the order of the file.
+	 */
+	private static void reportDuplicates(MazeDefinition maze, PrintStream err) {
+		for (MazeFormatException duplicate : maze.mDuplicates) {
+			err.println(duplicate.getLocalizedMessage());
 		}
-		
+	}
+
+	/**
+	 * This method will read the maze definition file, either the text format, the
+	 * binary format (see {@link BinaryMazeFormat}) or a tile file (see
+	 * {@link TiledMirrorGrid}).
+	 * 
+	 * @param fileName
+	 *            - name and path of the maze definition file
+	 * @return <code>MazeDefinition</code> of the file
+	 * @throws FileNotFoundException
+	 *             if the file is not found
+	 * @throws MazeFormatException
+	 *             if the file is not in the maze definition format
+	 */
+	static MazeDefinition readMazeDefinitionFile(String fileName)
+			throws FileNotFoundException, IOException, MazeFormatException {
+		return readMazeDefinitionFile(fileName, false);
+	}
+
+	/**
+	 * This method will read the maze definition file and, if asked for, build the
+	 * mirror index of the definition from the rooms of the mirrors found while it
+	 * is read (see {@link MazeDefinition#mIndex}). A tile file has no list of its
+	 * mirrors and is never indexed.
+	 * 
+	 * @param fileName
+	 *            - name and path of the maze definition file
+	 * @param indexed
+	 *            - <code>true</code> to build the mirror index
+	 * @return <code>MazeDefinition</code> of the file
+	 * @throws FileNotFoundException
+	 *             if the file is not found
+	 * @throws MazeFormatException
+	 *             if the file is not in the maze definition format
+	 */
+	static MazeDefinition readMazeDefinitionFile(String fileName, boolean indexed)
+			throws FileNotFoundException, IOException, MazeFormatException {
+		Path file = Paths.get(fileName);
 		try {
-			fin.close();			
-		} catch (Exception e) {
-		}
-		
-		ReflectiveMirror[][] totalMirrors = new ReflectiveMirror[mazeCol][mazeRow];
-		for (String m : mirrors) {
-
-			ReflectiveMirror mirror;
-			if (m.length() > 4) {
-				String d = new String(m.substring(3, 4));
-				String s = new String(m.substring(4));
-				mirror = new ReflectiveMirror(d, s);
+			if (BinaryMazeFormat.isBinary(file)) {
+				return BinaryMazeFormat.load(file, indexed);
+			}
+			if (TiledMirrorGrid.isTiled(file)) {
+				return TiledMirrorGrid.load(file);
+			}
+			int threads = Runtime.getRuntime().availableProcessors();
+			if (threads > 1 && Files.size(file) >= ParallelMazeLoader.PARALLEL_THRESHOLD) {
+				ParallelMazeLoader loader = new ParallelMazeLoader(threads);
+				loader.setIndexed(indexed);
+				return loader.load(file);
+			}
+			MazeDefinitionBuilder builder = new MazeDefinitionBuilder();
+			builder.setIndexed(indexed);
+			MazeDefinitionParser.parse(file, builder);
+			return builder.build();
+		} catch (NoSuchFileException e) {
+			throw new FileNotFoundException(fileName + " (No such file or directory)");
+		}
+	}
+
+	/**
+	 * This method will find the exit point of the laser for every door of the
+	 * mirror maze, see {@link ExitTable}.
+	 * 
+	 * @param mirrors
+	 *            - Total number of mirrors
+	 */
+	public static void findAllDoorExitsInMaze(ReflectiveMirror[][] mirrors) {
+		findAllDoorExitsInMaze(mirrors, System.out);
+	}
+
+	/**
+	 * This method will find the exit point of the laser for every door of the
+	 * mirror maze and print them to the given stream.
+	 * 
+	 * @param mirrors
+	 *            - Total number of mirrors
+	 * @param out
+	 *            - stream the result is printed to
+	 */
+	public static void findAllDoorExitsInMaze(ReflectiveMirror[][] mirrors, PrintStream out) {
+		findAllDoorExitsInMaze(new ByteMirrorGrid(mirrors), out);
+	}
+
+	/**
+	 * This method will find the exit point of the laser for every door of the
+	 * mirror maze and print them to the given stream.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param out
+	 *            - stream the result is printed to
+	 */
+	public static void findAllDoorExitsInMaze(MirrorGrid grid, PrintStream out) {
+		findAllDoorExitsInMaze(grid, out, new PhaseMetrics());
+	}
+
+	/**
+	 * This method will find the exit point of the laser for every door of the
+	 * mirror maze, print them to the given stream and measure the phases.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param out
+	 *            - stream the result is printed to
+	 * @param metrics
+	 *            - metrics of the phases
+	 */
+	public static void findAllDoorExitsInMaze(MirrorGrid grid, PrintStream out, PhaseMetrics metrics) {
+		findAllDoorExitsInMaze(grid, null, out, metrics);
+	}
+
+	/**
+	 * This method will find the exit point of the laser for every door of the
+	 * mirror maze with the given mirror index, print them to the given stream and
+	 * measure the phases.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param index
+	 *            - index of the mirrors of the maze, <code>null</code> to build
+	 *            it from the grid
+	 * @param out
+	 *            - stream the result is printed to
+	 * @param metrics
+	 *            - metrics of the phases
+	 */
+	public static void findAllDoorExitsInMaze(MirrorGrid grid, MirrorIndex index, PrintStream out,
+			PhaseMetrics metrics) {
+		if (grid.columns() == 0 || grid.rows() == 0) {
+			out.println("incorrect input");
+			return;
+		}
+
+		out.println("The size of board (X into Y): " + grid.columns() + " x " + grid.rows());
+
+		metrics.start(PhaseMetrics.PHASE_BUILD);
+		if (index == null) {
+			index = new MirrorIndex(grid);
+		}
+		metrics.start(PhaseMetrics.PHASE_TRACE);
+		ExitTable exits = new ExitTable(grid, index);
+		metrics.start(PhaseMetrics.PHASE_PRINT);
+		out.println("Following are the exit points of the laser for every door of the maze: ");
+		for (int door = 0; door < exits.getDoorCount(); door++) {
+			int heading = exits.getDoorHeading(door);
+			String entry = BlockPosition.toString(exits.getDoorColumn(door), exits.getDoorRow(door),
+					BeamState.orientation(heading), BeamState.direction(heading));
+			int exit = exits.getExitDoor(door);
+			if (exit == ExitTable.TRAPPED) {
+				out.println(entry + "-> The laser is trapped in the maze.");
 			} else {
-				String d = new String(m.substring(3, 4));
-				mirror = new ReflectiveMirror(d);
+				int exitHeading = exits.getExitHeading(door);
+				out.println(entry + "-> " + BlockPosition.toString(exits.getDoorColumn(exit),
+						exits.getDoorRow(exit), BeamState.orientation(exitHeading), BeamState.direction(exitHeading)));
 			}
-			int col = Integer.valueOf(m.substring(0, 1));
-			int row = Integer.valueOf((m.substring(2, 3)));
-			totalMirrors[col][row] = mirror;
 		}
+	}
 
-		findLaserPathInMaze(totalMirrors, laserStartCol, laserStartRow, laserOrientation);
+	/**
+	 * This method will find the exit points of every beam of the laser for every
+	 * door of a mirror maze with beam splitters, print them to the given stream
+	 * and measure the phases. The doors are in the order of {@link ExitTable}.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param out
+	 *            - stream the result is printed to
+	 * @param metrics
+	 *            - metrics of the phases
+	 */
+	public static void findAllDoorBeamExitsInMaze(MirrorGrid grid, PrintStream out, PhaseMetrics metrics) {
+		final int columns = grid.columns();
+		final int rows = grid.rows();
+		if (columns == 0 || rows == 0) {
+			out.println("incorrect input");
+			return;
+		}
+
+		out.println("The size of board (X into Y): " + columns + " x " + rows);
+
+		metrics.start(PhaseMetrics.PHASE_BUILD);
+		SplitBeamTracer tracer = new SplitBeamTracer(grid);
+		out.println("Following are the exit points of the laser beams for every door of the maze: ");
+		for (int door = 0; door < 2 * (columns + rows); door++) {
+			int column;
+			int row;
+			int heading;
+			if (door < 2 * columns) {
+				column = door % columns;
+				row = door < columns ? 0 : rows - 1;
+				heading = door < columns ? BlockPosition.HEADING_VERTICAL_FORWARD
+						: BlockPosition.HEADING_VERTICAL_BACKWARD;
+			} else {
+				row = (door - 2 * columns) % rows;
+				column = door < 2 * columns + rows ? 0 : columns - 1;
+				heading = door < 2 * columns + rows ? BlockPosition.HEADING_HORIZONTAL_FORWARD
+						: BlockPosition.HEADING_HORIZONTAL_BACKWARD;
+			}
+			metrics.start(PhaseMetrics.PHASE_TRACE);
+			SplitTraceResult result = tracer.traceDoor(column, row, heading);
+			metrics.start(PhaseMetrics.PHASE_PRINT);
+			StringBuilder line = new StringBuilder(BlockPosition.toString(column, row,
+					BeamState.orientation(heading), BeamState.direction(heading))).append("-> ");
+			if (result.isTrapped()) {
+				line.append("The laser beams are trapped in the maze.");
+			}
+			for (int i = 0; i < result.getExitCount(); i++) {
+				line.append(exitString(result.getExit(i)));
+			}
+			out.println(line);
+		}
+	}
+
+	/**
+	 * This method will find the exit points of every beam of a laser in a mirror
+	 * maze with beam splitters, print them to the given stream and measure the
+	 * phases.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param laserStartColumnNo
+	 *            - start column position of laser
+	 * @param laserStartRowNo
+	 *            - start row position of laser
+	 * @param laserOrientation
+	 *            - orientation of laser (H or V)
+	 * @param out
+	 *            - stream the result is printed to
+	 * @param metrics
+	 *            - metrics of the phases
+	 */
+	public static void findLaserBeamExitsInMaze(MirrorGrid grid, int laserStartColumnNo, int laserStartRowNo,
+			String laserOrientation, PrintStream out, PhaseMetrics metrics) {
+		// validate the input of the laser
+		if (!isLaserInMaze(grid, laserStartColumnNo, laserStartRowNo, laserOrientation)) {
+			out.println("incorrect input");
+			return;
+		}
+
+		out.println("The size of board (X into Y): " + grid.columns() + " x " + grid.rows());
+		out.println("The start point of the laser: " + BlockPosition.toString(laserStartColumnNo, laserStartRowNo,
+				laserOrientation, BlockPosition.MOVE_FORWARD));
+
+		metrics.start(PhaseMetrics.PHASE_BUILD);
+		SplitBeamTracer tracer = new SplitBeamTracer(grid);
+		metrics.start(PhaseMetrics.PHASE_TRACE);
+		SplitTraceResult result = tracer.trace(laserStartColumnNo, laserStartRowNo,
+				BeamState.heading(laserOrientation, BlockPosition.MOVE_FORWARD));
+		metrics.start(PhaseMetrics.PHASE_PRINT);
+		if (result.isTrapped()) {
+			out.println("The laser beams are trapped in the maze.");
+			return;
+		}
+		out.println("The exit points of the laser beams: ");
+		for (int i = 0; i < result.getExitCount(); i++) {
+			out.println(exitString(result.getExit(i)));
+		}
+	}
+
+	/**
+	 * This method will find the exit points of every beam of many lasers in a
+	 * mirror maze with beam splitters and print them in the order of the lasers,
+	 * as {@link #findLaserExitsInMaze(MirrorGrid, int[], int, PrintStream, PhaseMetrics)}
+	 * prints the lasers of a maze without beam splitters. One tracer traces all
+	 * the lasers.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param lasers
+	 *            - column, row and heading of every laser, three numbers per laser
+	 * @param out
+	 *            - stream the exit points are printed to
+	 * @param metrics
+	 *            - metrics of the phases
+	 */
+	public static void findLaserBeamExitsInMaze(MirrorGrid grid, int[] lasers, PrintStream out,
+			PhaseMetrics metrics) {
+		out.println("The size of board (X into Y): " + grid.columns() + " x " + grid.rows());
+
+		metrics.start(PhaseMetrics.PHASE_BUILD);
+		SplitBeamTracer tracer = new SplitBeamTracer(grid);
+		for (int i = 0; i + 2 < lasers.length; i += 3) {
+			int column = lasers[i];
+			int row = lasers[i + 1];
+			int heading = lasers[i + 2];
+			metrics.start(PhaseMetrics.PHASE_PRINT);
+			if (heading < 0 || heading > 3 || !isLaserInMaze(grid, column, row, BeamState.orientation(heading))) {
+				out.println("incorrect input");
+				continue;
+			}
+			metrics.start(PhaseMetrics.PHASE_TRACE);
+			SplitTraceResult result = tracer.trace(column, row, heading);
+			metrics.start(PhaseMetrics.PHASE_PRINT);
+			out.println("The start point of the laser: " + exitString(result.getStart()));
+			if (result.isTrapped()) {
+				out.println("The laser beams are trapped in the maze.");
+			}
+			for (int exit = 0; exit < result.getExitCount(); exit++) {
+				out.println("The exit point of the laser: " + exitString(result.getExit(exit)));
+			}
+		}
+	}
+
+	/**
+	 * This method will find the exit points of many lasers in the mirror maze in
+	 * one batch (see {@link LaserBatch}) and print them in the order of the
+	 * lasers.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param lasers
+	 *            - column, row and heading of every laser, three numbers per laser
+	 * @param threads
+	 *            - number of threads tracing the lasers
+	 * @param out
+	 *            - stream the exit points are printed to
+	 * @param metrics
+	 *            - metrics of the phases
+	 */
+	public static void findLaserExitsInMaze(MirrorGrid grid, int[] lasers, int threads, PrintStream out,
+			PhaseMetrics metrics) {
+		findLaserExitsInMaze(grid, null, lasers, threads, out, metrics);
+	}
+
+	/**
+	 * This method will find the exit points of many lasers in the mirror maze in
+	 * one batch with the given mirror index and print them in the order of the
+	 * lasers.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param index
+	 *            - index of the mirrors of the maze, <code>null</code> to build
+	 *            it from the grid
+	 * @param lasers
+	 *            - column, row and heading of every laser, three numbers per laser
+	 * @param threads
+	 *            - number of threads tracing the lasers
+	 * @param out
+	 *            - stream the exit points are printed to
+	 * @param metrics
+	 *            - metrics of the phases
+	 */
+	public static void findLaserExitsInMaze(MirrorGrid grid, MirrorIndex index, int[] lasers, int threads,
+			PrintStream out, PhaseMetrics metrics) {
+		out.println("The size of board (X into Y): " + grid.columns() + " x " + grid.rows());
+
+		metrics.start(PhaseMetrics.PHASE_BUILD);
+		LaserBatch batch = new LaserBatch(grid, index != null ? index : new MirrorIndex(grid), threads);
+		metrics.start(PhaseMetrics.PHASE_TRACE);
+		TraceResult[] results = batch.trace(lasers, lasers.length / 3);
+		metrics.start(PhaseMetrics.PHASE_PRINT);
+		for (int i = 0; i < results.length; i++) {
+			TraceResult result = results[i];
+			if (result == null) {
+				out.println("incorrect input");
+				continue;
+			}
+			out.println("The start point of the laser: " + exitString(result.getStart()));
+			if (result.isTrapped()) {
+				out.println(result);
+			} else {
+				out.println("The exit point of the laser: " + exitString(result.getExit()));
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the laser starts in a room of the maze with an
+	 *         orientation of H or V
+	 */
+	private static boolean isLaserInMaze(MirrorGrid grid, int column, int row, String orientation) {
+		return column >= 0 && row >= 0 && column < grid.columns() && row < grid.rows()
+				&& (BlockPosition.ORIENTATION_HORIZONTAL.equals(orientation)
+						|| BlockPosition.ORIENTATION_VERTICAL.equals(orientation));
+	}
+
+	private static String exitString(long exit) {
+		int heading = BeamState.heading(exit);
+		return BlockPosition.toString(BeamState.column(exit), BeamState.row(exit), BeamState.orientation(heading),
+				BeamState.direction(heading));
 	}
 
 	/**
@@ -172,49 +874,304 @@ public class LaserExitPointInMirrorMaze {
 	 */
 	public static void findLaserPathInMaze(ReflectiveMirror[][] mirrors, int laserStartColumnNo, int laserStartRowNo,
 			String laserOrientation) {
+		findLaserPathInMaze(mirrors, laserStartColumnNo, laserStartRowNo, laserOrientation,
+				TrapDetector.forBoard(mirrors.length, mirrors.length > 0 ? mirrors[0].length : 0));
+	}
+
+	/**
+	 * This method will find the path of a laser in the mirror maze, using the
+	 * given detector to find out if the laser is trapped in the maze.
+	 * 
+	 * @param mirrors
+	 *            - Total number of mirrors
+	 * @param laserStartColumnNo
+	 *            - start column position of laser
+	 * @param laserStartRowNo
+	 *            - start row position of laser
+	 * @param laserOrientation
+	 *            - orientation of laser (H or V)
+	 * @param trapDetector
+	 *            - detector for the loops of the laser
+	 * @throws LaserTrappedException
+	 *             if the laser never leaves the maze
+	 */
+	public static void findLaserPathInMaze(ReflectiveMirror[][] mirrors, int laserStartColumnNo, int laserStartRowNo,
+			String laserOrientation, TrapDetector trapDetector) {
+		findLaserPathInMaze(mirrors, laserStartColumnNo, laserStartRowNo, laserOrientation, trapDetector, System.out);
+	}
+
+	/**
+	 * This method will find the path of a laser in the mirror maze and print it to
+	 * the given stream.
+	 * 
+	 * @param mirrors
+	 *            - Total number of mirrors
+	 * @param laserStartColumnNo
+	 *            - start column position of laser
+	 * @param laserStartRowNo
+	 *            - start row position of laser
+	 * @param laserOrientation
+	 *            - orientation of laser (H or V)
+	 * @param trapDetector
+	 *            - detector for the loops of the laser
+	 * @param out
+	 *            - stream the path is printed to
+	 * @throws LaserTrappedException
+	 *             if the laser never leaves the maze
+	 */
+	public static void findLaserPathInMaze(ReflectiveMirror[][] mirrors, int laserStartColumnNo, int laserStartRowNo,
+			String laserOrientation, TrapDetector trapDetector, PrintStream out) {
+		findLaserPathInMaze(new ByteMirrorGrid(mirrors), laserStartColumnNo, laserStartRowNo, laserOrientation,
+				trapDetector, out);
+	}
+
+	/**
+	 * This method will find the path of a laser in the mirror maze and print it to
+	 * the given stream.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param laserStartColumnNo
+	 *            - start column position of laser
+	 * @param laserStartRowNo
+	 *            - start row position of laser
+	 * @param laserOrientation
+	 *            - orientation of laser (H or V)
+	 * @param trapDetector
+	 *            - detector for the loops of the laser
+	 * @param out
+	 *            - stream the path is printed to
+	 * @throws LaserTrappedException
+	 *             if the laser never leaves the maze
+	 */
+	public static void findLaserPathInMaze(MirrorGrid grid, int laserStartColumnNo, int laserStartRowNo,
+			String laserOrientation, TrapDetector trapDetector, PrintStream out) {
+		findLaserPathInMaze(grid, laserStartColumnNo, laserStartRowNo, laserOrientation, trapDetector,
+				BeamTracer.PATH_ROOMS, out);
+	}
+
+	/**
+	 * This method will find the path of a laser in the mirror maze and print it to
+	 * the given stream while the laser is traced. Either every room of the path,
+	 * only the rooms where the laser turns, or only the start and exit points are
+	 * printed.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param laserStartColumnNo
+	 *            - start column position of laser
+	 * @param laserStartRowNo
+	 *            - start row position of laser
+	 * @param laserOrientation
+	 *            - orientation of laser (H or V)
+	 * @param trapDetector
+	 *            - detector for the loops of the laser
+	 * @param pathMode
+	 *            - which block positions of the path are printed, one of the
+	 *            <code>BeamTracer.PATH_</code> constants
+	 * @param out
+	 *            - stream the path is printed to
+	 * @throws LaserTrappedException
+	 *             if the laser never leaves the maze, the path printed so far is
+	 *             kept
+	 */
+	public static void findLaserPathInMaze(MirrorGrid grid, int laserStartColumnNo, int laserStartRowNo,
+			String laserOrientation, TrapDetector trapDetector, int pathMode, PrintStream out) {
+		findLaserPathInMaze(grid, laserStartColumnNo, laserStartRowNo, laserOrientation, trapDetector, pathMode,
+				out, new PhaseMetrics());
+	}
+
+	/**
+	 * This method will find the path of a laser in the mirror maze, print it to
+	 * the given stream while the laser is traced and measure the phases. The
+	 * counts of the trace are added to the metrics, and the time spent writing the
+	 * path to the stream is print time.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param laserStartColumnNo
+	 *            - start column position of laser
+	 * @param laserStartRowNo
+	 *            - start row position of laser
+	 * @param laserOrientation
+	 *            - orientation of laser (H or V)
+	 * @param trapDetector
+	 *            - detector for the loops of the laser
+	 * @param pathMode
+	 *            - which block positions of the path are printed, one of the
+	 *            <code>BeamTracer.PATH_</code> constants
+	 * @param out
+	 *            - stream the path is printed to
+	 * @param metrics
+	 *            - metrics of the phases
+	 * @throws LaserTrappedException
+	 *             if the laser never leaves the maze, the path printed so far is
+	 *             kept
+	 */
+	public static void findLaserPathInMaze(MirrorGrid grid, int laserStartColumnNo, int laserStartRowNo,
+			String laserOrientation, TrapDetector trapDetector, int pathMode, PrintStream out, PhaseMetrics metrics) {
+		findLaserPathInMaze(grid, laserStartColumnNo, laserStartRowNo, laserOrientation, trapDetector, null, pathMode,
+				out, metrics);
+	}
+
+	/**
+	 * This method will find the path of a laser in the mirror maze as above, the
+	 * laser jumps from mirror to mirror with the given mirror index. The rooms
+	 * jumped over are still printed, the path is the same as without the index.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param laserStartColumnNo
+	 *            - start column position of laser
+	 * @param laserStartRowNo
+	 *            - start row position of laser
+	 * @param laserOrientation
+	 *            - orientation of laser (H or V)
+	 * @param trapDetector
+	 *            - detector for the loops of the laser
+	 * @param index
+	 *            - index of the mirrors of the maze, <code>null</code> to go one
+	 *            room at a time
+	 * @param pathMode
+	 *            - which block positions of the path are printed, one of the
+	 *            <code>BeamTracer.PATH_</code> constants
+	 * @param out
+	 *            - stream the path is printed to
+	 * @param metrics
+	 *            - metrics of the phases
+	 * @throws LaserTrappedException
+	 *             if the laser never leaves the maze, the path printed so far is
+	 *             kept
+	 */
+	public static void findLaserPathInMaze(MirrorGrid grid, int laserStartColumnNo, int laserStartRowNo,
+			String laserOrientation, TrapDetector trapDetector, MirrorIndex index, int pathMode, PrintStream out,
+			PhaseMetrics metrics) {
 		// validate the input of the laser
-		if (laserStartColumnNo < 0 || laserStartRowNo < 0 || laserStartColumnNo >= mirrors.length
-				|| laserStartRowNo >= mirrors[0].length
-				|| (!laserOrientation.equals(BlockPosition.ORIENTATION_HORIZONTAL)
-						&& !laserOrientation.equals(BlockPosition.ORIENTATION_VERTICAL))) {
-			System.out.println("incorrect input");
+		if (!isLaserInMaze(grid, laserStartColumnNo, laserStartRowNo, laserOrientation)) {
+			out.println("incorrect input");
 			return;
 		}
 
-		System.out.println("The size of board (X into Y): " + mirrors.length + " x " + mirrors[0].length);
+		out.println("The size of board (X into Y): " + grid.columns() + " x " + grid.rows());
 
-		// track the path of the laser
-		ArrayList<BlockPosition> path = new ArrayList<BlockPosition>();
-		String direction = BlockPosition.MOVE_FORWARD; // "+": increase step; "-": decrease step
-		path.add(new BlockPosition(laserStartColumnNo, laserStartRowNo, laserOrientation, direction));
+		BeamTracer tracer = new BeamTracer(grid);
+		tracer.setMirrorIndex(index);
+		tracer.setPathMode(pathMode);
+		tracer.setMetrics(metrics);
+		final int startHeading = BeamState.heading(laserOrientation, BlockPosition.MOVE_FORWARD);
 
-		// if last position is out of board, it is finished.
-		BlockPosition last = path.get(path.size() - 1);
-		while ((last.mColumn >= 0 && last.mColumn < mirrors.length)
-				&& (last.mRow >= 0 && last.mRow < mirrors[0].length)) {
-			nextPosition(mirrors, path);
-			last = path.get(path.size() - 1);
+		if (pathMode == BeamTracer.PATH_NONE) {
+			out.println("The start point of the laser: " + BlockPosition.toString(laserStartColumnNo,
+					laserStartRowNo, laserOrientation, BlockPosition.MOVE_FORWARD));
+			metrics.start(PhaseMetrics.PHASE_TRACE);
+			long exit = tracer.trace(laserStartColumnNo, laserStartRowNo, startHeading, trapDetector);
+			metrics.start(PhaseMetrics.PHASE_PRINT);
+			int heading = BeamState.heading(exit);
+			out.println("The exit point of the laser: " + BlockPosition.toString(BeamState.column(exit),
+					BeamState.row(exit), BeamState.orientation(heading), BeamState.direction(heading)));
+			return;
 		}
 
-		// print the path from start to finish.
-		System.out.println("Following is the path of the laser in the maze: ");
-		final int sizeMirrors = path.size() - 1;
-		
-		for (int i = 0; i < sizeMirrors; i++) {
-			BlockPosition p = path.get(i);
-			System.out.println(p);
+		// print the path from start to finish while the laser is traced.
+		if (pathMode == BeamTracer.PATH_TURNS) {
+			out.println("Following are the turning points of the laser in the maze: ");
+		} else {
+			out.println("Following is the path of the laser in the maze: ");
+		}
+		PathWriter writer = new PathWriter(metrics.meter(out));
+		tracer.setPathListener(writer);
+		metrics.start(PhaseMetrics.PHASE_TRACE);
+		try {
+			tracer.trace(laserStartColumnNo, laserStartRowNo, startHeading, trapDetector);
+		} finally {
+			metrics.start(PhaseMetrics.PHASE_PRINT);
+			try {
+				writer.flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
 		}
-
 	}
 
 	/**
-	 * This method will calculate next block position of the laser
+	 * This method will calculate next block position of the laser, the whole path
+	 * is searched to find out if the laser is trapped in the maze.
 	 * 
 	 * @param mirrors
 	 * @param mazeBlocks
+	 * @throws LaserTrappedException
+	 *             if the laser never leaves the maze
 	 */
 	public static void nextPosition(ReflectiveMirror[][] mirrors, ArrayList<BlockPosition> mazeBlocks) {
-		BlockPosition prev = mazeBlocks.get(mazeBlocks.size() - 1);
+		BlockPosition next = next(mirrors, mazeBlocks.get(mazeBlocks.size() - 1));
+		for (BlockPosition p : mazeBlocks) {
+			// check if the laser is trapped in the maze, path is handy for this.
+			if (p.equals(next)) {
+				throw trapped(mazeBlocks, next);
+			}
+		}
+		mazeBlocks.add(next);
+	}
+
+	/**
+	 * This method will calculate next block position of the laser, the trap
+	 * detector is used to find out if the laser is trapped in the maze.
+	 * 
+	 * @param mirrors
+	 * @param mazeBlocks
+	 * @param trapDetector
+	 *            - detector which has seen every block position of the path
+	 * @throws LaserTrappedException
+	 *             if the laser never leaves the maze
+	 */
+	public static void nextPosition(ReflectiveMirror[][] mirrors, ArrayList<BlockPosition> mazeBlocks,
+			TrapDetector trapDetector) {
+		BlockPosition next = next(mirrors, mazeBlocks.get(mazeBlocks.size() - 1));
+		// the laser can not come back once it is out of the maze
+		if ((next.mColumn >= 0 && next.mColumn < mirrors.length) && (next.mRow >= 0 && next.mRow < mirrors[0].length)
+				&& trapDetector.visit(next.mColumn, next.mRow, next.getHeading())) {
+			throw trapped(mazeBlocks, next);
+		}
+		mazeBlocks.add(next);
+	}
+
+	/**
+	 * Finds the loop of the trapped laser in the path. The block position which
+	 * repeats is found in the path first, that gives the length of the loop, then
+	 * the first block position which repeats after the length of the loop is the
+	 * entry of the loop.
+	 * 
+	 * @param path
+	 *            - path of the laser so far
+	 * @param next
+	 *            - next block position which is already in the path
+	 * @return <code>LaserTrappedException</code> with the loop details
+	 */
+	private static LaserTrappedException trapped(ArrayList<BlockPosition> path, BlockPosition next) {
+		final int repeat = path.size();
+		int last = repeat - 1;
+		while (!path.get(last).equals(next)) {
+			last--;
+		}
+		final int length = repeat - last;
+
+		int start = 0;
+		while (!path.get(start).equals(start + length < repeat ? path.get(start + length) : next)) {
+			start++;
+		}
+		return new LaserTrappedException(path.get(start), start, length);
+	}
+
+	/**
+	 * This method will calculate next block position of the laser from the
+	 * previous one.
+	 * 
+	 * @param mirrors
+	 * @param prev
+	 * @return next <code>BlockPosition</code> of the laser, it is out of the maze
+	 *         if the laser has left the maze
+	 */
+	private static BlockPosition next(ReflectiveMirror[][] mirrors, BlockPosition prev) {
 		int prevCol = prev.mColumn;
 		int prevRow = prev.mRow;
 		String prevOrient = prev.mOrientation;
@@ -300,14 +1257,6 @@ public class LaserExitPointInMirrorMaze {
 			}
 		}
 
-		BlockPosition next = new BlockPosition(nextCol, nextRow, nextOrient, nextDirection);
-		for (BlockPosition p : mazeBlocks) {
-			// check if the laser is trapped in the maze, path is handy for this.
-			if (p.equals(next)) {
-				throw new RuntimeException("The laser is trapped in the maze.");
-			}
-		}
-		mazeBlocks.add(next);
-
+		return new BlockPosition(nextCol, nextRow, nextOrient, nextDirection);
 	}
 }
\ No newline at end of file
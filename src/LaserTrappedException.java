@@ -0,0 +1,71 @@
+/**
+ * LaserTrappedException is thrown when the laser never leaves the maze because
+ * it keeps going round the same loop of mirrors.
+ * 
+ * The exception tells where the loop starts and how many block positions are
+ * in the loop.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class LaserTrappedException extends RuntimeException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 4526018722634471209L;
+
+	private final BlockPosition mCycleEntry;
+
+	private final long mCycleStart;
+
+	private final long mCycleLength;
+
+	/**
+	 * Constructs a new exception for the laser trapped in the loop.
+	 * 
+	 * @param cycleEntry
+	 *            - first block position of the path which is part of the loop
+	 * @param cycleStart
+	 *            - number of steps from the laser start to the cycle entry
+	 * @param cycleLength
+	 *            - number of block positions in the loop
+	 */
+	public LaserTrappedException(BlockPosition cycleEntry, long cycleStart, long cycleLength) {
+		super("The laser is trapped in the maze.");
+		mCycleEntry = cycleEntry;
+		mCycleStart = cycleStart;
+		mCycleLength = cycleLength;
+	}
+
+	/**
+	 * @return first block position of the path which is part of the loop
+	 */
+	public BlockPosition getCycleEntry() {
+		return mCycleEntry;
+	}
+
+	/**
+	 * @return number of steps from the laser start to the cycle entry
+	 */
+	public long getCycleStart() {
+		return mCycleStart;
+	}
+
+	/**
+	 * @return number of block positions in the loop
+	 */
+	public long getCycleLength() {
+		return mCycleLength;
+	}
+
+	/**
+	 * Returns the message with the details of the loop.
+	 * 
+	 * @return <code>String</code> based on default encoding of the JVM
+	 */
+	public String toString() {
+		return getMessage() + " Loop entry: " + mCycleEntry + "after " + mCycleStart + " steps, loop length: "
+				+ mCycleLength;
+	}
+}
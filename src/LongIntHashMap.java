@@ -0,0 +1,123 @@
+import java.util.Arrays;
+
+/**
+ * LongIntHashMap is a primitive open addressing hash map from
+ * <code>long</code> keys to <code>int</code> values, used to remember results
+ * for packed beam states without boxing them.
+ * 
+ * The key <code>Long.MIN_VALUE</code> marks the empty slots and can not be
+ * stored, packed beam states never have that value.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class LongIntHashMap {
+
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long[] mKeys;
+
+	private int[] mValues;
+
+	private int mSize;
+
+	/**
+	 * Constructs a new empty LongIntHashMap.
+	 */
+	public LongIntHashMap() {
+		mKeys = new long[INITIAL_CAPACITY];
+		mValues = new int[INITIAL_CAPACITY];
+		Arrays.fill(mKeys, EMPTY);
+	}
+
+	/**
+	 * @return number of keys in the map
+	 */
+	public int size() {
+		return mSize;
+	}
+
+	/**
+	 * Returns the value of the key.
+	 * 
+	 * @param key
+	 *            - the key
+	 * @param defaultValue
+	 *            - value returned if the key is not in the map
+	 * @return the value of the key, or the default value
+	 */
+	public int get(long key, int defaultValue) {
+		final int mask = mKeys.length - 1;
+		int i = mix(key) & mask;
+		while (mKeys[i] != EMPTY) {
+			if (mKeys[i] == key) {
+				return mValues[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Sets the value of the key.
+	 * 
+	 * @param key
+	 *            - the key
+	 * @param value
+	 *            - the value
+	 */
+	public void put(long key, int value) {
+		if (insert(mKeys, mValues, key, value)) {
+			mSize++;
+			if (mSize * 2 > mKeys.length) {
+				grow();
+			}
+		}
+	}
+
+	/**
+	 * Removes all the keys of the map.
+	 */
+	public void clear() {
+		Arrays.fill(mKeys, EMPTY);
+		mSize = 0;
+	}
+
+	/**
+	 * @return <code>true</code> if a new key was added
+	 */
+	private static boolean insert(long[] keys, int[] values, long key, int value) {
+		final int mask = keys.length - 1;
+		int i = mix(key) & mask;
+		while (keys[i] != EMPTY) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		return true;
+	}
+
+	private void grow() {
+		long[] keys = new long[mKeys.length * 2];
+		int[] values = new int[keys.length];
+		Arrays.fill(keys, EMPTY);
+		for (int i = 0; i < mKeys.length; i++) {
+			if (mKeys[i] != EMPTY) {
+				insert(keys, values, mKeys[i], mValues[i]);
+			}
+		}
+		mKeys = keys;
+		mValues = values;
+	}
+
+	private static int mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
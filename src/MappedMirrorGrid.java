@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedMirrorGrid reads the mirrors of a binary maze file (see
+ * {@link BinaryMazeFormat}) in place from the file mapped in memory. The
+ * mirror of a room is found with a binary search of the sorted mirrors, no
+ * copy of the mirrors is made.
+ * 
+ * A single mapping is used, so the file can not be bigger than 2 GB, that is
+ * about 268 million mirrors.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class MappedMirrorGrid implements MirrorGrid {
+
+	private final MappedByteBuffer mMap;
+
+	private final int mColumns;
+
+	private final int mRows;
+
+	private final int mLaserCount;
+
+	private final LongBuffer mMirrors;
+
+	private final int mMirrorCount;
+
+	private MappedMirrorGrid(MappedByteBuffer map, long mirrorOffset) {
+		mMap = map;
+		mColumns = map.getInt(8);
+		mRows = map.getInt(12);
+		mMirrorCount = (int) map.getLong(16);
+		mLaserCount = map.getInt(24);
+		mMirrors = BinaryMazeFormat.mirrors(map, mirrorOffset, mMirrorCount);
+	}
+
+	/**
+	 * Maps the binary maze file in memory.
+	 * 
+	 * @param file
+	 *            - the binary maze file
+	 * @return <code>MappedMirrorGrid</code> of the file
+	 * @throws IOException
+	 *             if the file can not be read
+	 * @throws MazeFormatException
+	 *             if the file is not a valid binary maze file
+	 */
+	public static MappedMirrorGrid open(Path file) throws IOException, MazeFormatException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new MazeFormatException("The binary maze file is bigger than 2 GB.", 0);
+			}
+			// the mapping stays valid after the channel is closed
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			long mirrorOffset = BinaryMazeFormat.checkHeader(map, size);
+			return new MappedMirrorGrid(map, mirrorOffset);
+		}
+	}
+
+	public int columns() {
+		return mColumns;
+	}
+
+	public int rows() {
+		return mRows;
+	}
+
+	public int kind(int column, int row) {
+		final long room = (long) column * mRows + row;
+		int low = 0;
+		int high = mMirrorCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long midRoom = mMirrors.get(mid) >>> 4;
+			if (midRoom < room) {
+				low = mid + 1;
+			} else if (midRoom > room) {
+				high = mid - 1;
+			} else {
+				return (int) mMirrors.get(mid) & 0xF;
+			}
+		}
+		return ReflectiveMirror.KIND_NONE;
+	}
+
+	/**
+	 * @return number of mirrors in the maze
+	 */
+	public int getMirrorCount() {
+		return mMirrorCount;
+	}
+
+	/**
+	 * Builds the mirror index from the mirrors of the file, they are sorted
+	 * column by column so the rooms without mirrors are not searched.
+	 * 
+	 * @return <code>MirrorIndex</code> of the mirrors of the file
+	 */
+	MirrorIndex buildIndex() {
+		int[] columnStart = new int[mColumns + 1];
+		int[] columnRows = new int[mMirrorCount];
+		for (int i = 0; i < mMirrorCount; i++) {
+			long room = mMirrors.get(i) >>> 4;
+			columnStart[(int) (room / mRows) + 1]++;
+			columnRows[i] = (int) (room % mRows);
+		}
+		for (int col = 0; col < mColumns; col++) {
+			columnStart[col + 1] += columnStart[col];
+		}
+		return new MirrorIndex(mRows, columnStart, columnRows);
+	}
+
+	/**
+	 * @return the <code>BinaryMazeFormat.FLAG_</code> constants of the file
+	 */
+	public int getFlags() {
+		return mMap.getInt(28);
+	}
+
+	/**
+	 * @return number of laser entry rooms in the file
+	 */
+	public int getLaserCount() {
+		return mLaserCount;
+	}
+
+	/**
+	 * @param index
+	 *            - index of the laser entry room
+	 * @return start column position of laser
+	 */
+	public int getLaserColumn(int index) {
+		return mMap.getInt(BinaryMazeFormat.HEADER_SIZE + index * BinaryMazeFormat.LASER_SIZE);
+	}
+
+	/**
+	 * @param index
+	 *            - index of the laser entry room
+	 * @return start row position of laser
+	 */
+	public int getLaserRow(int index) {
+		return mMap.getInt(BinaryMazeFormat.HEADER_SIZE + index * BinaryMazeFormat.LASER_SIZE + 4);
+	}
+
+	/**
+	 * @param index
+	 *            - index of the laser entry room
+	 * @return start heading of laser
+	 */
+	public int getLaserHeading(int index) {
+		return mMap.getInt(BinaryMazeFormat.HEADER_SIZE + index * BinaryMazeFormat.LASER_SIZE + 8) & 3;
+	}
+}
@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Maze is a maze definition ready to be solved from a program, built once and
+ * shared by any number of threads. It holds the mirrors of the maze, their
+ * index (see {@link MirrorIndex}) and the laser of the definition file, and
+ * nothing of it changes after it is built. The queries are run by a
+ * {@link Solver} of the maze, one per thread.
+ *
+ * The mirror grid is not copied, it must not be changed while the maze is in
+ * use.
+ *
+ * @author Bankim Aghera
+ *
+ */
+public final class Maze {
+
+	/**
+	 * Heading of the laser of a definition without a laser in the maze.
+	 */
+	public static final int NO_LASER = -1;
+
+	private final MirrorGrid mGrid;
+
+	private final MirrorIndex mIndex;
+
+	private final boolean mSplitters;
+
+	private final int mLaserColumn;
+
+	private final int mLaserRow;
+
+	private final int mLaserHeading;
+
+	private Maze(MazeDefinition definition) {
+		MirrorGrid grid = definition.mGrid;
+		if (grid.rows() > BeamState.MAX_ROWS) {
+			throw new IllegalArgumentException("The maze can not have more than " + BeamState.MAX_ROWS + " rows.");
+		}
+		mGrid = grid;
+		mIndex = definition.mIndex != null ? definition.mIndex : new MirrorIndex(grid);
+		mSplitters = definition.mSplitters;
+		mLaserColumn = definition.mLaserStartColumn;
+		mLaserRow = definition.mLaserStartRow;
+		String orientation = definition.mLaserOrientation;
+		if (contains(mLaserColumn, mLaserRow) && orientation != null
+				&& (orientation.equals(BlockPosition.ORIENTATION_HORIZONTAL)
+						|| orientation.equals(BlockPosition.ORIENTATION_VERTICAL))) {
+			mLaserHeading = BeamState.heading(orientation, BlockPosition.MOVE_FORWARD);
+		} else {
+			mLaserHeading = NO_LASER;
+		}
+	}
+
+	/**
+	 * Reads the maze definition file, either the text format, the binary format
+	 * (see {@link BinaryMazeFormat}) or a tile file (see {@link TiledMirrorGrid}).
+	 *
+	 * @param file
+	 *            - the maze definition file
+	 * @return <code>Maze</code> of the file
+	 * @throws IOException
+	 *             if the file can not be read
+	 * @throws MazeFormatException
+	 *             if the file is not in the maze definition format
+	 */
+	public static Maze load(Path file) throws IOException, MazeFormatException {
+		return new Maze(LaserExitPointInMirrorMaze.readMazeDefinitionFile(file.toString(), true));
+	}
+
+	/**
+	 * Returns the maze of a definition, the mirror index is built here unless
+	 * the definition has one.
+	 *
+	 * @param definition
+	 *            - the maze definition
+	 * @return <code>Maze</code> of the definition
+	 */
+	public static Maze of(MazeDefinition definition) {
+		return new Maze(definition);
+	}
+
+	/**
+	 * @return a new solver of the maze, to be used by one thread
+	 */
+	public Solver newSolver() {
+		return new Solver(this);
+	}
+
+	/**
+	 * @return number of columns of the maze
+	 */
+	public int columns() {
+		return mGrid.columns();
+	}
+
+	/**
+	 * @return number of rows of the maze
+	 */
+	public int rows() {
+		return mGrid.rows();
+	}
+
+	/**
+	 * @param column
+	 *            - column of the room
+	 * @param row
+	 *            - row of the room
+	 * @return <code>true</code> if the room is in the maze
+	 */
+	public boolean contains(int column, int row) {
+		return column >= 0 && row >= 0 && column < mGrid.columns() && row < mGrid.rows();
+	}
+
+	/**
+	 * @return number of mirrors in the maze
+	 */
+	public int getMirrorCount() {
+		return mIndex.getMirrorCount();
+	}
+
+	/**
+	 * @return <code>true</code> if the maze has beam splitters
+	 */
+	public boolean hasSplitters() {
+		return mSplitters;
+	}
+
+	/**
+	 * @return <code>true</code> if the laser of the definition starts in a room
+	 *         of the maze
+	 */
+	public boolean hasLaser() {
+		return mLaserHeading != NO_LASER;
+	}
+
+	/**
+	 * @return start column of the laser of the definition
+	 */
+	public int getLaserColumn() {
+		return mLaserColumn;
+	}
+
+	/**
+	 * @return start row of the laser of the definition
+	 */
+	public int getLaserRow() {
+		return mLaserRow;
+	}
+
+	/**
+	 * @return start heading of the laser of the definition, {@link #NO_LASER} if
+	 *         it does not start in a room of the maze
+	 */
+	public int getLaserHeading() {
+		return mLaserHeading;
+	}
+
+	MirrorGrid getGrid() {
+		return mGrid;
+	}
+
+	MirrorIndex getIndex() {
+		return mIndex;
+	}
+}
@@ -0,0 +1,222 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * MazeBinaryConverter converts a maze definition file from the text format to
+ * the binary format (see {@link BinaryMazeFormat}), or to a tile file for
+ * boards which do not fit in memory (see {@link TiledMirrorGrid}).
+ * 
+ * <pre>
+ * java MazeBinaryConverter maze_definition.txt maze_definition.lmzb
+ * java MazeBinaryConverter --tiled maze_definition.txt maze_definition.lmzt
+ * </pre>
+ * 
+ * A mirror given twice for the same room replaces the earlier one, as for the
+ * text format. A tile file can not have beam splitters. The tile file is
+ * written to a temporary file next to it which is moved over it once complete,
+ * a failed conversion leaves no tile file behind.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class MazeBinaryConverter implements MazeDefinitionHandler {
+
+	private int mColumns;
+
+	private int mRows;
+
+	private long[] mMirrors = new long[1024];
+
+	private int mMirrorCount;
+
+	/**
+	 * Index of the mirror of each room in the array, to replace the mirrors given
+	 * twice.
+	 */
+	private final LongIntHashMap mRooms = new LongIntHashMap();
+
+	private int[] mLasers = new int[3 * 4];
+
+	private int mLaserCount;
+
+	private boolean mSplitters;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 3 && args[0].equals("--tiled")) {
+			convertToTiles(args[1], args[2]);
+			return;
+		}
+		if (args.length != 2) {
+			System.out.println("please give maze definition input file name and binary output file name.");
+			return;
+		}
+
+		MazeBinaryConverter converter = new MazeBinaryConverter();
+		try {
+			MazeDefinitionParser.parse(Paths.get(args[0]), converter);
+		} catch (NoSuchFileException e) {
+			System.out.println(args[0] + " (No such file or directory)");
+			return;
+		} catch (MazeFormatException e) {
+			System.out.println(e.getLocalizedMessage());
+			return;
+		}
+		converter.write(args[1]);
+		System.out.println("Converted " + converter.mMirrorCount + " mirrors of the " + converter.mColumns + " x "
+				+ converter.mRows + " board to " + args[1]);
+	}
+
+	private static void convertToTiles(String input, String output) throws IOException {
+		Path file = Paths.get(output);
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		TileWriter writer = new TileWriter(temporary);
+		boolean converted = false;
+		try {
+			MazeDefinitionParser.parse(Paths.get(input), writer);
+			writer.close();
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			converted = true;
+		} catch (NoSuchFileException e) {
+			System.out.println(input + " (No such file or directory)");
+			return;
+		} catch (MazeFormatException e) {
+			System.out.println(e.getLocalizedMessage());
+			return;
+		} finally {
+			if (!converted) {
+				try {
+					writer.close();
+				} finally {
+					Files.deleteIfExists(temporary);
+				}
+			}
+		}
+		System.out.println("Converted the " + writer.mGrid.columns() + " x " + writer.mGrid.rows() + " board to "
+				+ output + " in tiles of " + writer.mGrid.getTileSize() + " x " + writer.mGrid.getTileSize()
+				+ " rooms");
+	}
+
+	public void boardSize(int columns, int rows) throws MazeFormatException {
+		if (rows > BeamState.MAX_ROWS || (long) columns * rows >= 1L << 59) {
+			throw new MazeFormatException("The board " + columns + " x " + rows + " is too big.", 0);
+		}
+		mColumns = columns;
+		mRows = rows;
+	}
+
+	public void mirror(int column, int row, int kind, long lineNumber) throws MazeFormatException {
+		if (ReflectiveMirror.isSplitter(kind)) {
+			mSplitters = true;
+		}
+		long room = (long) column * mRows + row;
+		int index = mRooms.get(room, -1);
+		if (index >= 0) {
+			mMirrors[index] = (room << 4) | kind;
+			return;
+		}
+		if (mMirrorCount == mMirrors.length) {
+			if (mMirrorCount >= Integer.MAX_VALUE / 2) {
+				throw new MazeFormatException("There are too many mirrors.", lineNumber);
+			}
+			mMirrors = Arrays.copyOf(mMirrors, mMirrorCount * 2);
+		}
+		mRooms.put(room, mMirrorCount);
+		mMirrors[mMirrorCount++] = (room << 4) | kind;
+	}
+
+	public void laser(int column, int row, int heading, long lineNumber) {
+		if (mLaserCount * 3 == mLasers.length) {
+			mLasers = Arrays.copyOf(mLasers, mLasers.length * 2);
+		}
+		mLasers[mLaserCount * 3] = column;
+		mLasers[mLaserCount * 3 + 1] = row;
+		mLasers[mLaserCount * 3 + 2] = heading;
+		mLaserCount++;
+	}
+
+	/**
+	 * Writes the converted maze to the binary file.
+	 * 
+	 * @param fileName
+	 *            - name of the binary file
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public void write(String fileName) throws IOException {
+		Arrays.parallelSort(mMirrors, 0, mMirrorCount);
+		BinaryMazeFormat.write(Paths.get(fileName), mColumns, mRows, mMirrors, mMirrorCount, mLasers, mLaserCount,
+				mSplitters ? BinaryMazeFormat.FLAG_SPLITTERS : 0);
+	}
+
+	/**
+	 * Puts the mirrors straight into the tile file, the tile cache bounds the
+	 * memory used whatever the size of the board.
+	 */
+	private static class TileWriter implements MazeDefinitionHandler {
+
+		private final Path mFile;
+
+		private TiledMirrorGrid mGrid;
+
+		private int[] mLasers = new int[3 * 4];
+
+		private int mLaserCount;
+
+		private boolean mClosed;
+
+		TileWriter(Path file) {
+			mFile = file;
+		}
+
+		public void boardSize(int columns, int rows) throws MazeFormatException {
+			try {
+				mGrid = TiledMirrorGrid.create(mFile, columns, rows, TiledMirrorGrid.DEFAULT_TILE_SHIFT,
+						TiledMirrorGrid.DEFAULT_CACHE_TILES);
+			} catch (IllegalArgumentException e) {
+				throw new MazeFormatException(e.getMessage(), 0);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		public void mirror(int column, int row, int kind, long lineNumber) throws MazeFormatException {
+			if (ReflectiveMirror.isSplitter(kind)) {
+				// the header of the tile file has no room to tell the tracer
+				throw new MazeFormatException("Beam splitters are not supported in a tile file.", lineNumber);
+			}
+			mGrid.setKind(column, row, kind);
+		}
+
+		public void laser(int column, int row, int heading, long lineNumber) {
+			if (mLaserCount * 3 == mLasers.length) {
+				mLasers = Arrays.copyOf(mLasers, mLasers.length * 2);
+			}
+			mLasers[mLaserCount * 3] = column;
+			mLasers[mLaserCount * 3 + 1] = row;
+			mLasers[mLaserCount * 3 + 2] = heading;
+			mLaserCount++;
+		}
+
+		/**
+		 * Stores the laser entry rooms and closes the tile file, only the first
+		 * call does anything.
+		 */
+		void close() throws IOException {
+			if (mGrid == null || mClosed) {
+				return;
+			}
+			mClosed = true;
+			try {
+				mGrid.setLasers(mLasers, mLaserCount);
+			} finally {
+				mGrid.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * MazeDefinition holds the content of a maze definition file, the mirrors of
+ * the maze and the laser entry room.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class MazeDefinition {
+
+	/**
+	 * Mirrors of the maze
+	 */
+	public MirrorGrid mGrid;
+
+	/**
+	 * Start column position of laser
+	 */
+	public int mLaserStartColumn;
+
+	/**
+	 * Start row position of laser
+	 */
+	public int mLaserStartRow;
+
+	/**
+	 * Orientation of laser (H or V)
+	 */
+	public String mLaserOrientation;
+
+	/**
+	 * true if the maze has beam splitters, the laser is then traced with the
+	 * {@link SplitBeamTracer}
+	 */
+	public boolean mSplitters;
+
+	/**
+	 * Column, row and heading of every laser entry room in the order of the file,
+	 * three numbers per laser, <code>null</code> if only the laser above is known.
+	 * The laser above is the last one.
+	 */
+	public int[] mLasers;
+
+	/**
+	 * Mirrors given more than once in the file, in the order of the file with the
+	 * line number of every mirror which replaces an earlier one of its room
+	 */
+	public List<MazeFormatException> mDuplicates = Collections.emptyList();
+
+	/**
+	 * Index of the mirrors built from the rooms found while the file was loaded,
+	 * <code>null</code> if it was not asked for or the format has no list of its
+	 * mirrors
+	 */
+	public MirrorIndex mIndex;
+
+	/**
+	 * Constructs a new MazeDefinition.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param laserStartColumn
+	 *            - start column position of laser
+	 * @param laserStartRow
+	 *            - start row position of laser
+	 * @param laserOrientation
+	 *            - orientation of laser (H or V)
+	 */
+	public MazeDefinition(MirrorGrid grid, int laserStartColumn, int laserStartRow,
+			String laserOrientation) {
+		mGrid = grid;
+		mLaserStartColumn = laserStartColumn;
+		mLaserStartRow = laserStartRow;
+		mLaserOrientation = laserOrientation;
+	}
+
+	/**
+	 * Constructs a new MazeDefinition which may have beam splitters.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param laserStartColumn
+	 *            - start column position of laser
+	 * @param laserStartRow
+	 *            - start row position of laser
+	 * @param laserOrientation
+	 *            - orientation of laser (H or V)
+	 * @param splitters
+	 *            - true if the maze has beam splitters
+	 */
+	public MazeDefinition(MirrorGrid grid, int laserStartColumn, int laserStartRow, String laserOrientation,
+			boolean splitters) {
+		this(grid, laserStartColumn, laserStartRow, laserOrientation);
+		mSplitters = splitters;
+	}
+
+	/**
+	 * @return number of laser entry rooms of the definition
+	 */
+	public int getLaserCount() {
+		if (mLasers != null) {
+			return mLasers.length / 3;
+		}
+		return mLaserOrientation == null ? 0 : 1;
+	}
+}
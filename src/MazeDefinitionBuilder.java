@@ -0,0 +1,192 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * MazeDefinitionBuilder puts the content of the maze definition file read by
+ * the {@link MazeDefinitionParser} into a {@link MazeDefinition}.
+ * 
+ * If the file has more than one laser entry room the last one is the laser of
+ * the definition, all of them are kept in the order of the file. A mirror
+ * given again for a room replaces the earlier one and is noted as a duplicate
+ * (see {@link MazeDefinition#mDuplicates}). If asked for, the rooms of the
+ * mirrors are kept while the file is read and the mirror index of the
+ * definition is built from them (see {@link MazeDefinition#mIndex}).
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class MazeDefinitionBuilder implements MazeDefinitionHandler {
+
+	/**
+	 * Largest board kept one byte per room, bigger boards are packed 4 bits per
+	 * room.
+	 */
+	private static final long MAX_BYTE_GRID_ROOMS = 1L << 24;
+
+	private final boolean mOffHeap;
+
+	private MutableMirrorGrid mGrid;
+
+	private int mLaserStartColumn = -1;
+
+	private int mLaserStartRow = -1;
+
+	private String mLaserOrientation;
+
+	private int[] mLasers = new int[3 * 4];
+
+	private int mLaserCount;
+
+	private boolean mSplitters;
+
+	private List<MazeFormatException> mDuplicates;
+
+	private boolean mIndexed;
+
+	/**
+	 * Room of every mirror, column in the high 32 bits and row in the low 32
+	 * bits, only if the definition is indexed.
+	 */
+	private long[] mRooms;
+
+	private int mRoomCount;
+
+	/**
+	 * Constructs a new MazeDefinitionBuilder keeping the mirrors on the heap.
+	 */
+	public MazeDefinitionBuilder() {
+		this(false);
+	}
+
+	/**
+	 * Constructs a new MazeDefinitionBuilder.
+	 * 
+	 * @param offHeap
+	 *            - <code>true</code> to keep the mirrors of big boards off the heap
+	 */
+	public MazeDefinitionBuilder(boolean offHeap) {
+		mOffHeap = offHeap;
+	}
+
+	/**
+	 * Sets if the mirror index of the definition is built from the rooms of the
+	 * mirrors read, it is not by default.
+	 * 
+	 * @param indexed
+	 *            - <code>true</code> to build the mirror index
+	 */
+	public void setIndexed(boolean indexed) {
+		mIndexed = indexed;
+	}
+
+	public void boardSize(int columns, int rows) throws MazeFormatException {
+		try {
+			if (!mOffHeap && (long) columns * rows <= MAX_BYTE_GRID_ROOMS) {
+				mGrid = new ByteMirrorGrid(columns, rows);
+			} else {
+				mGrid = new PackedMirrorGrid(columns, rows, mOffHeap);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new MazeFormatException(e.getMessage(), 0);
+		}
+	}
+
+	public void mirror(int column, int row, int kind, long lineNumber) {
+		if (mGrid.kind(column, row) != ReflectiveMirror.KIND_NONE) {
+			if (mDuplicates == null) {
+				mDuplicates = new ArrayList<>();
+			}
+			mDuplicates.add(duplicate(column, row, lineNumber));
+		} else if (mIndexed) {
+			addRoom(column, row);
+		}
+		mGrid.setKind(column, row, kind);
+		if (ReflectiveMirror.isSplitter(kind)) {
+			mSplitters = true;
+		}
+	}
+
+	private void addRoom(int column, int row) {
+		if (mRooms == null) {
+			mRooms = new long[1024];
+		} else if (mRoomCount == mRooms.length) {
+			if (mRoomCount >= Integer.MAX_VALUE / 2) {
+				// too many mirrors to index, the definition is left without an index
+				mIndexed = false;
+				mRooms = null;
+				return;
+			}
+			mRooms = Arrays.copyOf(mRooms, mRoomCount * 2);
+		}
+		mRooms[mRoomCount++] = ((long) column << 32) | row;
+	}
+
+	public void laser(int column, int row, int heading, long lineNumber) {
+		mLaserStartColumn = column;
+		mLaserStartRow = row;
+		mLaserOrientation = BeamState.orientation(heading);
+		if (mLaserCount * 3 == mLasers.length) {
+			mLasers = Arrays.copyOf(mLasers, mLasers.length * 2);
+		}
+		mLasers[mLaserCount * 3] = column;
+		mLasers[mLaserCount * 3 + 1] = row;
+		mLasers[mLaserCount * 3 + 2] = heading;
+		mLaserCount++;
+	}
+
+	/**
+	 * @return the grid the mirrors are put in, <code>null</code> before the board
+	 *         size is known
+	 */
+	MutableMirrorGrid getGrid() {
+		return mGrid;
+	}
+
+	/**
+	 * Notes that beam splitters are placed in the grid without
+	 * {@link #mirror(int, int, int, long)}.
+	 */
+	void addSplitters() {
+		mSplitters = true;
+	}
+
+	/**
+	 * Returns the note of a mirror which replaces an earlier one of its room, the
+	 * same whichever loader reads the file.
+	 * 
+	 * @param column
+	 *            - the column position of the room
+	 * @param row
+	 *            - the row position of the room
+	 * @param lineNumber
+	 *            - line of the mirror which replaces the earlier one
+	 * @return <code>MazeFormatException</code> of the duplicate, not thrown
+	 */
+	static MazeFormatException duplicate(int column, int row, long lineNumber) {
+		return new MazeFormatException(
+				"The mirror " + column + "," + row + " is given more than once, the last one is placed.", lineNumber);
+	}
+
+	/**
+	 * @return <code>MazeDefinition</code> of the file
+	 */
+	public MazeDefinition build() {
+		MazeDefinition definition = new MazeDefinition(mGrid, mLaserStartColumn, mLaserStartRow, mLaserOrientation,
+				mSplitters);
+		if (mLaserCount > 0) {
+			definition.mLasers = Arrays.copyOf(mLasers, mLaserCount * 3);
+		}
+		if (mDuplicates != null) {
+			definition.mDuplicates = Collections.unmodifiableList(mDuplicates);
+		}
+		if (mIndexed && mGrid != null) {
+			long[] rooms = mRooms == null ? new long[0] : mRooms;
+			Arrays.parallelSort(rooms, 0, mRoomCount);
+			definition.mIndex = MirrorIndex.ofRooms(mGrid.columns(), mGrid.rows(), rooms, mRoomCount);
+			mRooms = null;
+		}
+		return definition;
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * MazeDefinitionHandler receives the content of a maze definition file from
+ * the {@link MazeDefinitionParser} as it is read, so the mirrors can go
+ * straight into the structure of the caller.
+ * 
+ * The board size is always given first, then the mirrors and the laser entry
+ * rooms in the order of the file.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public interface MazeDefinitionHandler {
+
+	/**
+	 * Receives the board size.
+	 * 
+	 * @param columns
+	 *            - number of columns in the maze
+	 * @param rows
+	 *            - number of rows in the maze
+	 * @throws MazeFormatException
+	 *             if the handler can not take the maze
+	 */
+	void boardSize(int columns, int rows) throws MazeFormatException;
+
+	/**
+	 * Receives a mirror, the position is already checked against the board size.
+	 * 
+	 * @param column
+	 *            - the column position of the room
+	 * @param row
+	 *            - the row position of the room
+	 * @param kind
+	 *            - one of the <code>ReflectiveMirror.KIND_</code> constants
+	 * @param lineNumber
+	 *            - number of the line in the file
+	 * @throws MazeFormatException
+	 *             if the handler can not take the mirror
+	 */
+	void mirror(int column, int row, int kind, long lineNumber) throws MazeFormatException;
+
+	/**
+	 * Receives a laser entry room.
+	 * 
+	 * @param column
+	 *            - start column position of laser
+	 * @param row
+	 *            - start row position of laser
+	 * @param heading
+	 *            - start heading of laser
+	 * @param lineNumber
+	 *            - number of the line in the file
+	 * @throws MazeFormatException
+	 *             if the handler can not take the laser
+	 */
+	void laser(int column, int row, int heading, long lineNumber) throws MazeFormatException;
+}
@@ -0,0 +1,319 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * MazeDefinitionParser reads the ASCII maze definition file through a NIO
+ * channel and gives the content to a {@link MazeDefinitionHandler}. The bytes
+ * of each line are parsed directly, no <code>String</code> is made for a line,
+ * and the coordinates can have any number of digits.
+ * 
+ * The sections of the file are separated by lines starting with -1. The laser
+ * section can have any number of laser entry rooms, one per line. Spaces and
+ * blank lines are ignored and anything after the laser section is ignored, as
+ * before.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class MazeDefinitionParser {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final int SECTION_SIZE = 0;
+	private static final int SECTION_MIRRORS = 1;
+	private static final int SECTION_LASER = 2;
+
+	private final MazeDefinitionHandler mHandler;
+
+	private byte[] mLine = new byte[128];
+
+	private int mLineLength;
+
+	private int mPos;
+
+	private long mLineNumber;
+
+	private int mSection = SECTION_SIZE;
+
+	private int mColumns = -1;
+
+	private int mRows = -1;
+
+	/**
+	 * Constructs a new MazeDefinitionParser.
+	 * 
+	 * @param handler
+	 *            - receiver of the content of the file
+	 */
+	public MazeDefinitionParser(MazeDefinitionHandler handler) {
+		mHandler = handler;
+	}
+
+	/**
+	 * Constructs a new MazeDefinitionParser for a part of the file which starts in
+	 * the mirror section, for the {@link ParallelMazeLoader}.
+	 * 
+	 * @param handler
+	 *            - receiver of the content of the part
+	 * @param columns
+	 *            - number of columns in the maze
+	 * @param rows
+	 *            - number of rows in the maze
+	 * @param firstLineNumber
+	 *            - line number of the first line of the part
+	 */
+	MazeDefinitionParser(MazeDefinitionHandler handler, int columns, int rows, long firstLineNumber) {
+		mHandler = handler;
+		mSection = SECTION_MIRRORS;
+		mColumns = columns;
+		mRows = rows;
+		mLineNumber = firstLineNumber - 1;
+	}
+
+	/**
+	 * Parses the maze definition file.
+	 * 
+	 * @param file
+	 *            - the maze definition file
+	 * @param handler
+	 *            - receiver of the content of the file
+	 * @throws IOException
+	 *             if the file can not be read
+	 * @throws MazeFormatException
+	 *             if the file is not in the maze definition format
+	 */
+	public static void parse(Path file, MazeDefinitionHandler handler) throws IOException, MazeFormatException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			new MazeDefinitionParser(handler).parse(channel);
+		}
+	}
+
+	/**
+	 * Parses the maze definition from the channel, the channel is read to the end
+	 * but it is not closed.
+	 * 
+	 * @param channel
+	 *            - channel of the maze definition
+	 * @throws IOException
+	 *             if the channel can not be read
+	 * @throws MazeFormatException
+	 *             if the content is not in the maze definition format
+	 */
+	public void parse(ReadableByteChannel channel) throws IOException, MazeFormatException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		while (channel.read(buffer) >= 0) {
+			feed(buffer.array(), buffer.position());
+			buffer.clear();
+		}
+		if (mLineLength > 0) {
+			endLine();
+		}
+
+		if (mColumns < 0) {
+			throw new MazeFormatException("The board size is missing.", 0);
+		}
+	}
+
+	/**
+	 * Parses the bytes of the file from one position to another, the part must
+	 * start at the beginning of a line. The channel is read with positional reads
+	 * so many parsers can read parts of the same channel at once.
+	 * 
+	 * @param channel
+	 *            - channel of the maze definition file
+	 * @param from
+	 *            - position of the first byte of the part
+	 * @param to
+	 *            - position after the last byte of the part
+	 * @throws IOException
+	 *             if the channel can not be read
+	 * @throws MazeFormatException
+	 *             if the content is not in the maze definition format
+	 */
+	void parse(FileChannel channel, long from, long to) throws IOException, MazeFormatException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		long position = from;
+		while (position < to) {
+			buffer.limit((int) Math.min(BUFFER_SIZE, to - position));
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				break;
+			}
+			position += read;
+			feed(buffer.array(), buffer.position());
+			buffer.clear();
+		}
+		if (mLineLength > 0) {
+			endLine();
+		}
+	}
+
+	/**
+	 * Parses the complete lines of the bytes and keeps the rest for the next
+	 * bytes.
+	 */
+	private void feed(byte[] bytes, int end) throws MazeFormatException {
+		int start = 0;
+		for (int i = 0; i < end; i++) {
+			if (bytes[i] == '\n') {
+				appendLine(bytes, start, i);
+				endLine();
+				start = i + 1;
+			}
+		}
+		appendLine(bytes, start, end);
+	}
+
+	/**
+	 * Keeps the bytes of the line until the end of the line is read, a line can
+	 * be split between two reads of the channel.
+	 */
+	private void appendLine(byte[] bytes, int from, int to) {
+		int length = to - from;
+		if (mLineLength + length > mLine.length) {
+			mLine = Arrays.copyOf(mLine, Math.max(mLine.length * 2, mLineLength + length));
+		}
+		System.arraycopy(bytes, from, mLine, mLineLength, length);
+		mLineLength += length;
+	}
+
+	private void endLine() throws MazeFormatException {
+		mLineNumber++;
+		mPos = 0;
+		parseLine();
+		mLineLength = 0;
+	}
+
+	private void parseLine() throws MazeFormatException {
+		skipSpaces();
+		if (mPos == mLineLength) {
+			// blank line
+			return;
+		}
+		if (mLine[mPos] == '-' && mPos + 1 < mLineLength && mLine[mPos + 1] == '1') {
+			mSection++;
+			return;
+		}
+
+		switch (mSection) {
+		case SECTION_SIZE:
+			if (mColumns >= 0) {
+				throw error("The board size is given more than once.");
+			}
+			int columns = readNumber("board columns");
+			expect(',');
+			int rows = readNumber("board rows");
+			expectEnd();
+			if (columns == 0 || rows == 0) {
+				throw error("The board size must not be zero.");
+			}
+			mColumns = columns;
+			mRows = rows;
+			mHandler.boardSize(columns, rows);
+			break;
+		case SECTION_MIRRORS:
+			checkBoardSize();
+			int col = readNumber("mirror column");
+			expect(',');
+			int row = readNumber("mirror row");
+			if (col >= mColumns || row >= mRows) {
+				throw error("The mirror " + col + "," + row + " is out of the board " + mColumns + " x " + mRows + ".");
+			}
+			boolean right = readLeaning() == 'R';
+			int kind = right ? ReflectiveMirror.KIND_RIGHT_TWO_WAY : ReflectiveMirror.KIND_LEFT_TWO_WAY;
+			skipSpaces();
+			if (mPos < mLineLength && mLine[mPos] == 'S') {
+				// beam splitter
+				mPos++;
+				kind = right ? ReflectiveMirror.KIND_RIGHT_SPLITTER : ReflectiveMirror.KIND_LEFT_SPLITTER;
+			} else if (mPos < mLineLength) {
+				// 1-way mirror, right side or left side reflective
+				kind += readLeaning() == 'R' ? 1 : 2;
+			}
+			expectEnd();
+			mHandler.mirror(col, row, kind, mLineNumber);
+			break;
+		case SECTION_LASER:
+			checkBoardSize();
+			int laserCol = readNumber("laser column");
+			expect(',');
+			int laserRow = readNumber("laser row");
+			skipSpaces();
+			int heading;
+			if (mPos < mLineLength && mLine[mPos] == 'H') {
+				heading = BlockPosition.HEADING_HORIZONTAL_FORWARD;
+			} else if (mPos < mLineLength && mLine[mPos] == 'V') {
+				heading = BlockPosition.HEADING_VERTICAL_FORWARD;
+			} else {
+				throw error("The laser orientation must be H or V.");
+			}
+			mPos++;
+			expectEnd();
+			mHandler.laser(laserCol, laserRow, heading, mLineNumber);
+			break;
+		default:
+			// anything after the laser section is ignored
+		}
+	}
+
+	private void checkBoardSize() throws MazeFormatException {
+		if (mColumns < 0) {
+			throw error("The board size is missing.");
+		}
+	}
+
+	private int readNumber(String name) throws MazeFormatException {
+		skipSpaces();
+		int start = mPos;
+		long value = 0;
+		while (mPos < mLineLength && mLine[mPos] >= '0' && mLine[mPos] <= '9') {
+			value = value * 10 + (mLine[mPos] - '0');
+			if (value > Integer.MAX_VALUE) {
+				throw error("The " + name + " is too big.");
+			}
+			mPos++;
+		}
+		if (mPos == start) {
+			throw error("The " + name + " must be a number.");
+		}
+		return (int) value;
+	}
+
+	private int readLeaning() throws MazeFormatException {
+		skipSpaces();
+		if (mPos < mLineLength && (mLine[mPos] == 'R' || mLine[mPos] == 'L')) {
+			return mLine[mPos++];
+		}
+		throw error("The mirror leaning and reflective side must be R or L.");
+	}
+
+	private void expect(char c) throws MazeFormatException {
+		skipSpaces();
+		if (mPos == mLineLength || mLine[mPos] != c) {
+			throw error("'" + c + "' is expected at column " + (mPos + 1) + ".");
+		}
+		mPos++;
+	}
+
+	private void expectEnd() throws MazeFormatException {
+		skipSpaces();
+		if (mPos < mLineLength) {
+			throw error("Unexpected '" + (char) mLine[mPos] + "' at column " + (mPos + 1) + ".");
+		}
+	}
+
+	private void skipSpaces() {
+		while (mPos < mLineLength && (mLine[mPos] == ' ' || mLine[mPos] == '\t' || mLine[mPos] == '\r')) {
+			mPos++;
+		}
+	}
+
+	private MazeFormatException error(String message) {
+		return new MazeFormatException(message, mLineNumber);
+	}
+}
@@ -0,0 +1,39 @@
+/**
+ * MazeFormatException is thrown when the maze definition file is not in the
+ * expected format, the message tells the line of the file with the problem.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class MazeFormatException extends Exception {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -3265119043311480542L;
+
+	private final long mLineNumber;
+
+	/**
+	 * Constructs a new exception with the specified detail message for the given
+	 * line of the maze definition file.
+	 * 
+	 * @param message
+	 *            - the detail message, the line number is added in front of it
+	 * @param lineNumber
+	 *            - number of the line starting with 1, 0 if the problem is not in
+	 *            one line
+	 */
+	public MazeFormatException(String message, long lineNumber) {
+		super(lineNumber > 0 ? "Line " + lineNumber + ": " + message : message);
+		mLineNumber = lineNumber;
+	}
+
+	/**
+	 * @return number of the line starting with 1, 0 if the problem is not in one
+	 *         line
+	 */
+	public long getLineNumber() {
+		return mLineNumber;
+	}
+}
@@ -0,0 +1,377 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/**
+ * MazeGenerator writes maze definition files of any size for scale and soak
+ * testing. The file is written as the mirrors are made, nothing but the output
+ * buffer is kept in memory, and the same seed always gives the same file.
+ * 
+ * <pre>
+ * java MazeGenerator [--size XxY] [--density D] [--one-way R] [--splitters R]
+ *                    [--layout random|snake|trap] [--seed N] output.txt
+ * </pre>
+ * 
+ * The layouts are:
+ * <ul>
+ * <li>random - mirrors in a share D of the rooms, the laser enters a random
+ * room
+ * <li>snake - mirrors at the ends of the rows only, the laser entering 0,0 goes
+ * through every room of the board row by row before it leaves
+ * <li>trap - mirrors in the corners of the board, the laser entering 0,0 goes
+ * round the edge of the board for ever, the inner rooms get random mirrors
+ * </ul>
+ * A share R of the mirrors are 1-way mirrors, and with the splitters option a
+ * share of the random mirrors are beam splitters. The rooms which get a mirror
+ * are chosen by skipping a geometric random number of rooms, so a sparse board
+ * is written in time of its mirrors, not of its rooms.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class MazeGenerator {
+
+	public static final int LAYOUT_RANDOM = 0;
+	public static final int LAYOUT_SNAKE = 1;
+	public static final int LAYOUT_TRAP = 2;
+
+	private static final String[] LAYOUT_NAMES = { "random", "snake", "trap" };
+
+	/**
+	 * The mirror section text of each mirror kind.
+	 */
+	private static final String[] KIND_TEXT = { "", "R", "RR", "RL", "L", "LR", "LL", "RS", "LS" };
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final int mColumns;
+
+	private final int mRows;
+
+	private final long mSeed;
+
+	private double mDensity = 0.1;
+
+	private double mOneWayRatio = 0.5;
+
+	private double mSplitterRatio;
+
+	private int mLayout = LAYOUT_RANDOM;
+
+	private final byte[] mBuffer = new byte[BUFFER_SIZE];
+
+	private int mLength;
+
+	private OutputStream mOut;
+
+	private long mMirrorCount;
+
+	/**
+	 * Constructs a new MazeGenerator.
+	 * 
+	 * @param columns
+	 *            - number of columns in the maze
+	 * @param rows
+	 *            - number of rows in the maze
+	 * @param seed
+	 *            - seed of the random numbers
+	 */
+	public MazeGenerator(int columns, int rows, long seed) {
+		if (columns <= 0 || rows <= 0 || rows > BeamState.MAX_ROWS) {
+			throw new IllegalArgumentException("The board " + columns + " x " + rows + " is not supported.");
+		}
+		mColumns = columns;
+		mRows = rows;
+		mSeed = seed;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int columns = 1000;
+		int rows = 1000;
+		long seed = 1;
+		double density = 0.1;
+		double oneWay = 0.5;
+		double splitters = 0;
+		int layout = LAYOUT_RANDOM;
+		String output = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.startsWith("--") && i + 1 == args.length) {
+					throw new IllegalArgumentException("The value of " + arg + " is missing.");
+				}
+				if (arg.equals("--size")) {
+					String[] size = args[++i].toLowerCase().split("x");
+					if (size.length != 2) {
+						throw new IllegalArgumentException("The size must be given as XxY.");
+					}
+					columns = Integer.parseInt(size[0]);
+					rows = Integer.parseInt(size[1]);
+				} else if (arg.equals("--density")) {
+					density = Double.parseDouble(args[++i]);
+				} else if (arg.equals("--one-way")) {
+					oneWay = Double.parseDouble(args[++i]);
+				} else if (arg.equals("--splitters")) {
+					splitters = Double.parseDouble(args[++i]);
+				} else if (arg.equals("--seed")) {
+					seed = Long.parseLong(args[++i]);
+				} else if (arg.equals("--layout")) {
+					layout = layout(args[++i]);
+				} else {
+					output = arg;
+				}
+			}
+			if (output == null) {
+				System.out.println("please give the maze definition output file name.");
+				return;
+			}
+			MazeGenerator generator = new MazeGenerator(columns, rows, seed);
+			generator.setDensity(density);
+			generator.setOneWayRatio(oneWay);
+			generator.setSplitterRatio(splitters);
+			generator.setLayout(layout);
+			long start = System.nanoTime();
+			generator.write(Paths.get(output));
+			System.out.println("Generated " + generator.getMirrorCount() + " mirrors of the " + columns + " x " + rows
+					+ " " + LAYOUT_NAMES[layout] + " board to " + output + " in "
+					+ (System.nanoTime() - start) / 1000000 + " ms");
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * @param name
+	 *            - name of the layout
+	 * @return one of the <code>LAYOUT_</code> constants
+	 */
+	public static int layout(String name) {
+		for (int layout = 0; layout < LAYOUT_NAMES.length; layout++) {
+			if (LAYOUT_NAMES[layout].equals(name)) {
+				return layout;
+			}
+		}
+		throw new IllegalArgumentException("The layout " + name + " is not supported, use random, snake or trap.");
+	}
+
+	/**
+	 * Sets the share of the rooms with a mirror, for the random layout and the
+	 * inner rooms of the trap layout. 0.1 by default.
+	 * 
+	 * @param density
+	 *            - share of the rooms with a mirror, 0 to 1
+	 */
+	public void setDensity(double density) {
+		mDensity = ratio(density, "density");
+	}
+
+	/**
+	 * Sets the share of the mirrors which are 1-way mirrors, 0.5 by default.
+	 * 
+	 * @param oneWayRatio
+	 *            - share of the 1-way mirrors, 0 to 1
+	 */
+	public void setOneWayRatio(double oneWayRatio) {
+		mOneWayRatio = ratio(oneWayRatio, "one-way ratio");
+	}
+
+	/**
+	 * Sets the share of the random mirrors which are beam splitters, 0 by
+	 * default.
+	 * 
+	 * @param splitterRatio
+	 *            - share of the beam splitters, 0 to 1
+	 */
+	public void setSplitterRatio(double splitterRatio) {
+		mSplitterRatio = ratio(splitterRatio, "splitter ratio");
+	}
+
+	/**
+	 * Sets the layout of the mirrors, random by default.
+	 * 
+	 * @param layout
+	 *            - one of the <code>LAYOUT_</code> constants
+	 */
+	public void setLayout(int layout) {
+		if (layout < LAYOUT_RANDOM || layout > LAYOUT_TRAP) {
+			throw new IllegalArgumentException("The layout " + layout + " is not supported.");
+		}
+		if (layout != LAYOUT_RANDOM && (mColumns < 2 || mRows < 2)) {
+			throw new IllegalArgumentException("The " + LAYOUT_NAMES[layout] + " layout needs at least 2 x 2 rooms.");
+		}
+		mLayout = layout;
+	}
+
+	/**
+	 * @return number of mirrors in the last file written
+	 */
+	public long getMirrorCount() {
+		return mMirrorCount;
+	}
+
+	/**
+	 * Writes the maze definition file.
+	 * 
+	 * @param file
+	 *            - the file to write
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public void write(Path file) throws IOException {
+		try (OutputStream out = Files.newOutputStream(file)) {
+			write(out);
+		}
+	}
+
+	/**
+	 * Writes the maze definition to the stream.
+	 * 
+	 * @param out
+	 *            - stream the definition is written to
+	 * @throws IOException
+	 *             if the stream can not be written
+	 */
+	public void write(OutputStream out) throws IOException {
+		SplittableRandom random = new SplittableRandom(mSeed);
+		mOut = out;
+		mLength = 0;
+		mMirrorCount = 0;
+
+		number(mColumns).append(',').number(mRows).append('\n').append("-1\n");
+		int laserColumn = 0;
+		int laserRow = 0;
+		String laserOrientation = BlockPosition.ORIENTATION_HORIZONTAL;
+		switch (mLayout) {
+		case LAYOUT_SNAKE:
+			writeSnake(random);
+			break;
+		case LAYOUT_TRAP:
+			// the corners send the laser round the edge of the board
+			mirror(mColumns - 1, 0, ReflectiveMirror.KIND_RIGHT_TWO_WAY);
+			mirror(mColumns - 1, mRows - 1, ReflectiveMirror.KIND_LEFT_TWO_WAY);
+			mirror(0, mRows - 1, ReflectiveMirror.KIND_RIGHT_TWO_WAY);
+			mirror(0, 0, ReflectiveMirror.KIND_LEFT_TWO_WAY);
+			writeRandom(random, true);
+			break;
+		default:
+			writeRandom(random, false);
+			laserColumn = random.nextInt(mColumns);
+			laserRow = random.nextInt(mRows);
+			laserOrientation = random.nextBoolean() ? BlockPosition.ORIENTATION_HORIZONTAL
+					: BlockPosition.ORIENTATION_VERTICAL;
+		}
+		append("-1\n").number(laserColumn).append(',').number(laserRow).append(laserOrientation).append("\n-1\n");
+		out.write(mBuffer, 0, mLength);
+		mLength = 0;
+		mOut = null;
+	}
+
+	/**
+	 * Writes random mirrors, the next room with a mirror is a geometric random
+	 * number of rooms away.
+	 * 
+	 * @param inner
+	 *            - <code>true</code> to leave the rooms on the edge of the board
+	 *            empty
+	 */
+	private void writeRandom(SplittableRandom random, boolean inner) throws IOException {
+		if (mDensity == 0) {
+			return;
+		}
+		final long rooms = (long) mColumns * mRows;
+		final double logEmpty = Math.log1p(-mDensity);
+		long room = -1;
+		while (true) {
+			long skip = mDensity >= 1 ? 0 : (long) (Math.log1p(-random.nextDouble()) / logEmpty);
+			room += 1 + skip;
+			if (room >= rooms || room < 0) {
+				return;
+			}
+			int col = (int) (room / mRows);
+			int row = (int) (room - (long) col * mRows);
+			if (inner && (col == 0 || row == 0 || col == mColumns - 1 || row == mRows - 1)) {
+				continue;
+			}
+			int kind;
+			if (mSplitterRatio > 0 && random.nextDouble() < mSplitterRatio) {
+				kind = random.nextBoolean() ? ReflectiveMirror.KIND_RIGHT_SPLITTER
+						: ReflectiveMirror.KIND_LEFT_SPLITTER;
+			} else {
+				kind = random.nextBoolean() ? ReflectiveMirror.KIND_RIGHT_TWO_WAY : ReflectiveMirror.KIND_LEFT_TWO_WAY;
+				if (random.nextDouble() < mOneWayRatio) {
+					kind += 1 + random.nextInt(2);
+				}
+			}
+			mirror(col, row, kind);
+		}
+	}
+
+	/**
+	 * Writes the mirrors which turn the laser down at the end of every row, so it
+	 * goes right along the even rows and left along the odd rows. A turn is made
+	 * by a 1-way mirror facing the laser for the share of the 1-way mirrors.
+	 */
+	private void writeSnake(SplittableRandom random) throws IOException {
+		for (int row = 0; row + 1 < mRows; row++) {
+			boolean oneWay = random.nextDouble() < mOneWayRatio;
+			if ((row & 1) == 0) {
+				// H+ to V+ at the right end, V+ to H- in the row below
+				mirror(mColumns - 1, row,
+						oneWay ? ReflectiveMirror.KIND_RIGHT_LEFT_SIDE : ReflectiveMirror.KIND_RIGHT_TWO_WAY);
+				mirror(mColumns - 1, row + 1,
+						oneWay ? ReflectiveMirror.KIND_LEFT_LEFT_SIDE : ReflectiveMirror.KIND_LEFT_TWO_WAY);
+			} else {
+				// H- to V+ at the left end, V+ to H+ in the row below
+				mirror(0, row, oneWay ? ReflectiveMirror.KIND_LEFT_RIGHT_SIDE : ReflectiveMirror.KIND_LEFT_TWO_WAY);
+				mirror(0, row + 1,
+						oneWay ? ReflectiveMirror.KIND_RIGHT_RIGHT_SIDE : ReflectiveMirror.KIND_RIGHT_TWO_WAY);
+			}
+		}
+	}
+
+	private void mirror(int column, int row, int kind) throws IOException {
+		number(column).append(',').number(row).append(KIND_TEXT[kind]).append('\n');
+		mMirrorCount++;
+		if (mLength > BUFFER_SIZE - 64) {
+			mOut.write(mBuffer, 0, mLength);
+			mLength = 0;
+		}
+	}
+
+	private MazeGenerator append(char c) {
+		mBuffer[mLength++] = (byte) c;
+		return this;
+	}
+
+	private MazeGenerator append(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			mBuffer[mLength++] = (byte) text.charAt(i);
+		}
+		return this;
+	}
+
+	private MazeGenerator number(int value) {
+		// the digits are put in from the end
+		int digits = 1;
+		for (int v = value; v >= 10; v /= 10) {
+			digits++;
+		}
+		int end = mLength + digits;
+		for (int i = end - 1; i >= mLength; i--) {
+			mBuffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		mLength = end;
+		return this;
+	}
+
+	private static double ratio(double value, String name) {
+		if (!(value >= 0 && value <= 1)) {
+			throw new IllegalArgumentException("The " + name + " must be from 0 to 1: " + value);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,43 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * MazePhaseEvent is the JFR event of one phase of solving a maze, committed by
+ * {@link PhaseMetrics}. The counts of the laser are only set for the trace
+ * phase.
+ * 
+ * Recorded with for example
+ * <code>java -XX:StartFlightRecording=filename=maze.jfr LaserExitPointInMirrorMaze maze.txt</code>,
+ * the event costs nothing when no recording is running.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+@Name("mirrormaze.Phase")
+@Label("Maze Phase")
+@Category("Mirror Maze")
+@Description("A phase of solving a maze: parse, build, trace or print")
+public class MazePhaseEvent extends jdk.jfr.Event {
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Allocated")
+	@DataAmount
+	long allocated;
+
+	@Label("Rooms Stepped")
+	long roomsStepped;
+
+	@Label("Mirror Hits")
+	long mirrorHits;
+
+	@Label("One-Way Pass-Throughs")
+	long passThroughs;
+
+	@Label("Trap Checks")
+	long trapChecks;
+}
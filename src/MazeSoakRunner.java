@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * MazeSoakRunner generates mazes of growing size with the {@link MazeGenerator}
+ * and solves each of them with {@link LaserExitPointInMirrorMaze} a few times,
+ * then reports the throughput of the parse and the trace and the peak memory
+ * used, one line per size.
+ * 
+ * <pre>
+ * java MazeSoakRunner [--sizes 1000,5000,20000] [--density D] [--one-way R]
+ *                     [--layout random|snake|trap] [--seed N] [--runs N]
+ *                     [--all-doors] [--dir path]
+ * </pre>
+ * 
+ * The boards are square, the generated files are deleted after their runs.
+ * The median time of the runs is reported. The peak heap and the peak off-heap
+ * memory, the direct and mapped buffers of grids kept out of the heap, are the
+ * highest of the runs, sampled by a background thread while a run goes on, so
+ * a peak shorter than the sample interval can be missed.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class MazeSoakRunner {
+
+	/**
+	 * Time between the samples of the memory used, in milliseconds.
+	 */
+	private static final long SAMPLE_MILLIS = 5;
+
+	public static void main(String[] args) throws IOException {
+		int[] sizes = { 1000, 5000, 20000 };
+		double density = 0.05;
+		double oneWay = 0.5;
+		int layout = MazeGenerator.LAYOUT_RANDOM;
+		long seed = 1;
+		int runs = 3;
+		boolean allDoors = false;
+		Path dir = Paths.get(System.getProperty("java.io.tmpdir"));
+		List<MazeGenerator> generators = new ArrayList<>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("--all-doors")) {
+					allDoors = true;
+					continue;
+				}
+				if (i + 1 == args.length) {
+					throw new IllegalArgumentException("The value of " + arg + " is missing.");
+				}
+				String value = args[++i];
+				if (arg.equals("--sizes")) {
+					sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+				} else if (arg.equals("--density")) {
+					density = Double.parseDouble(value);
+				} else if (arg.equals("--one-way")) {
+					oneWay = Double.parseDouble(value);
+				} else if (arg.equals("--layout")) {
+					layout = MazeGenerator.layout(value);
+				} else if (arg.equals("--seed")) {
+					seed = Long.parseLong(value);
+				} else if (arg.equals("--runs")) {
+					runs = Integer.parseInt(value);
+				} else if (arg.equals("--dir")) {
+					dir = Paths.get(value);
+				} else {
+					throw new IllegalArgumentException("The option " + arg + " is not supported.");
+				}
+			}
+			if (runs < 1) {
+				throw new IllegalArgumentException("The number of runs must be positive: " + runs);
+			}
+			// the sizes are checked before the first run
+			for (int size : sizes) {
+				MazeGenerator generator = new MazeGenerator(size, size, seed);
+				generator.setDensity(density);
+				generator.setOneWayRatio(oneWay);
+				generator.setLayout(layout);
+				generators.add(generator);
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getLocalizedMessage());
+			return;
+		}
+
+		for (int i = 0; i < sizes.length; i++) {
+			int size = sizes[i];
+			MazeGenerator generator = generators.get(i);
+			Path file = Files.createTempFile(dir, "soak-" + size + "-", ".txt");
+			try {
+				generator.write(file);
+				System.out.println(run(file, size, generator.getMirrorCount(), allDoors, runs));
+			} catch (MazeFormatException e) {
+				System.out.println(size + " x " + size + ": " + e.getLocalizedMessage());
+			} finally {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	/**
+	 * Solves the maze of the file the given number of times.
+	 * 
+	 * @return the report line of the size
+	 */
+	private static String run(Path file, int size, long mirrors, boolean allDoors, int runs)
+			throws IOException, MazeFormatException {
+		long bytes = Files.size(file);
+		long[] parseNanos = new long[runs];
+		long[] solveNanos = new long[runs];
+		long rooms = 0;
+		PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+		MemorySampler sampler = new MemorySampler();
+		sampler.start();
+		try {
+			for (int run = 0; run < runs; run++) {
+				System.gc();
+				PhaseMetrics metrics = new PhaseMetrics();
+				long start = System.nanoTime();
+				MazeDefinition maze = LaserExitPointInMirrorMaze.readMazeDefinitionFile(file.toString());
+				long parsed = System.nanoTime();
+				sampler.sample();
+				LaserExitPointInMirrorMaze.solveMazeDefinition(maze, allDoors, BeamTracer.PATH_NONE, out, metrics);
+				long solved = System.nanoTime();
+				sampler.sample();
+
+				parseNanos[run] = parsed - start;
+				solveNanos[run] = solved - parsed;
+				rooms = metrics.getRoomsStepped();
+			}
+		} finally {
+			sampler.interrupt();
+		}
+		long parse = median(parseNanos);
+		long solve = median(solveNanos);
+		return String.format("%d x %d: %d mirrors, %.1f MB, parse %.1f ms (%.1f MB/s), solve %.1f ms", size, size,
+				mirrors, bytes / 1e6, parse / 1e6, bytes / 1e6 / (parse / 1e9), solve / 1e6)
+				+ (allDoors ? "" : String.format(" (%d rooms, %.1f M rooms/s)", rooms, rooms / 1e6 / (solve / 1e9)))
+				+ String.format(", peak heap %.1f MB, peak off-heap %.1f MB", sampler.mPeakHeap / 1e6,
+						sampler.mPeakOffHeap / 1e6);
+	}
+
+	/**
+	 * Samples the heap used and the memory of the direct and mapped buffers
+	 * until it is interrupted, and keeps the highest of each.
+	 */
+	private static final class MemorySampler extends Thread {
+
+		private final MemoryMXBean mMemory = ManagementFactory.getMemoryMXBean();
+
+		private final List<BufferPoolMXBean> mBufferPools = ManagementFactory
+				.getPlatformMXBeans(BufferPoolMXBean.class);
+
+		volatile long mPeakHeap;
+
+		volatile long mPeakOffHeap;
+
+		MemorySampler() {
+			super("memory-sampler");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!isInterrupted()) {
+				sample();
+				try {
+					Thread.sleep(SAMPLE_MILLIS);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+
+		synchronized void sample() {
+			mPeakHeap = Math.max(mPeakHeap, mMemory.getHeapMemoryUsage().getUsed());
+			long offHeap = 0;
+			for (BufferPoolMXBean pool : mBufferPools) {
+				offHeap += pool.getMemoryUsed();
+			}
+			mPeakOffHeap = Math.max(mPeakOffHeap, offHeap);
+		}
+	}
+
+	private static long median(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+}
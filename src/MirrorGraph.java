@@ -0,0 +1,493 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * MirrorGraph is the maze compiled to a graph of flat arrays, so a laser is
+ * traced by following the links from mirror to mirror without looking at the
+ * grid or searching the {@link MirrorIndex} again.
+ *
+ * A node of the graph is a mirror together with the heading the laser leaves
+ * it with, 4 nodes per mirror, which is the state of the laser in the room of
+ * the mirror. Every node links to the node of the next mirror the laser meets,
+ * with the mirror of that room applied, or to the exit when the laser goes
+ * straight out of the maze, and keeps the number of steps to it. Only the
+ * first jump from the start room to the first mirror is looked up in the
+ * index. The trap of a laser which never leaves the maze is found with Brent's
+ * cycle finder over the nodes, so a trace allocates nothing but its result and
+ * one graph can be shared by any number of threads.
+ *
+ * The graph takes 8 bytes per node and 13 bytes per mirror for the index, the
+ * columns and the kinds, about 45 x M bytes for M mirrors, and its file about
+ * 37 x M bytes. It is written to a graph file and read back by a later run of
+ * the same maze instead of being built again, the file holds the SHA-256 hash
+ * of the maze definition file (see {@link ExitStore#hash(Path)}) it was built
+ * from, so the graph of another maze is never used. Mazes with beam splitters
+ * have more than one link out of a node and are not compiled.
+ *
+ * @author Bankim Aghera
+ *
+ */
+public class MirrorGraph {
+
+	/**
+	 * "LMZG" at the start of every graph file.
+	 */
+	public static final int MAGIC = 0x4C4D5A47;
+
+	public static final int VERSION = 2;
+
+	/**
+	 * Link of a node whose laser leaves the maze.
+	 */
+	private static final int EXIT = -1;
+
+	/**
+	 * Size of the hash of the maze definition file.
+	 */
+	private static final int HASH_SIZE = 32;
+
+	private static final int HEADER_SIZE = 24 + HASH_SIZE;
+
+	/**
+	 * Size of the buffer the arrays are written and read through.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final int mColumns;
+
+	private final int mRows;
+
+	private final MirrorIndex mIndex;
+
+	/**
+	 * Kind of every mirror, by mirror number.
+	 */
+	private final byte[] mKinds;
+
+	/**
+	 * Column of every mirror, by mirror number.
+	 */
+	private final int[] mMirrorColumns;
+
+	/**
+	 * Next node of every node, <code>EXIT</code> if the laser leaves the maze.
+	 */
+	private final int[] mNext;
+
+	/**
+	 * Steps to the next node of every node, or to the edge of the maze for a
+	 * node whose laser leaves it.
+	 */
+	private final int[] mDistance;
+
+	/**
+	 * Compiles the graph of the maze.
+	 *
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @throws IllegalArgumentException
+	 *             if the maze has beam splitters
+	 */
+	public MirrorGraph(MirrorGrid grid) {
+		this(grid, new MirrorIndex(grid));
+	}
+
+	/**
+	 * Compiles the graph of the maze using an existing mirror index.
+	 *
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param index
+	 *            - index of the mirrors of the maze
+	 * @throws IllegalArgumentException
+	 *             if the maze has beam splitters
+	 */
+	public MirrorGraph(MirrorGrid grid, MirrorIndex index) {
+		if (grid.rows() > BeamState.MAX_ROWS) {
+			throw new IllegalArgumentException("The maze can not have more than " + BeamState.MAX_ROWS + " rows.");
+		}
+		if (index.getMirrorCount() > Integer.MAX_VALUE / 4) {
+			throw new IllegalArgumentException("The maze has too many mirrors: " + index.getMirrorCount());
+		}
+		mColumns = grid.columns();
+		mRows = grid.rows();
+		mIndex = index;
+
+		final int mirrors = index.getMirrorCount();
+		final int nodes = mirrors * 4;
+		mKinds = new byte[mirrors];
+		mMirrorColumns = new int[mirrors];
+		int[] columnStart = index.getColumnStart();
+		int[] columnRows = index.getColumnRows();
+		for (int col = 0; col < mColumns; col++) {
+			for (int mirror = columnStart[col]; mirror < columnStart[col + 1]; mirror++) {
+				int kind = grid.kind(col, columnRows[mirror]);
+				if (ReflectiveMirror.isSplitter(kind)) {
+					throw new IllegalArgumentException("The maze has beam splitters, it can not be compiled.");
+				}
+				mKinds[mirror] = (byte) kind;
+				mMirrorColumns[mirror] = col;
+			}
+		}
+
+		mNext = new int[nodes];
+		mDistance = new int[nodes];
+		for (int node = 0; node < nodes; node++) {
+			int col = mMirrorColumns[node >>> 2];
+			int row = columnRows[node >>> 2];
+			int heading = node & 3;
+			int target = index.next(col, row, heading);
+			if (target < 0) {
+				mNext[node] = EXIT;
+				mDistance[node] = toEdge(col, row, heading);
+			} else if ((heading & 1) == 0) {
+				mNext[node] = node(target, row, heading);
+				mDistance[node] = Math.abs(target - col);
+			} else {
+				mNext[node] = node(col, target, heading);
+				mDistance[node] = Math.abs(target - row);
+			}
+		}
+	}
+
+	private MirrorGraph(int columns, int rows, MirrorIndex index, byte[] kinds, int[] next, int[] distance) {
+		mColumns = columns;
+		mRows = rows;
+		mIndex = index;
+		mKinds = kinds;
+		mNext = next;
+		mDistance = distance;
+		mMirrorColumns = new int[kinds.length];
+		int[] columnStart = index.getColumnStart();
+		for (int col = 0; col < columns; col++) {
+			for (int mirror = columnStart[col]; mirror < columnStart[col + 1]; mirror++) {
+				mMirrorColumns[mirror] = col;
+			}
+		}
+	}
+
+	/**
+	 * Follows a laser starting in a room of the maze, the mirror of the start room
+	 * is not applied, as for {@link BeamTracer#trace(int, int, int, TrapDetector)}.
+	 *
+	 * @param column
+	 *            - start column of the laser
+	 * @param row
+	 *            - start row of the laser
+	 * @param heading
+	 *            - start heading of the laser
+	 * @return <code>TraceResult</code> of the laser
+	 * @throws IllegalArgumentException
+	 *             if the start room is not in the maze
+	 */
+	public TraceResult trace(int column, int row, int heading) {
+		if (column < 0 || row < 0 || column >= mColumns || row >= mRows || heading < 0 || heading > 3) {
+			throw new IllegalArgumentException(
+					"The laser start " + column + "," + row + " heading " + heading + " is not in the maze.");
+		}
+		final int[] next = mNext;
+		final int[] distance = mDistance;
+		final long start = BeamState.pack(column, row, heading);
+
+		// the state in the room of a mirror is its node, else the laser goes
+		// straight to the first mirror
+		int first;
+		long firstSteps;
+		int mirror = mIndex.getMirrorNumber(column, row);
+		if (mirror >= 0) {
+			first = mirror * 4 + heading;
+			firstSteps = 0;
+		} else {
+			int target = mIndex.next(column, row, heading);
+			if (target < 0) {
+				long steps = toEdge(column, row, heading);
+				return TraceResult.exited(start, straight(start, steps), steps);
+			}
+			if ((heading & 1) == 0) {
+				first = node(target, row, heading);
+				firstSteps = Math.abs(target - column);
+			} else {
+				first = node(column, target, heading);
+				firstSteps = Math.abs(target - row);
+			}
+		}
+
+		// Brent's cycle finder, the hare goes on until it leaves the maze or
+		// meets the tortoise
+		long steps = firstSteps;
+		int tortoise = first;
+		int hare = first;
+		int power = 1;
+		int loopNodes = 0;
+		while (true) {
+			int following = next[hare];
+			if (following == EXIT) {
+				long edge = distance[hare];
+				return TraceResult.exited(start, straight(nodeState(hare), edge), steps + edge);
+			}
+			steps += distance[hare];
+			hare = following;
+			loopNodes++;
+			if (hare == tortoise) {
+				break;
+			}
+			if (loopNodes == power) {
+				tortoise = hare;
+				power <<= 1;
+				loopNodes = 0;
+			}
+		}
+
+		// the entry node is where two nodes one round of the loop apart meet
+		hare = first;
+		for (int i = 0; i < loopNodes; i++) {
+			hare = next[hare];
+		}
+		tortoise = first;
+		long entrySteps = firstSteps;
+		while (tortoise != hare) {
+			entrySteps += distance[tortoise];
+			tortoise = next[tortoise];
+			hare = next[hare];
+		}
+		long loopSteps = 0;
+		for (int i = 0; i < loopNodes; i++) {
+			loopSteps += distance[hare];
+			hare = next[hare];
+		}
+
+		// a start in an empty room of the loop is the first state which repeats,
+		// the loop then comes to the start room from the mirror behind it
+		if (mirror < 0 && tortoise == first) {
+			int behind = mIndex.next(column, row, heading ^ 2);
+			if (behind >= 0) {
+				int node = ((heading & 1) == 0 ? mIndex.getMirrorNumber(behind, row)
+						: mIndex.getMirrorNumber(column, behind)) * 4 + heading;
+				int loopNode = first;
+				for (int i = 0; i < loopNodes; i++) {
+					if (loopNode == node) {
+						return TraceResult.trapped(start,
+								new LaserTrappedException(BeamState.toBlockPosition(start), 0, loopSteps));
+					}
+					loopNode = next[loopNode];
+				}
+			}
+		}
+		return TraceResult.trapped(start,
+				new LaserTrappedException(BeamState.toBlockPosition(nodeState(tortoise)), entrySteps, loopSteps));
+	}
+
+	/**
+	 * @return number of columns of the maze
+	 */
+	public int columns() {
+		return mColumns;
+	}
+
+	/**
+	 * @return number of rows of the maze
+	 */
+	public int rows() {
+		return mRows;
+	}
+
+	/**
+	 * @return number of nodes of the graph, 4 per mirror
+	 */
+	public int getNodeCount() {
+		return mNext.length;
+	}
+
+	/**
+	 * Writes the graph to a file, through a temporary file which is moved over
+	 * it, so a run reading the file never sees half of it.
+	 *
+	 * @param file
+	 *            - the graph file
+	 * @param mazeHash
+	 *            - SHA-256 hash of the maze definition file
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public void write(Path file, byte[] mazeHash) throws IOException {
+		if (mazeHash.length != HASH_SIZE) {
+			throw new IllegalArgumentException("The hash of the maze must have " + HASH_SIZE + " bytes.");
+		}
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(mColumns).putInt(mRows).putInt(mKinds.length).putInt(0)
+					.put(mazeHash);
+			buffer.flip();
+			writeFully(channel, buffer);
+			writeInts(channel, buffer, mIndex.getColumnStart());
+			writeInts(channel, buffer, mIndex.getColumnRows());
+			writeInts(channel, buffer, mNext);
+			writeInts(channel, buffer, mDistance);
+			for (int from = 0; from < mKinds.length; from += BUFFER_SIZE) {
+				buffer.clear();
+				buffer.put(mKinds, from, Math.min(BUFFER_SIZE, mKinds.length - from)).flip();
+				writeFully(channel, buffer);
+			}
+			channel.force(false);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a graph written by {@link #write(Path, byte[])}.
+	 *
+	 * @param file
+	 *            - the graph file
+	 * @param mazeHash
+	 *            - SHA-256 hash of the maze definition file the graph is read for
+	 * @return <code>MirrorGraph</code> of the file
+	 * @throws IOException
+	 *             if the file can not be read, is not a graph file or is the
+	 *             graph of another maze
+	 */
+	public static MirrorGraph read(Path file, byte[] mazeHash) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buffer.limit(HEADER_SIZE);
+			readFully(channel, buffer);
+			buffer.flip();
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("The file " + file + " is not a graph file.");
+			}
+			if (buffer.getInt() != VERSION) {
+				throw new IOException("The graph file version of " + file + " is not supported.");
+			}
+			int columns = buffer.getInt();
+			int rows = buffer.getInt();
+			int mirrors = buffer.getInt();
+			buffer.getInt();
+			byte[] hash = new byte[HASH_SIZE];
+			buffer.get(hash);
+			if (!Arrays.equals(hash, mazeHash)) {
+				throw new IOException("The graph file " + file + " is of another maze.");
+			}
+			if (columns < 1 || rows < 1 || rows > BeamState.MAX_ROWS || mirrors < 0 || mirrors > Integer.MAX_VALUE / 4
+					|| (long) mirrors > (long) columns * rows || channel.size() != HEADER_SIZE
+							+ 4L * (columns + 1) + 4L * mirrors + 8L * 4 * mirrors + mirrors) {
+				throw new IOException("The graph file " + file + " is damaged.");
+			}
+
+			int[] columnStart = readInts(channel, buffer, columns + 1);
+			int[] columnRows = readInts(channel, buffer, mirrors);
+			int[] next = readInts(channel, buffer, mirrors * 4);
+			int[] distance = readInts(channel, buffer, mirrors * 4);
+			byte[] kinds = new byte[mirrors];
+			for (int from = 0; from < mirrors; from += BUFFER_SIZE) {
+				buffer.clear();
+				buffer.limit(Math.min(BUFFER_SIZE, mirrors - from));
+				readFully(channel, buffer);
+				buffer.flip();
+				buffer.get(kinds, from, buffer.remaining());
+			}
+
+			// the links are followed without checks, so the file is checked here
+			boolean valid = columnStart[0] == 0 && columnStart[columns] == mirrors;
+			for (int col = 0; valid && col < columns; col++) {
+				valid = columnStart[col] <= columnStart[col + 1];
+				for (int i = columnStart[col]; valid && i < columnStart[col + 1]; i++) {
+					valid = columnRows[i] >= 0 && columnRows[i] < rows
+							&& (i == columnStart[col] || columnRows[i - 1] < columnRows[i]);
+				}
+			}
+			for (int mirror = 0; valid && mirror < mirrors; mirror++) {
+				valid = kinds[mirror] > ReflectiveMirror.KIND_NONE && kinds[mirror] < ReflectiveMirror.KIND_COUNT
+						&& !ReflectiveMirror.isSplitter(kinds[mirror]);
+			}
+			for (int node = 0; valid && node < next.length; node++) {
+				valid = next[node] >= EXIT && next[node] < next.length && distance[node] >= 0;
+			}
+			if (!valid) {
+				throw new IOException("The graph file " + file + " is damaged.");
+			}
+			return new MirrorGraph(columns, rows, new MirrorIndex(rows, columnStart, columnRows), kinds, next,
+					distance);
+		}
+	}
+
+	/**
+	 * @return node of the laser leaving the mirror of the room
+	 */
+	private int node(int col, int row, int heading) {
+		int mirror = mIndex.getMirrorNumber(col, row);
+		return mirror * 4 + ReflectiveMirror.reflect(mKinds[mirror], heading);
+	}
+
+	private long nodeState(int node) {
+		return BeamState.pack(mMirrorColumns[node >>> 2], mIndex.getMirrorRow(node >>> 2), node & 3);
+	}
+
+	/**
+	 * @return number of steps from the room to the last room in the heading
+	 */
+	private int toEdge(int col, int row, int heading) {
+		switch (heading) {
+		case BlockPosition.HEADING_HORIZONTAL_FORWARD:
+			return mColumns - 1 - col;
+		case BlockPosition.HEADING_VERTICAL_FORWARD:
+			return mRows - 1 - row;
+		case BlockPosition.HEADING_HORIZONTAL_BACKWARD:
+			return col;
+		default:
+			return row;
+		}
+	}
+
+	private static long straight(long state, long steps) {
+		int heading = BeamState.heading(state);
+		return BeamState.pack(BeamState.column(state) + (int) (BeamState.columnStep(heading) * steps),
+				BeamState.row(state) + (int) (BeamState.rowStep(heading) * steps), heading);
+	}
+
+	private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException {
+		final int chunk = BUFFER_SIZE / 4;
+		for (int from = 0; from < values.length; from += chunk) {
+			int count = Math.min(chunk, values.length - from);
+			buffer.clear();
+			buffer.asIntBuffer().put(values, from, count);
+			buffer.limit(count * 4);
+			writeFully(channel, buffer);
+		}
+	}
+
+	private static int[] readInts(FileChannel channel, ByteBuffer buffer, int length) throws IOException {
+		final int chunk = BUFFER_SIZE / 4;
+		int[] values = new int[length];
+		for (int from = 0; from < length; from += chunk) {
+			int count = Math.min(chunk, length - from);
+			buffer.clear();
+			buffer.limit(count * 4);
+			readFully(channel, buffer);
+			buffer.flip();
+			buffer.asIntBuffer().get(values, from, count);
+		}
+		return values;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * MirrorGrid gives the kind of the mirror in every room of the maze, it is the
+ * view of the maze the tracer reads the mirrors through.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public interface MirrorGrid {
+
+	/**
+	 * @return number of columns in the maze
+	 */
+	int columns();
+
+	/**
+	 * @return number of rows in the maze
+	 */
+	int rows();
+
+	/**
+	 * Returns the kind of the mirror in the room.
+	 * 
+	 * @param column
+	 *            - the column position of the room
+	 * @param row
+	 *            - the row position of the room
+	 * @return one of the <code>ReflectiveMirror.KIND_</code> constants
+	 */
+	int kind(int column, int row);
+
+	/**
+	 * Returns the mirror in the room. The mirrors of the same kind are the same
+	 * shared instance, see {@link ReflectiveMirror#of(int)}.
+	 * 
+	 * @param column
+	 *            - the column position of the room
+	 * @param row
+	 *            - the row position of the room
+	 * @return <code>ReflectiveMirror</code> of the room, <code>null</code> if the
+	 *         room is empty
+	 */
+	default ReflectiveMirror mirror(int column, int row) {
+		return ReflectiveMirror.of(kind(column, row));
+	}
+}
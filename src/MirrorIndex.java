@@ -0,0 +1,285 @@
+import java.util.Arrays;
+
+/**
+ * MirrorIndex keeps the sorted positions of the mirrors of every row and every
+ * column of the maze, so the tracer can jump from one mirror straight to the
+ * next mirror in the heading of the laser instead of crossing the empty rooms
+ * one at a time.
+ * 
+ * The positions are kept in compressed form, one array with the mirrors of all
+ * rows one after another and one array with the start of each row in it, and
+ * the same for the columns. The memory used is two <code>int</code> per mirror
+ * plus one <code>int</code> per row and per column.
+ * 
+ * The index of a grid read from a file is best built from the rooms of the
+ * mirrors the loader found (see {@link #ofRooms(int, int, long[], int)}), the
+ * constructor of a grid reads every room of it, which is slow for a grid kept
+ * in a file.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class MirrorIndex {
+
+	private final int[] mRowStart;
+
+	private final int[] mRowColumns;
+
+	private final int[] mColumnStart;
+
+	private final int[] mColumnRows;
+
+	/**
+	 * Constructs a new MirrorIndex of all the mirrors in the maze.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 */
+	public MirrorIndex(MirrorGrid grid) {
+		final int columns = grid.columns();
+		final int rows = grid.rows();
+
+		// count the mirrors of each row and column first
+		mRowStart = new int[rows + 1];
+		mColumnStart = new int[columns + 1];
+		long count = 0;
+		for (int col = 0; col < columns; col++) {
+			for (int row = 0; row < rows; row++) {
+				if (grid.kind(col, row) != ReflectiveMirror.KIND_NONE) {
+					mRowStart[row + 1]++;
+					mColumnStart[col + 1]++;
+					count++;
+				}
+			}
+		}
+		if (count > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("The maze has too many mirrors to index: " + count);
+		}
+		for (int row = 0; row < rows; row++) {
+			mRowStart[row + 1] += mRowStart[row];
+		}
+		for (int col = 0; col < columns; col++) {
+			mColumnStart[col + 1] += mColumnStart[col];
+		}
+
+		// the rooms are visited in column order, so each list comes out sorted
+		mRowColumns = new int[(int) count];
+		mColumnRows = new int[(int) count];
+		int[] rowNext = Arrays.copyOf(mRowStart, rows);
+		int columnNext = 0;
+		for (int col = 0; col < columns; col++) {
+			for (int row = 0; row < rows; row++) {
+				if (grid.kind(col, row) != ReflectiveMirror.KIND_NONE) {
+					mRowColumns[rowNext[row]++] = col;
+					mColumnRows[columnNext++] = row;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Constructs a new MirrorIndex from the mirrors of every column, as given by
+	 * {@link #getColumnStart()} and {@link #getColumnRows()} of another index, the
+	 * mirrors of the rows are worked out from them.
+	 *
+	 * @param rows
+	 *            - number of rows of the maze
+	 * @param columnStart
+	 *            - start of the mirrors of each column, one more than the columns
+	 * @param columnRows
+	 *            - rows of the mirrors of all columns, sorted in each column
+	 */
+	MirrorIndex(int rows, int[] columnStart, int[] columnRows) {
+		final int columns = columnStart.length - 1;
+		mColumnStart = columnStart;
+		mColumnRows = columnRows;
+		mRowStart = new int[rows + 1];
+		for (int row : columnRows) {
+			mRowStart[row + 1]++;
+		}
+		for (int row = 0; row < rows; row++) {
+			mRowStart[row + 1] += mRowStart[row];
+		}
+		mRowColumns = new int[columnRows.length];
+		int[] rowNext = Arrays.copyOf(mRowStart, rows);
+		for (int col = 0; col < columns; col++) {
+			for (int i = columnStart[col]; i < columnStart[col + 1]; i++) {
+				mRowColumns[rowNext[columnRows[i]]++] = col;
+			}
+		}
+	}
+
+	/**
+	 * Returns the MirrorIndex of the mirrors in the given rooms, the grid is not
+	 * read.
+	 * 
+	 * @param columns
+	 *            - number of columns of the maze
+	 * @param rows
+	 *            - number of rows of the maze
+	 * @param rooms
+	 *            - room of every mirror, the column in the high 32 bits and the
+	 *            row in the low 32 bits, sorted with no room twice
+	 * @param count
+	 *            - number of mirrors in the array
+	 * @return <code>MirrorIndex</code> of the mirrors
+	 */
+	static MirrorIndex ofRooms(int columns, int rows, long[] rooms, int count) {
+		int[] columnStart = new int[columns + 1];
+		int[] columnRows = new int[count];
+		for (int i = 0; i < count; i++) {
+			columnStart[(int) (rooms[i] >>> 32) + 1]++;
+			columnRows[i] = (int) rooms[i];
+		}
+		for (int col = 0; col < columns; col++) {
+			columnStart[col + 1] += columnStart[col];
+		}
+		return new MirrorIndex(rows, columnStart, columnRows);
+	}
+
+	/**
+	 * @return start of the mirrors of each column in {@link #getColumnRows()},
+	 *         the array of the index
+	 */
+	int[] getColumnStart() {
+		return mColumnStart;
+	}
+
+	/**
+	 * @return rows of the mirrors of all columns one after another, the array of
+	 *         the index
+	 */
+	int[] getColumnRows() {
+		return mColumnRows;
+	}
+
+	/**
+	 * @param grid
+	 *            - mirrors of the maze of the index
+	 * @return <code>true</code> if a mirror of the index is a beam splitter
+	 */
+	public boolean hasSplitters(MirrorGrid grid) {
+		for (int col = 0; col + 1 < mColumnStart.length; col++) {
+			for (int i = mColumnStart[col]; i < mColumnStart[col + 1]; i++) {
+				if (ReflectiveMirror.isSplitter(grid.kind(col, mColumnRows[i]))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return number of mirrors in the maze
+	 */
+	public int getMirrorCount() {
+		return mRowColumns.length;
+	}
+
+	/**
+	 * Returns the number of the mirror of the room, the mirrors are numbered from
+	 * 0 column by column.
+	 * 
+	 * @param column
+	 *            - the column position of the room
+	 * @param row
+	 *            - the row position of the room
+	 * @return number of the mirror, -1 if the room has no mirror
+	 */
+	public int getMirrorNumber(int column, int row) {
+		int index = Arrays.binarySearch(mColumnRows, mColumnStart[column], mColumnStart[column + 1], row);
+		return index >= 0 ? index : -1;
+	}
+
+	/**
+	 * @param number
+	 *            - number of the mirror
+	 * @return the column position of the mirror
+	 */
+	public int getMirrorColumn(int number) {
+		// the last column whose mirrors start at or before the number
+		int low = 0;
+		int high = mColumnStart.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (mColumnStart[mid] <= number) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param number
+	 *            - number of the mirror
+	 * @return the row position of the mirror
+	 */
+	public int getMirrorRow(int number) {
+		return mColumnRows[number];
+	}
+
+	/**
+	 * Finds the next mirror the laser meets when it leaves the room with the given
+	 * heading.
+	 * 
+	 * @param column
+	 *            - the column position of the room
+	 * @param row
+	 *            - the row position of the room
+	 * @param heading
+	 *            - heading of the laser
+	 * @return the column of the next mirror for horizontal heading or the row of
+	 *         the next mirror for vertical heading, -1 if there is no mirror till
+	 *         the edge of the maze
+	 */
+	public int next(int column, int row, int heading) {
+		switch (heading) {
+		case BlockPosition.HEADING_HORIZONTAL_FORWARD:
+			return higher(mRowColumns, mRowStart[row], mRowStart[row + 1], column);
+		case BlockPosition.HEADING_VERTICAL_FORWARD:
+			return higher(mColumnRows, mColumnStart[column], mColumnStart[column + 1], row);
+		case BlockPosition.HEADING_HORIZONTAL_BACKWARD:
+			return lower(mRowColumns, mRowStart[row], mRowStart[row + 1], column);
+		default:
+			return lower(mColumnRows, mColumnStart[column], mColumnStart[column + 1], row);
+		}
+	}
+
+	/**
+	 * @return the smallest value in the sorted range which is bigger than the key,
+	 *         -1 if there is none
+	 */
+	private static int higher(int[] values, int from, int to, int key) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (values[mid] <= key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low < to ? values[low] : -1;
+	}
+
+	/**
+	 * @return the biggest value in the sorted range which is smaller than the key,
+	 *         -1 if there is none
+	 */
+	private static int lower(int[] values, int from, int to, int key) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (values[mid] < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low > from ? values[low - 1] : -1;
+	}
+}
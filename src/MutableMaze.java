@@ -0,0 +1,351 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * MutableMaze is a maze whose mirrors can be added, removed and flipped one at
+ * a time, and which keeps the results of the lasers traced so far. After an
+ * edit only the lasers whose path crossed the changed room are traced again,
+ * the results of the others are served from the cache.
+ * 
+ * The path of every cached laser is kept as its turning points, so the memory
+ * used depends on the number of mirrors the laser meets and not the number of
+ * rooms it crosses. Each straight run of the path is indexed by its row (for a
+ * horizontal run) or its column (for a vertical run), an edit looks up the
+ * lasers of its row and column and checks their runs for the changed room.
+ * 
+ * The lasers are traced with the cycle finder (see
+ * {@link CycleFinderTrapDetector}), so a trace after an edit costs the rooms of
+ * its path and not a reset of the states of the whole board. The turns of a
+ * trapped laser can hold a few more rounds of its loop.
+ * 
+ * A MutableMaze is not thread safe.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class MutableMaze {
+
+	/**
+	 * Largest board kept one byte per room, bigger boards are packed 4 bits per
+	 * room.
+	 */
+	private static final long MAX_BYTE_GRID_ROOMS = 1L << 24;
+
+	private final MutableMirrorGrid mGrid;
+
+	private final BeamTracer mTracer;
+
+	private final TrapDetector mTrapDetector = new CycleFinderTrapDetector();
+
+	/**
+	 * Cached lasers by packed start state.
+	 */
+	private final HashMap<Long, Trace> mTraces = new HashMap<Long, Trace>();
+
+	/**
+	 * Start states of the cached lasers with a horizontal run in each row.
+	 */
+	private final HashMap<Integer, Set<Long>> mRowTraces = new HashMap<Integer, Set<Long>>();
+
+	/**
+	 * Start states of the cached lasers with a vertical run in each column.
+	 */
+	private final HashMap<Integer, Set<Long>> mColumnTraces = new HashMap<Integer, Set<Long>>();
+
+	private long mCacheHits;
+
+	private long mTraceCount;
+
+	/**
+	 * Constructs a new MutableMaze with a copy of the mirrors of the maze.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @throws IllegalArgumentException
+	 *             if the maze has beam splitters, the cache keeps one path for
+	 *             each laser
+	 */
+	public MutableMaze(MirrorGrid grid) {
+		final int columns = grid.columns();
+		final int rows = grid.rows();
+		if ((long) columns * rows <= MAX_BYTE_GRID_ROOMS) {
+			mGrid = new ByteMirrorGrid(columns, rows);
+		} else {
+			mGrid = new PackedMirrorGrid(columns, rows);
+		}
+		for (int col = 0; col < columns; col++) {
+			for (int row = 0; row < rows; row++) {
+				int kind = grid.kind(col, row);
+				if (ReflectiveMirror.isSplitter(kind)) {
+					throw new IllegalArgumentException("The maze has beam splitters, they are not supported.");
+				}
+				if (kind != ReflectiveMirror.KIND_NONE) {
+					mGrid.setKind(col, row, kind);
+				}
+			}
+		}
+		mTracer = new BeamTracer(mGrid);
+	}
+
+	/**
+	 * @return the current mirrors of the maze
+	 */
+	public MirrorGrid getGrid() {
+		return mGrid;
+	}
+
+	/**
+	 * Places a mirror in the room, replacing the mirror which is already there.
+	 * 
+	 * @param column
+	 *            - the column position of the room
+	 * @param row
+	 *            - the row position of the room
+	 * @param kind
+	 *            - one of the <code>ReflectiveMirror.KIND_</code> constants, a
+	 *            beam splitter is not supported as the cache keeps one path for
+	 *            each laser
+	 */
+	public void addMirror(int column, int row, int kind) {
+		if (kind <= ReflectiveMirror.KIND_NONE || kind >= ReflectiveMirror.KIND_COUNT
+				|| ReflectiveMirror.isSplitter(kind)) {
+			throw new IllegalArgumentException("The mirror kind " + kind + " is not supported.");
+		}
+		setKind(column, row, kind);
+	}
+
+	/**
+	 * Removes the mirror of the room, if any.
+	 * 
+	 * @param column
+	 *            - the column position of the room
+	 * @param row
+	 *            - the row position of the room
+	 */
+	public void removeMirror(int column, int row) {
+		setKind(column, row, ReflectiveMirror.KIND_NONE);
+	}
+
+	/**
+	 * Flips the leaning direction of the mirror in the room, the reflective side
+	 * stays the same.
+	 * 
+	 * @param column
+	 *            - the column position of the room
+	 * @param row
+	 *            - the row position of the room
+	 */
+	public void flipMirror(int column, int row) {
+		checkRoom(column, row);
+		int kind = mGrid.kind(column, row);
+		if (kind == ReflectiveMirror.KIND_NONE) {
+			throw new IllegalArgumentException("There is no mirror in the room " + column + "," + row + ".");
+		}
+		if (ReflectiveMirror.isSplitter(kind)) {
+			throw new IllegalArgumentException("The mirror kind " + kind + " is not supported.");
+		}
+		// the right leaning kinds are 1 to 3 and the left leaning kinds 4 to 6
+		setKind(column, row, kind < ReflectiveMirror.KIND_LEFT_TWO_WAY ? kind + 3 : kind - 3);
+	}
+
+	/**
+	 * Returns the result of the laser, from the cache if no edit has changed a
+	 * room on its path since it was traced.
+	 * 
+	 * @param column
+	 *            - start column position of laser
+	 * @param row
+	 *            - start row position of laser
+	 * @param heading
+	 *            - start heading of laser
+	 * @return <code>TraceResult</code> of the laser
+	 * @throws IllegalArgumentException
+	 *             if the start room is not in the maze
+	 */
+	public TraceResult solve(int column, int row, int heading) {
+		if (column < 0 || row < 0 || column >= mGrid.columns() || row >= mGrid.rows() || heading < 0 || heading > 3) {
+			throw new IllegalArgumentException(
+					"The laser start " + column + "," + row + " heading " + heading + " is not in the maze.");
+		}
+		Long start = BeamState.pack(column, row, heading);
+		Trace trace = mTraces.get(start);
+		if (trace != null) {
+			mCacheHits++;
+			return trace.mResult;
+		}
+
+		trace = trace(start);
+		mTraces.put(start, trace);
+		for (int i = 0; i + 1 < trace.mTurnCount; i++) {
+			long from = trace.mTurns[i];
+			if ((BeamState.heading(from) & 1) == 0) {
+				index(mRowTraces, BeamState.row(from), start);
+			} else {
+				index(mColumnTraces, BeamState.column(from), start);
+			}
+		}
+		return trace.mResult;
+	}
+
+	/**
+	 * @return number of lasers in the cache
+	 */
+	public int getCachedTraceCount() {
+		return mTraces.size();
+	}
+
+	/**
+	 * @return number of results served from the cache
+	 */
+	public long getCacheHits() {
+		return mCacheHits;
+	}
+
+	/**
+	 * @return number of lasers traced, the first time or again after an edit
+	 */
+	public long getTraceCount() {
+		return mTraceCount;
+	}
+
+	private void setKind(int column, int row, int kind) {
+		checkRoom(column, row);
+		if (mGrid.kind(column, row) == kind) {
+			return;
+		}
+		mGrid.setKind(column, row, kind);
+		invalidate(mRowTraces.get(row), column, row);
+		invalidate(mColumnTraces.get(column), column, row);
+	}
+
+	/**
+	 * Removes the lasers of the candidates whose path crosses the room.
+	 */
+	private void invalidate(Set<Long> candidates, int column, int row) {
+		if (candidates == null) {
+			return;
+		}
+		for (Long start : candidates.toArray(new Long[candidates.size()])) {
+			Trace trace = mTraces.get(start);
+			if (trace != null && trace.crosses(column, row)) {
+				remove(start, trace);
+			}
+		}
+	}
+
+	private void remove(Long start, Trace trace) {
+		mTraces.remove(start);
+		for (int i = 0; i + 1 < trace.mTurnCount; i++) {
+			long from = trace.mTurns[i];
+			if ((BeamState.heading(from) & 1) == 0) {
+				unindex(mRowTraces, BeamState.row(from), start);
+			} else {
+				unindex(mColumnTraces, BeamState.column(from), start);
+			}
+		}
+	}
+
+	/**
+	 * Traces the laser room by room and keeps the start, every room where the
+	 * heading changes and the last room.
+	 */
+	private Trace trace(long start) {
+		mTraceCount++;
+		final int columns = mGrid.columns();
+		final int rows = mGrid.rows();
+		Trace trace = new Trace();
+		trace.add(start);
+
+		mTrapDetector.reset(columns, rows);
+		mTrapDetector.visit(BeamState.column(start), BeamState.row(start), BeamState.heading(start));
+		long steps = 0;
+		long state = start;
+		while (true) {
+			long next = mTracer.step(state);
+			int col = BeamState.column(next);
+			int row = BeamState.row(next);
+			if (col < 0 || col >= columns || row < 0 || row >= rows) {
+				trace.add(state);
+				trace.mResult = TraceResult.exited(start, state, steps);
+				return trace;
+			}
+			steps++;
+			if (BeamState.heading(next) != BeamState.heading(state)) {
+				trace.add(next);
+			}
+			if (mTrapDetector.visit(col, row, BeamState.heading(next))) {
+				trace.add(next);
+				trace.mResult = TraceResult.trapped(start, mTracer.trapped(start, next));
+				return trace;
+			}
+			state = next;
+		}
+	}
+
+	private void checkRoom(int column, int row) {
+		if (column < 0 || row < 0 || column >= mGrid.columns() || row >= mGrid.rows()) {
+			throw new IllegalArgumentException("The room " + column + "," + row + " is out of the board "
+					+ mGrid.columns() + " x " + mGrid.rows());
+		}
+	}
+
+	private static void index(HashMap<Integer, Set<Long>> index, int key, Long start) {
+		Set<Long> starts = index.get(key);
+		if (starts == null) {
+			starts = new HashSet<Long>();
+			index.put(key, starts);
+		}
+		starts.add(start);
+	}
+
+	private static void unindex(HashMap<Integer, Set<Long>> index, int key, Long start) {
+		Set<Long> starts = index.get(key);
+		if (starts != null) {
+			starts.remove(start);
+			if (starts.isEmpty()) {
+				index.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Cached laser, its result and the turning points of its path.
+	 */
+	private static class Trace {
+		TraceResult mResult;
+		long[] mTurns = new long[8];
+		int mTurnCount;
+
+		void add(long state) {
+			if (mTurnCount == mTurns.length) {
+				mTurns = Arrays.copyOf(mTurns, mTurnCount * 2);
+			}
+			mTurns[mTurnCount++] = state;
+		}
+
+		/**
+		 * @return <code>true</code> if a straight run of the path crosses the room
+		 */
+		boolean crosses(int column, int row) {
+			for (int i = 0; i + 1 < mTurnCount; i++) {
+				long from = mTurns[i];
+				long to = mTurns[i + 1];
+				if ((BeamState.heading(from) & 1) == 0) {
+					if (BeamState.row(from) == row && between(column, BeamState.column(from), BeamState.column(to))) {
+						return true;
+					}
+				} else if (BeamState.column(from) == column
+						&& between(row, BeamState.row(from), BeamState.row(to))) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static boolean between(int value, int a, int b) {
+			return a <= b ? value >= a && value <= b : value >= b && value <= a;
+		}
+	}
+}
@@ -0,0 +1,23 @@
+/**
+ * MutableMirrorGrid is a {@link MirrorGrid} whose mirrors can be placed and
+ * removed.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public interface MutableMirrorGrid extends MirrorGrid {
+
+	/**
+	 * Places the mirror of the given kind in the room, replacing the mirror which
+	 * is already there.
+	 * 
+	 * @param column
+	 *            - the column position of the room
+	 * @param row
+	 *            - the row position of the room
+	 * @param kind
+	 *            - one of the <code>ReflectiveMirror.KIND_</code> constants,
+	 *            <code>KIND_NONE</code> to remove the mirror
+	 */
+	void setKind(int column, int row, int kind);
+}
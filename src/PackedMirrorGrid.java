@@ -0,0 +1,180 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * PackedMirrorGrid keeps the kind of the mirror of every room in 4 bits, 16
+ * rooms in each <code>long</code> word. The rooms are stored column by column.
+ * A 50000 x 50000 board takes 1.25 GB this way, where a
+ * <code>ReflectiveMirror[][]</code> takes 10 GB for the references alone. The
+ * room is found in its word with shifts, no division is needed.
+ * 
+ * The words are kept either in a <code>long[]</code> on the heap or off the
+ * heap in direct buffers of 128 MB each, so the grid does not count against
+ * the heap size.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class PackedMirrorGrid implements ConcurrentMirrorGrid {
+
+	/**
+	 * Bits used for the kind of each room.
+	 */
+	public static final int BITS_PER_ROOM = 4;
+
+	/**
+	 * Rooms in each <code>long</code> word.
+	 */
+	public static final int ROOMS_PER_WORD = 64 / BITS_PER_ROOM;
+
+	private static final int ROOM_SHIFT = 4;
+
+	private static final long ROOM_MASK = (1L << BITS_PER_ROOM) - 1;
+
+	/**
+	 * Words in each off heap buffer, 2^24 words are 128 MB.
+	 */
+	private static final int CHUNK_SHIFT = 24;
+
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private static final VarHandle BUFFER_WORDS = MethodHandles.byteBufferViewVarHandle(long[].class,
+			ByteOrder.nativeOrder());
+
+	private final int mColumns;
+
+	private final int mRows;
+
+	private final long mWordCount;
+
+	private final long[] mWords;
+
+	private final LongBuffer[] mChunks;
+
+	/**
+	 * The off heap buffers as bytes, for the atomic updates.
+	 */
+	private final ByteBuffer[] mChunkBytes;
+
+	/**
+	 * Constructs a new empty PackedMirrorGrid on the heap.
+	 * 
+	 * @param columns
+	 *            - number of columns in the maze
+	 * @param rows
+	 *            - number of rows in the maze
+	 */
+	public PackedMirrorGrid(int columns, int rows) {
+		this(columns, rows, false);
+	}
+
+	/**
+	 * Constructs a new empty PackedMirrorGrid.
+	 * 
+	 * @param columns
+	 *            - number of columns in the maze
+	 * @param rows
+	 *            - number of rows in the maze
+	 * @param offHeap
+	 *            - <code>true</code> to keep the grid in direct buffers off the
+	 *            heap
+	 */
+	public PackedMirrorGrid(int columns, int rows, boolean offHeap) {
+		mColumns = columns;
+		mRows = rows;
+		mWordCount = ((long) columns * rows + ROOMS_PER_WORD - 1) / ROOMS_PER_WORD;
+		if (offHeap) {
+			mWords = null;
+			int chunks = (int) ((mWordCount + CHUNK_MASK) >>> CHUNK_SHIFT);
+			mChunks = new LongBuffer[chunks];
+			mChunkBytes = new ByteBuffer[chunks];
+			for (int i = 0; i < chunks; i++) {
+				long words = Math.min(1L << CHUNK_SHIFT, mWordCount - ((long) i << CHUNK_SHIFT));
+				mChunkBytes[i] = ByteBuffer.allocateDirect((int) words * Long.BYTES).order(ByteOrder.nativeOrder());
+				mChunks[i] = mChunkBytes[i].asLongBuffer();
+			}
+		} else {
+			if (mWordCount > Integer.MAX_VALUE - 8) {
+				throw new IllegalArgumentException("The maze " + columns + " x " + rows + " is too big for the heap.");
+			}
+			mWords = new long[(int) mWordCount];
+			mChunks = null;
+			mChunkBytes = null;
+		}
+	}
+
+	public int columns() {
+		return mColumns;
+	}
+
+	public int rows() {
+		return mRows;
+	}
+
+	public int kind(int column, int row) {
+		long room = (long) column * mRows + row;
+		long word = room >>> ROOM_SHIFT;
+		int shift = (int) (room & (ROOMS_PER_WORD - 1)) * BITS_PER_ROOM;
+		return (int) (word(word) >>> shift & ROOM_MASK);
+	}
+
+	public void setKind(int column, int row, int kind) {
+		long room = (long) column * mRows + row;
+		long word = room >>> ROOM_SHIFT;
+		int shift = (int) (room & (ROOMS_PER_WORD - 1)) * BITS_PER_ROOM;
+		long value = (word(word) & ~(ROOM_MASK << shift)) | ((long) kind << shift);
+		if (mWords != null) {
+			mWords[(int) word] = value;
+		} else {
+			mChunks[(int) (word >>> CHUNK_SHIFT)].put((int) word & CHUNK_MASK, value);
+		}
+	}
+
+	public boolean setKindIfEmpty(int column, int row, int kind) {
+		long room = (long) column * mRows + row;
+		long word = room >>> ROOM_SHIFT;
+		int shift = (int) (room & (ROOMS_PER_WORD - 1)) * BITS_PER_ROOM;
+		// the other rooms of the word may be placed by other threads meanwhile
+		while (true) {
+			long old = mWords != null ? (long) WORDS.getVolatile(mWords, (int) word)
+					: (long) BUFFER_WORDS.getVolatile(mChunkBytes[(int) (word >>> CHUNK_SHIFT)],
+							(int) (word & CHUNK_MASK) * Long.BYTES);
+			if ((old >>> shift & ROOM_MASK) != ReflectiveMirror.KIND_NONE) {
+				return false;
+			}
+			long value = old | ((long) kind << shift);
+			boolean placed = mWords != null ? WORDS.compareAndSet(mWords, (int) word, old, value)
+					: BUFFER_WORDS.compareAndSet(mChunkBytes[(int) (word >>> CHUNK_SHIFT)],
+							(int) (word & CHUNK_MASK) * Long.BYTES, old, value);
+			if (placed) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the grid is kept off the heap
+	 */
+	public boolean isOffHeap() {
+		return mChunks != null;
+	}
+
+	/**
+	 * @return number of bytes used by the rooms of the grid
+	 */
+	public long getSizeInBytes() {
+		return mWordCount * Long.BYTES;
+	}
+
+	private long word(long word) {
+		if (mWords != null) {
+			return mWords[(int) word];
+		}
+		return mChunks[(int) (word >>> CHUNK_SHIFT)].get((int) word & CHUNK_MASK);
+	}
+}
@@ -0,0 +1,517 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * ParallelMazeLoader reads the mirror section of a big maze definition file on
+ * many threads. The mirror section is split into parts which start at the
+ * beginning of a line, and the parts are parsed at the same time straight into
+ * the grid, whose rooms are filled with atomic updates (see
+ * {@link ConcurrentMirrorGrid}).
+ * 
+ * The file is read in three passes over the parts, all of them on the fork-join
+ * pool:
+ * <ol>
+ * <li>the lines of each part are counted up to the first separator line, which
+ * gives the end of the mirror section and the line number each part starts
+ * with,
+ * <li>the mirrors of each part are parsed into the grid, a room which already
+ * has a mirror is noted as given more than once,
+ * <li>only if there are such rooms, the parts are read again for those rooms
+ * and the mirror given last in the file is placed, as a single thread would.
+ * </ol>
+ * Errors are reported for the first line in the file, whatever the order the
+ * parts are parsed in, and the mirrors given more than once are reported in
+ * the order of the file (see {@link #getDuplicates()}). The board size and the
+ * laser section are parsed on the calling thread.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class ParallelMazeLoader {
+
+	/**
+	 * Files smaller than this are parsed faster on one thread.
+	 */
+	public static final long PARALLEL_THRESHOLD = 32L << 20;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Parts of the mirror section for each thread, so a slow part does not hold
+	 * the other threads up.
+	 */
+	private static final int PARTS_PER_THREAD = 4;
+
+	/**
+	 * Smallest part of the mirror section.
+	 */
+	private static final long MIN_PART_SIZE = 1 << 20;
+
+	private final int mThreads;
+
+	private final boolean mOffHeap;
+
+	private List<MazeFormatException> mDuplicates = Collections.emptyList();
+
+	private boolean mIndexed;
+
+	/**
+	 * Mirror index of the last file loaded in parts, if it is indexed.
+	 */
+	private MirrorIndex mIndex;
+
+	/**
+	 * Constructs a new ParallelMazeLoader keeping the mirrors on the heap.
+	 * 
+	 * @param threads
+	 *            - number of threads reading the mirrors
+	 */
+	public ParallelMazeLoader(int threads) {
+		this(threads, false);
+	}
+
+	/**
+	 * Constructs a new ParallelMazeLoader.
+	 * 
+	 * @param threads
+	 *            - number of threads reading the mirrors
+	 * @param offHeap
+	 *            - <code>true</code> to keep the mirrors of big boards off the heap
+	 */
+	public ParallelMazeLoader(int threads, boolean offHeap) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads must be positive: " + threads);
+		}
+		mThreads = threads;
+		mOffHeap = offHeap;
+	}
+
+	/**
+	 * Sets if the mirror index of the definition is built from the rooms of the
+	 * mirrors read (see {@link MazeDefinition#mIndex}), it is not by default.
+	 * 
+	 * @param indexed
+	 *            - <code>true</code> to build the mirror index
+	 */
+	public void setIndexed(boolean indexed) {
+		mIndexed = indexed;
+	}
+
+	/**
+	 * Loads the maze definition file.
+	 * 
+	 * @param file
+	 *            - the maze definition file in the text format
+	 * @return <code>MazeDefinition</code> of the file
+	 * @throws IOException
+	 *             if the file can not be read
+	 * @throws MazeFormatException
+	 *             if the file is not in the maze definition format
+	 */
+	public MazeDefinition load(Path file) throws IOException, MazeFormatException {
+		mDuplicates = Collections.emptyList();
+		mIndex = null;
+		MazeDefinitionBuilder builder = new MazeDefinitionBuilder(mOffHeap);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			final long size = channel.size();
+
+			// the board size section, up to the first separator line
+			Part head = new Part(0, size, 1);
+			head.count(channel);
+			MirrorGrid grid = null;
+			if (head.mSeparator >= 0) {
+				head.mTo = nextLine(channel, head.mSeparator, size);
+				new MazeDefinitionParser(builder).parse(channel, 0, head.mTo);
+				grid = builder.getGrid();
+			}
+			if (!(grid instanceof ConcurrentMirrorGrid)) {
+				// no mirror section to split, the single thread parser tells what is wrong
+				builder = new MazeDefinitionBuilder(mOffHeap);
+				builder.setIndexed(mIndexed);
+				new MazeDefinitionParser(builder).parse(channel);
+				MazeDefinition definition = builder.build();
+				mDuplicates = definition.mDuplicates;
+				return definition;
+			}
+
+			ForkJoinPool pool = new ForkJoinPool(mThreads);
+			try {
+				Part last = loadMirrors(channel, pool, builder, (ConcurrentMirrorGrid) grid, head.mTo,
+						head.mFirstLine + head.mLines + 1, size);
+				if (last.mSeparator >= 0) {
+					// the laser section starts with the separator line which ends the mirrors
+					new MazeDefinitionParser(builder, grid.columns(), grid.rows(), last.mFirstLine + last.mLines)
+							.parse(channel, last.mSeparator, size);
+				}
+			} finally {
+				pool.shutdown();
+			}
+		}
+		MazeDefinition definition = builder.build();
+		definition.mDuplicates = mDuplicates;
+		definition.mIndex = mIndex;
+		mIndex = null;
+		return definition;
+	}
+
+	/**
+	 * @return the mirrors of the last file given more than once, in the order of
+	 *         the file, with the line number of the mirror which replaces an
+	 *         earlier one, as in {@link MazeDefinition#mDuplicates}
+	 */
+	public List<MazeFormatException> getDuplicates() {
+		return mDuplicates;
+	}
+
+	/**
+	 * Loads the mirror section into the grid.
+	 * 
+	 * @return the last part of the mirror section, with the position of the
+	 *         separator line which ends the section if there is one
+	 */
+	private Part loadMirrors(FileChannel channel, ForkJoinPool pool, MazeDefinitionBuilder builder,
+			ConcurrentMirrorGrid grid, long from, long firstLine, long size) throws IOException, MazeFormatException {
+		// split the rest of the file at the beginning of lines
+		int count = (int) Math.max(1, Math.min((long) mThreads * PARTS_PER_THREAD, (size - from) / MIN_PART_SIZE));
+		List<Part> parts = new ArrayList<>(count);
+		long start = from;
+		for (int i = 1; i <= count && start < size; i++) {
+			long end = i == count ? size : nextLine(channel, from + (size - from) * i / count - 1, size);
+			if (end > start) {
+				parts.add(new Part(start, end, 0));
+				start = end;
+			}
+		}
+		if (parts.isEmpty()) {
+			parts.add(new Part(from, size, firstLine));
+			return parts.get(0);
+		}
+
+		// pass 1: lines of the parts and the end of the mirror section
+		run(pool, parts, part -> part.count(channel));
+		long line = firstLine;
+		int used = 0;
+		while (used < parts.size()) {
+			Part part = parts.get(used++);
+			part.mFirstLine = line;
+			line += part.mLines;
+			if (part.mSeparator >= 0) {
+				break;
+			}
+		}
+		parts = parts.subList(0, used);
+		Part last = parts.get(used - 1);
+
+		// pass 2: the mirrors, the first error in the file wins
+		run(pool, parts, part -> part.parse(channel, grid, null, mIndexed));
+		for (Part part : parts) {
+			if (part.mError != null) {
+				throw part.mError;
+			}
+			if (part.mSplitters) {
+				builder.addSplitters();
+			}
+		}
+		if (mIndexed) {
+			index(parts, grid.columns(), grid.rows());
+		}
+
+		// pass 3: only for the rooms with more than one mirror, the last one wins
+		long[] rooms = new long[0];
+		for (Part part : parts) {
+			int n = rooms.length;
+			rooms = Arrays.copyOf(rooms, n + part.mRepeated.mSize);
+			System.arraycopy(part.mRepeated.mValues, 0, rooms, n, part.mRepeated.mSize);
+		}
+		if (rooms.length > 0) {
+			Arrays.sort(rooms);
+			final long[] repeated = rooms;
+			run(pool, parts, part -> part.parse(channel, grid, repeated, false));
+			resolveDuplicates(grid, parts);
+		}
+		return last;
+	}
+
+	/**
+	 * Builds the mirror index from the rooms the parts placed a mirror in first,
+	 * each room is placed once whatever the number of its mirrors.
+	 */
+	private void index(List<Part> parts, int columns, int rows) {
+		long count = 0;
+		for (Part part : parts) {
+			count += part.mPlaced.mSize;
+		}
+		if (count > Integer.MAX_VALUE - 8) {
+			// too many mirrors to index, the definition is left without an index
+			return;
+		}
+		long[] rooms = new long[(int) count];
+		int n = 0;
+		for (Part part : parts) {
+			System.arraycopy(part.mPlaced.mValues, 0, rooms, n, part.mPlaced.mSize);
+			n += part.mPlaced.mSize;
+			part.mPlaced.mValues = null;
+		}
+		Arrays.parallelSort(rooms);
+		mIndex = MirrorIndex.ofRooms(columns, rows, rooms, n);
+	}
+
+	/**
+	 * Places the mirror given last in the file for each room given more than once
+	 * and notes the mirrors replaced.
+	 */
+	private void resolveDuplicates(MutableMirrorGrid grid, List<Part> parts) {
+		// the mirrors of the rooms in the order of the file
+		int total = 0;
+		for (Part part : parts) {
+			total += part.mFound.mSize;
+		}
+		long[][] found = new long[total][];
+		int n = 0;
+		for (Part part : parts) {
+			for (int i = 0; i < part.mFound.mSize; i += 3) {
+				found[n++] = new long[] { part.mFound.mValues[i], part.mFound.mValues[i + 1],
+						part.mFound.mValues[i + 2] };
+			}
+		}
+		found = Arrays.copyOf(found, n);
+		// stable, so the mirrors of a room stay in the order of the file
+		Arrays.sort(found, (a, b) -> Long.compare(a[0], b[0]));
+
+		List<MazeFormatException> duplicates = new ArrayList<>();
+		for (int i = 0; i < found.length; i++) {
+			long room = found[i][0];
+			int column = (int) (room >>> 32);
+			int row = (int) room;
+			if (i > 0 && found[i - 1][0] == room) {
+				duplicates.add(MazeDefinitionBuilder.duplicate(column, row, found[i][1]));
+			}
+			if (i + 1 == found.length || found[i + 1][0] != room) {
+				grid.setKind(column, row, (int) found[i][2]);
+			}
+		}
+		duplicates.sort((a, b) -> Long.compare(a.getLineNumber(), b.getLineNumber()));
+		mDuplicates = Collections.unmodifiableList(duplicates);
+	}
+
+	/**
+	 * Runs the task for each part on the pool and waits for all of them.
+	 */
+	private static void run(ForkJoinPool pool, List<Part> parts, PartTask task) throws IOException {
+		List<Callable<Void>> calls = new ArrayList<>(parts.size());
+		for (Part part : parts) {
+			calls.add(() -> {
+				task.run(part);
+				return null;
+			});
+		}
+		for (Future<Void> future : pool.invokeAll(calls)) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while loading the mirrors.", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * @return position of the beginning of the line after the byte at the
+	 *         position, the end of the file if there is none
+	 */
+	private static long nextLine(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				break;
+			}
+			byte[] bytes = buffer.array();
+			for (int i = 0; i < read; i++) {
+				if (bytes[i] == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Work done for one part of the file.
+	 */
+	private interface PartTask {
+		void run(Part part) throws IOException;
+	}
+
+	/**
+	 * Growing array of <code>long</code> values.
+	 */
+	private static final class LongList {
+
+		private long[] mValues = new long[16];
+
+		private int mSize;
+
+		void add(long value) {
+			if (mSize == mValues.length) {
+				mValues = Arrays.copyOf(mValues, mSize * 2);
+			}
+			mValues[mSize++] = value;
+		}
+	}
+
+	/**
+	 * Part of the file starting at the beginning of a line.
+	 */
+	private static final class Part {
+
+		private final long mFrom;
+
+		private long mTo;
+
+		private long mFirstLine;
+
+		/**
+		 * Lines before the separator line, or all the lines of the part.
+		 */
+		private long mLines;
+
+		/**
+		 * Position of the first separator line, -1 if there is none in the part.
+		 */
+		private long mSeparator = -1;
+
+		private MazeFormatException mError;
+
+		private boolean mSplitters;
+
+		/**
+		 * Rooms the part placed a mirror in, only if the definition is indexed.
+		 */
+		private final LongList mPlaced = new LongList();
+
+		/**
+		 * Rooms which already had a mirror.
+		 */
+		private final LongList mRepeated = new LongList();
+
+		/**
+		 * Room, line number and kind of the mirrors of repeated rooms.
+		 */
+		private final LongList mFound = new LongList();
+
+		Part(long from, long to, long firstLine) {
+			mFrom = from;
+			mTo = to;
+			mFirstLine = firstLine;
+		}
+
+		/**
+		 * Counts the lines up to the first separator line, a line whose first
+		 * character other than a space is -1 like {@link MazeDefinitionParser} sees
+		 * it. The part ends at the separator line.
+		 */
+		void count(FileChannel channel) throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			byte[] bytes = buffer.array();
+			long position = mFrom;
+			long lineStart = mFrom;
+			// 0 at the beginning of a line, 1 after a leading '-', 2 in the line
+			int state = 0;
+			while (position < mTo) {
+				buffer.clear();
+				buffer.limit((int) Math.min(BUFFER_SIZE, mTo - position));
+				int read = channel.read(buffer, position);
+				if (read < 0) {
+					break;
+				}
+				for (int i = 0; i < read; i++) {
+					byte b = bytes[i];
+					if (b == '\n') {
+						mLines++;
+						lineStart = position + i + 1;
+						state = 0;
+					} else if (state == 0) {
+						if (b == '-') {
+							state = 1;
+						} else if (b != ' ' && b != '\t' && b != '\r') {
+							state = 2;
+						}
+					} else if (state == 1) {
+						if (b == '1') {
+							mSeparator = lineStart;
+							mTo = lineStart;
+							return;
+						}
+						state = 2;
+					}
+				}
+				position += read;
+			}
+		}
+
+		/**
+		 * Parses the mirrors of the part into the grid, or only finds the mirrors
+		 * of the given rooms.
+		 * 
+		 * @param rooms
+		 *            - sorted rooms to find, <code>null</code> to fill the grid
+		 * @param indexed
+		 *            - <code>true</code> to keep the rooms a mirror is placed in
+		 */
+		void parse(FileChannel channel, ConcurrentMirrorGrid grid, long[] rooms, boolean indexed)
+				throws IOException {
+			MazeDefinitionHandler handler = new MazeDefinitionHandler() {
+
+				public void boardSize(int columns, int rows) {
+					// the size is in the head of the file
+				}
+
+				public void mirror(int column, int row, int kind, long lineNumber) {
+					long room = ((long) column << 32) | row;
+					if (rooms == null) {
+						if (!grid.setKindIfEmpty(column, row, kind)) {
+							mRepeated.add(room);
+						} else if (indexed) {
+							mPlaced.add(room);
+						}
+						if (ReflectiveMirror.isSplitter(kind)) {
+							mSplitters = true;
+						}
+					} else if (Arrays.binarySearch(rooms, room) >= 0) {
+						mFound.add(room);
+						mFound.add(lineNumber);
+						mFound.add(kind);
+					}
+				}
+
+				public void laser(int column, int row, int heading, long lineNumber) {
+					// the part ends before the laser section
+				}
+			};
+			try {
+				new MazeDefinitionParser(handler, grid.columns(), grid.rows(), mFirstLine).parse(channel, mFrom, mTo);
+			} catch (MazeFormatException e) {
+				mError = e;
+			}
+		}
+	}
+}
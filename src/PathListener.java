@@ -0,0 +1,22 @@
+/**
+ * PathListener is given the block positions of the path of the laser while the
+ * {@link BeamTracer} follows it, so the path can be printed or kept as the trace
+ * runs instead of being buffered until the laser leaves the maze.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public interface PathListener {
+
+	/**
+	 * Called for the next block position of the path.
+	 * 
+	 * @param column
+	 *            - the column position of the room
+	 * @param row
+	 *            - the row position of the room
+	 * @param heading
+	 *            - heading of the laser leaving the room
+	 */
+	void visit(int column, int row, int heading);
+}
@@ -0,0 +1,101 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * PathWriter prints the block positions of the path of the laser as the trace
+ * runs, in the same format as {@link BlockPosition#toString()}. The lines are
+ * put together in a reused character buffer and written through a buffered
+ * writer, so printing a long path neither builds strings nor flushes the stream
+ * for every room.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class PathWriter implements PathListener {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final char[] PREFIX = "Maze Block position X,Y : ".toCharArray();
+
+	private static final char[] ORIENTATION = " ( orientation: ".toCharArray();
+
+	private static final char[] DIRECTION = ", direction: ".toCharArray();
+
+	private static final char[] SUFFIX = (" ) " + System.lineSeparator()).toCharArray();
+
+	private final Writer mWriter;
+
+	private final char[] mLine = new char[128];
+
+	/**
+	 * Constructs a new PathWriter.
+	 * 
+	 * @param out
+	 *            - stream the path is printed to, in the default encoding of the
+	 *            JVM
+	 */
+	public PathWriter(OutputStream out) {
+		mWriter = new BufferedWriter(new OutputStreamWriter(out), BUFFER_SIZE);
+	}
+
+	@Override
+	public void visit(int column, int row, int heading) {
+		int length = 0;
+		length = append(PREFIX, length);
+		length = append(column, length);
+		mLine[length++] = ',';
+		mLine[length++] = ' ';
+		length = append(row, length);
+		length = append(ORIENTATION, length);
+		mLine[length++] = (heading & 1) == 0 ? 'H' : 'V';
+		length = append(DIRECTION, length);
+		mLine[length++] = (heading & 2) == 0 ? '+' : '-';
+		length = append(SUFFIX, length);
+		try {
+			mWriter.write(mLine, 0, length);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes the buffered lines to the stream.
+	 * 
+	 * @throws IOException
+	 *             if the lines can not be written
+	 */
+	public void flush() throws IOException {
+		mWriter.flush();
+	}
+
+	private int append(char[] chars, int length) {
+		System.arraycopy(chars, 0, mLine, length, chars.length);
+		return length + chars.length;
+	}
+
+	private int append(int value, int length) {
+		if (value < 0) {
+			mLine[length++] = '-';
+			value = -value;
+		}
+		int end = length + digits(value);
+		for (int i = end - 1; i >= length; i--) {
+			mLine[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		return end;
+	}
+
+	private static int digits(int value) {
+		int digits = 1;
+		while (value >= 10) {
+			value /= 10;
+			digits++;
+		}
+		return digits;
+	}
+}
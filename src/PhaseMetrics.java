@@ -0,0 +1,330 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * PhaseMetrics measures the phases of solving a maze, parse, build, trace and
+ * print, with the wall time and the bytes allocated by the thread in each
+ * phase, and counts the work of the trace: the rooms stepped, the mirrors hit by
+ * kind, the pass-throughs of 1-way mirrors from their non reflective side and
+ * the trap checks. While a JFR recording runs every phase is also committed as
+ * a {@link MazePhaseEvent}.
+ * 
+ * A phase costs two clock reads, and two reads of the allocation counter of the
+ * thread if allocation is measured, the trace counts are kept by the
+ * {@link BeamTracer} in its loop, so the metrics can be left on. The JFR event
+ * class and the thread bean are only loaded when they are used, as loading them
+ * takes longer than solving a small maze. The metrics are not thread safe, a
+ * phase is started and stopped on the same thread.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class PhaseMetrics {
+
+	public static final int PHASE_PARSE = 0;
+	public static final int PHASE_BUILD = 1;
+	public static final int PHASE_TRACE = 2;
+	public static final int PHASE_PRINT = 3;
+	public static final int PHASE_COUNT = 4;
+
+	private static final String[] PHASE_NAMES = { "parse", "build", "trace", "print" };
+
+	/**
+	 * Mirror kinds as written in the maze definition file.
+	 */
+	private static final String[] KIND_NAMES = { "", "R", "RR", "RL", "L", "LR", "LL", "RS", "LS" };
+
+	private final boolean mMeasureAllocation;
+
+	private final long[] mNanos = new long[PHASE_COUNT];
+
+	private final long[] mAllocated = new long[PHASE_COUNT];
+
+	private int mPhase = -1;
+
+	private long mPhaseStart;
+
+	private long mPhaseAllocated;
+
+	/**
+	 * Time spent writing to a metered stream while another phase runs.
+	 */
+	private long mNestedPrintNanos;
+
+	private MazePhaseEvent mEvent;
+
+	private long mRoomsStepped;
+
+	private final long[] mMirrorHits = new long[ReflectiveMirror.KIND_COUNT];
+
+	private long mPassThroughs;
+
+	private long mTrapChecks;
+
+	/**
+	 * Constructs new PhaseMetrics which do not measure allocation.
+	 */
+	public PhaseMetrics() {
+		this(false);
+	}
+
+	/**
+	 * Constructs new PhaseMetrics.
+	 * 
+	 * @param measureAllocation
+	 *            - <code>true</code> to measure the bytes allocated in every phase
+	 */
+	public PhaseMetrics(boolean measureAllocation) {
+		mMeasureAllocation = measureAllocation;
+	}
+
+	/**
+	 * Starts a phase, the phase which is running is stopped first.
+	 * 
+	 * @param phase
+	 *            - one of the <code>PHASE_</code> constants
+	 */
+	public void start(int phase) {
+		if (mPhase >= 0) {
+			stop();
+		}
+		mPhase = phase;
+		mNestedPrintNanos = 0;
+		mPhaseAllocated = allocatedBytes();
+		if (FlightRecorder.isInitialized()) {
+			mEvent = new MazePhaseEvent();
+			mEvent.begin();
+		}
+		mPhaseStart = System.nanoTime();
+	}
+
+	/**
+	 * Stops the running phase and commits its JFR event.
+	 */
+	public void stop() {
+		if (mPhase < 0) {
+			return;
+		}
+		long nanos = System.nanoTime() - mPhaseStart;
+		long allocated = allocatedBytes() - mPhaseAllocated;
+
+		// writes to the metered stream during another phase belong to the print
+		// phase, during the print phase they are already in its time
+		if (mPhase != PHASE_PRINT) {
+			mNanos[mPhase] += nanos - mNestedPrintNanos;
+			mNanos[PHASE_PRINT] += mNestedPrintNanos;
+		} else {
+			mNanos[mPhase] += nanos;
+		}
+		mAllocated[mPhase] += allocated;
+
+		if (mEvent != null) {
+			commit(mEvent, allocated);
+		}
+		mEvent = null;
+		mPhase = -1;
+	}
+
+	private void commit(MazePhaseEvent event, long allocated) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.phase = PHASE_NAMES[mPhase];
+			event.allocated = allocated;
+			if (mPhase == PHASE_TRACE) {
+				event.roomsStepped = mRoomsStepped;
+				event.mirrorHits = getMirrorHits();
+				event.passThroughs = mPassThroughs;
+				event.trapChecks = mTrapChecks;
+			}
+			event.commit();
+		}
+	}
+
+	/**
+	 * Returns a stream which counts the time spent writing to the given stream as
+	 * print time, also while another phase such as the trace is running. It is
+	 * meant for a buffered writer which writes large blocks at a time.
+	 * 
+	 * @param out
+	 *            - stream to measure
+	 * @return the metered stream
+	 */
+	public OutputStream meter(OutputStream out) {
+		return new FilterOutputStream(out) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				long start = System.nanoTime();
+				out.write(b, off, len);
+				mNestedPrintNanos += System.nanoTime() - start;
+			}
+
+			@Override
+			public void flush() throws IOException {
+				long start = System.nanoTime();
+				out.flush();
+				mNestedPrintNanos += System.nanoTime() - start;
+			}
+		};
+	}
+
+	/**
+	 * Adds the counts of a trace, called by the {@link BeamTracer}.
+	 * 
+	 * @param roomsStepped
+	 *            - number of rooms the laser stepped into
+	 * @param mirrorHits
+	 *            - number of reflections by mirror kind, may be <code>null</code>
+	 * @param passThroughs
+	 *            - number of 1-way mirrors passed from the non reflective side
+	 * @param trapChecks
+	 *            - number of states given to the trap detector
+	 */
+	public void addTrace(long roomsStepped, long[] mirrorHits, long passThroughs, long trapChecks) {
+		mRoomsStepped += roomsStepped;
+		if (mirrorHits != null) {
+			for (int kind = 0; kind < mMirrorHits.length; kind++) {
+				mMirrorHits[kind] += mirrorHits[kind];
+			}
+		}
+		mPassThroughs += passThroughs;
+		mTrapChecks += trapChecks;
+	}
+
+	/**
+	 * @param phase
+	 *            - one of the <code>PHASE_</code> constants
+	 * @return wall time of the phase in nanoseconds
+	 */
+	public long getNanos(int phase) {
+		return mNanos[phase];
+	}
+
+	/**
+	 * @param phase
+	 *            - one of the <code>PHASE_</code> constants
+	 * @return bytes allocated in the phase, 0 if allocation is not measured or the
+	 *         JVM does not measure it
+	 */
+	public long getAllocatedBytes(int phase) {
+		return mAllocated[phase];
+	}
+
+	/**
+	 * @return number of rooms the laser stepped into
+	 */
+	public long getRoomsStepped() {
+		return mRoomsStepped;
+	}
+
+	/**
+	 * @param kind
+	 *            - one of the <code>ReflectiveMirror.KIND_</code> constants
+	 * @return number of reflections by mirrors of the kind
+	 */
+	public long getMirrorHits(int kind) {
+		return mMirrorHits[kind];
+	}
+
+	/**
+	 * @return number of reflections by mirrors of every kind
+	 */
+	public long getMirrorHits() {
+		long hits = 0;
+		for (long h : mMirrorHits) {
+			hits += h;
+		}
+		return hits;
+	}
+
+	/**
+	 * @return number of 1-way mirrors passed from the non reflective side
+	 */
+	public long getPassThroughs() {
+		return mPassThroughs;
+	}
+
+	/**
+	 * @return number of states given to the trap detector
+	 */
+	public long getTrapChecks() {
+		return mTrapChecks;
+	}
+
+	/**
+	 * @return the metrics as one line
+	 */
+	public String toSummary() {
+		StringBuilder sb = new StringBuilder("Metrics:");
+		for (int phase = 0; phase < PHASE_COUNT; phase++) {
+			sb.append(phase == 0 ? " " : ", ").append(PHASE_NAMES[phase]).append(' ');
+			sb.append(String.format("%.3f ms %d B", mNanos[phase] / 1e6, mAllocated[phase]));
+		}
+		sb.append("; rooms stepped ").append(mRoomsStepped).append(", mirror hits");
+		for (int kind = ReflectiveMirror.KIND_RIGHT_TWO_WAY; kind < ReflectiveMirror.KIND_COUNT; kind++) {
+			sb.append(' ').append(KIND_NAMES[kind]).append('=').append(mMirrorHits[kind]);
+		}
+		sb.append(", pass-throughs ").append(mPassThroughs);
+		sb.append(", trap checks ").append(mTrapChecks);
+		return sb.toString();
+	}
+
+	/**
+	 * @return the metrics as a JSON object
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder("{\"phases\":{");
+		for (int phase = 0; phase < PHASE_COUNT; phase++) {
+			sb.append(phase == 0 ? "" : ",").append('"').append(PHASE_NAMES[phase]).append("\":{\"nanos\":")
+					.append(mNanos[phase]).append(",\"allocatedBytes\":").append(mAllocated[phase]).append('}');
+		}
+		sb.append("},\"roomsStepped\":").append(mRoomsStepped).append(",\"mirrorHits\":{");
+		for (int kind = ReflectiveMirror.KIND_RIGHT_TWO_WAY; kind < ReflectiveMirror.KIND_COUNT; kind++) {
+			sb.append(kind == ReflectiveMirror.KIND_RIGHT_TWO_WAY ? "" : ",").append('"').append(KIND_NAMES[kind])
+					.append("\":").append(mMirrorHits[kind]);
+		}
+		sb.append("},\"passThroughs\":").append(mPassThroughs);
+		sb.append(",\"trapChecks\":").append(mTrapChecks).append('}');
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return toSummary();
+	}
+
+	private long allocatedBytes() {
+		return mMeasureAllocation ? Allocation.allocatedBytes() : 0;
+	}
+
+	/**
+	 * Allocation counter of the threads, loaded on first use.
+	 */
+	private static class Allocation {
+
+		private static final com.sun.management.ThreadMXBean BEAN = bean();
+
+		static long allocatedBytes() {
+			return BEAN != null ? BEAN.getCurrentThreadAllocatedBytes() : 0;
+		}
+
+		/**
+		 * @return the thread bean of the JVM if it measures the allocated bytes of a
+		 *         thread, otherwise <code>null</code>
+		 */
+		private static com.sun.management.ThreadMXBean bean() {
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) bean;
+				if (allocation.isThreadAllocatedMemorySupported() && allocation.isThreadAllocatedMemoryEnabled()) {
+					return allocation;
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -7,6 +7,9 @@
  * <li>Direction of Leaning (R for Right and L for Left)
  * <li>Reflective Side of the mirror (R for Right Side or L for Left Side or
  * both side reflective)
+ * <li>or S for a beam splitter, which reflects the laser like a 2-way mirror
+ * and lets it pass through at the same time, one beam becomes two
+ * </ul>
  * 
  * @author Bankim Aghera
  *
@@ -14,6 +17,63 @@
 public class ReflectiveMirror {
 	public static final String RIGHT = "R";
 	public static final String LEFT = "L";
+	public static final String SPLITTER = "S";
+
+	/**
+	 * Kinds of the mirror, a room without mirror is kind 0. The kind is used by
+	 * the primitive tracer instead of the leaning direction and the sides.
+	 */
+	public static final int KIND_NONE = 0;
+	public static final int KIND_RIGHT_TWO_WAY = 1;
+	public static final int KIND_RIGHT_RIGHT_SIDE = 2;
+	public static final int KIND_RIGHT_LEFT_SIDE = 3;
+	public static final int KIND_LEFT_TWO_WAY = 4;
+	public static final int KIND_LEFT_RIGHT_SIDE = 5;
+	public static final int KIND_LEFT_LEFT_SIDE = 6;
+	public static final int KIND_RIGHT_SPLITTER = 7;
+	public static final int KIND_LEFT_SPLITTER = 8;
+
+	/**
+	 * Number of the mirror kinds including the room without mirror.
+	 */
+	public static final int KIND_COUNT = 9;
+
+	/**
+	 * Heading of the laser after the room, indexed by (kind &lt;&lt; 2 | heading),
+	 * see {@link BlockPosition#getHeading()} for the heading. The heading of the
+	 * reflected beam is given for a beam splitter, the other beam keeps the
+	 * heading.
+	 */
+	private static final byte[] REFLECTION = {
+			// no mirror
+			0, 1, 2, 3,
+			// R two way
+			1, 0, 3, 2,
+			// R right side
+			0, 0, 3, 3,
+			// R left side
+			1, 1, 2, 2,
+			// L two way
+			3, 2, 1, 0,
+			// L right side
+			0, 1, 1, 0,
+			// L left side
+			3, 2, 2, 3,
+			// R splitter
+			1, 0, 3, 2,
+			// L splitter
+			3, 2, 1, 0 };
+
+	/**
+	 * Shared mirror of each kind, see {@link #of(int)}.
+	 */
+	private static final ReflectiveMirror[] SHARED = new ReflectiveMirror[KIND_COUNT];
+
+	static {
+		for (int kind = KIND_RIGHT_TWO_WAY; kind < KIND_COUNT; kind++) {
+			SHARED[kind] = forKind(kind);
+		}
+	}
 
 	/**
 	 * Direction of Leaning (R for Right and L for Left)
@@ -30,6 +90,11 @@ public class ReflectiveMirror {
 	 */
 	public boolean mLeftSide;
 
+	/**
+	 * true if the mirror is a beam splitter
+	 */
+	public boolean mSplitter;
+
 	/**
 	 * Constructs a new ReflectiveMirror with Direction of Leaning (R for Right and
 	 * L for Left) and both side are reflective (2 way mirror), the input reflective
@@ -50,17 +115,22 @@ public class ReflectiveMirror {
 
 	/**
 	 * Constructs a new ReflectiveMirror with Direction of Leaning (R for Right and
-	 * L for Left) and one of the side is reflective and it is specified.
+	 * L for Left) and one of the side is reflective and it is specified, or a
+	 * beam splitter.
 	 * 
 	 * @param leaningDirection
 	 *            - mirror leaning direction (R for Right and L for Left)
 	 * @param reflectiveSide
 	 *            - reflective side of the mirror (R for Right Side or L for Left
-	 *            Side or both side reflective)
+	 *            Side or both side reflective), or S for a beam splitter
 	 */
 	public ReflectiveMirror(String leaningDirection, String reflectiveSide) {
 		this(leaningDirection);
 
+		if (reflectiveSide.equals(ReflectiveMirror.SPLITTER)) {
+			mSplitter = true;
+			return;
+		}
 		if (!reflectiveSide.equals(ReflectiveMirror.RIGHT) && !reflectiveSide.equals(ReflectiveMirror.LEFT)) {
 			throw new RuntimeException("The '" + reflectiveSide + "' reflective side of a mirror is not supported.");
 		}
@@ -72,4 +142,116 @@ public class ReflectiveMirror {
 		}
 
 	}
+
+	/**
+	 * Returns the kind of this mirror.
+	 * 
+	 * @return one of the <code>KIND_</code> constants
+	 */
+	public int getKind() {
+		if (mSplitter) {
+			return mLeaningDirection.equals(RIGHT) ? KIND_RIGHT_SPLITTER : KIND_LEFT_SPLITTER;
+		}
+		int kind = mLeaningDirection.equals(RIGHT) ? KIND_RIGHT_TWO_WAY : KIND_LEFT_TWO_WAY;
+		if (!mLeftSide) {
+			kind += 1;
+		} else if (!mRightSide) {
+			kind += 2;
+		}
+		return kind;
+	}
+
+	/**
+	 * Returns the kind of the mirror in a room.
+	 * 
+	 * @param mirror
+	 *            - mirror of the room, <code>null</code> if the room is empty
+	 * @return one of the <code>KIND_</code> constants
+	 */
+	public static int kindOf(ReflectiveMirror mirror) {
+		return mirror == null ? KIND_NONE : mirror.getKind();
+	}
+
+	/**
+	 * Returns the heading of the laser after it meets the mirror of the given
+	 * kind. The laser keeps its heading if the room is empty or the laser passes
+	 * through the non reflective side.
+	 * 
+	 * @param kind
+	 *            - kind of the mirror in the room
+	 * @param heading
+	 *            - heading of the laser when it enters the room
+	 * @return heading of the laser when it leaves the room
+	 */
+	public static int reflect(int kind, int heading) {
+		return REFLECTION[(kind << 2) | heading];
+	}
+
+	/**
+	 * Returns if the mirror of the given kind reflects from one side only, the
+	 * laser passes through the other side.
+	 * 
+	 * @param kind
+	 *            - kind of the mirror
+	 * @return <code>true</code> for a 1-way mirror
+	 */
+	public static boolean isOneWay(int kind) {
+		return kind != KIND_NONE && kind != KIND_RIGHT_TWO_WAY && kind != KIND_LEFT_TWO_WAY && !isSplitter(kind);
+	}
+
+	/**
+	 * Returns if the mirror of the given kind is a beam splitter, the laser is
+	 * reflected as by {@link #reflect(int, int)} and also passes through.
+	 * 
+	 * @param kind
+	 *            - kind of the mirror
+	 * @return <code>true</code> for a beam splitter
+	 */
+	public static boolean isSplitter(int kind) {
+		return kind == KIND_RIGHT_SPLITTER || kind == KIND_LEFT_SPLITTER;
+	}
+
+	/**
+	 * Constructs a new ReflectiveMirror of the given kind.
+	 * 
+	 * @param kind
+	 *            - one of the <code>KIND_</code> constants except
+	 *            <code>KIND_NONE</code>
+	 * @return <code>ReflectiveMirror</code> of the kind
+	 */
+	public static ReflectiveMirror forKind(int kind) {
+		switch (kind) {
+		case KIND_RIGHT_TWO_WAY:
+			return new ReflectiveMirror(RIGHT);
+		case KIND_RIGHT_RIGHT_SIDE:
+			return new ReflectiveMirror(RIGHT, RIGHT);
+		case KIND_RIGHT_LEFT_SIDE:
+			return new ReflectiveMirror(RIGHT, LEFT);
+		case KIND_LEFT_TWO_WAY:
+			return new ReflectiveMirror(LEFT);
+		case KIND_LEFT_RIGHT_SIDE:
+			return new ReflectiveMirror(LEFT, RIGHT);
+		case KIND_LEFT_LEFT_SIDE:
+			return new ReflectiveMirror(LEFT, LEFT);
+		case KIND_RIGHT_SPLITTER:
+			return new ReflectiveMirror(RIGHT, SPLITTER);
+		case KIND_LEFT_SPLITTER:
+			return new ReflectiveMirror(LEFT, SPLITTER);
+		default:
+			throw new IllegalArgumentException("The mirror kind " + kind + " is not supported.");
+		}
+	}
+
+	/**
+	 * Returns the shared mirror of the given kind. The same instance is returned
+	 * for every room with a mirror of the kind, so it must not be changed.
+	 * 
+	 * @param kind
+	 *            - one of the <code>KIND_</code> constants
+	 * @return shared <code>ReflectiveMirror</code> of the kind, <code>null</code>
+	 *         for <code>KIND_NONE</code>
+	 */
+	public static ReflectiveMirror of(int kind) {
+		return SHARED[kind];
+	}
 }
\ No newline at end of file
@@ -0,0 +1,43 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * ResumableTrapDetector is a {@link TrapDetector} whose state can be saved in a
+ * checkpoint and restored later, so a long trace can go on where it stopped
+ * (see {@link CheckpointedTrace}).
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public interface ResumableTrapDetector extends TrapDetector {
+
+	/**
+	 * Writes the state of the detector.
+	 * 
+	 * @param out
+	 *            - the checkpoint
+	 * @throws IOException
+	 *             if the checkpoint can not be written
+	 */
+	void save(DataOutput out) throws IOException;
+
+	/**
+	 * Reads the state of the detector written by {@link #save(DataOutput)}, the
+	 * detector must be reset for the same board before.
+	 * 
+	 * @param in
+	 *            - the checkpoint
+	 * @throws IOException
+	 *             if the checkpoint can not be read
+	 */
+	void restore(DataInput in) throws IOException;
+
+	/**
+	 * Returns a copy of the state of the detector, which is saved on another
+	 * thread while the trace goes on with the detector.
+	 * 
+	 * @return copy of the detector
+	 */
+	ResumableTrapDetector snapshot();
+}
@@ -0,0 +1,189 @@
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Solver answers the queries of a {@link Maze} from a program: the exit point
+ * of a laser, the length of its path or the loop it is trapped in, as a
+ * {@link TraceResult}. Nothing is printed.
+ *
+ * A solver keeps its tracer, its trap detector and its path buffer from one
+ * query to the next, so a query allocates only its result. It is not thread
+ * safe, every thread gets its own solver from {@link Maze#newSolver()}. The
+ * path of the last query is kept until the next one if a path mode is set.
+ *
+ * A query without a path finds the trap of the laser with Brent's cycle finder
+ * over the states after the mirrors, so its cost does not grow with the size of
+ * the board. With a path mode the bitset detector of the board is used, so the
+ * path of a trapped laser ends at the first state which repeats.
+ *
+ * @author Bankim Aghera
+ *
+ */
+public final class Solver {
+
+	private final Maze mMaze;
+
+	private final BeamTracer mTracer;
+
+	private final TrapDetector mCycleFinder = new CycleFinderTrapDetector();
+
+	/**
+	 * Detector of the board for the queries with a path, made when a path mode
+	 * is first set.
+	 */
+	private TrapDetector mBoardTrapDetector;
+
+	private SplitBeamTracer mSplitTracer;
+
+	private int mPathMode = BeamTracer.PATH_NONE;
+
+	Solver(Maze maze) {
+		mMaze = maze;
+		mTracer = new BeamTracer(maze.getGrid());
+		mTracer.setMirrorIndex(maze.getIndex());
+		mTracer.setPathMode(BeamTracer.PATH_NONE);
+	}
+
+	/**
+	 * @return the maze of the solver
+	 */
+	public Maze getMaze() {
+		return mMaze;
+	}
+
+	/**
+	 * Sets which block positions of the path are kept for {@link #path()}, no path
+	 * by default.
+	 *
+	 * @param pathMode
+	 *            - one of the <code>BeamTracer.PATH_</code> constants
+	 */
+	public void setPathMode(int pathMode) {
+		mTracer.setPathMode(pathMode);
+		mPathMode = pathMode;
+		if (pathMode != BeamTracer.PATH_NONE && mBoardTrapDetector == null) {
+			mBoardTrapDetector = TrapDetector.forBoard(mMaze.columns(), mMaze.rows());
+		}
+	}
+
+	/**
+	 * Follows the laser of the maze definition.
+	 *
+	 * @return <code>TraceResult</code> of the laser
+	 * @throws IllegalStateException
+	 *             if the laser does not start in a room of the maze, or the maze
+	 *             has beam splitters (see {@link #solveBeams()})
+	 */
+	public TraceResult solve() {
+		if (!mMaze.hasLaser()) {
+			throw new IllegalStateException("The laser of the maze definition is not in the maze.");
+		}
+		return solve(mMaze.getLaserColumn(), mMaze.getLaserRow(), mMaze.getLaserHeading());
+	}
+
+	/**
+	 * Follows a laser starting in a room of the maze, the mirror of the start room
+	 * is not applied.
+	 *
+	 * @param column
+	 *            - start column of the laser
+	 * @param row
+	 *            - start row of the laser
+	 * @param heading
+	 *            - start heading of the laser
+	 * @return <code>TraceResult</code> of the laser
+	 * @throws IllegalArgumentException
+	 *             if the start room is not in the maze
+	 * @throws IllegalStateException
+	 *             if the maze has beam splitters (see {@link #solveBeams()})
+	 */
+	public TraceResult solve(int column, int row, int heading) {
+		if (!mMaze.contains(column, row) || heading < 0 || heading > 3) {
+			throw new IllegalArgumentException(
+					"The laser start " + column + "," + row + " heading " + heading + " is not in the maze.");
+		}
+		if (mMaze.hasSplitters()) {
+			throw new IllegalStateException("The maze has beam splitters, the beams are solved by solveBeams().");
+		}
+		long start = BeamState.pack(column, row, heading);
+		try {
+			long exit = mTracer.trace(column, row, heading,
+					mPathMode == BeamTracer.PATH_NONE ? mCycleFinder : mBoardTrapDetector);
+			return TraceResult.exited(start, exit, mTracer.getSteps());
+		} catch (LaserTrappedException e) {
+			return TraceResult.trapped(start, e);
+		}
+	}
+
+	/**
+	 * Follows a laser coming in through the door of a room on the edge of the
+	 * maze from outside, the mirror of the room is applied.
+	 *
+	 * @param column
+	 *            - the column of the room behind the door
+	 * @param row
+	 *            - the row of the room behind the door
+	 * @param heading
+	 *            - heading of the laser coming in
+	 * @return <code>TraceResult</code> of the laser, it starts in the room behind
+	 *         the door with the heading after the mirror
+	 * @throws IllegalArgumentException
+	 *             if there is no such door
+	 * @throws IllegalStateException
+	 *             if the maze has beam splitters
+	 */
+	public TraceResult solveDoor(int column, int row, int heading) {
+		if (heading < 0 || heading > 3 || !mMaze.contains(column, row)
+				|| mMaze.contains(column - BeamState.columnStep(heading), row - BeamState.rowStep(heading))) {
+			throw new IllegalArgumentException(
+					"There is no door of the room " + column + "," + row + " for the heading " + heading + ".");
+		}
+		return solve(column, row, ReflectiveMirror.reflect(mMaze.getGrid().kind(column, row), heading));
+	}
+
+	/**
+	 * Follows every beam of the laser of the maze definition through the beam
+	 * splitters, on the common fork-join pool. A maze without beam splitters has
+	 * one beam.
+	 *
+	 * @return <code>SplitTraceResult</code> with the exit of every beam
+	 * @throws IllegalStateException
+	 *             if the laser does not start in a room of the maze
+	 */
+	public SplitTraceResult solveBeams() {
+		if (!mMaze.hasLaser()) {
+			throw new IllegalStateException("The laser of the maze definition is not in the maze.");
+		}
+		if (mSplitTracer == null) {
+			mSplitTracer = new SplitBeamTracer(mMaze.getGrid(), mMaze.getIndex(), ForkJoinPool.commonPool());
+		}
+		return mSplitTracer.trace(mMaze.getLaserColumn(), mMaze.getLaserRow(), mMaze.getLaserHeading());
+	}
+
+	/**
+	 * Returns the recorded path of the last query, every room or only the turning
+	 * points as set by the path mode. The iterator reads the path buffer of the
+	 * solver and is good until the next query.
+	 *
+	 * @return iterator of the packed states of the path (see {@link BeamState})
+	 */
+	public PrimitiveIterator.OfLong path() {
+		final int length = mPathMode == BeamTracer.PATH_NONE ? 0 : mTracer.getPathLength();
+		return new PrimitiveIterator.OfLong() {
+
+			private int mNext;
+
+			public boolean hasNext() {
+				return mNext < length;
+			}
+
+			public long nextLong() {
+				if (mNext >= length) {
+					throw new NoSuchElementException();
+				}
+				return mTracer.getPathState(mNext++);
+			}
+		};
+	}
+}
@@ -0,0 +1,403 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SolverService is a long running solver process which answers queries on a
+ * local socket, so the callers do not pay for the start of the JVM and the
+ * parsing of the maze definition file on every call.
+ * 
+ * The protocol is one line per query and one line per answer:
+ * <ul>
+ * <li><code>SOLVE file</code> - exit point of the laser of the definition file
+ * <li><code>DOOR file X,YOD</code> - exit point of a laser coming in through the
+ * door of the room X,Y on the edge of the maze with orientation O (H or V) and
+ * direction D (+ or -), for example <code>DOOR maze.txt 0,2H+</code>
+ * <li><code>STATS</code> - counters of the maze cache
+ * <li><code>QUIT</code> - closes the connection
+ * </ul>
+ * The answer is <code>EXIT X,YOD</code>, <code>TRAPPED</code>,
+ * <code>ERROR message</code> or the counters. For a maze with beam splitters
+ * the answer is <code>EXITS X,YOD X,YOD ...</code> with the exit of every beam
+ * (see {@link SplitBeamTracer}), or <code>TRAPPED</code>.
+ * 
+ * The parsed mazes, with their mirror index and exit table, are kept in a LRU
+ * cache bounded by their estimated size in bytes. The cache key is the SHA-256
+ * hash of the content of the definition file, so a changed file is parsed again
+ * and a copy of a file shares the cached maze. The connections are served on
+ * virtual threads when the JVM has them, otherwise on a cached thread pool.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class SolverService {
+
+	/**
+	 * Default port of the service.
+	 */
+	public static final int DEFAULT_PORT = 7878;
+
+	/**
+	 * Default size of the maze cache, in megabytes.
+	 */
+	public static final int DEFAULT_CACHE_MEGABYTES = 256;
+
+	private final long mMaxCacheBytes;
+
+	/**
+	 * Cached mazes by content hash, in access order.
+	 */
+	private final LinkedHashMap<String, CachedMaze> mCache = new LinkedHashMap<String, CachedMaze>(16, 0.75f, true);
+
+	private long mCacheBytes;
+
+	private final AtomicLong mHits = new AtomicLong();
+
+	private final AtomicLong mMisses = new AtomicLong();
+
+	private final AtomicLong mEvictions = new AtomicLong();
+
+	/**
+	 * Constructs a new SolverService.
+	 * 
+	 * @param maxCacheBytes
+	 *            - estimated size of the cached mazes at most
+	 */
+	public SolverService(long maxCacheBytes) {
+		if (maxCacheBytes <= 0) {
+			throw new IllegalArgumentException("The size of the cache must be positive: " + maxCacheBytes);
+		}
+		mMaxCacheBytes = maxCacheBytes;
+	}
+
+	/**
+	 * Starts the service on the loopback address.
+	 * 
+	 * @param args
+	 *            - port and cache size in megabytes, both optional
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		long cacheMegabytes = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_CACHE_MEGABYTES;
+		new SolverService(cacheMegabytes << 20).serve(port);
+	}
+
+	/**
+	 * Accepts connections on the loopback address until the JVM is stopped.
+	 * 
+	 * @param port
+	 *            - port to listen on
+	 * @throws IOException
+	 *             if the port can not be opened
+	 */
+	public void serve(int port) throws IOException {
+		ExecutorService executor = newConnectionExecutor();
+		try (ServerSocket server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress())) {
+			System.out.println("The maze solver is listening on " + server.getLocalSocketAddress());
+			while (true) {
+				final Socket socket = server.accept();
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						serve(socket);
+					}
+				});
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (Socket s = socket;
+				BufferedReader in = new BufferedReader(
+						new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+				Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.equalsIgnoreCase("QUIT")) {
+					break;
+				}
+				if (line.isEmpty()) {
+					continue;
+				}
+				out.write(handle(line));
+				out.write('\n');
+				// answer at once when the client waits for it, otherwise batch the answers
+				if (!in.ready()) {
+					out.flush();
+				}
+			}
+		} catch (IOException e) {
+			// the client has gone, nothing to answer
+		}
+	}
+
+	/**
+	 * Answers one query of the protocol.
+	 * 
+	 * @param query
+	 *            - the query line
+	 * @return the answer line
+	 */
+	public String handle(String query) {
+		String[] words = query.trim().split("\\s+");
+		String command = words[0].toUpperCase();
+		try {
+			if (command.equals("STATS") && words.length == 1) {
+				return stats();
+			}
+			if (command.equals("SOLVE") && words.length == 2) {
+				return solve(load(words[1]));
+			}
+			if (command.equals("DOOR") && words.length == 3) {
+				return door(load(words[1]), words[2]);
+			}
+			return "ERROR unknown query: " + query;
+		} catch (IOException | MazeFormatException | RuntimeException e) {
+			String error = e.getLocalizedMessage() != null ? e.getLocalizedMessage() : e.toString();
+			return "ERROR " + error.replace('\n', ' ');
+		}
+	}
+
+	/**
+	 * @return number of queries answered from the cache
+	 */
+	public long getCacheHits() {
+		return mHits.get();
+	}
+
+	/**
+	 * @return number of queries which parsed the maze
+	 */
+	public long getCacheMisses() {
+		return mMisses.get();
+	}
+
+	/**
+	 * @return number of mazes removed from the cache to make room
+	 */
+	public long getCacheEvictions() {
+		return mEvictions.get();
+	}
+
+	private String stats() {
+		synchronized (mCache) {
+			return "STATS hits=" + mHits.get() + " misses=" + mMisses.get() + " evictions=" + mEvictions.get()
+					+ " mazes=" + mCache.size() + " bytes=" + mCacheBytes;
+		}
+	}
+
+	private String solve(CachedMaze cached) {
+		MazeDefinition maze = cached.mMaze;
+		MirrorGrid grid = maze.mGrid;
+		if (maze.mLaserStartColumn < 0 || maze.mLaserStartRow < 0 || maze.mLaserStartColumn >= grid.columns()
+				|| maze.mLaserStartRow >= grid.rows() || maze.mLaserOrientation == null) {
+			return "ERROR incorrect input";
+		}
+		if (maze.mSplitters) {
+			return exits(new SplitBeamTracer(grid, cached.mIndex, ForkJoinPool.commonPool()).trace(
+					maze.mLaserStartColumn, maze.mLaserStartRow,
+					BeamState.heading(maze.mLaserOrientation, BlockPosition.MOVE_FORWARD)));
+		}
+		// the tracer keeps state, every query has its own; the cycle finder keeps a
+		// few numbers where a bitset would take up to 8 MB for every query
+		BeamTracer tracer = new BeamTracer(grid);
+		tracer.setMirrorIndex(cached.mIndex);
+		tracer.setRecordPath(false);
+		try {
+			long exit = tracer.trace(maze.mLaserStartColumn, maze.mLaserStartRow,
+					BeamState.heading(maze.mLaserOrientation, BlockPosition.MOVE_FORWARD),
+					new CycleFinderTrapDetector());
+			return exit(BeamState.column(exit), BeamState.row(exit), BeamState.heading(exit));
+		} catch (LaserTrappedException e) {
+			return "TRAPPED";
+		}
+	}
+
+	private String door(CachedMaze cached, String spec) {
+		int comma = spec.indexOf(',');
+		int end = spec.length() - 2;
+		if (comma <= 0 || end <= comma + 1) {
+			return "ERROR incorrect door: " + spec;
+		}
+		int column;
+		int row;
+		try {
+			column = Integer.parseInt(spec.substring(0, comma));
+			row = Integer.parseInt(spec.substring(comma + 1, end));
+		} catch (NumberFormatException e) {
+			return "ERROR incorrect door: " + spec;
+		}
+		String orientation = spec.substring(end, end + 1).toUpperCase();
+		String direction = spec.substring(end + 1);
+		boolean room = (orientation.equals(BlockPosition.ORIENTATION_HORIZONTAL)
+				|| orientation.equals(BlockPosition.ORIENTATION_VERTICAL))
+				&& (direction.equals(BlockPosition.MOVE_FORWARD) || direction.equals(BlockPosition.MOVE_BACKWARD))
+				&& column >= 0 && row >= 0 && column < cached.mMaze.mGrid.columns()
+				&& row < cached.mMaze.mGrid.rows();
+		if (cached.mMaze.mSplitters) {
+			try {
+				if (room) {
+					return exits(new SplitBeamTracer(cached.mMaze.mGrid, cached.mIndex, ForkJoinPool.commonPool())
+							.traceDoor(column, row, BeamState.heading(orientation, direction)));
+				}
+			} catch (IllegalArgumentException e) {
+				// not a room on the edge of the maze
+			}
+			return "ERROR no door at " + spec;
+		}
+		ExitTable exits = cached.getExitTable();
+		int door = -1;
+		if (room) {
+			door = exits.getDoor(column, row, BeamState.heading(orientation, direction));
+		}
+		if (door < 0) {
+			return "ERROR no door at " + spec;
+		}
+		int exit = exits.getExitDoor(door);
+		if (exit == ExitTable.TRAPPED) {
+			return "TRAPPED";
+		}
+		return exit(exits.getDoorColumn(exit), exits.getDoorRow(exit), exits.getExitHeading(door));
+	}
+
+	private static String exit(int column, int row, int heading) {
+		return "EXIT " + column + "," + row + BeamState.orientation(heading) + BeamState.direction(heading);
+	}
+
+	private static String exits(SplitTraceResult result) {
+		if (result.isTrapped()) {
+			return "TRAPPED";
+		}
+		StringBuilder sb = new StringBuilder("EXITS");
+		for (int i = 0; i < result.getExitCount(); i++) {
+			long exit = result.getExit(i);
+			int heading = BeamState.heading(exit);
+			sb.append(' ').append(BeamState.column(exit)).append(',').append(BeamState.row(exit))
+					.append(BeamState.orientation(heading)).append(BeamState.direction(heading));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the cached maze of the definition file, the file is parsed if its
+	 * content is not in the cache.
+	 */
+	private CachedMaze load(String fileName) throws IOException, MazeFormatException {
+		String key = hash(fileName);
+		synchronized (mCache) {
+			CachedMaze cached = mCache.get(key);
+			if (cached != null) {
+				mHits.incrementAndGet();
+				return cached;
+			}
+		}
+
+		// parsed outside of the lock, two queries of a new maze may both parse it
+		mMisses.incrementAndGet();
+		CachedMaze cached = new CachedMaze(LaserExitPointInMirrorMaze.readMazeDefinitionFile(fileName, true));
+		synchronized (mCache) {
+			CachedMaze existing = mCache.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			mCache.put(key, cached);
+			mCacheBytes += cached.mSizeInBytes;
+			Iterator<Map.Entry<String, CachedMaze>> eldest = mCache.entrySet().iterator();
+			// the maze just added stays even if it is bigger than the cache
+			while (mCacheBytes > mMaxCacheBytes && mCache.size() > 1) {
+				CachedMaze evicted = eldest.next().getValue();
+				eldest.remove();
+				mCacheBytes -= evicted.mSizeInBytes;
+				mEvictions.incrementAndGet();
+			}
+		}
+		return cached;
+	}
+
+	/**
+	 * @return SHA-256 hash of the content of the file as hex digits
+	 */
+	private static String hash(String fileName) throws IOException {
+		byte[] hash = ExitStore.hash(Paths.get(fileName));
+		StringBuilder hex = new StringBuilder(64);
+		for (byte b : hash) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Returns the executor of the connections, one virtual thread per connection
+	 * on a JVM with virtual threads. Looked up by reflection so the service still
+	 * compiles and runs on older JVMs.
+	 */
+	private static ExecutorService newConnectionExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Parsed maze with its mirror index, and the exit table of its doors built on
+	 * the first door query.
+	 */
+	private static class CachedMaze {
+		final MazeDefinition mMaze;
+		final MirrorIndex mIndex;
+		final long mSizeInBytes;
+		private volatile ExitTable mExitTable;
+
+		CachedMaze(MazeDefinition maze) {
+			mMaze = maze;
+			mIndex = maze.mIndex != null ? maze.mIndex : new MirrorIndex(maze.mGrid);
+			MirrorGrid grid = maze.mGrid;
+			long doors = 2L * (grid.columns() + grid.rows());
+			long gridBytes;
+			if (grid instanceof PackedMirrorGrid) {
+				gridBytes = ((PackedMirrorGrid) grid).getSizeInBytes();
+			} else if (grid instanceof ByteMirrorGrid) {
+				gridBytes = (long) grid.columns() * grid.rows();
+			} else {
+				// a mapped grid is in the page cache, not on the heap
+				gridBytes = 0;
+			}
+			// the index keeps two coordinates per mirror and an offset per row and
+			// column, the exit table an exit per door
+			mSizeInBytes = gridBytes + 8L * mIndex.getMirrorCount() + 2L * doors + 4L * doors;
+		}
+
+		ExitTable getExitTable() {
+			ExitTable exits = mExitTable;
+			if (exits == null) {
+				synchronized (this) {
+					exits = mExitTable;
+					if (exits == null) {
+						exits = new ExitTable(mMaze.mGrid, mIndex);
+						mExitTable = exits;
+					}
+				}
+			}
+			return exits;
+		}
+	}
+}
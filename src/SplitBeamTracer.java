@@ -0,0 +1,226 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SplitBeamTracer follows every beam of the laser through a maze with beam
+ * splitters, where one beam becomes two at each splitter it meets. Each beam
+ * is a task of a fork-join pool: at a splitter the passing beam is forked and
+ * the reflected beam is followed by the same task, so idle threads steal the
+ * forked beams. The beams jump from mirror to mirror with the
+ * {@link MirrorIndex}.
+ * 
+ * The states of the beams leaving the mirrors, mirror number x 4 + heading,
+ * are marked in a bit set shared by all the tasks with an atomic bitwise or. A
+ * beam stops at a state which is already marked, the path from there is traced
+ * by the beam which marked it, so beams which join or go round a loop are
+ * traced only once and the trace always ends.
+ * 
+ * A tracer runs one trace at a time, the bit set is reused by the next trace.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class SplitBeamTracer {
+
+	private static final VarHandle BITS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private final MirrorGrid mGrid;
+
+	private final MirrorIndex mIndex;
+
+	private final int mColumns;
+
+	private final int mRows;
+
+	private final ForkJoinPool mPool;
+
+	private final long[] mVisited;
+
+	/**
+	 * Constructs a new SplitBeamTracer for the maze on the common pool.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 */
+	public SplitBeamTracer(MirrorGrid grid) {
+		this(grid, new MirrorIndex(grid), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructs a new SplitBeamTracer for the maze.
+	 * 
+	 * @param grid
+	 *            - mirrors of the maze
+	 * @param index
+	 *            - index of the mirrors of the maze
+	 * @param pool
+	 *            - pool the beams are traced in
+	 */
+	public SplitBeamTracer(MirrorGrid grid, MirrorIndex index, ForkJoinPool pool) {
+		if (grid.rows() > BeamState.MAX_ROWS) {
+			throw new IllegalArgumentException("The maze can not have more than " + BeamState.MAX_ROWS + " rows.");
+		}
+		mGrid = grid;
+		mIndex = index;
+		mColumns = grid.columns();
+		mRows = grid.rows();
+		mPool = pool;
+		mVisited = new long[(int) (((long) index.getMirrorCount() * 4 + 63) >>> 6)];
+	}
+
+	/**
+	 * Follows the laser and all its beams from the start position until they
+	 * leave the maze or reach a path already traced. The mirror of the start room
+	 * is not applied, the laser starts in the room with the given heading. The
+	 * start may also be just outside of the maze with the heading into the maze,
+	 * for a laser coming in through a door.
+	 * 
+	 * @param startColumn
+	 *            - start column position of laser
+	 * @param startRow
+	 *            - start row position of laser
+	 * @param startHeading
+	 *            - start heading of laser
+	 * @return <code>SplitTraceResult</code> with the exit of every beam
+	 */
+	public SplitTraceResult trace(int startColumn, int startRow, int startHeading) {
+		Arrays.fill(mVisited, 0);
+		Trace trace = new Trace();
+		mPool.invoke(new Beam(null, trace, startColumn, startRow, startHeading));
+
+		long[] exits = Arrays.copyOf(trace.mExits, trace.mExitCount);
+		Arrays.sort(exits);
+		return new SplitTraceResult(BeamState.pack(startColumn, startRow, startHeading), exits,
+				trace.mBeams.sum() + 1, trace.mJoined.sum());
+	}
+
+	/**
+	 * Follows the laser coming in through the door of the room from outside of the
+	 * maze, the mirror of the room is applied.
+	 * 
+	 * @param column
+	 *            - the column of the room behind the door
+	 * @param row
+	 *            - the row of the room behind the door
+	 * @param heading
+	 *            - heading of the laser coming in
+	 * @return <code>SplitTraceResult</code> with the exit of every beam
+	 */
+	public SplitTraceResult traceDoor(int column, int row, int heading) {
+		int outsideColumn = column - BeamState.columnStep(heading);
+		int outsideRow = row - BeamState.rowStep(heading);
+		if (column < 0 || column >= mColumns || row < 0 || row >= mRows
+				|| (outsideColumn >= 0 && outsideColumn < mColumns && outsideRow >= 0 && outsideRow < mRows)) {
+			throw new IllegalArgumentException("There is no door of the room " + column + "," + row
+					+ " for the heading " + heading + ".");
+		}
+		return trace(outsideColumn, outsideRow, heading);
+	}
+
+	/**
+	 * Marks the state leaving the mirror.
+	 * 
+	 * @return <code>true</code> if no beam has left the mirror with the heading
+	 *         before
+	 */
+	private boolean visit(int mirror, int heading) {
+		long bit = ((long) mirror << 2) | heading;
+		long mask = 1L << bit;
+		return ((long) BITS.getAndBitwiseOr(mVisited, (int) (bit >>> 6), mask) & mask) == 0;
+	}
+
+	/**
+	 * Shared results of the beams of one trace.
+	 */
+	private static final class Trace {
+
+		private final LongAdder mBeams = new LongAdder();
+
+		private final LongAdder mJoined = new LongAdder();
+
+		private long[] mExits = new long[16];
+
+		private int mExitCount;
+
+		synchronized void exit(long state) {
+			if (mExitCount == mExits.length) {
+				mExits = Arrays.copyOf(mExits, mExitCount * 2);
+			}
+			mExits[mExitCount++] = state;
+		}
+	}
+
+	/**
+	 * One beam, it completes when the beams forked from it have completed.
+	 */
+	private final class Beam extends CountedCompleter<Void> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Trace mTrace;
+
+		private final int mColumn;
+
+		private final int mRow;
+
+		private final int mHeading;
+
+		Beam(Beam parent, Trace trace, int column, int row, int heading) {
+			super(parent);
+			mTrace = trace;
+			mColumn = column;
+			mRow = row;
+			mHeading = heading;
+		}
+
+		@Override
+		public void compute() {
+			final MirrorIndex index = mIndex;
+			final MirrorGrid grid = mGrid;
+			int col = mColumn;
+			int row = mRow;
+			int heading = mHeading;
+			while (true) {
+				int target = index.next(col, row, heading);
+				if (target < 0) {
+					// no more mirrors, the beam goes straight out of the maze
+					if ((heading & 1) == 0) {
+						col = (heading & 2) == 0 ? mColumns - 1 : 0;
+					} else {
+						row = (heading & 2) == 0 ? mRows - 1 : 0;
+					}
+					mTrace.exit(BeamState.pack(col, row, heading));
+					break;
+				}
+				if ((heading & 1) == 0) {
+					col = target;
+				} else {
+					row = target;
+				}
+
+				int kind = grid.kind(col, row);
+				int mirror = index.getMirrorNumber(col, row);
+				if (ReflectiveMirror.isSplitter(kind)) {
+					mTrace.mBeams.increment();
+					if (visit(mirror, heading)) {
+						// the passing beam goes to another task
+						addToPendingCount(1);
+						new Beam(this, mTrace, col, row, heading).fork();
+					} else {
+						mTrace.mJoined.increment();
+					}
+				}
+				heading = ReflectiveMirror.reflect(kind, heading);
+				if (!visit(mirror, heading)) {
+					mTrace.mJoined.increment();
+					break;
+				}
+			}
+			tryComplete();
+		}
+	}
+}
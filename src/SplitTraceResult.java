@@ -0,0 +1,90 @@
+/**
+ * SplitTraceResult is the result of tracing a laser through a maze with beam
+ * splitters (see {@link SplitBeamTracer}): the exit point of every beam which
+ * leaves the maze, sorted by their packed state, and how many beams there
+ * were.
+ * 
+ * The positions are kept packed as in {@link BeamState}.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class SplitTraceResult {
+
+	private final long mStart;
+
+	private final long[] mExits;
+
+	private final long mBeams;
+
+	private final long mJoined;
+
+	SplitTraceResult(long start, long[] exits, long beams, long joined) {
+		mStart = start;
+		mExits = exits;
+		mBeams = beams;
+		mJoined = joined;
+	}
+
+	/**
+	 * @return packed start state of the laser
+	 */
+	public long getStart() {
+		return mStart;
+	}
+
+	/**
+	 * @return number of beams leaving the maze
+	 */
+	public int getExitCount() {
+		return mExits.length;
+	}
+
+	/**
+	 * @param index
+	 *            - index of the exit, the exits are sorted by their packed state
+	 * @return packed state of the last block position of the beam in the maze
+	 */
+	public long getExit(int index) {
+		return mExits[index];
+	}
+
+	/**
+	 * @return <code>true</code> if no beam leaves the maze
+	 */
+	public boolean isTrapped() {
+		return mExits.length == 0;
+	}
+
+	/**
+	 * @return number of beams, the laser and one more for every split, each beam
+	 *         either leaves the maze or joins a path already traced
+	 */
+	public long getBeamCount() {
+		return mBeams;
+	}
+
+	/**
+	 * @return number of beams which reached a path already traced, because they
+	 *         joined another beam or went round a loop
+	 */
+	public long getJoinedCount() {
+		return mJoined;
+	}
+
+	/**
+	 * Returns a short description of the result.
+	 * 
+	 * @return <code>String</code> based on default encoding of the JVM
+	 */
+	public String toString() {
+		if (isTrapped()) {
+			return "The laser beams are trapped in the maze, beams: " + mBeams;
+		}
+		StringBuilder sb = new StringBuilder("Exit points:");
+		for (long exit : mExits) {
+			sb.append(' ').append(BeamState.toBlockPosition(exit));
+		}
+		return sb.append("beams: ").append(mBeams).toString();
+	}
+}
@@ -0,0 +1,388 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TileCoordinator traces the lasers of a board too big for one JVM with
+ * several local worker processes (see {@link TileWorker}). The board is split
+ * into rectangular tiles, one per worker, and every worker loads only the
+ * mirrors of its own tile. The coordinator starts the workers, hands the beam to
+ * the worker owning the room it goes into, and prints the result as
+ * <code>LaserExitPointInMirrorMaze --exit-only</code> does.
+ *
+ * A worker follows the beam room by room until it leaves its tile and sends the
+ * state of the last room back, the coordinator passes it on to the worker of
+ * the next room over the loopback socket of that worker. Every worker marks the
+ * states of its own rooms in a bitset, so the first state which repeats is
+ * found by the worker of its room. That state is the entry of the loop, the
+ * length of the loop is then counted by one more round of the beam from it.
+ *
+ * The messages are small and the beam is handed over at every tile edge, a board
+ * is worth splitting when its mirrors do not fit in one JVM. Maze definitions
+ * with beam splitters are not supported.
+ *
+ * Usage: <code>java TileCoordinator maze_definition.txt [--workers N]</code>
+ *
+ * @author Bankim Aghera
+ *
+ */
+public class TileCoordinator {
+
+	/**
+	 * Default number of worker processes.
+	 */
+	public static final int DEFAULT_WORKERS = 4;
+
+	/**
+	 * Time to wait for the workers to load their tiles, in milliseconds.
+	 */
+	private static final int CONNECT_TIMEOUT = 10 * 60 * 1000;
+
+	static final int MESSAGE_START = 1;
+	static final int MESSAGE_BEAM = 2;
+	static final int MESSAGE_RESET = 3;
+	static final int MESSAGE_STOP = 4;
+
+	static final int MESSAGE_LEFT = 1;
+	static final int MESSAGE_TRAPPED = 2;
+	static final int MESSAGE_MEASURED = 3;
+
+	/**
+	 * Target of a beam which is not counting the length of a loop.
+	 */
+	static final long NO_TARGET = -1L;
+
+	private final Partition mPartition;
+
+	private final DataInputStream[] mInputs;
+
+	private final DataOutputStream[] mOutputs;
+
+	private TileCoordinator(Partition partition, List<Socket> sockets) throws IOException {
+		mPartition = partition;
+		mInputs = new DataInputStream[sockets.size()];
+		mOutputs = new DataOutputStream[sockets.size()];
+		for (Socket socket : sockets) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			// the worker tells its tile first, once it is loaded
+			int tile = in.readInt();
+			mInputs[tile] = in;
+			mOutputs[tile] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String fileName = null;
+		int workers = DEFAULT_WORKERS;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--workers") && i + 1 < args.length) {
+				workers = Integer.parseInt(args[++i]);
+			} else {
+				fileName = args[i];
+			}
+		}
+		if (fileName == null || workers < 1) {
+			System.out.println("usage: java TileCoordinator maze_definition.txt [--workers N]");
+			return;
+		}
+
+		Header header;
+		try {
+			header = readHeader(Paths.get(fileName));
+		} catch (FileNotFoundException | MazeFormatException e) {
+			System.out.println(e.getLocalizedMessage());
+			return;
+		}
+		if (header.mSplitters) {
+			System.out.println("The beams of a maze with beam splitters can not be traced by tiles.");
+			return;
+		}
+		int count = header.mLasers.length / 3;
+		if (count == 0 || (count == 1 && !header.isLaserInMaze(0))) {
+			// as LaserExitPointInMirrorMaze prints it, no workers are started
+			System.out.println("incorrect input");
+			return;
+		}
+		solve(Paths.get(fileName), header, workers, System.out);
+	}
+
+	/**
+	 * Starts the workers, traces every laser of the definition and stops the
+	 * workers.
+	 */
+	private static void solve(Path file, Header header, int workers, PrintStream out)
+			throws IOException, InterruptedException {
+		Partition partition = new Partition(header.mColumns, header.mRows, workers);
+		List<Process> processes = new ArrayList<>();
+		List<Socket> sockets = new ArrayList<>();
+		try (ServerSocket server = new ServerSocket(0, partition.mTiles, InetAddress.getLoopbackAddress())) {
+			server.setSoTimeout(CONNECT_TIMEOUT);
+			String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+			for (int tile = 0; tile < partition.mTiles; tile++) {
+				processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "TileWorker",
+						String.valueOf(server.getLocalPort()), String.valueOf(tile), String.valueOf(workers),
+						file.toString()).redirectOutput(ProcessBuilder.Redirect.INHERIT)
+								.redirectError(ProcessBuilder.Redirect.INHERIT).start());
+			}
+			for (int tile = 0; tile < partition.mTiles; tile++) {
+				Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				sockets.add(socket);
+			}
+
+			TileCoordinator coordinator = new TileCoordinator(partition, sockets);
+			int[] lasers = header.mLasers;
+			int count = lasers.length / 3;
+			out.println("The size of board (X into Y): " + header.mColumns + " x " + header.mRows);
+			for (int i = 0; i < count; i++) {
+				if (!header.isLaserInMaze(i)) {
+					out.println("incorrect input");
+					continue;
+				}
+				long start = BeamState.pack(lasers[i * 3], lasers[i * 3 + 1], lasers[i * 3 + 2]);
+				out.println("The start point of the laser: " + BeamState.toBlockPosition(start));
+				TraceResult result = coordinator.trace(start);
+				if (result.isTrapped()) {
+					out.println(result);
+				} else {
+					out.println("The exit point of the laser: " + BeamState.toBlockPosition(result.getExit()));
+				}
+			}
+			coordinator.stop();
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+			for (Process process : processes) {
+				if (!process.waitFor(10, TimeUnit.SECONDS)) {
+					process.destroy();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Follows the laser from the start state through the tiles of the workers, the
+	 * mirror of the start room is not applied.
+	 *
+	 * @param start
+	 *            - packed start state of the laser
+	 * @return <code>TraceResult</code> of the laser
+	 * @throws IOException
+	 *             if a worker can not be reached
+	 */
+	TraceResult trace(long start) throws IOException {
+		for (DataOutputStream out : mOutputs) {
+			out.writeByte(MESSAGE_RESET);
+			out.flush();
+		}
+		int tile = mPartition.owner(BeamState.column(start), BeamState.row(start));
+		DataOutputStream out = mOutputs[tile];
+		out.writeByte(MESSAGE_START);
+		out.writeLong(start);
+		out.flush();
+
+		long target = NO_TARGET;
+		long repeated = 0;
+		long repeatedSteps = 0;
+		while (true) {
+			DataInputStream in = mInputs[tile];
+			int message = in.readByte();
+			long state = in.readLong();
+			long steps = in.readLong();
+			if (message == MESSAGE_TRAPPED) {
+				// the first state which repeats is the loop entry, count the loop from it
+				repeated = state;
+				repeatedSteps = steps;
+				target = state;
+				steps = 0;
+			} else if (message == MESSAGE_MEASURED) {
+				long cycleStart = repeatedSteps - steps;
+				return TraceResult.trapped(start,
+						new LaserTrappedException(BeamState.toBlockPosition(repeated), cycleStart, steps));
+			}
+
+			int heading = BeamState.heading(state);
+			int nextColumn = BeamState.column(state) + BeamState.columnStep(heading);
+			int nextRow = BeamState.row(state) + BeamState.rowStep(heading);
+			if (nextColumn < 0 || nextRow < 0 || nextColumn >= mPartition.mColumns || nextRow >= mPartition.mRows) {
+				return TraceResult.exited(start, state, steps);
+			}
+			tile = mPartition.owner(nextColumn, nextRow);
+			out = mOutputs[tile];
+			out.writeByte(MESSAGE_BEAM);
+			out.writeLong(state);
+			out.writeLong(steps);
+			out.writeLong(target);
+			out.flush();
+		}
+	}
+
+	private void stop() throws IOException {
+		for (DataOutputStream out : mOutputs) {
+			out.writeByte(MESSAGE_STOP);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Reads the board size, the laser entry rooms and the splitter flag of the
+	 * definition file, the mirrors are not kept.
+	 */
+	private static Header readHeader(Path file) throws IOException, MazeFormatException {
+		Header header = new Header();
+		if (!Files.exists(file)) {
+			throw new FileNotFoundException(file + " (No such file or directory)");
+		}
+		if (BinaryMazeFormat.isBinary(file) || TiledMirrorGrid.isTiled(file)) {
+			// the mirrors stay in the file
+			MazeDefinition maze = LaserExitPointInMirrorMaze.readMazeDefinitionFile(file.toString());
+			header.boardSize(maze.mGrid.columns(), maze.mGrid.rows());
+			header.mSplitters = maze.mSplitters;
+			if (maze.mLasers != null) {
+				header.mLasers = maze.mLasers;
+			} else if (maze.mLaserOrientation != null) {
+				header.mLasers = new int[] { maze.mLaserStartColumn, maze.mLaserStartRow,
+						BeamState.heading(maze.mLaserOrientation, BlockPosition.MOVE_FORWARD) };
+			}
+		} else {
+			MazeDefinitionParser.parse(file, header);
+			header.mLasers = Arrays.copyOf(header.mLasers, header.mLaserCount * 3);
+		}
+		if (header.mColumns == 0) {
+			throw new MazeFormatException("The board size is missing.", 0);
+		}
+		return header;
+	}
+
+	/**
+	 * Header keeps the content of the definition file except the mirrors.
+	 */
+	private static final class Header implements MazeDefinitionHandler {
+
+		int mColumns;
+
+		int mRows;
+
+		boolean mSplitters;
+
+		/**
+		 * Column, row and heading of every laser entry room, no more than the
+		 * definition gives.
+		 */
+		int[] mLasers = new int[0];
+
+		int mLaserCount;
+
+		boolean isLaserInMaze(int index) {
+			int column = mLasers[index * 3];
+			int row = mLasers[index * 3 + 1];
+			int heading = mLasers[index * 3 + 2];
+			return column >= 0 && row >= 0 && column < mColumns && row < mRows && heading >= 0 && heading <= 3;
+		}
+
+		public void boardSize(int columns, int rows) throws MazeFormatException {
+			if (rows > BeamState.MAX_ROWS) {
+				throw new MazeFormatException("The maze can not have more than " + BeamState.MAX_ROWS + " rows.", 0);
+			}
+			mColumns = columns;
+			mRows = rows;
+		}
+
+		public void mirror(int column, int row, int kind, long lineNumber) {
+			if (ReflectiveMirror.isSplitter(kind)) {
+				mSplitters = true;
+			}
+		}
+
+		public void laser(int column, int row, int heading, long lineNumber) {
+			if (mLaserCount * 3 == mLasers.length) {
+				mLasers = Arrays.copyOf(mLasers, Math.max(3, mLasers.length * 2));
+			}
+			mLasers[mLaserCount * 3] = column;
+			mLasers[mLaserCount * 3 + 1] = row;
+			mLasers[mLaserCount * 3 + 2] = heading;
+			mLaserCount++;
+		}
+	}
+
+	/**
+	 * Partition splits the board into a grid of rectangular tiles of about the
+	 * same size, as square as the number of tiles allows.
+	 */
+	static final class Partition {
+
+		final int mColumns;
+
+		final int mRows;
+
+		final int mTilesAcross;
+
+		final int mTilesDown;
+
+		final int mTiles;
+
+		final int mTileWidth;
+
+		final int mTileHeight;
+
+		Partition(int columns, int rows, int tiles) {
+			mColumns = columns;
+			mRows = rows;
+			// the factor pair of the number of tiles closest to the shape of the board
+			int across = 1;
+			double best = Double.MAX_VALUE;
+			for (int a = 1; a <= tiles; a++) {
+				if (tiles % a == 0) {
+					double shape = Math.abs(Math.log(((double) columns / a) / ((double) rows / (tiles / a))));
+					if (shape < best) {
+						best = shape;
+						across = a;
+					}
+				}
+			}
+			across = Math.min(across, columns);
+			int down = Math.min(tiles / across, rows);
+			mTileWidth = (columns + across - 1) / across;
+			mTileHeight = (rows + down - 1) / down;
+			// no empty tiles at the right and bottom edges
+			mTilesAcross = (columns + mTileWidth - 1) / mTileWidth;
+			mTilesDown = (rows + mTileHeight - 1) / mTileHeight;
+			mTiles = mTilesAcross * mTilesDown;
+		}
+
+		int owner(int column, int row) {
+			return column / mTileWidth + (row / mTileHeight) * mTilesAcross;
+		}
+
+		int left(int tile) {
+			return (tile % mTilesAcross) * mTileWidth;
+		}
+
+		int top(int tile) {
+			return (tile / mTilesAcross) * mTileHeight;
+		}
+
+		int width(int tile) {
+			return Math.min(mTileWidth, mColumns - left(tile));
+		}
+
+		int height(int tile) {
+			return Math.min(mTileHeight, mRows - top(tile));
+		}
+	}
+}
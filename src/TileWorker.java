@@ -0,0 +1,224 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * TileWorker is a worker process of the {@link TileCoordinator}. It loads the
+ * mirrors of its own tile of the board and follows the beams the coordinator
+ * hands to it until they leave the tile, marking the states of its rooms to
+ * find the first state which repeats.
+ *
+ * A text definition file is read to the end but only the mirrors of the tile
+ * are kept. The binary and tile files are mapped, only the part of the tile is
+ * read from them.
+ *
+ * Usage: <code>java TileWorker port tile tiles maze_definition.txt</code>, it
+ * is started by the coordinator.
+ *
+ * @author Bankim Aghera
+ *
+ */
+public class TileWorker implements MazeDefinitionHandler {
+
+	/**
+	 * Largest tile kept one byte per room, bigger tiles are packed 4 bits per
+	 * room.
+	 */
+	private static final long MAX_BYTE_GRID_ROOMS = 1L << 24;
+
+	private final int mTile;
+
+	private final int mTiles;
+
+	private TileCoordinator.Partition mPartition;
+
+	private int mLeft;
+
+	private int mTop;
+
+	private int mWidth;
+
+	private int mHeight;
+
+	/**
+	 * Mirrors of the tile, or of the whole board for a mapped file.
+	 */
+	private MirrorGrid mGrid;
+
+	/**
+	 * Column and row of the room of the grid at 0,0.
+	 */
+	private int mGridLeft;
+
+	private int mGridTop;
+
+	/**
+	 * States of the rooms of the tile seen by the running trace.
+	 */
+	private long[] mVisited;
+
+	private TileWorker(int tile, int tiles) {
+		mTile = tile;
+		mTiles = tiles;
+	}
+
+	public static void main(String[] args) throws IOException, MazeFormatException {
+		if (args.length != 4) {
+			System.err.println("usage: java TileWorker port tile tiles maze_definition.txt");
+			return;
+		}
+		int port = Integer.parseInt(args[0]);
+		TileWorker worker = new TileWorker(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+		worker.load(Paths.get(args[3]));
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			socket.setTcpNoDelay(true);
+			worker.serve(new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+					new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+		}
+	}
+
+	private void load(Path file) throws IOException, MazeFormatException {
+		if (BinaryMazeFormat.isBinary(file) || TiledMirrorGrid.isTiled(file)) {
+			MazeDefinition maze = LaserExitPointInMirrorMaze.readMazeDefinitionFile(file.toString());
+			boardSize(maze.mGrid.columns(), maze.mGrid.rows());
+			mGrid = maze.mGrid;
+			mGridLeft = 0;
+			mGridTop = 0;
+		} else {
+			MazeDefinitionParser.parse(file, this);
+		}
+		long words = ((long) mWidth * mHeight * 4 + 63) >>> 6;
+		if (words > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("The tile is too big for the bitset of the states.");
+		}
+		mVisited = new long[(int) words];
+	}
+
+	public void boardSize(int columns, int rows) throws MazeFormatException {
+		mPartition = new TileCoordinator.Partition(columns, rows, mTiles);
+		mLeft = mPartition.left(mTile);
+		mTop = mPartition.top(mTile);
+		mWidth = mPartition.width(mTile);
+		mHeight = mPartition.height(mTile);
+		try {
+			if ((long) mWidth * mHeight <= MAX_BYTE_GRID_ROOMS) {
+				mGrid = new ByteMirrorGrid(mWidth, mHeight);
+			} else {
+				mGrid = new PackedMirrorGrid(mWidth, mHeight);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new MazeFormatException(e.getMessage(), 0);
+		}
+		mGridLeft = mLeft;
+		mGridTop = mTop;
+	}
+
+	public void mirror(int column, int row, int kind, long lineNumber) {
+		if (column >= mLeft && row >= mTop && column - mLeft < mWidth && row - mTop < mHeight) {
+			((MutableMirrorGrid) mGrid).setKind(column - mLeft, row - mTop, kind);
+		}
+	}
+
+	public void laser(int column, int row, int heading, long lineNumber) {
+		// the lasers are given by the coordinator
+	}
+
+	/**
+	 * Answers the messages of the coordinator until it stops the worker.
+	 */
+	private void serve(DataInputStream in, DataOutputStream out) throws IOException {
+		out.writeInt(mTile);
+		out.flush();
+		while (true) {
+			int message = in.readByte();
+			switch (message) {
+			case TileCoordinator.MESSAGE_RESET:
+				Arrays.fill(mVisited, 0L);
+				break;
+			case TileCoordinator.MESSAGE_START:
+				long start = in.readLong();
+				visit(BeamState.column(start), BeamState.row(start), BeamState.heading(start));
+				follow(start, 0, TileCoordinator.NO_TARGET, out);
+				break;
+			case TileCoordinator.MESSAGE_BEAM:
+				long state = in.readLong();
+				long steps = in.readLong();
+				long target = in.readLong();
+				follow(state, steps, target, out);
+				break;
+			case TileCoordinator.MESSAGE_STOP:
+				return;
+			default:
+				throw new IOException("Unknown message " + message + " from the coordinator.");
+			}
+		}
+	}
+
+	/**
+	 * Follows the beam from the state of its last room until it leaves the tile,
+	 * comes to a state which repeats, or to the target state.
+	 */
+	private void follow(long state, long steps, long target, DataOutputStream out) throws IOException {
+		final MirrorGrid grid = mGrid;
+		final int left = mLeft;
+		final int top = mTop;
+		final int right = mLeft + mWidth;
+		final int bottom = mTop + mHeight;
+		final int gridLeft = mGridLeft;
+		final int gridTop = mGridTop;
+		final boolean measuring = target != TileCoordinator.NO_TARGET;
+
+		int col = BeamState.column(state);
+		int row = BeamState.row(state);
+		int heading = BeamState.heading(state);
+		int message;
+		while (true) {
+			int nextCol = col + BeamState.columnStep(heading);
+			int nextRow = row + BeamState.rowStep(heading);
+			if (nextCol < left || nextCol >= right || nextRow < top || nextRow >= bottom) {
+				message = TileCoordinator.MESSAGE_LEFT;
+				break;
+			}
+			col = nextCol;
+			row = nextRow;
+			heading = ReflectiveMirror.reflect(grid.kind(col - gridLeft, row - gridTop), heading);
+			steps++;
+			if (measuring) {
+				if (BeamState.pack(col, row, heading) == target) {
+					message = TileCoordinator.MESSAGE_MEASURED;
+					break;
+				}
+			} else if (visit(col, row, heading)) {
+				message = TileCoordinator.MESSAGE_TRAPPED;
+				break;
+			}
+		}
+		out.writeByte(message);
+		out.writeLong(BeamState.pack(col, row, heading));
+		out.writeLong(steps);
+		out.flush();
+	}
+
+	/**
+	 * Marks the state of a room of the tile.
+	 *
+	 * @return <code>true</code> if the state was seen before
+	 */
+	private boolean visit(int column, int row, int heading) {
+		long bit = (((long) (row - mTop) * mWidth + (column - mLeft)) << 2) | heading;
+		int word = (int) (bit >>> 6);
+		long mask = 1L << bit;
+		if ((mVisited[word] & mask) != 0) {
+			return true;
+		}
+		mVisited[word] |= mask;
+		return false;
+	}
+}
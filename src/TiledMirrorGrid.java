@@ -0,0 +1,472 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * TiledMirrorGrid keeps the mirrors of a board which does not fit in memory in
+ * a tile file. The board is split into square tiles of 2^n x 2^n rooms, each
+ * tile is a fixed size block of the file with the kind of every room in 4 bits.
+ * A tile is read when the laser first enters it and kept in a small cache of
+ * recently used tiles, the least recently used tile is dropped, and written
+ * back if it was changed, when the cache is full. The heap used is the size of
+ * the cache whatever the size of the board, the operating system keeps the
+ * recently read parts of the file in its page cache.
+ * 
+ * The tiles are read with positional reads instead of being mapped one by
+ * one, a mapping can only be released by the garbage collector and a long
+ * trace would run out of mappings before that.
+ * 
+ * The file starts with a header of 32 bytes, in big endian order:
+ * 
+ * <pre>
+ * int  magic 0x4C4D5A54 ("LMZT")
+ * int  version
+ * int  columns
+ * int  rows
+ * int  tile shift, the tiles are 2^shift x 2^shift rooms
+ * int  number of laser entry rooms
+ * int  reserved, 0
+ * int  reserved, 0
+ * </pre>
+ * 
+ * followed by the tiles, column of tiles by column of tiles, and then by the
+ * column, row and heading of every laser entry room as ints. The rooms of a
+ * tile are stored column by column. A file shorter or longer than its header
+ * tells is rejected, it was not written to the end.
+ * 
+ * Several threads may read the mirrors at the same time, a change of the
+ * mirrors needs the grid to itself.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class TiledMirrorGrid implements MutableMirrorGrid, Closeable {
+
+	public static final int MAGIC = 0x4C4D5A54;
+
+	public static final int VERSION = 2;
+
+	public static final int HEADER_SIZE = 32;
+
+	/**
+	 * Tiles of 256 x 256 rooms, 32 KB each.
+	 */
+	public static final int DEFAULT_TILE_SHIFT = 8;
+
+	/**
+	 * Tiles kept in memory by default, 2 MB of tiles of the default size.
+	 */
+	public static final int DEFAULT_CACHE_TILES = 64;
+
+	private static final int MAX_TILE_SHIFT = 14;
+
+	private final FileChannel mChannel;
+
+	private final int mColumns;
+
+	private final int mRows;
+
+	private final int mTileShift;
+
+	private final int mTileMask;
+
+	private final int mTileBytes;
+
+	/**
+	 * Number of tiles in a column of tiles.
+	 */
+	private final long mTilesDown;
+
+	private final int mCacheTiles;
+
+	/**
+	 * Position of the laser entry rooms in the file, after the last tile.
+	 */
+	private final long mLasersPosition;
+
+	/**
+	 * Cached tiles by tile number, in access order.
+	 */
+	private final LinkedHashMap<Long, Tile> mCache;
+
+	/**
+	 * Tile of the last room read, the laser stays in a tile for many steps.
+	 */
+	private volatile Tile mLast;
+
+	private long mTileReads;
+
+	private long mTileWrites;
+
+	private long mTileEvictions;
+
+	private TiledMirrorGrid(FileChannel channel, int columns, int rows, int tileShift, int cacheTiles) {
+		mChannel = channel;
+		mColumns = columns;
+		mRows = rows;
+		mTileShift = tileShift;
+		mTileMask = (1 << tileShift) - 1;
+		mTileBytes = 1 << (2 * tileShift - 1);
+		mTilesDown = ((long) rows + mTileMask) >>> tileShift;
+		mCacheTiles = cacheTiles;
+		mLasersPosition = HEADER_SIZE + (((long) columns + mTileMask) >>> tileShift) * mTilesDown * mTileBytes;
+		mCache = new LinkedHashMap<Long, Tile>(cacheTiles * 2, 0.75f, true);
+		mLast = new Tile(-1, null);
+	}
+
+	/**
+	 * Creates a new tile file with no mirrors, the file is sparse so the tiles
+	 * without mirrors take no space on disks which support it.
+	 * 
+	 * @param file
+	 *            - the tile file, replaced if it exists
+	 * @param columns
+	 *            - number of columns in the maze
+	 * @param rows
+	 *            - number of rows in the maze
+	 * @param tileShift
+	 *            - the tiles are 2^tileShift x 2^tileShift rooms
+	 * @param cacheTiles
+	 *            - number of tiles kept in memory
+	 * @return <code>TiledMirrorGrid</code> of the file
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public static TiledMirrorGrid create(Path file, int columns, int rows, int tileShift, int cacheTiles)
+			throws IOException {
+		if (columns <= 0 || rows <= 0 || rows > BeamState.MAX_ROWS) {
+			throw new IllegalArgumentException("The board " + columns + " x " + rows + " is not supported.");
+		}
+		checkTiles(tileShift, cacheTiles);
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		TiledMirrorGrid grid = new TiledMirrorGrid(channel, columns, rows, tileShift, cacheTiles);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putInt(columns).putInt(rows).putInt(tileShift).putInt(0)
+					.putInt(0).putInt(0);
+			header.flip();
+			write(channel, header, 0);
+			// the last byte sets the size of the file
+			write(channel, ByteBuffer.allocate(1), grid.mLasersPosition - 1);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		return grid;
+	}
+
+	/**
+	 * Opens an existing tile file.
+	 * 
+	 * @param file
+	 *            - the tile file
+	 * @param cacheTiles
+	 *            - number of tiles kept in memory
+	 * @return <code>TiledMirrorGrid</code> of the file
+	 * @throws IOException
+	 *             if the file can not be read
+	 * @throws MazeFormatException
+	 *             if the file is not a valid tile file
+	 */
+	public static TiledMirrorGrid open(Path file, int cacheTiles) throws IOException, MazeFormatException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			read(channel, header, 0);
+			if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+				throw new MazeFormatException("The file is not a tiled maze file.", 0);
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new MazeFormatException("The tiled maze file version " + header.getInt(4) + " is not supported.",
+						0);
+			}
+			int columns = header.getInt(8);
+			int rows = header.getInt(12);
+			int tileShift = header.getInt(16);
+			if (columns <= 0 || rows <= 0 || rows > BeamState.MAX_ROWS || tileShift < 1
+					|| tileShift > MAX_TILE_SHIFT) {
+				throw new MazeFormatException("The tiled maze file header is not valid.", 0);
+			}
+			int lasers = header.getInt(20);
+			if (lasers < 0) {
+				throw new MazeFormatException("The tiled maze file header is not valid.", 0);
+			}
+			checkTiles(tileShift, cacheTiles);
+			TiledMirrorGrid grid = new TiledMirrorGrid(channel, columns, rows, tileShift, cacheTiles);
+			if (channel.size() != grid.mLasersPosition + lasers * 12L) {
+				throw new MazeFormatException("The tiled maze file is " + channel.size() + " bytes instead of "
+						+ (grid.mLasersPosition + lasers * 12L) + ".", 0);
+			}
+			return grid;
+		} catch (IOException | MazeFormatException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Finds out if the file is a tile file from its first bytes.
+	 * 
+	 * @param file
+	 *            - the maze definition file
+	 * @return <code>true</code> if the file starts with the magic of the tile
+	 *         file
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public static boolean isTiled(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			read(channel, magic, 0);
+			return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+		}
+	}
+
+	/**
+	 * Loads the tile file with the default cache size. If the file has more
+	 * than one laser entry room the last one is the laser of the definition and
+	 * all of them are kept, as for the text format.
+	 * 
+	 * @param file
+	 *            - the tile file
+	 * @return <code>MazeDefinition</code> of the file
+	 * @throws IOException
+	 *             if the file can not be read
+	 * @throws MazeFormatException
+	 *             if the file is not a valid tile file
+	 */
+	public static MazeDefinition load(Path file) throws IOException, MazeFormatException {
+		TiledMirrorGrid grid = open(file, DEFAULT_CACHE_TILES);
+		int[] lasers;
+		try {
+			ByteBuffer count = ByteBuffer.allocate(4);
+			read(grid.mChannel, count, 20);
+			ByteBuffer table = ByteBuffer.allocate(count.getInt(0) * 12);
+			read(grid.mChannel, table, grid.mLasersPosition);
+			table.flip();
+			lasers = new int[table.remaining() / 4];
+			table.asIntBuffer().get(lasers);
+		} catch (IOException | RuntimeException e) {
+			grid.mChannel.close();
+			throw e;
+		}
+		if (lasers.length == 0) {
+			return new MazeDefinition(grid, -1, -1, null);
+		}
+		int last = lasers.length - 3;
+		MazeDefinition definition = new MazeDefinition(grid, lasers[last], lasers[last + 1],
+				BeamState.orientation(lasers[last + 2]));
+		definition.mLasers = lasers;
+		return definition;
+	}
+
+	public int columns() {
+		return mColumns;
+	}
+
+	public int rows() {
+		return mRows;
+	}
+
+	public int kind(int column, int row) {
+		long number = tileNumber(column, row);
+		Tile tile = mLast;
+		if (tile.mNumber != number) {
+			tile = tile(number);
+			mLast = tile;
+		}
+		int room = roomInTile(column, row);
+		return (tile.mRooms[room >>> 1] >>> ((room & 1) << 2)) & 0xF;
+	}
+
+	public void setKind(int column, int row, int kind) {
+		long number = tileNumber(column, row);
+		Tile tile = mLast;
+		if (tile.mNumber != number) {
+			tile = tile(number);
+			mLast = tile;
+		}
+		int room = roomInTile(column, row);
+		int shift = (room & 1) << 2;
+		tile.mRooms[room >>> 1] = (byte) ((tile.mRooms[room >>> 1] & ~(0xF << shift)) | (kind << shift));
+		tile.mDirty = true;
+	}
+
+	/**
+	 * Stores the laser entry rooms after the tiles, replacing the ones the file
+	 * had.
+	 * 
+	 * @param lasers
+	 *            - column, row and heading of every laser entry room
+	 * @param count
+	 *            - number of laser entry rooms
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public synchronized void setLasers(int[] lasers, int count) throws IOException {
+		ByteBuffer table = ByteBuffer.allocate(count * 12);
+		table.asIntBuffer().put(lasers, 0, count * 3);
+		write(mChannel, table, mLasersPosition);
+		mChannel.truncate(mLasersPosition + count * 12L);
+		ByteBuffer header = ByteBuffer.allocate(4);
+		header.putInt(count).flip();
+		write(mChannel, header, 20);
+	}
+
+	/**
+	 * @return number of rooms along a side of a tile
+	 */
+	public int getTileSize() {
+		return 1 << mTileShift;
+	}
+
+	/**
+	 * @return number of tiles read from the file
+	 */
+	public synchronized long getTileReads() {
+		return mTileReads;
+	}
+
+	/**
+	 * @return number of changed tiles written to the file
+	 */
+	public synchronized long getTileWrites() {
+		return mTileWrites;
+	}
+
+	/**
+	 * @return number of tiles dropped from the cache to make room
+	 */
+	public synchronized long getTileEvictions() {
+		return mTileEvictions;
+	}
+
+	/**
+	 * @return number of bytes the tile cache holds at most
+	 */
+	public long getCacheSizeInBytes() {
+		return (long) mCacheTiles * mTileBytes;
+	}
+
+	/**
+	 * Writes the changed tiles to the file.
+	 * 
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	public synchronized void flush() throws IOException {
+		for (Tile tile : mCache.values()) {
+			writeBack(tile);
+		}
+		mChannel.force(false);
+	}
+
+	/**
+	 * Writes the changed tiles to the file and closes it.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			mChannel.close();
+		}
+	}
+
+	private long tileNumber(int column, int row) {
+		return (column >>> mTileShift) * mTilesDown + (row >>> mTileShift);
+	}
+
+	private int roomInTile(int column, int row) {
+		return ((column & mTileMask) << mTileShift) | (row & mTileMask);
+	}
+
+	/**
+	 * Returns the tile from the cache, or reads it from the file.
+	 */
+	private synchronized Tile tile(long number) {
+		Tile tile = mCache.get(number);
+		if (tile != null) {
+			return tile;
+		}
+
+		try {
+			if (mCache.size() >= mCacheTiles) {
+				Iterator<Map.Entry<Long, Tile>> eldest = mCache.entrySet().iterator();
+				writeBack(eldest.next().getValue());
+				eldest.remove();
+				mTileEvictions++;
+			}
+			tile = new Tile(number, new byte[mTileBytes]);
+			read(mChannel, ByteBuffer.wrap(tile.mRooms), position(number));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		mTileReads++;
+		mCache.put(number, tile);
+		return tile;
+	}
+
+	private void writeBack(Tile tile) throws IOException {
+		if (tile.mDirty) {
+			write(mChannel, ByteBuffer.wrap(tile.mRooms), position(tile.mNumber));
+			tile.mDirty = false;
+			mTileWrites++;
+		}
+	}
+
+	private long position(long number) {
+		return HEADER_SIZE + number * mTileBytes;
+	}
+
+	private static void checkTiles(int tileShift, int cacheTiles) {
+		if (tileShift < 1 || tileShift > MAX_TILE_SHIFT) {
+			throw new IllegalArgumentException("The tile shift must be from 1 to " + MAX_TILE_SHIFT + ": " + tileShift);
+		}
+		if (cacheTiles < 1) {
+			throw new IllegalArgumentException("The tile cache must hold at least one tile: " + cacheTiles);
+		}
+	}
+
+	/**
+	 * Reads until the buffer is full or the end of the file, the rest of the
+	 * buffer is left as it is.
+	 */
+	private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				return;
+			}
+			position += read;
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Tile in memory, the kinds of its rooms two to a byte.
+	 */
+	private static class Tile {
+		final long mNumber;
+		final byte[] mRooms;
+		boolean mDirty;
+
+		Tile(long number, byte[] rooms) {
+			mNumber = number;
+			mRooms = rooms;
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/**
+ * TraceResult is the result of tracing one laser through the maze: the exit
+ * point of the laser and the length of its path, or the loop the laser is
+ * trapped in.
+ * 
+ * The positions are kept packed as in {@link BeamState}.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public class TraceResult {
+
+	private final long mStart;
+
+	private final long mExit;
+
+	private final long mLength;
+
+	private final boolean mTrapped;
+
+	private final long mCycleStart;
+
+	private final long mCycleLength;
+
+	private TraceResult(long start, long exit, long length, boolean trapped, long cycleStart, long cycleLength) {
+		mStart = start;
+		mExit = exit;
+		mLength = length;
+		mTrapped = trapped;
+		mCycleStart = cycleStart;
+		mCycleLength = cycleLength;
+	}
+
+	/**
+	 * Returns the result of a laser which leaves the maze.
+	 * 
+	 * @param start
+	 *            - packed start state of the laser
+	 * @param exit
+	 *            - packed state of the last block position in the maze
+	 * @param steps
+	 *            - number of steps from the start to the exit
+	 * @return <code>TraceResult</code> of the laser
+	 */
+	public static TraceResult exited(long start, long exit, long steps) {
+		return new TraceResult(start, exit, steps + 1, false, 0, 0);
+	}
+
+	/**
+	 * Returns the result of a laser trapped in the maze.
+	 * 
+	 * @param start
+	 *            - packed start state of the laser
+	 * @param trap
+	 *            - the loop of the laser
+	 * @return <code>TraceResult</code> of the laser
+	 */
+	public static TraceResult trapped(long start, LaserTrappedException trap) {
+		BlockPosition entry = trap.getCycleEntry();
+		return new TraceResult(start, BeamState.pack(entry.mColumn, entry.mRow, entry.getHeading()),
+				trap.getCycleStart() + trap.getCycleLength(), true, trap.getCycleStart(), trap.getCycleLength());
+	}
+
+	/**
+	 * @return packed start state of the laser
+	 */
+	public long getStart() {
+		return mStart;
+	}
+
+	/**
+	 * @return <code>true</code> if the laser never leaves the maze
+	 */
+	public boolean isTrapped() {
+		return mTrapped;
+	}
+
+	/**
+	 * @return packed state of the exit point, or of the loop entry if the laser is
+	 *         trapped
+	 */
+	public long getExit() {
+		return mExit;
+	}
+
+	/**
+	 * @return the column of the exit room
+	 */
+	public int getExitColumn() {
+		return BeamState.column(mExit);
+	}
+
+	/**
+	 * @return the row of the exit room
+	 */
+	public int getExitRow() {
+		return BeamState.row(mExit);
+	}
+
+	/**
+	 * @return heading of the laser leaving the maze
+	 */
+	public int getExitHeading() {
+		return BeamState.heading(mExit);
+	}
+
+	/**
+	 * @return orientation of the laser leaving the maze (H or V)
+	 */
+	public String getExitOrientation() {
+		return BeamState.orientation(getExitHeading());
+	}
+
+	/**
+	 * @return number of block positions of the path in the maze, for a trapped
+	 *         laser up to the end of the first time round the loop
+	 */
+	public long getLength() {
+		return mLength;
+	}
+
+	/**
+	 * @return number of steps from the start to the loop entry, 0 if the laser is
+	 *         not trapped
+	 */
+	public long getCycleStart() {
+		return mCycleStart;
+	}
+
+	/**
+	 * @return number of block positions in the loop, 0 if the laser is not
+	 *         trapped
+	 */
+	public long getCycleLength() {
+		return mCycleLength;
+	}
+
+	/**
+	 * Returns a short description of the result.
+	 * 
+	 * @return <code>String</code> based on default encoding of the JVM
+	 */
+	public String toString() {
+		if (mTrapped) {
+			return "The laser is trapped in the maze. Loop entry: " + BeamState.toBlockPosition(mExit) + "after "
+					+ mCycleStart + " steps, loop length: " + mCycleLength;
+		}
+		return "Exit point: " + BeamState.toBlockPosition(mExit) + "path length: " + mLength;
+	}
+}
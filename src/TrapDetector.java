@@ -0,0 +1,67 @@
+/**
+ * TrapDetector is used by the laser tracer to find out whether the laser has
+ * come back to a block position it has already been in, which means the laser
+ * is trapped in the maze.
+ * 
+ * The beam state is identified by column (X), row (Y) and the heading of the
+ * laser (see {@link BlockPosition#getHeading()}). A detector is reset before
+ * every trace and then every visited block position is reported to it in path
+ * order.
+ * 
+ * @author Bankim Aghera
+ *
+ */
+public interface TrapDetector {
+
+	/**
+	 * Largest number of beam states (column x row x heading) for which
+	 * {@link #forBoard(int, int)} picks the bitset detector, 2^26 states are 8 MB.
+	 */
+	long MAX_BITSET_STATES = 1L << 26;
+
+	/**
+	 * Prepares the detector for a new trace on a maze of the given size.
+	 * 
+	 * @param columns
+	 *            - number of columns in the maze
+	 * @param rows
+	 *            - number of rows in the maze
+	 */
+	void reset(int columns, int rows);
+
+	/**
+	 * Records the block position of the laser.
+	 * 
+	 * @param column
+	 *            - the column position of the block
+	 * @param row
+	 *            - the row position of the block
+	 * @param heading
+	 *            - heading of the laser in the block
+	 * @return <code>true</code> if the laser has been in this state before and is
+	 *         trapped; <code>false</code> otherwise.
+	 */
+	boolean visit(int column, int row, int heading);
+
+	/**
+	 * Returns the detector best suited for a maze of the given size, the bitset
+	 * detector for small and medium boards and the hash set detector for the
+	 * boards where a bitset is too big.
+	 * 
+	 * @param columns
+	 *            - number of columns in the maze
+	 * @param rows
+	 *            - number of rows in the maze
+	 * @return <code>TrapDetector</code> which is already reset for the board
+	 */
+	static TrapDetector forBoard(int columns, int rows) {
+		TrapDetector detector;
+		if ((long) columns * rows * 4 <= MAX_BITSET_STATES) {
+			detector = new BitSetTrapDetector();
+		} else {
+			detector = new HashSetTrapDetector();
+		}
+		detector.reset(columns, rows);
+		return detector;
+	}
+}
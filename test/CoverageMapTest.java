@@ -0,0 +1,68 @@
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * CoverageMapTest compares the {@link CoverageMap} with the room by room
+ * {@link NaiveTracer} on random mazes with and without beam splitters: the
+ * headings the lasers from all the doors leave every room with, the number of
+ * rooms lit and the number of states marked.
+ *
+ * <pre>
+ * java CoverageMapTest
+ * </pre>
+ *
+ * @author Bankim Aghera
+ *
+ */
+public class CoverageMapTest {
+
+	private static final int MAZES = 500;
+
+	public static void main(String[] args) {
+		Random random = new Random(TestMazes.SEED);
+		long cases = 0;
+		for (int maze = 0; maze < MAZES; maze++) {
+			ByteMirrorGrid grid = TestMazes.randomMaze(random, 40, maze % 2 == 1);
+			final int columns = grid.columns();
+			final int rows = grid.rows();
+			CoverageMap map = new CoverageMap(grid);
+			NaiveTracer naive = new NaiveTracer(grid);
+
+			// the lasers of all the doors, a state already lit is not followed again
+			Set<Long> states = new HashSet<>();
+			for (int col = 0; col < columns; col++) {
+				naive.beams(col, -1, BlockPosition.HEADING_VERTICAL_FORWARD, states);
+				naive.beams(col, rows, BlockPosition.HEADING_VERTICAL_BACKWARD, states);
+			}
+			for (int row = 0; row < rows; row++) {
+				naive.beams(-1, row, BlockPosition.HEADING_HORIZONTAL_FORWARD, states);
+				naive.beams(columns, row, BlockPosition.HEADING_HORIZONTAL_BACKWARD, states);
+			}
+			int[][] headings = new int[columns][rows];
+			long lit = 0;
+			for (long state : states) {
+				int col = BeamState.column(state);
+				int row = BeamState.row(state);
+				if (headings[col][row] == 0) {
+					lit++;
+				}
+				headings[col][row] |= 1 << BeamState.heading(state);
+			}
+
+			String what = "maze " + maze;
+			for (int col = 0; col < columns; col++) {
+				for (int row = 0; row < rows; row++) {
+					TestMazes.check(map.getHeadings(col, row) == headings[col][row],
+							what + ": headings of the room " + col + "," + row);
+					TestMazes.check(map.isLit(col, row) == (headings[col][row] != 0),
+							what + ": lit room " + col + "," + row);
+					cases++;
+				}
+			}
+			TestMazes.check(map.getLitRoomCount() == lit, what + ": lit rooms");
+			TestMazes.check(map.getStateCount() == states.size(), what + ": states");
+		}
+		System.out.println("CoverageMapTest: " + cases + " cases passed");
+	}
+}
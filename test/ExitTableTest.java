@@ -0,0 +1,52 @@
+import java.util.Random;
+
+/**
+ * ExitTableTest compares the {@link ExitTable} with the room by room
+ * {@link NaiveTracer} on random mazes: the exit door of the laser coming in
+ * through every door, or that it is trapped. The table shares the paths run
+ * backwards and the exits of the mirrors met before, so a wrong share shows
+ * up as a door with the exit of another.
+ *
+ * <pre>
+ * java ExitTableTest
+ * </pre>
+ *
+ * @author Bankim Aghera
+ *
+ */
+public class ExitTableTest {
+
+	private static final int MAZES = 500;
+
+	public static void main(String[] args) {
+		Random random = new Random(TestMazes.SEED);
+		long cases = 0;
+		for (int maze = 0; maze < MAZES; maze++) {
+			ByteMirrorGrid grid = TestMazes.randomMaze(random, 40, false);
+			ExitTable exits = new ExitTable(grid);
+			NaiveTracer naive = new NaiveTracer(grid);
+			TestMazes.check(exits.getDoorCount() == 2 * (grid.columns() + grid.rows()), "maze " + maze + ": doors");
+			for (int door = 0; door < exits.getDoorCount(); door++) {
+				int col = exits.getDoorColumn(door);
+				int row = exits.getDoorRow(door);
+				int heading = exits.getDoorHeading(door);
+				String what = "maze " + maze + " door " + door;
+				TestMazes.check(exits.getDoor(col, row, heading) == door, what + ": door number");
+
+				// the laser comes in through the door, the mirror of the room is applied
+				long start = BeamState.pack(col, row, ReflectiveMirror.reflect(grid.kind(col, row), heading));
+				TraceResult expected = naive.trace(start);
+				int exit = exits.getExitDoor(door);
+				if (expected.isTrapped()) {
+					TestMazes.check(exit == ExitTable.TRAPPED, what + ": trapped");
+				} else {
+					TestMazes.check(exit != ExitTable.TRAPPED, what + ": not trapped");
+					TestMazes.check(BeamState.pack(exits.getDoorColumn(exit), exits.getDoorRow(exit),
+							exits.getExitHeading(door)) == expected.getExit(), what + ": exit");
+				}
+				cases++;
+			}
+		}
+		System.out.println("ExitTableTest: " + cases + " cases passed");
+	}
+}
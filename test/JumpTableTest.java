@@ -0,0 +1,65 @@
+import java.util.Random;
+
+/**
+ * JumpTableTest compares the {@link JumpTable} with the room by room
+ * {@link NaiveTracer} on random mazes: the exit point or the loop of lasers
+ * from random rooms, and the state after a random number of steps, up to far
+ * more steps than the laser takes to leave or to go round its loop.
+ *
+ * <pre>
+ * java JumpTableTest
+ * </pre>
+ *
+ * @author Bankim Aghera
+ *
+ */
+public class JumpTableTest {
+
+	private static final int MAZES = 300;
+
+	private static final int LASERS = 40;
+
+	public static void main(String[] args) {
+		Random random = new Random(TestMazes.SEED);
+		long cases = 0;
+		for (int maze = 0; maze < MAZES; maze++) {
+			ByteMirrorGrid grid = TestMazes.randomMaze(random, 40, false);
+			JumpTable table = new JumpTable(grid);
+			NaiveTracer naive = new NaiveTracer(grid);
+			for (int laser = 0; laser < LASERS; laser++) {
+				long start = TestMazes.randomState(random, grid);
+				String what = "maze " + maze + " laser " + BeamState.toBlockPosition(start);
+				TraceResult expected = naive.trace(start);
+				TestMazes.checkSame(what, expected, table.exit(start));
+
+				// a few steps, and more than the whole path
+				long path = expected.isTrapped() ? expected.getCycleStart() + expected.getCycleLength()
+						: expected.getLength();
+				long[] steps = { 0, 1, random.nextInt((int) Math.min(path + 2, 1 << 20)), path - 1, path,
+						path + random.nextInt(1000), (long) random.nextInt(Integer.MAX_VALUE) << 12 };
+				for (long n : steps) {
+					if (n < 0) {
+						continue;
+					}
+					TestMazes.check(naiveStateAfter(naive, expected, start, n) == table.stateAfter(start, n),
+							what + ": state after " + n + " steps");
+					cases++;
+				}
+			}
+		}
+		System.out.println("JumpTableTest: " + cases + " cases passed");
+	}
+
+	/**
+	 * Steps the naive tracer, a trapped laser is stepped round its loop no more
+	 * than once.
+	 */
+	private static long naiveStateAfter(NaiveTracer naive, TraceResult result, long start, long steps) {
+		if (result.isTrapped() && steps > result.getCycleStart()) {
+			steps = result.getCycleStart() + (steps - result.getCycleStart()) % result.getCycleLength();
+		} else if (!result.isTrapped() && steps >= result.getLength()) {
+			return NaiveTracer.LEFT_MAZE;
+		}
+		return naive.stateAfter(start, steps);
+	}
+}
@@ -0,0 +1,63 @@
+import java.util.Random;
+
+/**
+ * LaserBatchTest compares the {@link LaserBatch} with the room by room
+ * {@link NaiveTracer} on random mazes. Many lasers of a small maze, whose paths
+ * join so later lasers stop at the memo, are traced in two batches on one to
+ * four threads, the second batch with the memo of the first. A laser out of
+ * the maze must give no result.
+ *
+ * <pre>
+ * java LaserBatchTest
+ * </pre>
+ *
+ * @author Bankim Aghera
+ *
+ */
+public class LaserBatchTest {
+
+	private static final int MAZES = 200;
+
+	private static final int LASERS = 200;
+
+	private static final int BATCHES = 2;
+
+	public static void main(String[] args) {
+		Random random = new Random(TestMazes.SEED);
+		long cases = 0;
+		long memoHits = 0;
+		for (int maze = 0; maze < MAZES; maze++) {
+			ByteMirrorGrid grid = TestMazes.randomMaze(random, 40, false);
+			LaserBatch batch = new LaserBatch(grid, new MirrorIndex(grid), 1 + maze % 4);
+			NaiveTracer naive = new NaiveTracer(grid);
+			for (int round = 0; round < BATCHES; round++) {
+				int[] lasers = new int[LASERS * 3];
+				for (int i = 0; i < LASERS; i++) {
+					long start = TestMazes.randomState(random, grid);
+					lasers[i * 3] = BeamState.column(start);
+					lasers[i * 3 + 1] = BeamState.row(start);
+					lasers[i * 3 + 2] = BeamState.heading(start);
+				}
+				// a laser out of the maze and one with an unknown heading
+				lasers[0] = grid.columns();
+				lasers[5] = 4;
+
+				TraceResult[] results = batch.trace(lasers, LASERS);
+				TestMazes.check(results.length == LASERS, "maze " + maze + ": results");
+				for (int i = 0; i < LASERS; i++) {
+					String what = "maze " + maze + " batch " + round + " laser " + i;
+					if (i < 2) {
+						TestMazes.check(results[i] == null, what + ": not in the maze");
+						continue;
+					}
+					long start = BeamState.pack(lasers[i * 3], lasers[i * 3 + 1], lasers[i * 3 + 2]);
+					TestMazes.checkSame(what, naive.trace(start), results[i]);
+					cases++;
+				}
+			}
+			memoHits += batch.getMemoHits();
+		}
+		TestMazes.check(memoHits > 0, "the memo is never used");
+		System.out.println("LaserBatchTest: " + cases + " cases passed, " + memoHits + " memo hits");
+	}
+}
@@ -0,0 +1,63 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * MirrorGraphTest compares the {@link MirrorGraph} with the room by room
+ * {@link NaiveTracer} on random mazes, the graph compiled from the grid and the
+ * same graph written to a file and read back. A graph read for another maze
+ * must be refused.
+ *
+ * <pre>
+ * java MirrorGraphTest
+ * </pre>
+ *
+ * @author Bankim Aghera
+ *
+ */
+public class MirrorGraphTest {
+
+	private static final int MAZES = 300;
+
+	private static final int LASERS = 50;
+
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(TestMazes.SEED);
+		Path file = Files.createTempFile("mirror-graph-test", ".lmzg");
+		long cases = 0;
+		try {
+			for (int maze = 0; maze < MAZES; maze++) {
+				ByteMirrorGrid grid = TestMazes.randomMaze(random, 40, false);
+				MirrorGraph compiled = new MirrorGraph(grid);
+				byte[] hash = new byte[32];
+				random.nextBytes(hash);
+				compiled.write(file, hash);
+				MirrorGraph read = MirrorGraph.read(file, hash);
+				NaiveTracer naive = new NaiveTracer(grid);
+				for (int laser = 0; laser < LASERS; laser++) {
+					long start = TestMazes.randomState(random, grid);
+					String what = "maze " + maze + " laser " + BeamState.toBlockPosition(start);
+					TraceResult expected = naive.trace(start);
+					int col = BeamState.column(start);
+					int row = BeamState.row(start);
+					int heading = BeamState.heading(start);
+					TestMazes.checkSame(what, expected, compiled.trace(col, row, heading));
+					TestMazes.checkSame(what + " read back", expected, read.trace(col, row, heading));
+					cases += 2;
+				}
+
+				hash[0]++;
+				try {
+					MirrorGraph.read(file, hash);
+					throw new AssertionError("maze " + maze + ": the graph of another maze is read");
+				} catch (IOException e) {
+					// the expected result
+				}
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+		System.out.println("MirrorGraphTest: " + cases + " cases passed");
+	}
+}
@@ -0,0 +1,142 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * NaiveTracer is the reference the tests compare the fast paths of the tracer
+ * with: the laser is moved one room at a time and every state it has been in
+ * is kept in a hash set, there is no index, table or memo to get wrong.
+ *
+ * The states are packed as in {@link BeamState}, a state is the room and the
+ * heading the laser leaves the room with. As for the tracer the mirror of the
+ * start room is not applied, a start outside of the maze next to a door comes
+ * in through the door.
+ *
+ * @author Bankim Aghera
+ *
+ */
+final class NaiveTracer {
+
+	/**
+	 * State after the laser has left the maze.
+	 */
+	static final long LEFT_MAZE = -1;
+
+	private final MirrorGrid mGrid;
+
+	NaiveTracer(MirrorGrid grid) {
+		mGrid = grid;
+	}
+
+	/**
+	 * @return the state of the laser in the next room, <code>LEFT_MAZE</code> if
+	 *         the next room is out of the maze, a beam splitter reflects
+	 */
+	long next(long state) {
+		int heading = BeamState.heading(state);
+		int col = BeamState.column(state) + BeamState.columnStep(heading);
+		int row = BeamState.row(state) + BeamState.rowStep(heading);
+		if (col < 0 || col >= mGrid.columns() || row < 0 || row >= mGrid.rows()) {
+			return LEFT_MAZE;
+		}
+		return BeamState.pack(col, row, ReflectiveMirror.reflect(mGrid.kind(col, row), heading));
+	}
+
+	/**
+	 * @return the state after the given number of steps, <code>LEFT_MAZE</code>
+	 *         if the laser has left the maze before
+	 */
+	long stateAfter(long start, long steps) {
+		long state = start;
+		for (long i = 0; i < steps && state != LEFT_MAZE; i++) {
+			state = next(state);
+		}
+		return state;
+	}
+
+	/**
+	 * Follows the laser until it leaves the maze or comes back to a state it has
+	 * been in.
+	 *
+	 * @return <code>TraceResult</code> of the laser
+	 */
+	TraceResult trace(long start) {
+		Map<Long, Long> seen = new HashMap<>();
+		long state = start;
+		long steps = 0;
+		seen.put(state, steps);
+		while (true) {
+			long next = next(state);
+			if (next == LEFT_MAZE) {
+				return TraceResult.exited(start, state, steps);
+			}
+			steps++;
+			Long first = seen.putIfAbsent(next, steps);
+			if (first != null) {
+				return TraceResult.trapped(start,
+						new LaserTrappedException(BeamState.toBlockPosition(next), first, steps - first));
+			}
+			state = next;
+		}
+	}
+
+	/**
+	 * Follows every beam of the laser, a beam splitter lets one beam pass and
+	 * reflects the other.
+	 *
+	 * @param column
+	 *            - start column of the laser, -1 or X for a door on the left or
+	 *            the right
+	 * @param row
+	 *            - start row of the laser, -1 or Y for a door on the top or the
+	 *            bottom
+	 * @param heading
+	 *            - start heading of the laser
+	 * @param states
+	 *            - set the states of the beams after the start are added to, a
+	 *            state already in the set is not followed again
+	 * @return the sorted exit states of the beams, no state twice
+	 */
+	long[] beams(int column, int row, int heading, Set<Long> states) {
+		Set<Long> exits = new HashSet<>();
+		ArrayDeque<Long> pending = new ArrayDeque<>();
+		move(column, row, heading, states, pending, exits);
+		while (!pending.isEmpty()) {
+			long state = pending.poll();
+			move(BeamState.column(state), BeamState.row(state), BeamState.heading(state), states, pending, exits);
+		}
+		long[] sorted = new long[exits.size()];
+		int i = 0;
+		for (long exit : exits) {
+			sorted[i++] = exit;
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Moves a beam to the next room, the new states are added to the states and
+	 * to the pending beams.
+	 */
+	private void move(int column, int row, int heading, Set<Long> states, ArrayDeque<Long> pending,
+			Set<Long> exits) {
+		int col = column + BeamState.columnStep(heading);
+		int nextRow = row + BeamState.rowStep(heading);
+		if (col < 0 || col >= mGrid.columns() || nextRow < 0 || nextRow >= mGrid.rows()) {
+			exits.add(BeamState.pack(column, row, heading));
+			return;
+		}
+		int kind = mGrid.kind(col, nextRow);
+		long reflected = BeamState.pack(col, nextRow, ReflectiveMirror.reflect(kind, heading));
+		if (states.add(reflected)) {
+			pending.add(reflected);
+		}
+		long passing = BeamState.pack(col, nextRow, heading);
+		if (ReflectiveMirror.isSplitter(kind) && states.add(passing)) {
+			pending.add(passing);
+		}
+	}
+}
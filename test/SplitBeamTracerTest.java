@@ -0,0 +1,68 @@
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * SplitBeamTracerTest compares the {@link SplitBeamTracer} with the room by
+ * room {@link NaiveTracer} on random mazes with beam splitters: the exit
+ * points of all the beams of lasers from random rooms and from the doors. One
+ * tracer runs all the lasers of a maze on a pool of several threads, as for
+ * the lasers of one definition file.
+ *
+ * <pre>
+ * java SplitBeamTracerTest
+ * </pre>
+ *
+ * @author Bankim Aghera
+ *
+ */
+public class SplitBeamTracerTest {
+
+	private static final int MAZES = 300;
+
+	private static final int LASERS = 30;
+
+	public static void main(String[] args) {
+		Random random = new Random(TestMazes.SEED);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		long cases = 0;
+		try {
+			for (int maze = 0; maze < MAZES; maze++) {
+				ByteMirrorGrid grid = TestMazes.randomMaze(random, 40, true);
+				SplitBeamTracer tracer = new SplitBeamTracer(grid, new MirrorIndex(grid), pool);
+				NaiveTracer naive = new NaiveTracer(grid);
+				for (int laser = 0; laser < LASERS; laser++) {
+					long start = TestMazes.randomState(random, grid);
+					int col = BeamState.column(start);
+					int row = BeamState.row(start);
+					int heading = BeamState.heading(start);
+					String what = "maze " + maze + " laser " + BeamState.toBlockPosition(start);
+					checkExits(what, naive.beams(col, row, heading, new HashSet<>()),
+							tracer.trace(col, row, heading));
+
+					// the door on the side the laser heads away from
+					if ((heading & 1) == 0) {
+						col = (heading & 2) == 0 ? 0 : grid.columns() - 1;
+					} else {
+						row = (heading & 2) == 0 ? 0 : grid.rows() - 1;
+					}
+					checkExits(what + " door", naive.beams(col - BeamState.columnStep(heading),
+							row - BeamState.rowStep(heading), heading, new HashSet<>()),
+							tracer.traceDoor(col, row, heading));
+					cases += 2;
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		System.out.println("SplitBeamTracerTest: " + cases + " cases passed");
+	}
+
+	private static void checkExits(String what, long[] expected, SplitTraceResult actual) {
+		TestMazes.check(expected.length == actual.getExitCount(), what + ": number of exits");
+		for (int i = 0; i < expected.length; i++) {
+			TestMazes.check(expected[i] == actual.getExit(i), what + ": exit " + i);
+		}
+		TestMazes.check(actual.isTrapped() == (expected.length == 0), what + ": trapped");
+	}
+}
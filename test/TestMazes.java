@@ -0,0 +1,86 @@
+import java.util.Random;
+
+/**
+ * TestMazes builds the random mazes the comparison tests run on, from a seed
+ * so a failure can be run again, and checks their results.
+ *
+ * @author Bankim Aghera
+ *
+ */
+final class TestMazes {
+
+	/**
+	 * Seed of the mazes, the same on every run.
+	 */
+	static final long SEED = 20180501L;
+
+	private TestMazes() {
+	}
+
+	/**
+	 * Builds a maze with mirrors of every kind placed at random.
+	 *
+	 * @param random
+	 *            - source of the sizes and the mirrors
+	 * @param maxSize
+	 *            - most columns and rows
+	 * @param splitters
+	 *            - <code>true</code> to place beam splitters too
+	 * @return the grid
+	 */
+	static ByteMirrorGrid randomMaze(Random random, int maxSize, boolean splitters) {
+		int columns = 1 + random.nextInt(maxSize);
+		int rows = 1 + random.nextInt(maxSize);
+		double density = random.nextDouble() * 0.6;
+		int kinds = splitters ? ReflectiveMirror.KIND_COUNT - 1 : ReflectiveMirror.KIND_LEFT_LEFT_SIDE;
+		ByteMirrorGrid grid = new ByteMirrorGrid(columns, rows);
+		for (int col = 0; col < columns; col++) {
+			for (int row = 0; row < rows; row++) {
+				if (random.nextDouble() < density) {
+					grid.setKind(col, row, 1 + random.nextInt(kinds));
+				}
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * @return a random state in the maze
+	 */
+	static long randomState(Random random, MirrorGrid grid) {
+		return BeamState.pack(random.nextInt(grid.columns()), random.nextInt(grid.rows()), random.nextInt(4));
+	}
+
+	/**
+	 * Checks that the fast path gives the same result as the reference.
+	 *
+	 * @param what
+	 *            - the case, for the message
+	 * @param expected
+	 *            - result of the reference
+	 * @param actual
+	 *            - result of the fast path
+	 * @throws AssertionError
+	 *             if the results differ
+	 */
+	static void checkSame(String what, TraceResult expected, TraceResult actual) {
+		check(expected.getStart() == actual.getStart(), what + ": start");
+		check(expected.isTrapped() == actual.isTrapped(), what + ": trapped");
+		check(expected.getExit() == actual.getExit(), what + ": exit or loop entry");
+		check(expected.getCycleStart() == actual.getCycleStart(), what + ": loop start");
+		check(expected.getCycleLength() == actual.getCycleLength(), what + ": loop length");
+		if (!expected.isTrapped()) {
+			check(expected.getLength() == actual.getLength(), what + ": path length");
+		}
+	}
+
+	/**
+	 * @throws AssertionError
+	 *             with the message if the condition does not hold
+	 */
+	static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}